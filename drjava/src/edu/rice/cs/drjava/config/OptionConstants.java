@@ -1515,6 +1515,32 @@ public interface OptionConstants {
   /** Whether to enabled the Show Debug Console menu item in the Tools menu. */
   public static final BooleanOption SHOW_DEBUG_CONSOLE = new BooleanOption("show.debug.console", Boolean.FALSE);
   
+  /** Whether newly created documents keep their reduced models in balanced-tree (indexed) token lists, which make
+    * seeking to distant offsets logarithmic rather than linear in the distance. */
+  public static final BooleanOption INDEXED_REDUCED_MODEL = new BooleanOption("indexed.reduced.model", Boolean.FALSE);
+  
+  /** Memory budget in kilobytes for unmodified documents held in the document cache; 0 bounds the cache by document 
+    * count instead. */
+  public static final NonNegativeIntegerOption DOCUMENT_CACHE_BUDGET =
+    new NonNegativeIntegerOption("document.cache.budget", Integer.valueOf(0));
+  
+  /** Whether Compile All and Compile Project only compile the files changed since the last build and the files that 
+    * depend on them. */
+  public static final BooleanOption INCREMENTAL_COMPILE = new BooleanOption("incremental.compile", Boolean.FALSE);
+  
+  /** Whether the javac-based compilers keep a warm compiler, file manager and class path index between compiles. */
+  public static final BooleanOption WARM_COMPILER = new BooleanOption("warm.compiler", Boolean.FALSE);
+  
+  /** Number of slave JVMs across which test classes are distributed when running unit tests; 0 or 1 runs all tests in
+    * the interactions JVM. */
+  public static final NonNegativeIntegerOption JUNIT_PARALLEL_JVMS =
+    new NonNegativeIntegerOption("junit.parallel.jvms", Integer.valueOf(0));
+  
+  /** Number of thousands of characters of output kept in the Interactions and Console panes; older output is removed
+    * in large chunks.  0 keeps all output. */
+  public static final NonNegativeIntegerOption CONSOLE_SCROLLBACK_LIMIT =
+    new NonNegativeIntegerOption("console.scrollback.limit", Integer.valueOf(0));
+  
   /** Height of MainFrame at startUp.  Can be overridden if out of bounds. */
   public static final NonNegativeIntegerOption WINDOW_HEIGHT =
     new NonNegativeIntegerOption("window.height", Integer.valueOf(700));
@@ -1577,6 +1603,10 @@ public interface OptionConstants {
   public static final BooleanOption DYNAMICJAVA_REQUIRE_VARIABLE_TYPE =
     new BooleanOption("dynamicjava.require.variable.type", Boolean.TRUE);
   
+  /** Whether to compile loops in the Interactions Pane to bytecode rather than interpreting them. */
+  public static final BooleanOption DYNAMICJAVA_COMPILE_STATEMENTS =
+    new BooleanOption("dynamicjava.compile.statements", Boolean.TRUE);
+  
   
   /** Dynamic Java access control. */
   public static final ArrayList<String> DYNAMICJAVA_ACCESS_CONTROL_CHOICES =
@@ -47,6 +47,7 @@ import edu.rice.cs.drjava.model.definitions.reducedmodel.ReducedModelControl;
 import edu.rice.cs.drjava.model.definitions.reducedmodel.HighlightStatus;
 import edu.rice.cs.drjava.model.definitions.reducedmodel.ReducedModelState;
 
+import edu.rice.cs.util.Log;
 import edu.rice.cs.util.OperationCanceledException;
 import edu.rice.cs.util.StringOps;
 import edu.rice.cs.util.UnexpectedException;
@@ -56,17 +57,13 @@ import edu.rice.cs.util.text.SwingDocument;
 import java.awt.EventQueue;
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.SortedMap;
 import java.util.StringTokenizer;
-import java.util.TreeMap;
 import javax.swing.ProgressMonitor;
 import javax.swing.text.AbstractDocument;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import javax.swing.text.Position;
 
 import static edu.rice.cs.drjava.model.definitions.reducedmodel.ReducedModelStates.*;
@@ -110,6 +107,8 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
   
   /*-------- FIELDS ----------*/
   
+  private static final Log _log = new Log("AbstractDJDocument.txt", false);
+  
 //  /** Whether a block indent operation is in progress on this document. */
 //  private volatile boolean _indentInProgress = false;
   
@@ -117,21 +116,25 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     * track of state.  This field together with _currentLocation function as a virtual object for purposes of 
     * synchronization.  All operations that access or modify this virtual object should be synchronized on _reduced.
     */
-  public final ReducedModelControl _reduced = new ReducedModelControl();  // public only for locking purposes
+  public final ReducedModelControl _reduced =   // public only for locking purposes
+    new ReducedModelControl(DrJava.getConfig().getSetting(INDEXED_REDUCED_MODEL).booleanValue());
   
   /** The absolute character offset in the document. Treated as part of the _reduced (model) for locking 
     * purposes. */
   protected volatile int _currentLocation = 0;
   
-  /* The fields _queryCache, _offsetToQueries, and _cacheModified function as an extension of the reduced model. 
-   * When enabled in blockIndent, this data structure caches calls to the reduced model to speed up indent performance.
-   * Must be cleared every time the document is changed.  Use by calling _checkCache, _storeInCache, and _clearCache.
-   * When _queryCache = null, the cache is disabled.
+  /* The field _queryCache functions as an extension of the reduced model.  When enabled in blockIndent, this data
+   * structure caches calls to the reduced model to speed up indent performance.  Must be cleared every time the
+   * document is changed.  Use by calling _checkCache, _storeInCache, and _clearCache.  When _queryCache = null, the 
+   * cache is disabled.
    */
-  private volatile HashMap<Query, Object> _queryCache;
+  private volatile QueryCache _queryCache;
+  
+  /** The query cache used by the most recent block indent, retained (emptied) for its hit/miss/eviction counters. */
+  private volatile QueryCache _lastQueryCache;
   
-  /** Records the set of queries (as a list) for each offset. */
-  private volatile SortedMap<Integer, List<Query>> _offsetToQueries;
+  /** The highlight spans of the lines painted so far; see getHighlightSpans.  Only accessed in the event thread. */
+  private final HighlightCache _highlightCache = new HighlightCache();
   
   /** The instance of the indent decision tree used by Definitions documents. */
   private volatile Indenter _indenter;
@@ -158,7 +161,6 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
   protected AbstractDJDocument(Indenter indenter) { 
     _indenter = indenter;
     _queryCache = null;
-    _offsetToQueries = null;
     _initNewIndenter();
 //     System.err.println("AbstractDJDocument constructor with indent level " + indenter.getIndentLevel() 
 //    + " invoked on " + this);
@@ -231,6 +233,7 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
   public void setKeywords(Set<String> keywords) {
     _keywords.clear();
     _keywords.addAll(keywords);
+    _highlightCache.clear(0);
   }
   
   /** Create a set of Java/GJ primitive types for special coloring.
@@ -273,6 +276,44 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     return v;
   }
   
+  /** Returns the highlight status info for the text between start and end as packed (location, length, state) triples
+    * (see {@link HighlightCache}), which may extend beyond [start, end) on either side.  If the text lies within a 
+    * single line, the spans are those of the whole line, which are cached until the line (or a preceding one) is 
+    * edited so that repaints reuse them; the caller must not modify the returned array.  ONLY runs in the event thread.
+    * @param start the start of the text
+    * @param end the end of the text
+    * @return the packed highlight spans
+    */
+  public int[] getHighlightSpans(int start, int end) {
+    Element root = getDefaultRootElement();
+    int line = root.getElementIndex(start);
+    Element lineElement = root.getElement(line);
+    int lineEnd = Math.min(lineElement.getEndOffset(), getLength());
+    if (end > lineEnd) return _packSpans(getHighlightStatus(start, end));
+    
+    int[] spans = _highlightCache.get(line);
+    if (spans == null) {
+      spans = _packSpans(getHighlightStatus(lineElement.getStartOffset(), lineEnd));
+      _highlightCache.put(line, spans);
+    }
+    return spans;
+  }
+  
+  /** @return the given highlight status info as packed (location, length, state) triples */
+  private static int[] _packSpans(ArrayList<HighlightStatus> stats) {
+    int[] spans = new int[stats.size() * HighlightCache.SPAN_SIZE];
+    int i = 0;
+    for (HighlightStatus stat : stats) {
+      spans[i++] = stat.getLocation();
+      spans[i++] = stat.getLength();
+      spans[i++] = stat.getState();
+    }
+    return spans;
+  }
+  
+  /** @return the cache of highlight spans, whose hit and miss counters describe how well it works */
+  public HighlightCache getHighlightCache() { return _highlightCache; }
+  
   /** Distinguishes keywords from normal text in the given HighlightStatus element. Specifically, it looks to see
     * if the given text contains a keyword. If it does, it splits the HighlightStatus block into separate blocks
     * so that each keyword has its own block. This process identifies all keywords in the given block.
@@ -944,8 +985,7 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
    */
   protected void _storeInCache(final Query query, final Object answer, final int offset) {
     if (_queryCache == null) return;
-    _queryCache.put(query, answer);
-    _addToOffsetsToQueries(query, offset);
+    _queryCache.put(query, answer, offset);
   }
   
   /** Clears the memozing cache of queries with offset {@literal >=} than 
@@ -954,33 +994,13 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
    */
   protected void _clearCache(int offset) {
     if (_queryCache == null) return;
-    
-    if (offset <= 0) {
-      _queryCache.clear();
-      _offsetToQueries.clear();
-      return;
-    }
-    // The Integer[] copy of the key set is required to avoid ConcurrentModifiationExceptions.  Ugh!
-    Integer[] deadOffsets = _offsetToQueries.tailMap(offset).keySet().toArray(new Integer[0]);
-    for (int i: deadOffsets) {
-      for (Query query: _offsetToQueries.get(i)) _queryCache.remove(query);  // remove query entry from cache
-      _offsetToQueries.remove(i);   // remove query bucket for i from offsetToQueries table
-    }
+    _queryCache.clear(offset);  // O(1) amortized; stale entries are discarded lazily
   }
   
-  /** Add {@literal <query,offset>} pair to _offsetToQueries map. 
-   * Assumes lock on _queryCache is already held.
-   * @param query the query
-   * @param offset the offset
-   */
-  private void _addToOffsetsToQueries(final Query query, final int offset) {
-    List<Query> selectedQueries = _offsetToQueries.get(offset);
-    if (selectedQueries == null) {
-      selectedQueries = new LinkedList<Query>();
-      _offsetToQueries.put(offset, selectedQueries);
-    }
-    selectedQueries.add(query);
-  }
+  /** @return the (emptied) query cache used by the most recent block indent, whose hit, miss, and eviction counters
+    *         describe how well the cache worked; null if no block indent has been performed.
+    */
+  public QueryCache getLastQueryCache() { return _lastQueryCache; }
   
   /** Default indentation - uses OTHER flag and no progress indicator.  Assume write lock is already held.
     * @param selStart the offset of the initial character of the region to indent
@@ -1050,8 +1070,7 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     throws OperationCanceledException, BadLocationException {
     
     // Set up the query cache;
-    _queryCache = new HashMap<Query, Object>(INIT_CACHE_SIZE);
-    _offsetToQueries = new TreeMap<Integer, List<Query>>();
+    _queryCache = new QueryCache(INIT_CACHE_SIZE);
     
     // Keep marker at the end. This Position will be the correct endpoint no matter how we change 
     // the doc doing the indentLine calls.
@@ -1081,9 +1100,11 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
 //      _indentInProgress = false;
     }
     
-    // disable the query cache
+    // disable the query cache, retaining its statistics
+    _queryCache.release();
+    _log.log("Indented [" + start + ", " + end + "] using " + _queryCache);
+    _lastQueryCache = _queryCache;
     _queryCache = null;
-    _offsetToQueries = null;
   }
   
   /** Indents a line using the Indenter.  Public ONLY for testing purposes. 
@@ -1912,6 +1933,14 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     _numLinesChangedAfter = Math.min(_numLinesChangedAfter, offset);
   }
   
+  /** Invalidates the cached highlight spans of the line containing the specified offset and all following lines.  Called 
+   * by every command that changes the reduced model, including those that undo and redo edits.
+   * @param offset the offset of the edit
+   */
+  private void _clearHighlightCache(int offset) {
+    _highlightCache.clear(getDefaultRootElement().getElementIndex(offset));
+  }
+  
   /** @return the value of _numLinesChangedAfter field and reset it -1. */
   public int getAndResetNumLinesChangedAfter() {
     int result = _numLinesChangedAfter;
@@ -1931,13 +1960,15 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     /** Inserts chars in reduced model and moves location to end of insert; cache has already been cleared. */
     public void run() {
       
+      _clearHighlightCache(_offset);
       _reduced.move(_offset - _currentLocation);  
       int len = _text.length();
       // Record any change to line numbering
       int newLineOffset = _text.indexOf(newline);
       if (newLineOffset >= 0) _numLinesChanged(_offset + newLineOffset);
-      // loop over string, inserting characters into reduced model and recording any change to line numbering
-      for (int i = 0; i < len; i++) { _addCharToReducedModel(_text.charAt(i)); }
+      // insert the string into the reduced model, which builds its tokens in one pass if it is empty (as when the
+      // document is read or reconstructed) and otherwise inserts the characters one at a time
+      _reduced.insertText(_text);
       
       _currentLocation = _offset + len;  // update _currentLocation to match effects on the reduced model
       _styleChanged();  // update the color highlighting of the remainder of the document
@@ -1971,6 +2002,7 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     /** Inserts chars in reduced model and moves location to end of insert; cache has already been cleared. */
     public void run() {
       
+      _clearHighlightCache(_offset);
       _reduced.move(_offset - _currentLocation);  
       if (_ch == newline) _numLinesChanged(_offset);  // record change to line numbering
       _addCharToReducedModel(_ch);
@@ -1992,6 +2024,7 @@ public abstract class AbstractDJDocument extends SwingDocument implements DJDocu
     
     /** Removes chars from reduced model; cache has already been selectively cleared. */
     public void run() {
+      _clearHighlightCache(_offset);
       setCurrentLocation(_offset);
       if (_removedText.indexOf(newline) >= 0) _numLinesChanged(_offset);  // record change to line numbering
       _reduced.delete(_length);    
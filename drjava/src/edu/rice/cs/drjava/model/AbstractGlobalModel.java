@@ -48,11 +48,10 @@ import java.awt.print.PrinterJob;
 import java.awt.Component;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.StringReader;
+import java.nio.charset.Charset;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
@@ -69,6 +68,7 @@ import java.util.List;
 import java.util.Vector;
 import java.util.WeakHashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import javax.swing.*;
 import javax.swing.event.DocumentListener;
@@ -88,6 +88,7 @@ import edu.rice.cs.drjava.config.OptionParser;
 import edu.rice.cs.drjava.config.OptionConstants;
 import edu.rice.cs.drjava.config.OptionEvent;
 import edu.rice.cs.drjava.config.OptionListener;
+import edu.rice.cs.drjava.model.cache.CompressedText;
 import edu.rice.cs.drjava.model.cache.DCacheAdapter;
 import edu.rice.cs.drjava.model.cache.DDReconstructor;
 import edu.rice.cs.drjava.model.cache.DocumentCache ;
@@ -169,6 +170,15 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   /** A document cache that manages how many unmodified documents are open at once. */
   protected final DocumentCache _cache;  
   
+  /** Watches the folders of open documents, their class files and the project root; created on first use. */
+  private volatile FileChangeTracker _fileTracker = null;
+  
+  /** The files found by the last scan of the project root, and the root, extension and tree stamp of that scan. */
+  private volatile File[] _projectFiles = null;
+  private volatile File _projectFilesRoot = null;
+  private volatile String _projectFilesExt = null;
+  private volatile long _projectFilesStamp = -1;
+  
   static final String DOCUMENT_OUT_OF_SYNC_MSG =
     "Current document is out of sync with the Interactions Pane and should be recompiled!\n";
   
@@ -224,6 +234,12 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   protected volatile IDocumentNavigator<OpenDefinitionsDocument> _documentNavigator =
     new AWTContainerNavigatorFactory<OpenDefinitionsDocument>().makeListNavigator();
   
+  /** Times in nanoseconds spent in the phases of the most recent opening of several files; see _openFiles. */
+  private volatile long _lastOpenScanWaitNanos = 0;
+  private volatile long _lastOpenRegisterNanos = 0;
+  private volatile long _lastOpenNavigatorNanos = 0;
+  private volatile long _lastOpenNotifyNanos = 0;
+  
   /** Notifier list for the global model. */
   public GlobalEventNotifier getNotifier() { return _notifier; }
   
@@ -269,6 +285,18 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   
   /** @return manager for browser history regions. */
   public BrowserHistoryManager getBrowserHistoryManager() { return _browserHistoryManager; }
+  
+  /** @return the tracker for changes to the files of open documents, creating it if necessary */
+  public FileChangeTracker getFileChangeTracker() {
+    FileChangeTracker tracker = _fileTracker;
+    if (tracker == null) {
+      synchronized(this) {
+        if (_fileTracker == null) _fileTracker = new FileChangeTracker();
+        tracker = _fileTracker;
+      }
+    }
+    return tracker;
+  }
 
 //  /** Completion monitor for loading the files of a project (as OpenDefinitionsDocuments). */
 //  public final CompletionMonitor projectLoading = new CompletionMonitor();
@@ -368,6 +396,24 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     };
     DrJava.getConfig().addOptionListener(BROWSER_HISTORY_MAX_SIZE, browserHistoryMaxSizeListener);
     getBrowserHistoryManager().setMaximumSize(DrJava.getConfig().getSetting(BROWSER_HISTORY_MAX_SIZE).intValue());
+    
+    // setup option listener for the document cache budget
+    OptionListener<Integer> documentCacheBudgetListener = new OptionListener<Integer>() {
+      public void optionChanged(OptionEvent<Integer> oce) { _cache.setByteBudget(1024L * oce.value); }
+    };
+    DrJava.getConfig().addOptionListener(DOCUMENT_CACHE_BUDGET, documentCacheBudgetListener);
+    _cache.setByteBudget(1024L * DrJava.getConfig().getSetting(DOCUMENT_CACHE_BUDGET).intValue());
+    
+    // setup option listener for the console scrollback limit
+    OptionListener<Integer> scrollbackLimitListener = new OptionListener<Integer>() {
+      public void optionChanged(final OptionEvent<Integer> oce) {
+        Utilities.invokeLater(new Runnable() {
+          public void run() { _consoleDoc.setScrollbackLimit(1000 * oce.value); }
+        });
+      }
+    };
+    DrJava.getConfig().addOptionListener(CONSOLE_SCROLLBACK_LIMIT, scrollbackLimitListener);
+    _consoleDoc.setScrollbackLimit(1000 * DrJava.getConfig().getSetting(CONSOLE_SCROLLBACK_LIMIT).intValue());
   }
   
   // ----- STATE -----
@@ -1384,7 +1430,10 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   
   //    static boolean SHOW_GETDOC = false;
   
-  /** Opens all the files in the list, and notifies about the last file opened. 
+  /** Opens all the files in the list, and notifies about the last file opened.  The files are canonicalized, stat'ed
+   * and (unless their packages are recorded in the project file) read and pre-scanned on worker threads (see 
+   * PrescannedFile) while the documents for the files already scanned are created in this thread; then the documents
+   * are added to the navigator and announced to the listeners as one batch.
    * @param files the list of files to open
    * @return the opened documents
    * @exception IOException if an IO operation fails
@@ -1394,34 +1443,68 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   private OpenDefinitionsDocument[] _openFiles(File[] files)
     throws IOException, OperationCanceledException, AlreadyOpenException {    
     
+    for (File f: files) {
+      if (f == null) throw new IOException("File name returned from FileSelector is null");
+    }
+    
     ArrayList<OpenDefinitionsDocument> alreadyOpenDocuments = new ArrayList<OpenDefinitionsDocument>();
     ArrayList<OpenDefinitionsDocument> retDocs = new ArrayList<OpenDefinitionsDocument>();
     
     //        SHOW_GETDOC = true;
     
+    long start = System.nanoTime();
+    long scanWaitNanos = 0;
+    List<Future<PrescannedFile>> scans = PrescannedFile.scanAll(files, _cache.getByteBudget() > 0);
+    
     LinkedList<File> filesNotFound = new LinkedList<File>();
-    LinkedList<OpenDefinitionsDocument> filesOpened = new LinkedList<OpenDefinitionsDocument>();
-    for (final File f: files) {
-      if (f == null) throw new IOException("File name returned from FileSelector is null");
+    ArrayList<OpenDefinitionsDocument> filesOpened = new ArrayList<OpenDefinitionsDocument>();
+    HashMap<File, OpenDefinitionsDocument> opened = new HashMap<File, OpenDefinitionsDocument>();  // by canonical file
+    for (int i = 0; i < files.length; i++) {
+      final File f = files[i];
+      long waitStart = System.nanoTime();
+      PrescannedFile scan = PrescannedFile.getResult(scans.get(i));
+      scanWaitNanos += System.nanoTime() - waitStart;
+      
+      OpenDefinitionsDocument d = opened.get(scan.file);
+      if (d != null) {  // the same file was requested twice
+        retDocs.add(d);
+        continue;
+      }
       try {
-        OpenDefinitionsDocument d = _rawOpenFile(IOUtil.attemptCanonicalFile(f));
+        d = _rawOpenFile(scan);
         //always return last opened Doc
         retDocs.add(d);
         filesOpened.add(d);
+        opened.put(scan.file, d);
         if(_state.isExcludedFile(f))
           _state.removeExcludedFile(f);
       }
       catch (AlreadyOpenException aoe) {
-        OpenDefinitionsDocument d = aoe.getOpenDocument();
+        d = aoe.getOpenDocument();
         retDocs.add(d);
         alreadyOpenDocuments.add(d);
       }
       catch(FileNotFoundException e) { filesNotFound.add(f); }
     }
+    long registered = System.nanoTime();
     
-    for (final OpenDefinitionsDocument d: filesOpened) {
-      _completeOpenFile(d); // contains view-related calls
+    if (! filesOpened.isEmpty()) {
+      addDocsToNavigator(filesOpened);  // contains view-related calls
+      for (final OpenDefinitionsDocument d: filesOpened) _addToClassPathAndProject(d);
     }
+    long completed = System.nanoTime();
+    if (! filesOpened.isEmpty()) _notifier.filesOpened(filesOpened);
+    long notified = System.nanoTime();
+    
+    _lastOpenScanWaitNanos = scanWaitNanos;
+    _lastOpenRegisterNanos = registered - start - scanWaitNanos;
+    _lastOpenNavigatorNanos = completed - registered;
+    _lastOpenNotifyNanos = notified - completed;
+    _log.log("Opened " + filesOpened.size() + " files in " + (notified - start) / 1000000 + "ms: waiting for scans " + 
+             _lastOpenScanWaitNanos / 1000000 + "ms, registering " + _lastOpenRegisterNanos / 1000000 + 
+             "ms, navigator and class path " + _lastOpenNavigatorNanos / 1000000 + "ms, listeners " + 
+             _lastOpenNotifyNanos / 1000000 + "ms");
+    
     //        SHOW_GETDOC = false;
     if (filesNotFound.size() > 0)
       _notifier.filesNotFound( filesNotFound.toArray( new File[filesNotFound.size()] ) );
@@ -1437,6 +1520,22 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   }
   
   
+  /** @return the time in nanoseconds that the most recent opening of several files spent waiting for files to be 
+    *         read and pre-scanned by the worker threads, i.e., the part of the scanning not overlapped with registering
+    */
+  public long getLastOpenScanWaitNanos() { return _lastOpenScanWaitNanos; }
+  
+  /** @return the time in nanoseconds that the most recent opening of several files spent creating documents */
+  public long getLastOpenRegisterNanos() { return _lastOpenRegisterNanos; }
+  
+  /** @return the time in nanoseconds that the most recent opening of several files spent adding the documents to the
+    *         navigator and the class path
+    */
+  public long getLastOpenNavigatorNanos() { return _lastOpenNavigatorNanos; }
+  
+  /** @return the time in nanoseconds that the most recent opening of several files spent notifying listeners */
+  public long getLastOpenNotifyNanos() { return _lastOpenNotifyNanos; }
+  
   //----------------------- End ILoadDocuments Methods -----------------------//
   
   /** Opens all files in the specified folder dir and places them in the appropriate places in the document navigator.
@@ -1508,12 +1607,24 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     File projRoot = _state.getProjectRoot();
     if(projRoot == null)
       return null;
-    File[] allFiles;
-    try {
-      allFiles = getFilesInFolder(projRoot, true, getOpenAllFilesInFolderExtension());
-    } catch(IOException e) { return null; }
-    catch(OperationCanceledException e) { return null; }
-    catch(AlreadyOpenException e) { return null; }
+    String ext = getOpenAllFilesInFolderExtension();
+    File[] allFiles = _projectFiles;
+    
+    // The last scan is reused if no file or folder has been created or deleted under the project root since
+    FileChangeTracker tracker = getFileChangeTracker();
+    long stamp = tracker.watchTree(projRoot) && tracker.sync() ? tracker.treeStamp(projRoot) : -1;
+    if (allFiles == null || stamp < 0 || stamp != _projectFilesStamp || ! projRoot.equals(_projectFilesRoot) ||
+        ! ext.equals(_projectFilesExt)) {
+      try {
+        allFiles = getFilesInFolder(projRoot, true, ext);
+      } catch(IOException e) { return null; }
+      catch(OperationCanceledException e) { return null; }
+      catch(AlreadyOpenException e) { return null; }
+      _projectFiles = allFiles;
+      _projectFilesRoot = projRoot;
+      _projectFilesExt = ext;
+      _projectFilesStamp = stamp;
+    }
     
     for(File f : allFiles) {
       if(!isAlreadyOpen(f) && !_state.isExcludedFile(f)) {
@@ -2014,6 +2125,8 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     removePreviousListeners();
     
     if (! suppressReset) resetInteractions(getWorkingDirectory());
+    if (_fileTracker != null) _fileTracker.clear();
+    _projectFiles = null;
     _notifier.projectClosed();
     setActiveDocument(getDocumentNavigator().getDocuments().get(0));
   }
@@ -2232,6 +2345,7 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
       closeAllFiles();
       _documentsRepos.clear();
     }
+    if (_fileTracker != null) _fileTracker.dispose();
     Utilities.invokeLater(new Runnable() {
       public void run() { _documentNavigator.clear(); }  // this operation must run in event thread
     });
@@ -2388,11 +2502,7 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   public boolean hasOutOfSyncDocuments() { return getOutOfSyncDocuments().size() > 0; }
   
   public boolean hasOutOfSyncDocuments(List<OpenDefinitionsDocument> lod) {
-    List<OpenDefinitionsDocument> oos = getOutOfSyncDocuments();
-    for(OpenDefinitionsDocument doc: lod) {
-      if (oos.contains(doc)) return true;
-    }
-    return false;
+    return getOutOfSyncDocuments(lod).size() > 0;
   }
   
   /** @return true if all open documents are in sync with their primary class files. */
@@ -2400,7 +2510,10 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   
   public List<OpenDefinitionsDocument> getOutOfSyncDocuments(List<OpenDefinitionsDocument> lod) {
     List<OpenDefinitionsDocument> outOfSync = new ArrayList<OpenDefinitionsDocument>();
+    // documents whose files have not changed since they were last found in sync need not be examined again
+    boolean watched = getFileChangeTracker().sync();
     for (OpenDefinitionsDocument doc: lod) {
+      if (watched && doc instanceof ConcreteOpenDefDoc && ((ConcreteOpenDefDoc) doc).isKnownInSync()) continue;
       if (doc.isSourceFile() &&
           (! isProjectActive() || doc.inProjectPath() || doc.isAuxiliaryFile()) &&
           (! doc.checkIfClassFileInSync())) {
@@ -2520,6 +2633,12 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
         getInteractionsModel().setRequireVariableType(oce.value);
       }
     });
+    
+    DrJava.getConfig().addOptionListener(DYNAMICJAVA_COMPILE_STATEMENTS, new OptionListener<Boolean>() {
+      public void optionChanged(OptionEvent<Boolean> oce) {
+        getInteractionsModel().setCompileStatements(oce.value);
+      }
+    });
   }
   
   /** Appends a string to the given document using a particular attribute set (identified by a String key). Also waits
@@ -2737,6 +2856,9 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     
     /** Cached String image of document as last read from or written to disk; initially null */
     private volatile String _image;
+    /** Compressed form of _image kept while this document is virtualized by a byte-budgeted cache; null otherwise. 
+      * At most one of _image and _compressedImage is non-null. */
+    private volatile CompressedText _compressedImage;
     private volatile File _file;
     private volatile long _timestamp;
     
@@ -2749,6 +2871,14 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     /** Specifies if classFile is in sync with current state of the document */
     private volatile boolean _classFileInSync = false;
     
+    /** The file change stamp of the source and class files when they were last found in sync; -1 if unknown. */
+    private volatile long _inSyncStamp = -1;
+    
+    /** The cached result of containsClassOrInterfaceOrEnum, and the file change stamp of the source file when it was
+      * computed; -1 if unknown. */
+    private volatile boolean _containsClass;
+    private volatile long _containsClassStamp = -1;
+    
     /** The package name embedded in the document the last time is was loaded, reconstructed, or saved.  When loading a
       * project, this information is extracted from the project file eliminating the need to read every document file.  
       * For non-project files, it is extracted from the text of the file.  If there is an error, it is left as "".
@@ -2786,6 +2916,7 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
       _classFile = FileOps.NULL_FILE;
       _timestamp = stamp;
       _image = null;
+      _compressedImage = null;
 //      _lexiName = null;
       if (_file instanceof NullFile)
         _lexiName = ((NullFile) _file).getLexiName();  // multiple untitled files must have distinct lexiNames
@@ -2825,6 +2956,8 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
       _file = file;
       if (! AbstractGlobalModel.isUntitled(file)) _timestamp = file.lastModified();
       else _timestamp = 0L;
+      _inSyncStamp = -1;
+      _containsClassStamp = -1;
       updateSyntaxHighlighting();
     }
 
@@ -2849,7 +2982,10 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     
     public boolean getClassFileInSync() { return _classFileInSync; }
     
-    public void setCachedClassFile(File classFile) { _classFile = classFile; }
+    public void setCachedClassFile(File classFile) {
+      _classFile = classFile;
+      _inSyncStamp = -1;
+    }
     
     public File getCachedClassFile() { return _classFile; }
     
@@ -3094,6 +3230,8 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
         public String getText() {
           String image = _image;
           if (image != null) return image;
+          CompressedText compressed = _compressedImage;
+          if (compressed != null) return compressed.getText();
           
           // Document has not yet been read from disk; read it and set _image before returning text.
           // Synchronization on this was eliminated because it does not prevent the returned string from becoming 
@@ -3116,10 +3254,12 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
           String image = getText();  // retrieves _image if it has already been set
           assert image != null;  // getText() never returns null
           
-          _editorKit.read(new StringReader(image), newDefDoc, 0);
+          // insert the image in one piece rather than through the editor kit, which inserts it in 4K chunks, so that
+          // the reduced model is built in a single pass; like the editor kit, do not insert (and modify) if it is empty
+          if (image.length() > 0) newDefDoc.insertString(0, image, null);
           //  Set document property to write out document using newLine conventions of the host platform.
           newDefDoc.putProperty(DefaultEditorKit.EndOfLineStringProperty, StringOps.EOL);
-          _log.log("Reading from image for " + _file + " containing " + _image.length() + " chars");    
+          _log.log("Reading from image for " + _file + " containing " + image.length() + " chars");    
           
           _loc = Math.min(_loc, image.length()); // make sure not past end
           _loc = Math.max(_loc, 0); // make sure not less than 0
@@ -3157,6 +3297,7 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
           String text = doc.getText();
           if (text.length() > 0) {
             _image = text;  
+            _compressedImage = null;
 //            _log.log("Saving image containing " + _image.length() + " chars for " + _file);
           }
           _loc = doc.getCurrentLocation();
@@ -3168,6 +3309,21 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
           _positions = doc.getWrappedPositionOffsets();
         }
         
+        public int getLength() {
+          String image = _image;
+          if (image != null) return image.length();
+          CompressedText compressed = _compressedImage;
+          if (compressed != null) return compressed.length();
+          return getText().length();
+        }
+        
+        public void compressImage() {
+          String image = _image;
+          if (image == null) return;
+          _compressedImage = CompressedText.compress(image);
+          _image = null;
+        }
+        
         public void addDocumentListener(DocumentListener dl) {
           ArrayList<DocumentListener> tmp = new ArrayList<DocumentListener>();
           for (DocumentListener l: _list) { if (dl != l) tmp.add(l); }
@@ -3275,11 +3431,11 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
             /** Only runs in event thread so no read lock is necessary. */
             public void saveTo(OutputStream os) throws IOException {
               DefinitionsDocument dd = getDocument();
-              try {
-                _editorKit.write(os, dd, 0, dd.getLength());
+              // write with the line separator that the editor kit would use
+              Object eol = dd.getProperty(DefaultEditorKit.EndOfLineStringProperty);
+              FileOps.writeSwingText(os, dd.getText(), (eol instanceof String) ? (String) eol : StringOps.EOL,
+                                     Charset.defaultCharset());
 //                Utilities.show ("Wrote file containing:\n" + doc.getText());
-              }
-              catch (BadLocationException docFailed) { throw new UnexpectedException(docFailed); }
             }
           });
           
@@ -3402,9 +3558,25 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     public void documentModified() { 
       _cacheAdapter.documentModified();
       _classFileInSync = false;
+      _inSyncStamp = -1;
+      _containsClassStamp = -1;
     }
     
-    public void documentReset() { _cacheAdapter.documentReset(); }
+    public void documentReset() {
+      _cacheAdapter.documentReset();
+      _inSyncStamp = -1;
+      _containsClassStamp = -1;
+    }
+    
+    /** Determines, without examining any files, whether this document is known to be in sync with its class file:
+      * it was found in sync and neither its source file nor its class file has changed since.  Only meaningful after
+      * a successful {@link FileChangeTracker#sync}.
+      * @return true if the document is in sync; false if it is not or if that is not known
+      */
+    boolean isKnownInSync() {
+      long stamp = _inSyncStamp;
+      return _classFileInSync && stamp >= 0 && stamp == getFileChangeTracker().stamp(_file, _classFile);
+    }
     
     /** Determines if the file for this document has been modified since it was loaded.
       * @return true if the file has been modified
@@ -3461,6 +3633,8 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
         _log.log(sourceFile + " has timestamp " + sourceFile.lastModified());
         _log.log(classFile + " has timestamp " + classFile.lastModified());
       }
+      // the stamp is taken before the files are examined, so any later change makes it stale
+      long stamp = _watchStamp(sourceFile, classFile);
       if (sourceFile == null || sourceFile.lastModified() > classFile.lastModified()) {  // assert sourceFile != null 
         setClassFileInSync(false);
         _log.log(this + ": date stamps indicate modification");
@@ -3468,10 +3642,19 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
       }
       else {
         setClassFileInSync(true);
+        _inSyncStamp = stamp;
         return true;
       }
     }
     
+    /** Watches the folders of the given files and returns their current file change stamp. */
+    private long _watchStamp(File sourceFile, File classFile) {
+      if (sourceFile == null) return -1;
+      FileChangeTracker tracker = getFileChangeTracker();
+      if (! tracker.watch(sourceFile.getParentFile()) || ! tracker.watch(classFile.getParentFile())) return -1;
+      return tracker.stamp(sourceFile, classFile);
+    }
+    
     /** Returns the class file for this source document by searching the source roots of open documents, the system 
       * classpath, and the "extra.classpath ".  Returns NULL_FILE if the class file could not be found.
       * @return the class file for this source document
@@ -3577,14 +3760,13 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
       for (RegionManager<MovingDocumentRegion> rm: getFindResultsManagers()) rm.removeRegions(this);
       doc.clearBrowserRegions();
       
-      FileReader reader = null;
       try {
         //this line precedes .remove() so that an invalid file is not cleared before this fact is discovered.
-        File file = doc.getFile();
-        reader = new FileReader(file);
+        String text = FileOps.readFileAsSwingText(doc.getFile());
         doc.clear();
         
-        _editorKit.read(reader, doc, 0);
+        // read the file as DDReconstructor.make() does, inserting it in one piece
+        if (text.length() > 0) doc.insertString(0, text, null);
         
         resetModification();
         doc.checkIfClassFileInSync();
@@ -3592,7 +3774,6 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
         _notifier.fileReverted(doc);
       }
       catch (BadLocationException e) { throw new UnexpectedException(e); }
-      finally { if (reader != null) reader.close(); /* win32 needs readers closed explicitly! */ }
     }
     
     /** Asks the listeners if the GlobalModel can abandon the current document.  Fires the canAbandonFile(File)
@@ -4029,7 +4210,16 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     
     /** @return true if one of the words 'class', 'interface' or 'enum' is found in non-comment text. */
     public boolean containsClassOrInterfaceOrEnum() throws BadLocationException {
-      return getDocument().containsClassOrInterfaceOrEnum();
+      // reuse the last answer, without loading the document, if neither the document nor its file has changed since
+      long stamp = _containsClassStamp;
+      FileChangeTracker tracker = getFileChangeTracker();
+      if (stamp >= 0 && ! isModifiedSinceSave() && stamp == tracker.stamp(_file)) return _containsClass;
+      File f = _file;
+      stamp = (isUntitled() || isModifiedSinceSave() || ! tracker.watch(f.getParentFile())) ? -1 : tracker.stamp(f);
+      boolean result = getDocument().containsClassOrInterfaceOrEnum();
+      _containsClass = result;
+      _containsClassStamp = isModifiedSinceSave() ? -1 : stamp;
+      return result;
     }
   } /* End of ConcreteOpenDefDoc */
   
@@ -4140,14 +4330,35 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
    * @throws AlreadyOpenException if the file is already open
    */
   private OpenDefinitionsDocument _rawOpenFile(File file) throws IOException, AlreadyOpenException{
+    return _rawOpenFile(PrescannedFile.scan(file, _cache.getByteBudget() > 0));
+  }
+  
+  /** Creates an OpenDefinitionsDocument for a scanned file, whose text becomes the initial text of the document.  Does
+   * not add to the navigator or notify that the file's open.
+   * @param scan the scanned file to open
+   * @return the newly-opened document
+   * @throws IOException if an IO operation fails
+   * @throws AlreadyOpenException if the file is already open
+   */
+  private OpenDefinitionsDocument _rawOpenFile(PrescannedFile scan) throws IOException, AlreadyOpenException{
+    final File file = scan.file;
     OpenDefinitionsDocument openDoc = _getOpenDocument(file);
     if (openDoc != null) throw new AlreadyOpenException(openDoc); // handled in MainFrame.openFile(...)
+    if (! scan.exists) throw new FileNotFoundException("file " + file + " cannot be found");
     final ConcreteOpenDefDoc doc = _createOpenDefinitionsDocument(file);
+    if (scan.text != null || scan.compressedText != null) {
+      // The text was read after lastModified, so a later change on disk is still detected by modifiedOnDisk
+      doc._image = scan.text;
+      doc._compressedImage = scan.compressedText;
+      doc._timestamp = scan.lastModified;
+    }
+    String scannedPkg = scan.getPackageName();
     if (file instanceof DocFile) {
       DocFile df = (DocFile)file;
       Pair<Integer,Integer> scroll = df.getScroll();
       Pair<Integer,Integer> sel = df.getSelection();
       String pkg = df.getPackage();
+      if (pkg == null) pkg = (scannedPkg != null) ? scannedPkg : doc.getPackageNameFromDocument();
       doc.setPackage(pkg);  // Trust information in the project file; if it is wrong, _packageName invariant is broken
       doc.setInitialVScroll(scroll.first());
       doc.setInitialHScroll( scroll.second());
@@ -4156,7 +4367,8 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     }
     else {
 //      Utilities.show("Opened a file " + file.getName() + " that is not a DocFile");
-      doc.setPackage(doc.getPackageNameFromDocument()); // get the package name from the file; forces file to be read
+      // get the package name from the scan; if it found no class, from the document, which forces it to be built
+      doc.setPackage((scannedPkg != null) ? scannedPkg : doc.getPackageNameFromDocument());
     }
     return doc;
   }
@@ -4184,6 +4396,23 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     synchronized(_documentsRepos) { _documentsRepos.put(doc.getRawFile(), doc); }
   }
   
+  /** Adds a batch of documents for existing files to the navigator.  A helper for opening several files.
+    * @param docs the documents to add to the navigator; their raw files must be canonical
+    */
+  private void addDocsToNavigator(List<OpenDefinitionsDocument> docs) {
+    List<String> paths = new ArrayList<String>(docs.size());
+    for (OpenDefinitionsDocument doc: docs) {
+      String path;
+      try { path = fixPathForNavigator(doc.getRawFile().getPath()); }
+      catch(IOException e) { path = ""; }
+      paths.add(path);
+    }
+    _documentNavigator.addDocuments(docs, paths);
+    synchronized(_documentsRepos) { 
+      for (OpenDefinitionsDocument doc: docs) _documentsRepos.put(doc.getRawFile(), doc); 
+    }
+  }
+  
   /** Add a document to the classpath for the slave JVM. Does nothing here 
    * because there is no slave JVM.  Overridden in DefaultGlobalModel. 
    * @param doc the doc to be added
@@ -4205,6 +4434,14 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
   
   private void _completeOpenFile(OpenDefinitionsDocument d) {
     addDocToNavigator(d);
+    _addToClassPathAndProject(d);
+    _notifier.fileOpened(d);
+  }
+  
+  /** Adds a newly opened document to the class path, and marks the project as changed if the document belongs in it.
+    * @param d the document
+    */
+  private void _addToClassPathAndProject(OpenDefinitionsDocument d) {
     addDocToClassPath(d);
     
     try {
@@ -4214,8 +4451,6 @@ public class AbstractGlobalModel implements SingleDisplayModel, OptionConstants,
     catch(FileMovedException fme) {
       /** project is not modified in this case */
     }
-    
-    _notifier.fileOpened(d);
   }
   
 //  private static class BackUpFileOptionListener implements OptionListener<Boolean> {
@@ -142,21 +142,16 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
   public R getRegionAt(OpenDefinitionsDocument odd, int offset) { 
     assert Utilities.TEST_MODE || EventQueue.isDispatchThread();
     
-    /* Get the tailSet consisting of the ordered set of regions [start, end) such that end > offset. */
-    @SuppressWarnings("unchecked")
-    SortedSet<R> tail = getTailSet((R) newDocumentRegion(odd, 0, offset + 1));
+    RegionSet<R> oddRegions = _regions.get(odd);
+    if (oddRegions == null) return null;
     
-    /*  If tail contains a match, it must be the first region, since all 
-     * regions in a document are disjoint and no degenerate region in tail 
-     * can contain offset. (Every degenerate region is disjoint from every 
-     * other region because it is empty.) tail is sorted by [endOffset, 
-     * startOffset]; tail may be empty. 
-     */
-    if (tail.size() == 0) return null;
-    R r = tail.first();
-    
-    if (r.getStartOffset() <= offset) return r;
-    else return null;
+    /* Of the regions [start, end) such that start <= offset < end, return the first in the total ordering on regions.
+     * Since regions are disjoint, there is at most one. */
+    R result = null;
+    for (R r: oddRegions.getOverlapping(offset, offset + 1)) {
+      if (result == null || r.compareTo(result) < 0) result = r;
+    }
+    return result;
   }
   
   /** Finds the interval of regions in odd such that the line label (excerpt) for the region contains offset. */
@@ -180,7 +175,7 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
      * r.getLineStart() > offset.  tail may be empty. 
      */
     // TODO: this comment is not true?
-    if (tail.size() == 0) return null;
+    if (tail.isEmpty()) return null;  // size() is linear in the size of a subset view
     
     // Find the first and last regions whose bounds (using line boundaries) contain offset
     Iterator<R> it = tail.iterator();
@@ -282,11 +277,9 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
    * empty regions with form [offset, offset) vacuously satisfy this property.  
    * Only executes in the event thread.
    * 
-   * Note: this method could be implemented more cleanly using a 
-   * revserseIterator on the headSet containing all regions preceding or 
-   * equal to the selection. but this functionality was not added to TreeSet 
-   * until Java 6.0.
-   * 
+   * The regions are returned in order of their start offsets, which for
+   * disjoint regions is the total ordering on regions.
+   *
    * @param odd the document
    * @param startOffset  the left end of the specified interval
    * @param endOffset  the right end of the specified interval
@@ -296,21 +289,14 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
                                              int startOffset, int endOffset) {
     
     /* */ assert Utilities.TEST_MODE || EventQueue.isDispatchThread();
-    LinkedList<R> result = new LinkedList<R>();
-    if (startOffset == endOffset) return result;
-    
-    /* Find all regions with an endPoint greater than startOffset. */
-    
-    @SuppressWarnings("unchecked")
-    SortedSet<R> tail = getTailSet((R) newDocumentRegion(odd, 0, startOffset + 1));
+    if (startOffset == endOffset) return new LinkedList<R>();
     
-    // tail is sorted by <startOffset, endOffset>; tail may be empty
+    RegionSet<R> oddRegions = _regions.get(odd);
+    if (oddRegions == null) return new LinkedList<R>();
     
-    for (R r: tail) {
-      if (r.getStartOffset() >= endOffset) break;
-      else result.add(r);
-    }
-    return result;
+    /* The regions [start, end) such that start < endOffset and end > startOffset, found by the interval tree of
+     * oddRegions in O(log n + k) time. */
+    return oddRegions.getOverlapping(startOffset, endOffset);
   }
   
   /** Add the supplied StaticDocumentRegion to the manager.  Only runs in event 
@@ -319,12 +305,44 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
    */
   public void addRegion(final R region) {
     final OpenDefinitionsDocument odd = region.getDocument();
+    RegionSet<R> docRegions = _getRegionSet(odd);
+    
+    // Check for duplicate region
+    final boolean alreadyPresent = docRegions.contains(region);
+    if (! alreadyPresent) {    // region does not already exist in manager
+      docRegions.add(region);  // modifies docRegions, which is part of _regions
+    }
+    
+    assert _documents.contains(odd);
+    
+    // only notify if the region was actually added
+    if (! alreadyPresent) _notifyRegionAdded(region);
+  }
+  
+  /** Add the supplied regions to the manager.  Equivalent to invoking {@link #addRegion} on each of them, but the new
+    * regions of each document are added to its RegionSet in a single batch.
+    * @param regions the regions to be inserted into the manager
+    */
+  public void addRegions(Collection<? extends R> regions) {
+    for (List<R> group: _groupByDocument(regions)) {
+      RegionSet<R> docRegions = _getRegionSet(group.get(0).getDocument());
+      TreeSet<R> batch = new TreeSet<R>();  // excludes duplicates within the group
+      for (R region: group) {
+        if (! docRegions.contains(region)) batch.add(region);
+      }
+      docRegions.addAll(batch);
+      for (R region: batch) _notifyRegionAdded(region);
+    }
+  }
+  
+  /** Gets the RegionSet for the given document, creating it if necessary (never seen odd before) and inserting odd
+    * in the _documents set.
+    * @param odd the document
+    * @return the regions of odd
+    */
+  private RegionSet<R> _getRegionSet(OpenDefinitionsDocument odd) {
     RegionSet<R> docRegions = _regions.get(odd);
     if (docRegions == null) { 
-      /* 
-       * If necessary (never seen odd before) create Hashtable entry for 
-       * odd and insert it in the _documents set
-       */
       _documents.add(odd);
       docRegions = new RegionSet<R>(); 
 
@@ -341,22 +359,23 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
 
       _regions.put(odd, docRegions);
     }
-    
-    // Check for duplicate region
-    final boolean alreadyPresent = docRegions.contains(region);
-    if (! alreadyPresent) {    // region does not already exist in manager
-      docRegions.add(region);  // modifies docRegions, which is part of _regions
-    }
-    
-    assert _documents.contains(odd);
-    
-    // only notify if the region was actually added
-    if (! alreadyPresent) {
-      // notify.  invokeLater unnecessary if it only runs in the event thread
-      _lock.startRead();
-      try { for (RegionManagerListener<R> l: _listeners) { l.regionAdded(region); } } 
-      finally { _lock.endRead(); }
+    return docRegions;
+  }
+  
+  /** Splits the given regions into lists of the regions of each document, preserving their order. */
+  private List<List<R>> _groupByDocument(Iterable<? extends R> regions) {
+    IdentityHashMap<OpenDefinitionsDocument, List<R>> groups = new IdentityHashMap<OpenDefinitionsDocument, List<R>>();
+    List<List<R>> result = new ArrayList<List<R>>();
+    for (R region: regions) {
+      List<R> group = groups.get(region.getDocument());
+      if (group == null) {
+        group = new ArrayList<R>();
+        groups.put(region.getDocument(), group);
+        result.add(group);
+      }
+      group.add(region);
     }
+    return result;
   }
   
   /** Remove the given IDocumentRegion from the manager.  If any document's 
@@ -380,9 +399,32 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
     if (wasRemoved) _notifyRegionRemoved(region);
   }
   
-  /** Invoke {@link #removeRegion} on all of the given regions. */
+  /** Invoke {@link #removeRegion} on all of the given regions.  The regions of each document are removed from its
+    * RegionSet in a single batch.
+    */
   public void removeRegions(Iterable<? extends R> regions) {
-    for (R r: regions) removeRegion(r);
+    for (List<R> group: _groupByDocument(regions)) {
+      OpenDefinitionsDocument doc = group.get(0).getDocument();
+      RegionSet<R> docRegions = _regions.get(doc);
+      if (docRegions == null) continue;  // none of these regions is stored in this region manager
+      TreeSet<R> batch = new TreeSet<R>();  // excludes duplicates within the group
+      for (R region: group) {
+        if (docRegions.contains(region)) batch.add(region);
+      }
+      docRegions.removeAll(batch);
+      if (docRegions.isEmpty()) {
+        _documents.remove(doc);
+        _regions.remove(doc);
+      }
+      for (R region: batch) _notifyRegionRemoved(region);
+    }
+  }
+  
+  private void _notifyRegionAdded(final R region) {
+    // notify.  invokeLater unnecessary if it only runs in the event thread
+    _lock.startRead();
+    try { for (RegionManagerListener<R> l: _listeners) { l.regionAdded(region); } } 
+    finally { _lock.endRead(); }
   }
   
   private void _notifyRegionRemoved(final R region) {
@@ -403,12 +445,10 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
     if (found) {
       final RegionSet<R> regions = _regions.get(doc);
 //      System.err.println("Before removal, regions = " + regions);
-      // The following ugly loop is dictated by the "fail fast" semantics of Java iterators
-      while (! regions.isEmpty()) {
-        R r = regions.first();
-        regions.remove(r);  
-        _notifyRegionRemoved(r);
-      }
+      // Copy the regions before notifying, as dictated by the "fail fast" semantics of Java iterators
+      final ArrayList<R> removed = new ArrayList<R>(regions);
+      regions.clear();
+      for (R r: removed) _notifyRegionRemoved(r);
 //      System.err.println("After removal, regions = " + regions);
     }
   }
@@ -461,7 +501,7 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
   
   /** Tells the manager to remove all regions. */
   public void clearRegions() {
-    for (R r: getRegions()) removeRegion(r);
+    removeRegions(getRegions());
 //    final ArrayList<R> regions = getRegions();
 ////    System.err.println("ConcreteRegionManager.clearRegions() called with regions = " + regions);
 //// Notify all listeners for this manager that all regions are being removed; listener access _regions and _documents
@@ -503,7 +543,7 @@ public class ConcreteRegionManager<R extends OrderedDocumentRegion> extends
     
     /* Get the tailSet consisting of the ordered set of regions >= firstRegion. */
     SortedSet<R> tail = getTailSet(firstRegion);
-    if (tail.size() == 0) return; // tail can be empty if firstRegion is a constructed StaticDocumentRegion
+    if (tail.isEmpty()) return; // tail can be empty if firstRegion is a constructed StaticDocumentRegion
     
     List<R> toBeRemoved = new ArrayList<R>();  // nonsense to avoid concurrent modification exception
     for (R region: tail) {
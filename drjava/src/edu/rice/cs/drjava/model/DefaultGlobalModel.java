@@ -435,6 +435,7 @@ public class DefaultGlobalModel extends AbstractGlobalModel {
   public void dispose() {
     ensureJVMStarterFinished();
     _jvm.dispose();
+    _junitModel.dispose();
     _notifier.removeAllListeners();  // removes the global model listeners!
   }
 
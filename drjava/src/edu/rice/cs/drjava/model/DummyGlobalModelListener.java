@@ -72,6 +72,9 @@ public class DummyGlobalModelListener extends DummyInteractionsListener implemen
   /** Called after a file is opened and read into the current document. */
   public void fileOpened(OpenDefinitionsDocument doc) { }
   
+  /** Called after a batch of files is opened; calls fileOpened on each document. */
+  public void filesOpened(List<OpenDefinitionsDocument> docs) { for (OpenDefinitionsDocument d: docs) fileOpened(d); }
+  
   /** Called after a document is closed. */
   public void fileClosed(OpenDefinitionsDocument doc) { }
   
@@ -0,0 +1,337 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import edu.rice.cs.plt.io.IOUtil;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** Tracks changes to files in a set of watched directories using a {@link WatchService}, so that the global model
+  * can tell whether a file may have changed without examining it.  Each event is given a number from a clock that
+  * only increases; {@link #stamp} returns the number of the last event that may have touched a file, so two equal
+  * stamps taken at different times mean that the file has not changed in between.  Directories can also be watched
+  * as trees, in which case {@link #treeStamp} reports the last creation or deletion anywhere below the root.
+  *
+  * Events are delivered asynchronously.  Before relying on stamps, clients call {@link #sync}, which waits until all
+  * events for changes made before the call have been processed.  Where the platform does not support native file
+  * watching (a polling watch service, as on Mac OS X, or no watch service at all), or if the events cannot be
+  * brought up to date, every query returns -1 and clients should examine the files themselves, as before.
+  * @version $Id$
+  */
+public class FileChangeTracker {
+
+  /** The maximum number of directories watched at once; further directories are not watched. */
+  public static final int MAX_WATCHED_DIRS = 4096;
+
+  /** The number of milliseconds {@link #sync} waits for outstanding events before giving up. */
+  public static final long SYNC_TIMEOUT = 250;
+
+  /** The watch service, or null if file watching is not available. */
+  private final WatchService _service;
+
+  /** A private directory in which {@link #sync} creates marker files; null if file watching is not available. */
+  private final File _markerDir;
+
+  /** The watched directories, by key and by file. */
+  private final HashMap<WatchKey, File> _dirOfKey = new HashMap<WatchKey, File>();
+  private final HashMap<File, WatchKey> _keyOfDir = new HashMap<File, WatchKey>();
+
+  /** The tree roots containing each directory watched as part of a tree. */
+  private final HashMap<File, File> _rootOfDir = new HashMap<File, File>();
+
+  /** The roots of completely watched trees, mapped to the time of the last creation or deletion in the tree. */
+  private final HashMap<File, Long> _trees = new HashMap<File, Long>();
+
+  /** The time of the last event for each file that has changed. */
+  private final HashMap<File, Long> _lastChange = new HashMap<File, Long>();
+
+  /** The event clock. */
+  private long _clock = 0;
+
+  /** The time of the last overflow or other loss of events; every stamp is at least this value. */
+  private long _lostEvents = 0;
+
+  /** The number of the last marker file created by {@link #sync} and of the last one seen by the event thread. */
+  private long _markersCreated = 0;
+  private long _markersSeen = 0;
+
+  /** Whether the tracker is usable; false once disposed. */
+  private volatile boolean _active;
+
+  /** Create a tracker, starting a daemon thread to receive events if file watching is available. */
+  public FileChangeTracker() {
+    WatchService service = null;
+    File markerDir = null;
+    try {
+      service = FileSystems.getDefault().newWatchService();
+      // a polling service only notices changes every few seconds, so it is no better than examining the files
+      if (service.getClass().getName().endsWith("PollingWatchService")) {
+        service.close();
+        service = null;
+      }
+      else {
+        markerDir = IOUtil.createAndMarkTempDirectory("drjava-watch", "");
+        _keyOfDir.put(markerDir, markerDir.toPath().register(service, ENTRY_CREATE));
+      }
+    }
+    catch (IOException e) { service = _close(service); }
+    catch (UnsupportedOperationException e) { service = _close(service); }
+    _service = service;
+    _markerDir = markerDir;
+    _active = (service != null);
+    if (_active) {
+      Thread t = new Thread(new Runnable() { public void run() { _processEvents(); } }, "File Change Tracker");
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+  private static WatchService _close(WatchService service) {
+    if (service != null) {
+      try { service.close(); }
+      catch (IOException e) { /* ignore */ }
+    }
+    return null;
+  }
+
+  /** @return true if files can be watched on this platform */
+  public boolean isActive() { return _active; }
+
+  /** Watch the given directory for changes to the files it contains, if it is not already watched.
+    * @param dir the directory, in canonical form
+    * @return true if the directory is watched
+    */
+  public synchronized boolean watch(File dir) {
+    if (! _active || dir == null) return false;
+    if (_keyOfDir.containsKey(dir)) return true;
+    return _register(dir);
+  }
+
+  /** Watch the given directory and all of its subdirectories, including those created later, for files being created
+    * or deleted.  If the tree is too large to be watched entirely, it is not considered watched.
+    * @param root the root directory, in canonical form
+    * @return true if the whole tree is watched
+    */
+  public synchronized boolean watchTree(File root) {
+    if (! _active || root == null) return false;
+    if (_trees.containsKey(root)) return true;
+    _trees.put(root, ++_clock);
+    if (! _registerTree(root, root)) {
+      _trees.remove(root);
+      return false;
+    }
+    return true;
+  }
+
+  /** Register dir and its subdirectories as part of the tree with the given root.  Must be called while holding the
+    * lock.
+    * @return true if all directories could be registered
+    */
+  private boolean _registerTree(File dir, File root) {
+    if (! _keyOfDir.containsKey(dir) && ! _register(dir)) return false;
+    _rootOfDir.put(dir, root);
+    File[] children = dir.listFiles();
+    if (children == null) return false;
+    for (File c : children) {
+      if (c.isDirectory() && ! _registerTree(c, root)) return false;
+    }
+    return true;
+  }
+
+  /** Register a directory with the watch service.  Must be called while holding the lock. */
+  private boolean _register(File dir) {
+    if (_keyOfDir.size() > MAX_WATCHED_DIRS) return false;
+    try {
+      WatchKey key = dir.toPath().register(_service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      _dirOfKey.put(key, dir);
+      _keyOfDir.put(dir, key);
+      return true;
+    }
+    catch (IOException e) { return false; }
+    catch (ClosedWatchServiceException e) { return false; }
+  }
+
+  /** Wait until all events for changes made before this call have been processed.  This is done by creating a marker
+    * file and waiting for its event; all watched directories share the same event queue.
+    * @return true if events are up to date and the stamps may be used
+    */
+  public boolean sync() {
+    long marker;
+    synchronized(this) {
+      if (! _active) return false;
+      marker = ++_markersCreated;
+    }
+    File f = new File(_markerDir, String.valueOf(marker));
+    try { f.createNewFile(); }
+    catch (IOException e) { return false; }
+    try {
+      long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+      synchronized(this) {
+        while (_active && _markersSeen < marker) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) return false;
+          wait(remaining);
+        }
+        return _active;
+      }
+    }
+    catch (InterruptedException e) { return false; }
+    finally { f.delete(); }
+  }
+
+  /** Returns a stamp for the given files that changes whenever any of them may have changed.
+    * @param files the files, in canonical form
+    * @return the time of the last event that may have touched any of the files, or -1 if one of them is not watched
+    */
+  public synchronized long stamp(File... files) {
+    if (! _active) return -1;
+    long result = _lostEvents;
+    for (File f : files) {
+      if (f == null || ! _keyOfDir.containsKey(f.getParentFile())) return -1;
+      Long t = _lastChange.get(f);
+      if (t != null) result = Math.max(result, t);
+    }
+    return result;
+  }
+
+  /** Returns a stamp for the given tree that changes whenever a file or directory may have been created or deleted in
+    * the tree.
+    * @param root the root of the tree, in canonical form
+    * @return the time of the last creation or deletion in the tree, or -1 if the tree is not watched
+    */
+  public synchronized long treeStamp(File root) {
+    if (! _active) return -1;
+    Long t = _trees.get(root);
+    return (t == null) ? -1 : Math.max(t, _lostEvents);
+  }
+
+  /** Stop watching all directories except the marker directory. */
+  public synchronized void clear() {
+    ArrayList<File> dirs = new ArrayList<File>(_keyOfDir.keySet());
+    for (File d : dirs) {
+      if (! d.equals(_markerDir)) _keyOfDir.remove(d).cancel();
+    }
+    _dirOfKey.clear();
+    _rootOfDir.clear();
+    _trees.clear();
+    _lastChange.clear();
+  }
+
+  /** Stop watching and release the watch service. */
+  public void dispose() {
+    synchronized(this) {
+      if (! _active) return;
+      _active = false;
+      notifyAll();
+    }
+    _close(_service);
+    IOUtil.deleteRecursively(_markerDir);
+  }
+
+  /** Receive and record events until the watch service is closed. */
+  private void _processEvents() {
+    try {
+      while (true) {
+        WatchKey key = _service.take();
+        synchronized(this) { _process(key); }
+      }
+    }
+    catch (InterruptedException e) { /* stop */ }
+    catch (ClosedWatchServiceException e) { /* stop */ }
+    finally {
+      synchronized(this) {
+        _active = false;
+        notifyAll();
+      }
+    }
+  }
+
+  /** Record the events of a signalled key.  Must be called while holding the lock. */
+  private void _process(WatchKey key) {
+    File dir = _dirOfKey.get(key);
+    if (dir == null) {
+      // the marker directory, or a key that has just been cancelled
+      for (WatchEvent<?> e : key.pollEvents()) {
+        if (e.kind() == OVERFLOW) _lostEvents = ++_clock;
+        else if (e.context() instanceof Path) {
+          try { _markersSeen = Math.max(_markersSeen, Long.parseLong(e.context().toString())); }
+          catch (NumberFormatException nfe) { /* not a marker */ }
+        }
+      }
+      key.reset();
+      notifyAll();
+      return;
+    }
+    File root = _rootOfDir.get(dir);
+    HashSet<File> newDirs = new HashSet<File>();
+    for (WatchEvent<?> e : key.pollEvents()) {
+      long time = ++_clock;
+      if (e.kind() == OVERFLOW) {
+        _lostEvents = time;
+        continue;
+      }
+      File f = new File(dir, e.context().toString());
+      _lastChange.put(f, time);
+      if (root != null && e.kind() != ENTRY_MODIFY && _trees.containsKey(root)) {
+        _trees.put(root, time);
+        if (e.kind() == ENTRY_CREATE && f.isDirectory()) newDirs.add(f);
+      }
+    }
+    for (File d : newDirs) {
+      if (_trees.containsKey(root) && ! _registerTree(d, root)) _trees.remove(root);
+    }
+    if (! key.reset()) {
+      // the directory is no longer accessible; its deletion has been recorded in its parent, if that is watched
+      _dirOfKey.remove(key);
+      _keyOfDir.remove(dir);
+      _rootOfDir.remove(dir);
+      if (dir.equals(root)) _trees.remove(root);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.FileOps;
+
+/** Tests the {@link FileChangeTracker}.  {@link #main} compares the cost of checking many files by examining them
+  * with the cost of checking their stamps.
+  * @version $Id$
+  */
+public final class FileChangeTrackerTest extends DrJavaTestCase {
+
+  private FileChangeTracker _tracker;
+  private File _dir;
+
+  public void setUp() throws Exception {
+    super.setUp();
+    _tracker = new FileChangeTracker();
+    _dir = IOUtil.attemptCanonicalFile(FileOps.createTempDirectory("tracker"));
+  }
+
+  public void tearDown() throws Exception {
+    _tracker.dispose();
+    IOUtil.deleteRecursively(_dir);
+    super.tearDown();
+  }
+
+  public void testStamp() throws IOException {
+    if (! _tracker.isActive()) return;  // file watching is not supported here
+    File a = new File(_dir, "A.java");
+    File b = new File(_dir, "B.class");
+    IOUtil.writeStringToFile(a, "class A {}");
+    assertEquals("not watched", -1, _tracker.stamp(a));
+    assertTrue("watch", _tracker.watch(_dir));
+    assertTrue("sync", _tracker.sync());
+    long stamp = _tracker.stamp(a, b);
+    assertTrue("watched", stamp >= 0);
+    assertTrue("sync", _tracker.sync());
+    assertEquals("unchanged", stamp, _tracker.stamp(a, b));
+
+    IOUtil.writeStringToFile(b, "");
+    assertTrue("sync", _tracker.sync());
+    long stamp2 = _tracker.stamp(a, b);
+    assertTrue("class file created", stamp2 > stamp);
+    assertEquals("source file unchanged", stamp, _tracker.stamp(a));
+
+    IOUtil.writeStringToFile(a, "class A { }");
+    assertTrue("sync", _tracker.sync());
+    assertTrue("source file modified", _tracker.stamp(a) > stamp2);
+
+    _tracker.clear();
+    assertEquals("no longer watched", -1, _tracker.stamp(a));
+  }
+
+  public void testTreeStamp() throws IOException {
+    if (! _tracker.isActive()) return;  // file watching is not supported here
+    File sub = new File(_dir, "sub");
+    assertTrue(sub.mkdir());
+    assertEquals("not watched", -1, _tracker.treeStamp(_dir));
+    assertTrue("watch", _tracker.watchTree(_dir));
+    assertTrue("sync", _tracker.sync());
+    long stamp = _tracker.treeStamp(_dir);
+    assertTrue("watched", stamp >= 0);
+
+    File a = new File(sub, "A.java");
+    IOUtil.writeStringToFile(a, "class A {}");
+    assertTrue("sync", _tracker.sync());
+    long stamp2 = _tracker.treeStamp(_dir);
+    assertTrue("file created", stamp2 > stamp);
+
+    IOUtil.writeStringToFile(a, "class A { }");
+    assertTrue("sync", _tracker.sync());
+    assertEquals("modifications are ignored", stamp2, _tracker.treeStamp(_dir));
+
+    // folders created later are watched too
+    File sub2 = new File(sub, "sub2");
+    assertTrue(sub2.mkdir());
+    assertTrue("sync", _tracker.sync());
+    long stamp3 = _tracker.treeStamp(_dir);
+    assertTrue("folder created", stamp3 > stamp2);
+    IOUtil.writeStringToFile(new File(sub2, "B.java"), "class B {}");
+    assertTrue("sync", _tracker.sync());
+    assertTrue("file created in new folder", _tracker.treeStamp(_dir) > stamp3);
+  }
+
+  /** Compare examining the timestamps of many source and class files with checking their stamps. */
+  public static void main(String[] args) throws IOException {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+    File root = IOUtil.attemptCanonicalFile(FileOps.createTempDirectory("tracker"));
+    File[] sources = new File[n];
+    File[] classes = new File[n];
+    for (int i = 0; i < n; ++i) {
+      File dir = new File(root, "p" + (i / 50));
+      dir.mkdir();
+      sources[i] = new File(dir, "C" + i + ".java");
+      classes[i] = new File(dir, "C" + i + ".class");
+      IOUtil.writeStringToFile(sources[i], "class C" + i + " {}");
+      IOUtil.writeStringToFile(classes[i], "");
+    }
+    FileChangeTracker tracker = new FileChangeTracker();
+    long[] stamps = new long[n];
+    for (int i = 0; i < n; ++i) {
+      tracker.watch(sources[i].getParentFile());
+      stamps[i] = tracker.stamp(sources[i], classes[i]);
+    }
+    for (int run = 0; run < 5; ++run) {
+      long start = System.nanoTime();
+      int inSync = 0;
+      for (int i = 0; i < n; ++i) { if (sources[i].lastModified() <= classes[i].lastModified()) ++inSync; }
+      long polled = System.nanoTime() - start;
+      start = System.nanoTime();
+      int known = 0;
+      if (tracker.sync()) {
+        for (int i = 0; i < n; ++i) { if (stamps[i] == tracker.stamp(sources[i], classes[i])) ++known; }
+      }
+      long tracked = System.nanoTime() - start;
+      System.out.println(n + " documents: examining files " + (polled / 1000) + "us (" + inSync + " in sync); " +
+                         "stamps " + (tracked / 1000) + "us (" + known + " known in sync)");
+    }
+    tracker.dispose();
+    IOUtil.deleteRecursively(root);
+  }
+}
@@ -0,0 +1,364 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.swing.text.BadLocationException;
+
+import edu.rice.cs.drjava.config.OptionConstants;
+import edu.rice.cs.plt.lambda.Runnable1;
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.swing.Utilities;
+
+/** A "find all" search of a list of documents that runs in the background.  Documents are searched in parallel by a
+  * pool of worker threads.  Each worker searches the text of a document as returned by
+  * {@link OpenDefinitionsDocument#getText}, which is read from the document's image or from disk if the document is
+  * not resident; no DefinitionsDocument (or reduced model) is created.  Matches inside comments and strings are
+  * recognized by a simple lexer ({@link #getShadowedRanges}) that agrees with
+  * {@link OpenDefinitionsDocument#isShadowed}.  The matches are delivered in the event thread, in document order, in
+  * batches; a match is dropped if the document has been edited so that its text no longer matches.  The search may be
+  * cancelled at any time.
+  * @version $Id$
+  */
+public class FindAllSearch {
+
+  private static final Log _log = new Log("FindAllSearch.txt", false);
+
+  /** The number of matches after which a batch is delivered. */
+  private static final int BATCH_SIZE = 500;
+
+  /** The time, in milliseconds, after which pending matches are delivered. */
+  private static final long BATCH_DELAY = 200;
+
+  private final List<OpenDefinitionsDocument> _docs;
+  private final String _findWord;
+  private final boolean _matchCase;
+  private final boolean _matchWholeWord;
+  private final boolean _ignoreCommentsAndStrings;
+  private final boolean _ignoreTestCases;
+  private final int _threads;
+
+  private volatile boolean _cancelled = false;
+  private volatile boolean _done = false;
+  private volatile int _filesSearched = 0;
+  private volatile int _matchCount = 0;
+  private volatile long _startTime;
+  private volatile long _endTime;
+  private volatile ExecutorService _workers = null;
+
+  /** Creates a search for findWord in the given documents.
+    * @param docs the documents to search, in the order in which their matches are delivered
+    * @param findWord the text to find
+    * @param matchCase whether the search is case sensitive
+    * @param matchWholeWord whether matches must be delimited by characters that cannot be part of an identifier
+    * @param ignoreCommentsAndStrings whether matches starting in comments and strings are ignored
+    * @param ignoreTestCases whether documents whose names end in Test (and a language level extension) are skipped
+    */
+  public FindAllSearch(List<OpenDefinitionsDocument> docs, String findWord, boolean matchCase, boolean matchWholeWord,
+                       boolean ignoreCommentsAndStrings, boolean ignoreTestCases) {
+    _docs = new ArrayList<OpenDefinitionsDocument>(docs);
+    _findWord = findWord;
+    _matchCase = matchCase;
+    _matchWholeWord = matchWholeWord;
+    _ignoreCommentsAndStrings = ignoreCommentsAndStrings;
+    _ignoreTestCases = ignoreTestCases;
+    _threads = Math.max(1, Math.min(_docs.size(), Runtime.getRuntime().availableProcessors()));
+  }
+
+  /** Starts the search.  Only runs in the event thread.
+    * @param batchAction action run in the event thread on each batch of matches; each FindResult gives the offset of
+    *                    the end of a match
+    * @param doneAction action run in the event thread when the search has finished or has been cancelled
+    */
+  public void start(final Runnable1<List<FindResult>> batchAction, final Runnable doneAction) {
+    assert Utilities.TEST_MODE || EventQueue.isDispatchThread();
+    _startTime = System.currentTimeMillis();
+    _workers = Executors.newFixedThreadPool(_threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Find All Worker");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    final List<Future<int[]>> futures = new ArrayList<Future<int[]>>(_docs.size());
+    for (final OpenDefinitionsDocument doc: _docs) {
+      futures.add(_workers.submit(new Callable<int[]>() {
+        public int[] call() { return _search(doc); }
+      }));
+    }
+    _workers.shutdown();
+
+    // collects the matches in document order, and passes them to the event thread in batches
+    Thread collector = new Thread("Find All") {
+      public void run() {
+        List<FindResult> batch = new ArrayList<FindResult>();
+        long lastDelivery = System.currentTimeMillis();
+        for (int i = 0; i < futures.size() && ! _cancelled; ++i) {
+          int[] matches = _get(futures.get(i), lastDelivery);
+          while (matches == null && ! _cancelled) {
+            // taking a while; deliver what we have
+            lastDelivery = _deliver(batch, batchAction);
+            batch = new ArrayList<FindResult>();
+            matches = _get(futures.get(i), lastDelivery);
+          }
+          if (matches == null) break;
+          OpenDefinitionsDocument doc = _docs.get(i);
+          for (int end: matches) batch.add(new FindResult(doc, end, false, false));
+          if (batch.size() >= BATCH_SIZE || System.currentTimeMillis() - lastDelivery >= BATCH_DELAY) {
+            lastDelivery = _deliver(batch, batchAction);
+            batch = new ArrayList<FindResult>();
+          }
+        }
+        _deliver(batch, batchAction);
+        _endTime = System.currentTimeMillis();
+        _log.log("Searched " + _filesSearched + " files in " + (_endTime - _startTime) + "ms; " + _matchCount +
+                 " matches");
+        Utilities.invokeLater(new Runnable() {
+          public void run() {
+            _done = true;
+            doneAction.run();
+          }
+        });
+      }
+    };
+    collector.setDaemon(true);
+    collector.start();
+  }
+
+  /** Waits for the result of a search, at most until the next batch is due.
+    * @return the result, or null if it is not yet available or the search was cancelled
+    */
+  private int[] _get(Future<int[]> future, long lastDelivery) {
+    long wait = Math.max(1, lastDelivery + BATCH_DELAY - System.currentTimeMillis());
+    try { return future.get(wait, TimeUnit.MILLISECONDS); }
+    catch (TimeoutException e) { return null; }
+    catch (CancellationException e) { return null; }
+    catch (InterruptedException e) { return null; }
+    catch (ExecutionException e) {
+      _log.log("Search of a document failed", e.getCause());
+      return new int[0];
+    }
+  }
+
+  /** Passes a batch of matches to batchAction in the event thread, unless it is empty or the search was cancelled.
+    * @return the time of delivery
+    */
+  private long _deliver(final List<FindResult> batch, final Runnable1<List<FindResult>> batchAction) {
+    if (! batch.isEmpty()) {
+      Utilities.invokeLater(new Runnable() {
+        public void run() {
+          if (_cancelled) return;
+          List<FindResult> valid = _validate(batch);
+          _matchCount += valid.size();
+          if (! valid.isEmpty()) batchAction.run(valid);
+        }
+      });
+    }
+    return System.currentTimeMillis();
+  }
+
+  /** Drops the matches in documents that have been edited so that they are no longer matches.  Only runs in the
+    * event thread.
+    */
+  private List<FindResult> _validate(List<FindResult> batch) {
+    List<FindResult> result = new ArrayList<FindResult>(batch.size());
+    int len = _findWord.length();
+    for (FindResult fr: batch) {
+      OpenDefinitionsDocument doc = fr.getDocument();
+      int start = fr.getFoundOffset() - len;
+      if (doc.isReady()) {  // a document that is not resident has not changed
+        try {
+          if (fr.getFoundOffset() > doc.getLength()) continue;
+          String text = doc.getText(start, len);
+          if (_matchCase ? ! text.equals(_findWord) : ! text.equalsIgnoreCase(_findWord)) continue;
+        }
+        catch (BadLocationException e) { continue; }
+      }
+      result.add(fr);
+    }
+    return result;
+  }
+
+  /** Cancels the search; no further batches are delivered. */
+  public void cancel() {
+    _cancelled = true;
+    ExecutorService workers = _workers;
+    if (workers != null) workers.shutdownNow();
+  }
+
+  /** @return true if the search was cancelled */
+  public boolean isCancelled() { return _cancelled; }
+
+  /** @return true if the search has finished or has been cancelled, and the done action has been run */
+  public boolean isDone() { return _done; }
+
+  /** @return the number of documents searched so far */
+  public int getFilesSearched() { return _filesSearched; }
+
+  /** @return the number of matches delivered so far */
+  public int getMatchCount() { return _matchCount; }
+
+  /** @return the number of documents searched per second, up to now or up to the end of the search */
+  public double getFilesPerSecond() {
+    long end = _done ? _endTime : System.currentTimeMillis();
+    return _filesSearched * 1000.0 / Math.max(1, end - _startTime);
+  }
+
+  /** Searches a document.  Runs in a worker thread.
+    * @return the offsets of the ends of the matches in doc
+    */
+  private int[] _search(OpenDefinitionsDocument doc) {
+    if (_cancelled) return new int[0];
+    if (_ignoreTestCases) {
+      String name = doc.getFileName();
+      for (String ext: OptionConstants.LANGUAGE_LEVEL_EXTENSIONS) {
+        if (name.endsWith("Test" + ext)) return new int[0];
+      }
+    }
+    int[] result = findMatches(doc.getText(), _findWord, _matchCase, _matchWholeWord, _ignoreCommentsAndStrings);
+    synchronized(this) { _filesSearched++; }
+    return result;
+  }
+
+  /** Finds the occurrences of a word in a text, as {@link FindReplaceMachine} does in a forward search: after each
+    * occurrence, the search resumes at its end, even if the occurrence is ignored.
+    * @param text the text to search
+    * @param findWord the text to find
+    * @param matchCase whether the search is case sensitive
+    * @param matchWholeWord whether matches must be delimited by characters that cannot be part of an identifier
+    * @param ignoreCommentsAndStrings whether matches starting in comments and strings are ignored
+    * @return the offsets of the ends of the matches
+    */
+  public static int[] findMatches(String text, String findWord, boolean matchCase, boolean matchWholeWord,
+                                  boolean ignoreCommentsAndStrings) {
+    int wordLen = findWord.length();
+    if (wordLen == 0) return new int[0];
+    String searchText = matchCase ? text : text.toLowerCase();
+    String word = matchCase ? findWord : findWord.toLowerCase();
+    int[] shadowed = ignoreCommentsAndStrings ? getShadowedRanges(text) : new int[0];
+    int range = 0;  // index of the first range in shadowed that may contain a later match
+    int[] result = new int[16];
+    int count = 0;
+    for (int i = searchText.indexOf(word); i >= 0; i = searchText.indexOf(word, i + wordLen)) {
+      if (matchWholeWord && ! (_isDelimiterAt(text, i - 1) && _isDelimiterAt(text, i + wordLen))) continue;
+      while (range < shadowed.length && shadowed[range + 1] <= i) range += 2;
+      if (range < shadowed.length && shadowed[range] <= i) continue;
+      if (count == result.length) {
+        int[] bigger = new int[2 * count];
+        System.arraycopy(result, 0, bigger, 0, count);
+        result = bigger;
+      }
+      result[count++] = i + wordLen;
+    }
+    int[] trimmed = new int[count];
+    System.arraycopy(result, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  /** @return true if offset is outside text, or the character at offset cannot be part of an identifier */
+  private static boolean _isDelimiterAt(String text, int offset) {
+    if (offset < 0 || offset >= text.length()) return true;
+    char ch = text.charAt(offset);
+    return ! Character.isLetterOrDigit(ch) && ch != '_';
+  }
+
+  /** Finds the offsets in Java text that are shadowed by comments and string or character literals, as defined by
+    * the reduced model: the offsets after the opening delimiter up to and including the last character of the closing
+    * delimiter.  Line comments and unterminated literals end with (and include) the next newline.
+    * @param text the text to scan
+    * @return the shadowed ranges, as a sorted array of pairs [start, end) of offsets
+    */
+  public static int[] getShadowedRanges(String text) {
+    int len = text.length();
+    int[] ranges = new int[16];
+    int count = 0;
+    int i = 0;
+    while (i < len) {
+      char ch = text.charAt(i);
+      int start;
+      int end;
+      if (ch == '/' && i + 1 < len && text.charAt(i + 1) == '/') {
+        start = i + 2;
+        end = text.indexOf('\n', start);
+        end = (end < 0) ? len : end + 1;
+      }
+      else if (ch == '/' && i + 1 < len && text.charAt(i + 1) == '*') {
+        start = i + 2;
+        end = text.indexOf("*/", start);
+        end = (end < 0) ? len : end + 2;
+      }
+      else if (ch == '"' || ch == '\'') {
+        start = i + 1;
+        end = start;
+        while (end < len) {
+          char c = text.charAt(end++);
+          if (c == ch || c == '\n') break;
+          if (c == '\\' && end < len && text.charAt(end) != '\n') end++;
+        }
+      }
+      else {
+        ++i;
+        continue;
+      }
+      if (end > start) {
+        if (count == ranges.length) {
+          int[] bigger = new int[2 * count];
+          System.arraycopy(ranges, 0, bigger, 0, count);
+          ranges = bigger;
+        }
+        ranges[count++] = start;
+        ranges[count++] = end;
+      }
+      i = end;
+    }
+    int[] trimmed = new int[count];
+    System.arraycopy(ranges, 0, trimmed, 0, count);
+    return trimmed;
+  }
+}
@@ -0,0 +1,281 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.text.BadLocationException;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.concurrent.CompletionMonitor;
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.plt.lambda.Runnable1;
+import edu.rice.cs.util.FileOpenSelector;
+import edu.rice.cs.util.swing.Utilities;
+
+/** Tests the {@link FindAllSearch}, comparing its results with those of the {@link FindReplaceMachine}.  {@link #main}
+  * compares the time each takes to search the files of a project.
+  * @version $Id$
+  */
+public final class FindAllSearchTest extends DrJavaTestCase {
+
+  private static final AbstractGlobalModel _model = new AbstractGlobalModel();
+  private File _tempDir;
+
+  private static final String[] TEXTS = {
+    // the edge cases of FindReplaceMachineTest
+    "/* \" */  plt \n" +
+    "\" /* \"  plt \n" +
+    "/* // */  plt \n" +
+    "\" // \"  plt \n" +
+    "\" \\\" \"  plt \n" +
+    "\'\"\' plt \n" +
+    "\'//\' plt \n" +
+    "\'/*\' plt \n" +
+    "/*This is a block comment*/ This is not a block comment\n" +
+    "//This is a line comment \n This is not a line comment\n" +
+    "\"This is a string\" This is not a string\n" +
+    "\'@\' That was a character, but this is not: @\n" +
+    "/*This is a two-lined \n commment*/ This is not a two-lined comment",
+    "class Plt { String s = \"unterminated plt\nint plt_x = 1; /**/ plt /*/ plt */ plt // plt\n" +
+    "char c = '\\''; PLT.plt(\"\\\\\" + plt); /* unterminated plt",
+    "plt" };
+
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+  }
+
+  public void tearDown() throws Exception {
+    _model.closeAllFiles();
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+
+  /** The lexer must agree with the reduced model about which offsets are in comments and strings. */
+  public void testShadowedRanges() throws BadLocationException {
+    for (String text : TEXTS) {
+      OpenDefinitionsDocument doc = _model.newFile(_tempDir);
+      doc.insertString(0, text, null);
+      int[] ranges = FindAllSearch.getShadowedRanges(text);
+      int range = 0;
+      for (int i = 0; i < text.length(); ++i) {
+        while (range < ranges.length && ranges[range + 1] <= i) range += 2;
+        boolean shadowed = range < ranges.length && ranges[range] <= i;
+        assertEquals("shadowed at " + i + " in " + text, doc.isShadowed(i), shadowed);
+      }
+    }
+  }
+
+  /** Searches with all combinations of options must find the same matches as the FindReplaceMachine. */
+  public void testSameResultsAsMachine() throws Exception {
+    for (String text : TEXTS) _model.newFile(_tempDir).insertString(0, text, null);
+    // search the documents in the order the machine visits them
+    List<OpenDefinitionsDocument> docs = new ArrayList<OpenDefinitionsDocument>();
+    OpenDefinitionsDocument doc = _model.getDocumentNavigator().getFirst();
+    while (doc != null && docs.size() < _model.getDocumentCount()) {
+      docs.add(doc);
+      doc = _model.getDocumentIterator().getNextDocument(doc);
+    }
+    for (String word : new String[] { "plt", "PLT", "is", "\" " }) {
+      for (int options = 0; options < 8; ++options) {
+        boolean matchCase = (options & 1) != 0;
+        boolean wholeWord = (options & 2) != 0;
+        boolean noComments = (options & 4) != 0;
+        String message = word + " " + matchCase + " " + wholeWord + " " + noComments;
+        assertEquals(message, _machineResults(docs.get(0), word, matchCase, wholeWord, noComments),
+                     _toString(_search(docs, word, matchCase, wholeWord, noComments)));
+      }
+    }
+  }
+
+  /** Files that are not resident are searched without being loaded. */
+  public void testFilesOnDisk() throws Exception {
+    File[] files = new File[30];
+    for (int i = 0; i < files.length; ++i) {
+      files[i] = new File(_tempDir, "C" + i + ".java");
+      IOUtil.writeStringToFile(files[i], "class C" + i + " {\n  int plt = " + i + "; // plt\n}\n");
+    }
+    OpenDefinitionsDocument[] opened = _model.openFiles(_selector(files));
+    List<OpenDefinitionsDocument> docs = new ArrayList<OpenDefinitionsDocument>();
+    int resident = 0;
+    for (OpenDefinitionsDocument doc : opened) {
+      docs.add(doc);
+      if (doc.isReady()) resident++;
+    }
+    List<FindResult> results = _search(docs, "plt", true, true, true);
+    assertEquals("one match per file", files.length, results.size());
+    int resident2 = 0;
+    for (int i = 0; i < results.size(); ++i) {
+      assertSame("document order", docs.get(i), results.get(i).getDocument());
+      assertEquals("offset", "class C# {\n  int plt".replace("#", "" + i).length(), results.get(i).getFoundOffset());
+      if (docs.get(i).isReady()) resident2++;
+    }
+    assertEquals("no documents were loaded", resident, resident2);
+  }
+
+  public void testCancel() throws Exception {
+    List<OpenDefinitionsDocument> docs = new ArrayList<OpenDefinitionsDocument>();
+    for (int i = 0; i < 50; ++i) {
+      OpenDefinitionsDocument doc = _model.newFile(_tempDir);
+      doc.insertString(0, TEXTS[0], null);
+      docs.add(doc);
+    }
+    final FindAllSearch search = new FindAllSearch(docs, "plt", false, false, false, false);
+    final List<FindResult> results = new ArrayList<FindResult>();
+    final CompletionMonitor done = new CompletionMonitor();
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        search.start(new Runnable1<List<FindResult>>() {
+          public void run(List<FindResult> batch) { results.addAll(batch); }
+        }, new Runnable() { public void run() { done.signal(); } });
+        search.cancel();
+      }
+    });
+    assertTrue("finished", done.attemptEnsureSignaled(10000));
+    assertTrue("cancelled", search.isCancelled());
+    assertTrue("done", search.isDone());
+    assertEquals("no results after cancellation", 0, results.size());
+  }
+
+  private static FileOpenSelector _selector(final File[] files) {
+    return new FileOpenSelector() { public File[] getFiles() { return files; } };
+  }
+
+  /** Runs a FindAllSearch to completion. */
+  private static List<FindResult> _search(List<OpenDefinitionsDocument> docs, String word, boolean matchCase,
+                                          boolean wholeWord, boolean noComments) throws InterruptedException {
+    final FindAllSearch search = new FindAllSearch(docs, word, matchCase, wholeWord, noComments, false);
+    final List<FindResult> results = new ArrayList<FindResult>();
+    final CompletionMonitor done = new CompletionMonitor();
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        search.start(new Runnable1<List<FindResult>>() {
+          public void run(List<FindResult> batch) { results.addAll(batch); }
+        }, new Runnable() { public void run() { done.signal(); } });
+      }
+    });
+    assertTrue("search finished", done.attemptEnsureSignaled(30000));
+    assertEquals("match count", results.size(), search.getMatchCount());
+    return results;
+  }
+
+  /** Runs processAll in all documents on a FindReplaceMachine, starting at startDoc. */
+  private static String _machineResults(final OpenDefinitionsDocument startDoc, final String word,
+                                        final boolean matchCase, final boolean wholeWord, final boolean noComments) {
+    final List<FindResult> results = new ArrayList<FindResult>();
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        FindReplaceMachine frm = new FindReplaceMachine(_model, _model.getDocumentIterator(), null);
+        frm.setDocument(startDoc);
+        frm.setFirstDoc(startDoc);
+        frm.setSearchAllDocuments(true);
+        frm.setMatchCase(matchCase);
+        if (wholeWord) frm.setMatchWholeWord();
+        else frm.setFindAnyOccurrence();
+        frm.setIgnoreCommentsAndStrings(noComments);
+        frm.setFindWord(word);
+        frm.processAll(new Runnable1<FindResult>() { public void run(FindResult fr) { results.add(fr); } }, null);
+        frm.cleanUp();
+      }
+    });
+    return _toString(results);
+  }
+
+  private static String _toString(List<FindResult> results) {
+    StringBuilder sb = new StringBuilder();
+    for (FindResult fr : results) sb.append(fr.getDocument().hashCode()).append(':').append(fr.getFoundOffset()).append(' ');
+    return sb.toString();
+  }
+
+  /** Compares the time taken by the FindReplaceMachine and by a FindAllSearch to find all occurrences of a word,
+    * ignoring comments and strings, in the files of a generated project.
+    * @param args optionally, the number of files (default 1000)
+    */
+  public static void main(String[] args) throws Exception {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+    File dir = IOUtil.createAndMarkTempDirectory("DrJava-bench", "");
+    File[] files = new File[n];
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 200; ++i) {
+      body.append("  /** Method ").append(i).append(" returns \"value\". */\n");
+      body.append("  public int method").append(i).append("(int value) { return value + ").append(i).append("; }\n");
+    }
+    for (int i = 0; i < n; ++i) {
+      files[i] = new File(dir, "C" + i + ".java");
+      IOUtil.writeStringToFile(files[i], "class C" + i + " {\n" + body + "}\n");
+    }
+    final OpenDefinitionsDocument[] docs = _model.openFiles(_selector(files));
+    System.out.println(n + " files of " + files[0].length() + " bytes; " + _model.getDocumentCount() + " documents");
+    for (int round = 0; round < 3; ++round) {
+      long start = System.currentTimeMillis();
+      int count = _machineCount(docs[0], "value");
+      long machineTime = System.currentTimeMillis() - start;
+      start = System.currentTimeMillis();
+      List<OpenDefinitionsDocument> docList = new ArrayList<OpenDefinitionsDocument>();
+      for (OpenDefinitionsDocument doc : docs) docList.add(doc);
+      int count2 = _search(docList, "value", true, true, true).size();
+      long searchTime = System.currentTimeMillis() - start;
+      System.out.println("  machine: " + count + " matches in " + machineTime + "ms (" + (n * 1000L / machineTime) +
+                         " files/s); search: " + count2 + " matches in " + searchTime + "ms (" +
+                         (n * 1000L / Math.max(1, searchTime)) + " files/s)");
+    }
+    _model.closeAllFiles();
+    IOUtil.deleteRecursively(dir);
+    System.exit(0);
+  }
+
+  private static int _machineCount(OpenDefinitionsDocument startDoc, String word) {
+    final int[] count = new int[1];
+    final FindReplaceMachine frm = new FindReplaceMachine(_model, _model.getDocumentIterator(), null);
+    frm.setDocument(startDoc);
+    frm.setFirstDoc(startDoc);
+    frm.setSearchAllDocuments(true);
+    frm.setMatchCase(true);
+    frm.setMatchWholeWord();
+    frm.setIgnoreCommentsAndStrings(true);
+    frm.setFindWord(word);
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        count[0] = frm.processAll(new Runnable1<FindResult>() { public void run(FindResult fr) { } }, null);
+      }
+    });
+    return count[0];
+  }
+}
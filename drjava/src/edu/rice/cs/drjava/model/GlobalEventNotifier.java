@@ -239,6 +239,13 @@ public class GlobalEventNotifier extends EventNotifier<GlobalModelListener>
     finally { _lock.endRead(); }
   }
   
+  /** Called once after a batch of files is opened and registered. */
+  public void filesOpened(List<OpenDefinitionsDocument> docs) {
+    _lock.startRead();
+    try { for (GlobalModelListener l : _listeners) { l.filesOpened(docs); } }
+    finally { _lock.endRead(); }
+  }
+  
   /** Called after a document is closed. */
   public void fileClosed(OpenDefinitionsDocument doc) {
     _lock.startRead();
@@ -37,6 +37,7 @@
 package edu.rice.cs.drjava.model;
 
 import java.io.File;
+import java.util.List;
 import edu.rice.cs.drjava.model.repl.InteractionsListener;
 import edu.rice.cs.drjava.model.compiler.CompilerListener;
 import edu.rice.cs.drjava.model.junit.JUnitListener;
@@ -94,6 +95,11 @@ public interface GlobalModelListener extends InteractionsListener, JavadocListen
    */
   public void fileOpened(OpenDefinitionsDocument doc);
   
+  /** Called once after a batch of files (e.g., those of a project) is opened, in place of fileOpened for each. 
+   * @param docs the documents that were opened, in the order in which they were requested
+   */
+  public void filesOpened(List<OpenDefinitionsDocument> docs);
+  
   /** Called after a document is closed. 
    * @param doc the document that was closed
    */
@@ -932,6 +932,7 @@ public abstract class GlobalModelTestCase extends MultiThreadedTestCase {
     public File[] filesReadOnly(File... f) { listenerFail("filesReadOnly fired unexpectedly"); return f; }
     // Recent revision defers opening files until the document for a file is requested forcing the following comment out
     public void fileOpened(OpenDefinitionsDocument doc) { /* listenerFail("fileOpened fired unexpectedly"); */ }
+    public void filesOpened(List<OpenDefinitionsDocument> docs) { for (OpenDefinitionsDocument d: docs) fileOpened(d); }
     public void fileClosed(OpenDefinitionsDocument doc) { listenerFail("fileClosed fired unexpectedly"); }
     public void fileSaved(OpenDefinitionsDocument doc) { listenerFail("fileSaved fired unexpectedly"); }
     public void fileReverted(OpenDefinitionsDocument doc) { listenerFail("fileReverted fired unexpectedly"); }
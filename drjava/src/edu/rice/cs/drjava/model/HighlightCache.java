@@ -0,0 +1,102 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.util.Arrays;
+
+/** The cache of highlight spans used by AbstractDJDocument when painting.  It maps each line of the document (by index)
+  * to the highlight spans of that line, packed into an int array as consecutive (location, length, state) triples,
+  * where the states are those of {@link edu.rice.cs.drjava.model.definitions.reducedmodel.HighlightStatus}.
+  * <p>
+  * The highlighting of a line depends only on the text up to its end, so an edit invalidates the line containing it and 
+  * all following lines, whose locations and states may have changed, but no preceding line.  The lines are kept in an 
+  * array indexed by line number, and invalidation simply truncates it.
+  * <p>
+  * The cache is not thread safe; AbstractDJDocument only uses it in the event thread, where edits to the document are
+  * made and where it is painted.
+  * @version $Id$
+  */
+public final class HighlightCache {
+  
+  /** The number of ints used by each span. */
+  public static final int SPAN_SIZE = 3;
+  
+  /** The cached spans of each line, or null if the line is not cached.  Entries at or above _size are all null. */
+  private int[][] _lines = new int[64][];
+  private int _size = 0;
+  
+  private long _hits = 0;
+  private long _misses = 0;
+  
+  /** @param line the index of a line
+    * @return the cached spans of line, or null if there are none
+    */
+  public int[] get(int line) {
+    int[] spans = (line < _size) ? _lines[line] : null;
+    if (spans == null) _misses++;
+    else _hits++;
+    return spans;
+  }
+  
+  /** Caches the spans of a line.
+    * @param line the index of the line
+    * @param spans the packed (location, length, state) triples of the line
+    */
+  public void put(int line, int[] spans) {
+    if (line >= _lines.length) _lines = Arrays.copyOf(_lines, Math.max(line + 1, 2 * _lines.length));
+    _lines[line] = spans;
+    _size = Math.max(_size, line + 1);
+  }
+  
+  /** Invalidates the spans of the given line and all following lines.
+    * @param line the index of the first line to invalidate
+    */
+  public void clear(int line) {
+    if (line < 0) line = 0;
+    if (line >= _size) return;
+    Arrays.fill(_lines, line, _size, null);
+    _size = line;
+  }
+  
+  /** @return the number of lookups that found cached spans */
+  public long getHits() { return _hits; }
+  
+  /** @return the number of lookups that found no cached spans */
+  public long getMisses() { return _misses; }
+  
+  public String toString() { return "HighlightCache[hits = " + _hits + ", misses = " + _misses + "]"; }
+}
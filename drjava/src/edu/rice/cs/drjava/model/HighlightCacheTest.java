@@ -0,0 +1,75 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+
+/** Tests the line-indexed HighlightCache.
+  * @version $Id$
+  */
+public final class HighlightCacheTest extends DrJavaTestCase {
+  
+  /** Tests that clearing a line removes the spans of it and all following lines, and that lookups are counted. */
+  public void testClear() {
+    HighlightCache cache = new HighlightCache();
+    int[] first = new int[] { 0, 10, 0 };
+    int[] second = new int[] { 10, 5, 1 };
+    int[] far = new int[] { 500, 3, 2 };
+    cache.put(0, first);
+    cache.put(1, second);
+    cache.put(100, far);
+    assertSame(first, cache.get(0));
+    assertSame(second, cache.get(1));
+    assertSame(far, cache.get(100));
+    assertNull(cache.get(2));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    
+    cache.clear(1);
+    assertSame(first, cache.get(0));
+    assertNull(cache.get(1));
+    assertNull(cache.get(100));
+    
+    cache.put(1, second);
+    assertSame(second, cache.get(1));
+    cache.clear(0);
+    assertNull(cache.get(0));
+    assertNull(cache.get(1));
+    assertEquals(5, cache.getHits());
+    assertEquals(5, cache.getMisses());
+  }
+}
@@ -0,0 +1,158 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.rice.cs.drjava.model.cache.CompressedText;
+import edu.rice.cs.drjava.project.DocFile;
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.FileOps;
+import edu.rice.cs.util.UnexpectedException;
+
+/** A file to be opened as a document, canonicalized, stat'ed, and, unless its package is recorded in a project file,
+  * read and pre-scanned for its package and first class name.  (The documents of project files are built lazily, so 
+  * their text is not needed until then.)  When many files are opened at once, scanAll does this work on a pool of 
+  * worker threads, so that the reads overlap with one another and with the registration of the documents already 
+  * scanned.
+  * @version $Id$
+  */
+final class PrescannedFile {
+  
+  /** The canonical form of the file. */
+  final File file;
+  
+  /** Whether the file existed when it was scanned. */
+  final boolean exists;
+  
+  /** The modification time of the file, read before its text. */
+  final long lastModified;
+  
+  /** The text of the file in Swing form, or null if it was not read, could not be read or has been compressed. */
+  final String text;
+  
+  /** The compressed text of the file, or null if it was not compressed. */
+  final CompressedText compressedText;
+  
+  /** The fully qualified name of the first class or interface in the file, or "" if none was found. */
+  final String className;
+  
+  private PrescannedFile(File file, boolean exists, long lastModified, String text, CompressedText compressedText, 
+                         String className) {
+    this.file = file;
+    this.exists = exists;
+    this.lastModified = lastModified;
+    this.text = text;
+    this.compressedText = compressedText;
+    this.className = className;
+  }
+  
+  /** @return the package of the first class or interface in the file, or null if the scan found none */
+  String getPackageName() {
+    if (className.length() == 0) return null;
+    int dot = className.lastIndexOf('.');
+    return (dot < 0) ? "" : className.substring(0, dot);
+  }
+  
+  /** Scans a file in the current thread.  A DocFile whose package is known is only stat'ed.
+    * @param f the file to scan
+    * @param compress whether to keep the text of the file in compressed form
+    * @return the result of the scan
+    */
+  static PrescannedFile scan(File f, boolean compress) {
+    File file = IOUtil.attemptCanonicalFile(f);
+    long lastModified = file.lastModified();  // 0 if the file does not exist
+    if (lastModified == 0L && ! file.exists()) return new PrescannedFile(file, false, 0L, null, null, "");
+    if (file instanceof DocFile && ((DocFile) file).getPackage() != null) {
+      return new PrescannedFile(file, true, lastModified, null, null, "");
+    }
+    
+    String text;
+    try { text = FileOps.readFileAsSwingText(file); }
+    catch(IOException e) { return new PrescannedFile(file, true, lastModified, null, null, ""); }
+    String className = new ClassAndInterfaceFinder(new StringReader(text)).getClassOrInterfaceName();
+    if (compress) return new PrescannedFile(file, true, lastModified, null, CompressedText.compress(text), className);
+    return new PrescannedFile(file, true, lastModified, text, null, className);
+  }
+  
+  /** Starts scanning the given files on a pool of worker threads.  Since the workers spend most of their time waiting 
+    * for the disk, there are more of them than processors.
+    * @param files the files to scan
+    * @param compress whether to keep the text of the files in compressed form
+    * @return the pending results of the scans, in the order of files
+    */
+  static List<Future<PrescannedFile>> scanAll(File[] files, final boolean compress) {
+    int threads = Math.max(1, Math.min(files.length, 2 * Runtime.getRuntime().availableProcessors() + 2));
+    ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "File Scanner");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    List<Future<PrescannedFile>> results = new ArrayList<Future<PrescannedFile>>(files.length);
+    for (final File f: files) {
+      results.add(workers.submit(new Callable<PrescannedFile>() {
+        public PrescannedFile call() { return scan(f, compress); }
+      }));
+    }
+    workers.shutdown();
+    return results;
+  }
+  
+  /** Waits for the result of a scan started by scanAll.
+    * @param f the pending result
+    * @return the result
+    */
+  static PrescannedFile getResult(Future<PrescannedFile> f) {
+    try { return f.get(); }
+    catch (InterruptedException e) { throw new UnexpectedException(e); }
+    catch (ExecutionException e) { throw new UnexpectedException(e.getCause()); }
+  }
+  
+  public String toString() { return "PrescannedFile[" + file + ", " + className + "]"; }
+}
@@ -0,0 +1,190 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.drjava.project.DocFile;
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.plt.tuple.Pair;
+import edu.rice.cs.util.FileOpenSelector;
+import edu.rice.cs.util.docnavigation.AWTContainerNavigatorFactory;
+
+/** Tests {@link PrescannedFile} and the opening of several files at once by AbstractGlobalModel.  {@link #main} reports
+  * the time taken by each phase of opening a large project.
+  * @version $Id$
+  */
+public final class PrescannedFileTest extends DrJavaTestCase {
+  
+  private static final AbstractGlobalModel _model = new AbstractGlobalModel();
+  private File _tempDir;
+  
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+  }
+  
+  public void tearDown() throws Exception {
+    _model.closeAllFiles();
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+  
+  /** Tests that a scan reads the file and finds the package of its first class. */
+  public void testScan() throws Exception {
+    File f = new File(_tempDir, "A.java");
+    IOUtil.writeStringToFile(f, "/* package wrong; */\npackage a.b;\r\nimport java.util.List;\n\npublic class A { }\n");
+    PrescannedFile scan = PrescannedFile.scan(f, false);
+    assertTrue(scan.exists);
+    assertEquals(f.getCanonicalFile(), scan.file);
+    assertEquals("/* package wrong; */\npackage a.b;\nimport java.util.List;\n\npublic class A { }\n", scan.text);
+    assertEquals("a.b.A", scan.className);
+    assertEquals("a.b", scan.getPackageName());
+    
+    PrescannedFile compressed = PrescannedFile.scan(f, true);
+    assertNull(compressed.text);
+    assertEquals(scan.text, compressed.compressedText.getText());
+    
+    IOUtil.writeStringToFile(f, "interface I { }");
+    assertEquals("", PrescannedFile.scan(f, false).getPackageName());
+    IOUtil.writeStringToFile(f, "package p;");
+    assertNull("no class found", PrescannedFile.scan(f, false).getPackageName());
+    
+    PrescannedFile project = PrescannedFile.scan(new DocFile(f, Pair.make(0, 0), Pair.make(0, 0), false, "p"), false);
+    assertTrue(project.exists);
+    assertTrue(project.file instanceof DocFile);
+    assertNull("package known, so not read", project.text);
+    
+    PrescannedFile missing = PrescannedFile.scan(new File(_tempDir, "Missing.java"), false);
+    assertFalse(missing.exists);
+    assertNull(missing.text);
+  }
+  
+  /** Tests that opening several files creates their documents in order, with their packages, and announces them with 
+    * one filesOpened event.
+    */
+  public void testOpenFiles() throws Exception {
+    File[] files = new File[5];
+    for (int i = 0; i < 4; i++) {
+      files[i] = new File(_tempDir, "C" + i + ".java");
+      IOUtil.writeStringToFile(files[i], "package p" + i + ";\nclass C" + i + " { }\n");
+    }
+    files[4] = files[1];  // requested twice
+    File missing = new File(_tempDir, "Missing.java");
+    final List<List<OpenDefinitionsDocument>> batches = new ArrayList<List<OpenDefinitionsDocument>>();
+    final List<File> notFound = new ArrayList<File>();
+    GlobalModelListener listener = new DummyGlobalModelListener() {
+      public void filesOpened(List<OpenDefinitionsDocument> docs) { batches.add(docs); }
+      public void filesNotFound(File... f) { for (File x: f) notFound.add(x); }
+    };
+    _model.addListener(listener);
+    try {
+      final File[] requested = { files[0], files[1], missing, files[2], files[3], files[4] };
+      OpenDefinitionsDocument[] docs = _model.openFiles(new FileOpenSelector() {
+        public File[] getFiles() { return requested; }
+      });
+      assertEquals(5, docs.length);
+      assertSame("duplicate request", docs[1], docs[4]);
+      assertEquals(1, batches.size());
+      assertEquals(4, batches.get(0).size());
+      for (int i = 0; i < 4; i++) {
+        assertSame(docs[i], batches.get(0).get(i));
+        assertEquals(files[i].getCanonicalFile(), docs[i].getFile());
+        assertEquals("p" + i, docs[i].getPackageName());
+        assertEquals("package p" + i + ";\nclass C" + i + " { }\n", docs[i].getText());
+        assertTrue(_model.getDocumentNavigator().contains(docs[i]));
+      }
+      assertEquals(1, notFound.size());
+      assertEquals(missing, notFound.get(0));
+      assertEquals(docs[2], _model.getDocumentForFile(files[2]));
+    }
+    finally { _model.removeListener(listener); }
+  }
+  
+  /** Opens a tree of files several times, first as plain files (as Open Folder does), then as the files of a project 
+    * (as MainFrame does when loading it), and prints the time taken by each phase.
+    * @param args the number of files (2000 by default)
+    * @throws Exception if the files cannot be written or opened
+    */
+  public static void main(String[] args) throws Exception {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+    File dir = IOUtil.createAndMarkTempDirectory("DrJava-bench", "");
+    File[] plainFiles = new File[n];
+    File[] projectFiles = new File[n];
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      body.append("  /** Method ").append(i).append(" returns \"value\". */\n");
+      body.append("  public int method").append(i).append("(int value) { return value + ").append(i).append("; }\n");
+    }
+    for (int i = 0; i < n; ++i) {
+      File pkg = new File(dir, "p" + (i % 50));
+      pkg.mkdir();
+      File f = new File(pkg, "C" + i + ".java");
+      IOUtil.writeStringToFile(f, "package p" + (i % 50) + ";\n\nclass C" + i + " {\n" + body + "}\n");
+      plainFiles[i] = f;
+      projectFiles[i] = new DocFile(f, Pair.make(0, 0), Pair.make(0, 0), false, "p" + (i % 50));
+    }
+    System.out.println(n + " files of " + plainFiles[0].length() + " bytes");
+    System.out.println("plain files:");
+    _open(plainFiles);
+    _model.setFileGroupingState(_model.new ProjectFileGroupingState(new File(dir, "bench.drjava")));
+    _model.setDocumentNavigator(new AWTContainerNavigatorFactory<OpenDefinitionsDocument>().makeTreeNavigator(
+      dir.getPath()));
+    System.out.println("project files:");
+    _open(projectFiles);
+    IOUtil.deleteRecursively(dir);
+    System.exit(0);
+  }
+  
+  /** Opens and closes the given files three times, printing the time taken by each phase. */
+  private static void _open(final File[] files) throws Exception {
+    for (int round = 0; round < 3; ++round) {
+      long start = System.nanoTime();
+      _model.openFiles(new FileOpenSelector() { public File[] getFiles() { return files; } });
+      long total = System.nanoTime() - start;
+      System.out.println("  " + total / 1000000 + "ms: waiting for scans " + 
+                         _model.getLastOpenScanWaitNanos() / 1000000 + "ms, registering " +
+                         _model.getLastOpenRegisterNanos() / 1000000 + "ms, navigator and class path " + 
+                         _model.getLastOpenNavigatorNanos() / 1000000 + "ms, listeners " + 
+                         _model.getLastOpenNotifyNanos() / 1000000 + "ms");
+      _model.closeAllFiles();
+    }
+  }
+}
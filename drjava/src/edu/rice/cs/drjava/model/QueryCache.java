@@ -0,0 +1,172 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.util.HashMap;
+
+/** The memoizing cache used by AbstractDJDocument while indenting blocks of text.  Each cached answer is tagged with
+  * the offset bounding the right edge of the text on which it depends; an edit at offset {@code pos} invalidates every
+  * answer whose offset is {@code >= pos}.
+  * <p>
+  * Invalidation is lazy.  Rather than scanning the cache on every edit, the cache records the edit in a stack of
+  * (time stamp, offset) pairs in which later edits at smaller offsets supersede earlier ones, so the offsets increase 
+  * from the bottom to the top of the stack.  An answer stored at time t is still valid iff the minimum offset of all
+  * edits after t exceeds its own offset; that minimum is the offset of the first stack entry later than t, which is
+  * found by binary search.  Recording an edit is therefore O(1) amortized and a lookup is O(log n) with no boxing of
+  * offsets and no copying of key sets.  Stale answers are dropped when they are looked up.
+  * <p>
+  * The cache is not thread safe; AbstractDJDocument only uses it while holding the document's write lock.
+  * @version $Id$
+  */
+public final class QueryCache {
+  
+  /** A cached answer together with the offset it depends on and the time it was stored. */
+  private static final class Entry {
+    final Object _answer;
+    final int _offset;
+    final int _stamp;
+    Entry(Object answer, int offset, int stamp) {
+      _answer = answer;
+      _offset = offset;
+      _stamp = stamp;
+    }
+  }
+  
+  private final HashMap<Query, Entry> _entries;
+  
+  /** The logical clock; advanced by every partial invalidation. */
+  private int _clock = 0;
+  
+  /* The invalidation stack, stored as parallel arrays.  Stamps and offsets both increase strictly with the index. */
+  private int[] _clearStamps = new int[16];
+  private int[] _clearOffsets = new int[16];
+  private int _clearCount = 0;
+  
+  private long _hits = 0;
+  private long _misses = 0;
+  private long _evictions = 0;
+  
+  /** @param initialCapacity the initial capacity of the underlying hash table */
+  public QueryCache(int initialCapacity) { _entries = new HashMap<Query, Entry>(initialCapacity); }
+  
+  /** @param query the query to look up
+    * @return the cached answer to query, or null if there is no valid cached answer
+    */
+  public Object get(Query query) {
+    Entry e = _entries.get(query);
+    if (e == null) {
+      _misses++;
+      return null;
+    }
+    if (! _isValid(e)) {
+      _entries.remove(query);
+      _evictions++;
+      _misses++;
+      return null;
+    }
+    _hits++;
+    return e._answer;
+  }
+  
+  /** Caches an answer.
+    * @param query  A canonical description of the query
+    * @param answer  The answer returned for the query
+    * @param offset  The offset bounding the right edge of the text on which the query depends
+    */
+  public void put(Query query, Object answer, int offset) { _entries.put(query, new Entry(answer, offset, _clock)); }
+  
+  /** Invalidates all answers whose offset is {@code >=} the specified offset.  Clears the cache outright if 
+    * {@code offset <= 0}.
+    * @param offset the offset of the edit
+    */
+  public void clear(int offset) {
+    if (offset <= 0) {
+      _evictions += _entries.size();
+      release();
+      return;
+    }
+    _clock++;
+    while (_clearCount > 0 && _clearOffsets[_clearCount - 1] >= offset) _clearCount--;
+    if (_clearCount == _clearStamps.length) {
+      int newLength = 2 * _clearCount;
+      int[] stamps = new int[newLength];
+      int[] offsets = new int[newLength];
+      System.arraycopy(_clearStamps, 0, stamps, 0, _clearCount);
+      System.arraycopy(_clearOffsets, 0, offsets, 0, _clearCount);
+      _clearStamps = stamps;
+      _clearOffsets = offsets;
+    }
+    _clearStamps[_clearCount] = _clock;
+    _clearOffsets[_clearCount] = offset;
+    _clearCount++;
+  }
+  
+  /** Drops all cached answers without counting them as evictions.  Used when the cache is retired. */
+  public void release() {
+    _entries.clear();
+    _clearCount = 0;
+  }
+  
+  /** @return true if no invalidation since e was stored reaches e's offset */
+  private boolean _isValid(Entry e) {
+    int lo = 0;
+    int hi = _clearCount;
+    while (lo < hi) {  // find the first invalidation stamped after e
+      int mid = (lo + hi) >>> 1;
+      if (_clearStamps[mid] > e._stamp) hi = mid;
+      else lo = mid + 1;
+    }
+    return lo == _clearCount || _clearOffsets[lo] > e._offset;
+  }
+  
+  /** @return the number of entries in the cache, including stale entries that have not yet been looked up */
+  public int size() { return _entries.size(); }
+  
+  /** @return the number of lookups that found a valid answer */
+  public long getHits() { return _hits; }
+  
+  /** @return the number of lookups that found no valid answer */
+  public long getMisses() { return _misses; }
+  
+  /** @return the number of answers discarded because an edit invalidated them */
+  public long getEvictions() { return _evictions; }
+  
+  public String toString() {
+    return "QueryCache[hits = " + _hits + ", misses = " + _misses + ", evictions = " + _evictions + 
+      ", size = " + _entries.size() + "]";
+  }
+}
@@ -0,0 +1,124 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+
+/** Tests the lazy invalidation scheme of QueryCache.
+  * @version $Id$
+  */
+public final class QueryCacheTest extends DrJavaTestCase {
+  
+  /** Tests that clearing at an offset removes exactly the answers depending on text at or beyond that offset. */
+  public void testClearByOffset() {
+    QueryCache cache = new QueryCache(16);
+    cache.put(new Query.LineStartPos(10), 5, 9);
+    cache.put(new Query.LineEndPos(10), 20, 20);
+    cache.put(new Query.LineFirstCharPos(30), 25, 29);
+    
+    cache.clear(21);
+    assertEquals(5, cache.get(new Query.LineStartPos(10)));
+    assertEquals(20, cache.get(new Query.LineEndPos(10)));
+    assertNull(cache.get(new Query.LineFirstCharPos(30)));
+    
+    cache.clear(20);
+    assertEquals(5, cache.get(new Query.LineStartPos(10)));
+    assertNull(cache.get(new Query.LineEndPos(10)));
+    
+    // answers stored after an edit are not affected by it
+    cache.put(new Query.LineEndPos(10), 21, 21);
+    assertEquals(21, cache.get(new Query.LineEndPos(10)));
+    
+    cache.clear(0);
+    assertNull(cache.get(new Query.LineStartPos(10)));
+    assertEquals(0, cache.size());
+  }
+  
+  /** Tests the hit, miss and eviction counters. */
+  public void testCounters() {
+    QueryCache cache = new QueryCache(16);
+    assertNull(cache.get(new Query.LineStartPos(1)));
+    cache.put(new Query.LineStartPos(1), 0, 0);
+    cache.put(new Query.LineStartPos(50), 40, 49);
+    assertEquals(0, cache.get(new Query.LineStartPos(1)));
+    cache.clear(10);
+    assertNull(cache.get(new Query.LineStartPos(50)));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+    cache.release();
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getEvictions());
+  }
+  
+  /** Compares the cache against an eagerly invalidated map under random stores, lookups, and edits. */
+  public void testRandomAgainstEagerInvalidation() {
+    Random random = new Random(7);
+    QueryCache cache = new QueryCache(16);
+    HashMap<Query, Integer> answers = new HashMap<Query, Integer>();
+    HashMap<Query, Integer> offsets = new HashMap<Query, Integer>();
+    
+    for (int i = 0; i < 20000; i++) {
+      Query query = new Query.LineStartPos(random.nextInt(200));
+      int op = random.nextInt(3);
+      if (op == 0) {
+        int offset = random.nextInt(1000);
+        cache.put(query, i, offset);
+        answers.put(query, i);
+        offsets.put(query, offset);
+      }
+      else if (op == 1) assertEquals("lookup #" + i, answers.get(query), cache.get(query));
+      else {
+        int offset = random.nextInt(1000) - 5;
+        cache.clear(offset);
+        Iterator<Map.Entry<Query, Integer>> it = offsets.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<Query, Integer> e = it.next();
+          if (offset <= 0 || e.getValue() >= offset) {
+            answers.remove(e.getKey());
+            it.remove();
+          }
+        }
+      }
+    }
+  }
+}
@@ -86,6 +86,11 @@ public interface RegionManager<R extends IDocumentRegion> {
    */
   public void addRegion(R region);
 
+  /** Add the supplied regions to the manager; equivalent to, but faster than, adding them one at a time.
+   *  @param regions the regions to be inserted into the manager
+   */
+  public void addRegions(Collection<? extends R> regions);
+
   /** Remove the given StaticDocumentRegion from the manager.
    *  @param region the StaticDocumentRegion to be removed.
    */
@@ -36,11 +36,15 @@
 
 package edu.rice.cs.drjava.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.TreeSet;
 
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 
 import edu.rice.cs.util.swing.Utilities;
 
@@ -50,6 +54,10 @@ import edu.rice.cs.util.swing.Utilities;
   * Also optionally contains a reference to the ConcreteRegionManager that uses this region set, and notifies 
   * the manager on changes. Note that RegionSets can be used broadly by all types of RegionManagers; however, 
   * notification will only ever be requested by ConcreteRegionManagers.
+  * 
+  * Overlap queries are answered by a {@link RegionTree} kept alongside the TreeSet.  The tree is updated by the
+  * add and remove methods of this class; batches that are large relative to the set (and any changes made by other
+  * means, e.g. through iterators or subset views) discard it, and it is rebuilt in bulk on the next query.
   */
 public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
 
@@ -63,6 +71,9 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
      */
     private ConcreteRegionManager<OrderedDocumentRegion> _manager = null;
 
+    /* Interval tree of the regions in this set, or null if it must be rebuilt. */
+    private RegionTree<R> _tree = null;
+
     public void setManager(ConcreteRegionManager<OrderedDocumentRegion> manager) { 
       this._manager = manager; 
     }
@@ -84,7 +95,7 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
           /* Insertion can't cause positions to flip */
           /* But we should still notify the RegionManager, if requested. */
           if (thisRef._manager != null) {
-            for (R region : thisRef) {
+            for (R region : thisRef._getRegionsNear(e, e.getOffset(), e.getOffset() + e.getLength())) {
               thisRef._manager.notifyChangedRegion((OrderedDocumentRegion)region);
             }
           }
@@ -100,29 +111,18 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
               /* Removal can cause positions to flip, but only need to worry if the removed portion is within the bounds
                * of one or more regions. 
                */
-              boolean requireRebalance = false;
-              for (R region : thisRef) {
-                if (region.getStartOffset() <= finalE.getOffset() &&
-                  finalE.getOffset() <= region.getEndOffset()) {
-                     requireRebalance = true;
-                     break;
-                }
-              }
+              int offset = finalE.getOffset();
+              boolean requireRebalance = ! thisRef.getOverlapping(offset - 1, offset + 1).isEmpty();
 
               /* Brute-force re-balance; can be relatively expensive if there are many regions, but in practice runs
                * infrequently enough so as to be unnoticeable. Note: this code can probably be made ore efficient 
                * because the region set to be rebalanced is almost in balance already.  Not worth the complication.
                */
-              if (requireRebalance) {
-                @SuppressWarnings("unchecked")
-                RegionSet<R> thisCopy = (RegionSet<R>)thisRef.clone();
-                thisRef.clear();
-                thisRef.addAll(thisCopy);
-              }
+              if (requireRebalance) thisRef._rebalance();
 
               /* Notify the RegionManager, if requested. */
               if (thisRef._manager != null) {
-                for (R region : thisRef) {
+                for (R region : thisRef._getRegionsNear(finalE, offset, offset)) {
                   thisRef._manager.notifyChangedRegion((OrderedDocumentRegion)region);
                 }
               }
@@ -138,6 +138,53 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
       odd.addDocumentListener(_docListener);
     }
 
+    /** Returns the regions that an edit of [start, end) may have changed: those overlapping or adjacent to the edited
+      * lines, or, if the edit added or removed lines, all regions from the first edited line on (since their line
+      * numbers changed).  Regions on other lines keep their text and their excerpts.
+      * @param e the event describing the edit
+      * @param start the start of the edited text
+      * @param end the end of the edited text
+      * @return the regions to be refreshed
+      */
+    private List<R> _getRegionsNear(DocumentEvent e, int start, int end) {
+      Document doc = e.getDocument();
+      Element root = doc.getDefaultRootElement();
+      int length = doc.getLength();
+      start = Math.max(0, Math.min(start, length));
+      end = Math.max(start, Math.min(end, length));
+      int lineStart = root.getElement(root.getElementIndex(start)).getStartOffset();
+      if (e.getChange(root) != null) return getOverlapping(lineStart - 1, Integer.MAX_VALUE);
+      int lineEnd = root.getElement(root.getElementIndex(end)).getEndOffset();
+      return getOverlapping(lineStart - 1, lineEnd + 1);
+    }
+
+    /** Rebuilds the TreeSet from its current contents, whose order may have changed.  The interval tree is unaffected
+      * by such changes, so it is kept.
+      */
+    private void _rebalance() {
+      RegionTree<R> tree = _tree;
+      List<R> regions = new ArrayList<R>(this);
+      super.clear();
+      for (R region : regions) super.add(region);
+      _tree = tree;  // discarded by _getTree() if the set has dropped regions that now compare as equal
+    }
+
+    /** @return the interval tree of this set, rebuilding it if necessary */
+    private RegionTree<R> _getTree() {
+      if (_tree == null || _tree.size() != size()) _tree = new RegionTree<R>(this);
+      return _tree;
+    }
+
+    /** Returns the regions [s, e) in this set that overlap [startOffset, endOffset), i.e. for which s < endOffset and
+      * e > startOffset, ordered by start offset.
+      * @param startOffset the left end of the interval
+      * @param endOffset the right end of the interval
+      * @return a new list of the overlapping regions
+      */
+    public List<R> getOverlapping(int startOffset, int endOffset) {
+      return _getTree().getOverlapping(startOffset, endOffset);
+    }
+
     /** Adds an input region to the set. Also sets up a listener on the document to which the region belongs, if this
       * is the first time an add method is being called.
       * @param region the region to add
@@ -145,7 +192,9 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
       */
     public boolean add(R region) {
       this._setDocListener(region);
-      return super.add(region);
+      boolean added = super.add(region);
+      if (added && _tree != null) _tree.add(region);
+      return added;
     }
 
     /** Adds all input regions to the set. Also sets up a listener on the document to which the regions belong, if this
@@ -158,7 +207,46 @@ public class RegionSet<R extends IDocumentRegion> extends TreeSet<R> {
         for (R region : regions) {
             this._setDocListener(region);
         }
+        if (regions.size() > size() / 8) _tree = null;  // cheaper to rebuild than to insert one at a time
         return super.addAll(regions);
     }
-}
 
+    /** Removes a region (or the region equal to it) from the set.
+      * @param o the region to remove
+      * @return indication of success
+      */
+    public boolean remove(Object o) {
+      R stored = null;
+      if (_tree != null && o instanceof IDocumentRegion) {
+        @SuppressWarnings("unchecked")
+        R region = (R) o;
+        stored = floor(region);  // the region in the set equal to o, if any
+      }
+      boolean removed = super.remove(o);
+      if (removed && stored != null && ! _tree.remove(stored)) _tree = null;
+      return removed;
+    }
+
+    /** Removes all the given regions from the set.
+      * @param regions the regions to remove
+      * @return indication of success
+      */
+    public boolean removeAll(Collection<?> regions) {
+      if (regions.size() > size() / 8) _tree = null;
+      boolean changed = false;
+      for (Object region : regions) changed |= remove(region);
+      return changed;
+    }
+
+    public void clear() {
+      super.clear();
+      _tree = null;
+    }
+
+    public Object clone() {
+      @SuppressWarnings("unchecked")
+      RegionSet<R> result = (RegionSet<R>) super.clone();
+      result._tree = null;
+      return result;
+    }
+}
@@ -0,0 +1,231 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/** An interval tree over the regions of a single document, used by {@link RegionSet} to find the regions overlapping
+  * an interval without scanning the set.  The tree is a treap ordered by start offset (then end offset) in which each
+  * node also records the region with the greatest end offset in its subtree.  Document edits move the offsets of
+  * position-based regions, but the positions move monotonically: two offsets may become equal, but they never cross.
+  * Hence neither the ordering of the tree nor the recorded maxima are invalidated by edits, and the tree never needs
+  * rebalancing the way a TreeSet ordered by end offset does.  Nodes are also found through an identity map, so a
+  * region can be removed after its offsets have changed.  Only accessed in the event thread (like RegionSet).
+  * @version $Id$
+  */
+public class RegionTree<R extends IDocumentRegion> {
+
+  /** Orders regions by start offset, then by end offset. */
+  public static final Comparator<IDocumentRegion> START_ORDER = new Comparator<IDocumentRegion>() {
+    public int compare(IDocumentRegion r1, IDocumentRegion r2) {
+      int diff = r1.getStartOffset() - r2.getStartOffset();
+      return (diff != 0) ? diff : r1.getEndOffset() - r2.getEndOffset();
+    }
+  };
+
+  /** Priorities of nodes inserted one at a time are less than this bound, so that the nodes of a tree built in bulk
+    * (whose priorities are Integer.MAX_VALUE minus their depth) remain above them.
+    */
+  private static final int PRIORITY_BOUND = Integer.MAX_VALUE - 64;
+
+  private final Random _random = new Random();
+  private final IdentityHashMap<R, Node<R>> _nodes;
+  private Node<R> _root = null;
+
+  /** Creates an empty tree. */
+  public RegionTree() { _nodes = new IdentityHashMap<R, Node<R>>(); }
+
+  /** Creates a balanced tree of the given regions in O(n log n) time, or O(n) time if they are already ordered by
+    * start offset.
+    * @param regions the regions to add; must not contain the same region twice
+    */
+  public RegionTree(Collection<? extends R> regions) {
+    _nodes = new IdentityHashMap<R, Node<R>>(regions.size());
+    List<R> sorted = new ArrayList<R>(regions);
+    Collections.sort(sorted, START_ORDER);  // merge sort, so linear for a sorted list
+    _root = _build(sorted, 0, sorted.size(), Integer.MAX_VALUE, null);
+  }
+
+  private Node<R> _build(List<R> sorted, int lo, int hi, int priority, Node<R> parent) {
+    if (lo >= hi) return null;
+    int mid = (lo + hi) >>> 1;
+    Node<R> n = new Node<R>(sorted.get(mid), priority);
+    _nodes.put(n.region, n);
+    n.parent = parent;
+    n.left = _build(sorted, lo, mid, priority - 1, n);
+    n.right = _build(sorted, mid + 1, hi, priority - 1, n);
+    _update(n);
+    return n;
+  }
+
+  /** @return the number of regions in the tree */
+  public int size() { return _nodes.size(); }
+
+  /** @param region the region to look for
+    * @return true if this tree contains the given region (by identity)
+    */
+  public boolean contains(Object region) { return _nodes.containsKey(region); }
+
+  /** Removes all regions from the tree. */
+  public void clear() {
+    _nodes.clear();
+    _root = null;
+  }
+
+  /** Adds a region to the tree in expected O(log n) time.
+    * @param region the region to add
+    * @return true if the region was not already in the tree
+    */
+  public boolean add(R region) {
+    if (_nodes.containsKey(region)) return false;
+    Node<R> n = new Node<R>(region, _random.nextInt(PRIORITY_BOUND));
+    _nodes.put(region, n);
+    if (_root == null) {
+      _root = n;
+      return true;
+    }
+    Node<R> p = _root;
+    while (true) {
+      if (region.getEndOffset() > p.max.getEndOffset()) p.max = region;
+      if (START_ORDER.compare(region, p.region) < 0) {
+        if (p.left == null) { p.left = n; break; }
+        p = p.left;
+      }
+      else {
+        if (p.right == null) { p.right = n; break; }
+        p = p.right;
+      }
+    }
+    n.parent = p;
+    while (n.parent != null && n.parent.priority < n.priority) _rotateUp(n);
+    return true;
+  }
+
+  /** Removes a region (by identity) from the tree in expected O(log n) time.
+    * @param region the region to remove
+    * @return true if the region was in the tree
+    */
+  public boolean remove(Object region) {
+    Node<R> n = _nodes.remove(region);
+    if (n == null) return false;
+    // rotate n down to a leaf, then cut it off
+    while (n.left != null || n.right != null) {
+      Node<R> c;
+      if (n.left == null) c = n.right;
+      else if (n.right == null) c = n.left;
+      else c = (n.left.priority > n.right.priority) ? n.left : n.right;
+      _rotateUp(c);
+    }
+    Node<R> p = n.parent;
+    if (p == null) _root = null;
+    else if (p.left == n) p.left = null;
+    else p.right = null;
+    for (; p != null; p = p.parent) _update(p);
+    return true;
+  }
+
+  /** Returns the regions [s, e) that overlap [startOffset, endOffset), i.e. for which s < endOffset and
+    * e > startOffset, ordered by start offset.  Runs in O(log n + k) time for disjoint regions, where k is the number
+    * of regions returned.
+    * @param startOffset the left end of the interval
+    * @param endOffset the right end of the interval
+    * @return a new list of the overlapping regions
+    */
+  public List<R> getOverlapping(int startOffset, int endOffset) {
+    List<R> result = new ArrayList<R>();
+    _collect(_root, startOffset, endOffset, result);
+    return result;
+  }
+
+  private static <R extends IDocumentRegion> void _collect(Node<R> n, int startOffset, int endOffset, List<R> result) {
+    while (n != null && n.max.getEndOffset() > startOffset) {
+      _collect(n.left, startOffset, endOffset, result);
+      R r = n.region;
+      if (r.getStartOffset() >= endOffset) return;  // so do all regions in the right subtree
+      if (r.getEndOffset() > startOffset) result.add(r);
+      n = n.right;
+    }
+  }
+
+  /** Makes n take the place of its parent, preserving the order of the tree. */
+  private void _rotateUp(Node<R> n) {
+    Node<R> p = n.parent;
+    Node<R> g = p.parent;
+    if (p.left == n) {
+      p.left = n.right;
+      if (n.right != null) n.right.parent = p;
+      n.right = p;
+    }
+    else {
+      p.right = n.left;
+      if (n.left != null) n.left.parent = p;
+      n.left = p;
+    }
+    p.parent = n;
+    n.parent = g;
+    if (g == null) _root = n;
+    else if (g.left == p) g.left = n;
+    else g.right = n;
+    _update(p);
+    _update(n);
+  }
+
+  /** Recomputes n.max from n's region and its children. */
+  private static <R extends IDocumentRegion> void _update(Node<R> n) {
+    R max = n.region;
+    if (n.left != null && n.left.max.getEndOffset() > max.getEndOffset()) max = n.left.max;
+    if (n.right != null && n.right.max.getEndOffset() > max.getEndOffset()) max = n.right.max;
+    n.max = max;
+  }
+
+  private static final class Node<R> {
+    final R region;
+    final int priority;
+    Node<R> left = null;
+    Node<R> right = null;
+    Node<R> parent = null;
+    /** The region with the greatest end offset in this subtree. */
+    R max;
+    Node(R r, int p) { region = r; priority = p; max = r; }
+  }
+}
@@ -0,0 +1,260 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.swing.text.BadLocationException;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+/** Tests the {@link RegionTree} and its use by {@link ConcreteRegionManager}.  {@link #main} compares the cost of
+  * region queries and updates with the cost of the TreeSet scans they replace.
+  * @version $Id$
+  */
+public final class RegionTreeTest extends DrJavaTestCase {
+
+  private static final AbstractGlobalModel _model = new AbstractGlobalModel();
+  private File _tempDir;
+  private OpenDefinitionsDocument _doc;
+
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    _doc = _model.newFile(_tempDir);
+  }
+
+  public void tearDown() throws Exception {
+    _model.closeAllFiles();
+    _tempDir = null;
+    super.tearDown();
+  }
+
+  /** @return the regions in the given list that overlap [start, end), ordered by start offset */
+  private static <R extends IDocumentRegion> List<R> overlapping(List<R> regions, int start, int end) {
+    List<R> result = new ArrayList<R>();
+    for (R r : regions) {
+      if (r.getStartOffset() < end && r.getEndOffset() > start) result.add(r);
+    }
+    Collections.sort(result, RegionTree.START_ORDER);
+    return result;
+  }
+
+  private static void assertSameRegions(String message, List<? extends IDocumentRegion> expected,
+                                        List<? extends IDocumentRegion> actual) {
+    assertEquals(message, new HashSet<IDocumentRegion>(expected), new HashSet<IDocumentRegion>(actual));
+    for (int i = 1; i < actual.size(); ++i) {
+      assertTrue(message + ": order", RegionTree.START_ORDER.compare(actual.get(i - 1), actual.get(i)) <= 0);
+    }
+  }
+
+  /** Compares queries on random, possibly overlapping, regions with a linear search. */
+  public void testRandomRegions() throws BadLocationException {
+    _doc.insertString(0, new String(new char[1000]).replace('\0', 'x'), null);
+    Random rand = new Random(17);
+    List<StaticDocumentRegion> regions = new ArrayList<StaticDocumentRegion>();
+    RegionTree<StaticDocumentRegion> tree = new RegionTree<StaticDocumentRegion>();
+    for (int i = 0; i < 300; ++i) {
+      int start = rand.nextInt(1000);
+      StaticDocumentRegion r = new StaticDocumentRegion(_doc, start, Math.min(1000, start + rand.nextInt(40)));
+      regions.add(r);
+      assertTrue("add", tree.add(r));
+    }
+    assertFalse("add twice", tree.add(regions.get(0)));
+    for (int i = 0; i < 200; ++i) {
+      StaticDocumentRegion r = regions.remove(rand.nextInt(regions.size()));
+      assertTrue("remove", tree.remove(r));
+      assertFalse("remove twice", tree.remove(r));
+      int start = rand.nextInt(1000);
+      int end = start + rand.nextInt(60);
+      assertSameRegions("query", overlapping(regions, start, end), tree.getOverlapping(start, end));
+    }
+    assertEquals("size", regions.size(), tree.size());
+
+    RegionTree<StaticDocumentRegion> built = new RegionTree<StaticDocumentRegion>(regions);
+    for (int start = 0; start < 1000; start += 7) {
+      assertSameRegions("bulk query", overlapping(regions, start, start + 10), built.getOverlapping(start, start + 10));
+    }
+  }
+
+  /** Checks the queries of a region manager after its regions have been moved by edits. */
+  public void testEdits() throws BadLocationException {
+    for (int i = 0; i < 50; ++i) _doc.insertString(_doc.getLength(), "line " + i + " abc\n", null);
+    ConcreteRegionManager<MovingDocumentRegion> rm = new ConcreteRegionManager<MovingDocumentRegion>();
+    final int[] counts = new int[2];
+    rm.addListener(new RegionManagerListener<MovingDocumentRegion>() {
+      public void regionAdded(MovingDocumentRegion r) { counts[0]++; }
+      public void regionChanged(MovingDocumentRegion r) { }
+      public void regionRemoved(MovingDocumentRegion r) { counts[1]++; }
+    });
+    List<MovingDocumentRegion> regions = new ArrayList<MovingDocumentRegion>();
+    String text = _doc.getText();
+    for (int i = text.indexOf("abc"); i >= 0; i = text.indexOf("abc", i + 1)) {
+      regions.add(new MovingDocumentRegion(_doc, i, i + 3, _doc._getLineStartPos(i), _doc._getLineEndPos(i + 3)));
+    }
+    rm.addRegions(regions);
+    rm.addRegions(regions.subList(0, 5));  // already present
+    assertEquals("added", regions.size(), counts[0]);
+    assertEquals("count", regions.size(), rm.getRegionCount());
+
+    _doc.insertString(0, "inserted\n", null);
+    _doc.remove(30, 20);  // within and between regions
+    _doc.insertString(100, "abc", null);
+    for (int offset = 0; offset < _doc.getLength(); ++offset) {
+      List<MovingDocumentRegion> expected = overlapping(regions, offset, offset + 1);
+      assertEquals("region at " + offset, expected.isEmpty() ? null : expected.get(0), rm.getRegionAt(_doc, offset));
+      assertSameRegions("overlapping " + offset, overlapping(regions, offset, offset + 8),
+                        new ArrayList<MovingDocumentRegion>(rm.getRegionsOverlapping(_doc, offset, offset + 8)));
+    }
+
+    rm.removeRegions(regions.subList(10, 30));
+    assertEquals("removed", 20, counts[1]);
+    List<MovingDocumentRegion> remaining = new ArrayList<MovingDocumentRegion>(regions.subList(0, 10));
+    remaining.addAll(regions.subList(30, regions.size()));
+    assertSameRegions("after removal", overlapping(remaining, 0, _doc.getLength()),
+                      new ArrayList<MovingDocumentRegion>(rm.getRegionsOverlapping(_doc, 0, _doc.getLength())));
+    rm.clearRegions();
+    assertEquals("cleared", regions.size(), counts[1]);
+    assertTrue("no documents", rm.getDocuments().isEmpty());
+  }
+
+  /** Compares the cost of region queries and updates using the interval tree with the cost of the TreeSet scans
+    * previously used by ConcreteRegionManager and RegionSet.
+    * @param args optionally, the number of regions (default 100000)
+    */
+  public static void main(String[] args) throws BadLocationException, IOException {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+    OpenDefinitionsDocument doc = _model.newFile(IOUtil.createAndMarkTempDirectory("DrJava-bench", ""));
+    doc.insertString(0, new String(new char[10 * n + 10]).replace('\0', 'x'), null);
+    List<StaticDocumentRegion> regions = new ArrayList<StaticDocumentRegion>();
+    for (int i = 0; i < n; ++i) regions.add(new StaticDocumentRegion(doc, 10 * i, 10 * i + 5));
+    int queries = 10000;
+    Random rand = new Random(5);
+    int[] offsets = new int[queries];
+    for (int i = 0; i < queries; ++i) offsets[i] = rand.nextInt(10 * n);
+
+    for (int round = 0; round < 3; ++round) {
+      System.out.println("Round " + round + ": " + n + " regions, " + queries + " queries");
+
+      // adding regions one at a time to a TreeSet, and in a batch to a RegionSet
+      long start = System.nanoTime();
+      TreeSet<StaticDocumentRegion> set = new TreeSet<StaticDocumentRegion>();
+      for (StaticDocumentRegion r : regions) set.add(r);
+      long setTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      RegionSet<StaticDocumentRegion> regionSet = new RegionSet<StaticDocumentRegion>();
+      regionSet.addAll(regions);
+      regionSet.getOverlapping(0, 0);  // builds the tree
+      long treeTime = System.nanoTime() - start;
+      report("add all", setTime, treeTime);
+
+      // getRegionAt, as previously implemented by taking a tail set and checking its size
+      int found = 0;
+      start = System.nanoTime();
+      for (int offset : offsets) {
+        SortedSet<StaticDocumentRegion> tail = set.tailSet(new StaticDocumentRegion(doc, 0, offset + 1));
+        if (tail.size() != 0 && tail.first().getStartOffset() <= offset) found++;
+      }
+      setTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int offset : offsets) {
+        if (! regionSet.getOverlapping(offset, offset + 1).isEmpty()) found--;
+      }
+      treeTime = System.nanoTime() - start;
+      report("region at", setTime, treeTime);
+      if (found != 0) throw new AssertionError("region at: results differ");
+
+      // getRegionsOverlapping, as previously implemented by scanning a tail set
+      start = System.nanoTime();
+      for (int offset : offsets) {
+        for (StaticDocumentRegion r : set.tailSet(new StaticDocumentRegion(doc, 0, offset + 1))) {
+          if (r.getStartOffset() >= offset + 100) break;
+          found++;
+        }
+      }
+      setTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int offset : offsets) found -= regionSet.getOverlapping(offset, offset + 100).size();
+      treeTime = System.nanoTime() - start;
+      report("overlapping", setTime, treeTime);
+      if (found != 0) throw new AssertionError("overlapping: results differ");
+
+      // the regions visited by the document listener after an edit: previously all of them
+      start = System.nanoTime();
+      for (int i = 0; i < queries / 10; ++i) {
+        int offset = offsets[i];
+        for (StaticDocumentRegion r : set) {
+          if (r.getStartOffset() <= offset && offset <= r.getEndOffset()) break;
+        }
+        for (StaticDocumentRegion r : set) found += (r.getEndOffset() >= offset - 40) ? 0 : 1;
+      }
+      setTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < queries / 10; ++i) {
+        int offset = offsets[i];
+        found += regionSet.getOverlapping(offset - 1, offset + 1).size();
+        found += regionSet.getOverlapping(offset - 40, offset + 40).size();
+      }
+      treeTime = System.nanoTime() - start;
+      report("edit (" + (queries / 10) + ")", setTime, treeTime);
+
+      // removing half of the regions one at a time
+      List<StaticDocumentRegion> half = regions.subList(0, n / 2);
+      start = System.nanoTime();
+      for (StaticDocumentRegion r : half) set.remove(r);
+      setTime = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (StaticDocumentRegion r : half) regionSet.remove(r);
+      regionSet.getOverlapping(0, 0);
+      treeTime = System.nanoTime() - start;
+      report("remove half", setTime, treeTime);
+    }
+  }
+
+  private static void report(String name, long setNanos, long treeNanos) {
+    System.out.println("  " + name + ": TreeSet " + (setNanos / 1000000) + "ms; tree " + (treeNanos / 1000000) + "ms");
+  }
+}
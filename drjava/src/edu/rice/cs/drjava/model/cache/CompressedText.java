@@ -0,0 +1,138 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import edu.rice.cs.util.UnexpectedException;
+
+/** An immutable, deflate-compressed image of the text of a document.  The DocumentCache uses these images to keep
+  * virtualized documents in memory in a compact form so that a document can be reconstructed without reading its file
+  * again.  Source text typically compresses to a fifth of its size or less.  The text of the most recently inflated
+  * image is kept until another image is inflated, so that a run of reads of one document (as when Find All or an
+  * indexer extracts many substrings of it) inflates it only once.
+  * @version $Id$
+  */
+public final class CompressedText {
+  
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  
+  /** The compressed UTF-8 encoding of the text. */
+  private final byte[] _data;
+  
+  /** The number of bytes in the uncompressed UTF-8 encoding. */
+  private final int _byteLength;
+  
+  /** The number of chars in the text. */
+  private final int _length;
+  
+  /** The most recently inflated image together with its text. */
+  private static volatile Inflated _lastInflated = null;
+  
+  private static final class Inflated {
+    final CompressedText _source;
+    final String _text;
+    Inflated(CompressedText source, String text) { _source = source; _text = text; }
+  }
+  
+  private CompressedText(byte[] data, int byteLength, int length) {
+    _data = data;
+    _byteLength = byteLength;
+    _length = length;
+  }
+  
+  /** Compresses the given text.
+    * @param text the text to compress
+    * @return the compressed image of text
+    */
+  public static CompressedText compress(String text) {
+    byte[] bytes = text.getBytes(UTF8);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+      byte[] buf = new byte[8192];
+      while (! deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+      }
+      return new CompressedText(out.toByteArray(), bytes.length, text.length());
+    }
+    finally { deflater.end(); }
+  }
+  
+  /** @return the uncompressed text */
+  public String getText() {
+    Inflated last = _lastInflated;
+    if (last != null && last._source == this) return last._text;
+    String text = _inflate();
+    _lastInflated = new Inflated(this, text);
+    return text;
+  }
+  
+  /** @return the uncompressed text, inflated from _data */
+  private String _inflate() {
+    byte[] bytes = new byte[_byteLength];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(_data);
+      int n = 0;
+      while (n < _byteLength) {
+        int k = inflater.inflate(bytes, n, _byteLength - n);
+        if (k == 0 && (inflater.finished() || inflater.needsInput())) break;
+        n += k;
+      }
+      if (n != _byteLength) throw new UnexpectedException("Truncated compressed text: " + n + " of " + _byteLength);
+    }
+    catch(DataFormatException e) { throw new UnexpectedException(e); }
+    finally { inflater.end(); }
+    return new String(bytes, UTF8);
+  }
+  
+  /** @return the number of chars in the uncompressed text; does not inflate the image */
+  public int length() { return _length; }
+  
+  /** @return the number of bytes occupied by the compressed image */
+  public int getCompressedSize() { return _data.length; }
+  
+  public String toString() { return "CompressedText[" + _length + " chars in " + _data.length + " bytes]"; }
+}
@@ -67,4 +67,13 @@ public interface DDReconstructor {
   
   /** @return the string text for document that has been kicked out; null otherwise. */
   public String getText();
+  
+  /** @return the length of the text returned by getText(); avoids materializing a compressed image when possible. */
+  public int getLength();
+  
+  /** Replaces the saved text image (if any) by a compressed snapshot.  Subsequent calls on getText() and make()
+    * inflate the snapshot on demand instead of rereading the file.  Only called from DocumentCache when it enforces a
+    * byte budget.
+    */
+  public void compressImage();
 }
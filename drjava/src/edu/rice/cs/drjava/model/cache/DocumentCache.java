@@ -71,6 +71,12 @@ import edu.rice.cs.plt.iter.IterUtil;
   * UNMANAGED document remains in memory until it is saved or closed without being saved.  If such a document is
   * saved, it is inserted again in the resident queue.
   * <p>
+  * Alternatively, the cache can enforce a byte budget (see setByteBudget) instead of a document count.  In that mode,
+  * the footprint of each resident document (its text plus an estimate of its element tree and reduced model) is
+  * measured when it enters the queue, the least recently added documents are virtualized until the total fits in the
+  * budget, and each virtualized document keeps its text as a compressed in-memory snapshot so that reconstructing it
+  * requires no disk I/O.
+  * <p>
   * Since the cache and document managers can both be concurrently accessed from multiple threads, the methods in the
   * DocumentCache and DocManager classes are synchronized.  Some operations require locks on both the cache and a
   * document manager, but the code is written so that none of them require these locks to be held simultaneously.
@@ -83,9 +89,28 @@ public class DocumentCache {
   
   private static final int INIT_CACHE_SIZE = 32;
   
-  /** invariant {@code _residentQueue.size() <= CACHE_SIZE} */
+  /** Estimated bytes per char of document text: the char itself in the GapContent plus the gap slack. */
+  static final int BYTES_PER_CHAR = 3;
+  /** Estimated bytes per line for the Element and the two Positions that delimit it. */
+  static final int BYTES_PER_LINE = 96;
+  /** Estimated bytes per reduced model token: a list node plus the token object. */
+  static final int BYTES_PER_TOKEN = 64;
+  
+  /** invariant {@code _residentQueue.size() <= CACHE_SIZE} unless _byteBudget > 0 */
   private volatile int CACHE_SIZE;
   
+  /** Maximum number of estimated bytes held by the documents in _residentQueue; 0 means the cache is bounded by
+    * CACHE_SIZE instead.  invariant {@code _residentBytes <= _byteBudget || _residentQueue.size() <= 1} if positive. */
+  private volatile long _byteBudget = 0;
+  
+  /** Sum of the footprints of the documents in _residentQueue. */
+  private volatile long _residentBytes = 0;
+  
+  /** Reconstruction statistics; only updated while holding _cacheLock. */
+  private volatile int _reconstructCount = 0;
+  private volatile long _reconstructNanos = 0;
+  private volatile long _lastReconstructNanos = 0;
+  
   /** Data structure representing the queue of resident unmodified documents. */
   private final LinkedHashSet<DocManager> _residentQueue;
   
@@ -124,10 +149,11 @@ public class DocumentCache {
     if (size <= 0) throw new IllegalArgumentException("Cannot set the cache size to zero or less.");
     synchronized(_cacheLock) {    // lock the cache so entries can be removed if necessary
       CACHE_SIZE = size;
+      if (_byteBudget > 0) return;
       int diff = _residentQueue.size() - CACHE_SIZE;
       if (diff > 0) {
         Iterable<DocManager> toRemove = IterUtil.snapshot(IterUtil.truncate(_residentQueue, diff));
-        for (DocManager dm : toRemove) { _residentQueue.remove(dm); dm.kickOut(); }
+        for (DocManager dm : toRemove) dm.remove();
       }
     }
   }
@@ -135,6 +161,66 @@ public class DocumentCache {
   public int getCacheSize() { return CACHE_SIZE; }
   public int getNumInCache() { return _residentQueue.size(); }
   
+  /** Switches the cache between count-bounded and byte-budgeted operation.  With a positive budget, the cache evicts
+    * the least recently added unmodified documents until the estimated footprint of the remaining ones fits within
+    * budget (the most recently added document is always retained) and CACHE_SIZE is ignored.  With a budget of 0, the
+    * cache reverts to holding at most CACHE_SIZE documents.
+    * @param budget the maximum number of bytes to be held by resident unmodified documents, or 0 for no byte budget
+    */
+  public void setByteBudget(long budget) {
+    if (budget < 0) throw new IllegalArgumentException("Cannot set the byte budget to less than zero.");
+    synchronized(_cacheLock) {
+      _byteBudget = budget;
+      for (DocManager dm : _residentQueue) dm.measure();
+      _evict(null);
+    }
+  }
+  
+  /** @return the byte budget, or 0 if the cache is bounded by document count */
+  public long getByteBudget() { return _byteBudget; }
+  
+  /** @return the estimated number of bytes held by the unmodified documents currently resident in the cache */
+  public long getResidentBytes() { return _residentBytes; }
+  
+  /** @return the number of documents reconstructed by this cache */
+  public int getReconstructCount() { return _reconstructCount; }
+  
+  /** @return the time in nanoseconds taken by the most recent reconstruction, or 0 if there has been none */
+  public long getLastReconstructNanos() { return _lastReconstructNanos; }
+  
+  /** @return the mean time in nanoseconds taken to reconstruct a document, or 0 if there has been none */
+  public long getMeanReconstructNanos() {
+    synchronized(_cacheLock) { return _reconstructCount == 0 ? 0 : _reconstructNanos / _reconstructCount; }
+  }
+  
+  /** @return an estimate of the number of bytes consumed by doc in memory
+    * @param doc the document to measure
+    */
+  static long estimateFootprint(DefinitionsDocument doc) {
+    return (long) BYTES_PER_CHAR * doc.getLength() + (long) BYTES_PER_LINE * doc.getDefaultRootElement().getElementCount()
+      + (long) BYTES_PER_TOKEN * doc.getReduced().getTokenCount();
+  }
+  
+  /** Evicts documents from the front of the resident queue until the queue satisfies the current bound.  Assumes 
+    * _cacheLock is already held.
+    * @param keep a manager that must not be evicted, or null
+    */
+  private void _evict(DocManager keep) {
+    if (_byteBudget > 0) {
+      if (_residentBytes <= _byteBudget) return;
+      for (DocManager dm : IterUtil.snapshot(_residentQueue)) {
+        if (_residentBytes <= _byteBudget || _residentQueue.size() <= 1) break;
+        if (dm != keep) dm.remove();
+      }
+    }
+    else {
+      int diff = _residentQueue.size() - CACHE_SIZE;
+      if (diff > 0) {
+        for (DocManager dm : IterUtil.snapshot(IterUtil.truncate(_residentQueue, diff))) dm.remove();
+      }
+    }
+  }
+  
   public String toString() { return _residentQueue.toString(); }
   
   
@@ -162,6 +248,8 @@ public class DocumentCache {
 
     private volatile int _stat; // I know, this is not very OO
     private volatile DefinitionsDocument _doc;
+    /** The footprint of _doc counted in _residentBytes while this manager is in the queue; 0 otherwise. */
+    private volatile long _footprint = 0;
     
     /** Instantiates a manager for the documents that are produced by the given document reconstructor.
      * @param rec The reconstructor used to create the document
@@ -184,8 +272,12 @@ public class DocumentCache {
      */
     private DefinitionsDocument makeDocument() {
       try { // _doc is not in memory
+        long start = System.nanoTime();
         _doc = _rec.make();
         assert _doc != null;
+        _lastReconstructNanos = System.nanoTime() - start;
+        _reconstructNanos += _lastReconstructNanos;
+        _reconstructCount++;
         // update documents if necessary
         if (_keywords != null) {  // copy cached keywords to new copy of doc
           _doc.setKeywords(_keywords); _keywords.clear(); _keywords = null;
@@ -195,7 +287,9 @@ public class DocumentCache {
       catch(BadLocationException e) { throw new UnexpectedException(e); }      
 //        Utilities.showDebug("Document " + _doc + " reconstructed; _stat = " + _stat);
 //      System.err.println("Making document for " + this);
-      if (_stat == NOT_IN_QUEUE) add();       // add this to queue 
+      // add this to queue; the reconstructor may already have queued it (via documentReset) before _doc was set, in
+      // which case add() remeasures it
+      if (_stat == NOT_IN_QUEUE || _stat == IN_QUEUE) add();
       return _doc;
     }
     
@@ -221,7 +315,7 @@ public class DocumentCache {
       * to be loaded. */
     public int getLength() {
       final DefinitionsDocument doc = _doc;  // create a snapshot of _doc
-      if (doc == null /* || ! doc.isModifiedSinceSave()*/) return _rec.getText().length();
+      if (doc == null /* || ! doc.isModifiedSinceSave()*/) return _rec.getLength();
       return doc.getLength();
     }
     
@@ -254,14 +348,14 @@ public class DocumentCache {
     public void close() {
 //      Utilities.showDebug("close() called on " + this);
       synchronized(_cacheLock) {
-        _residentQueue.remove(this);
+        dequeue();
         closingKickOut();
       }
     }
     
     public void documentModified() {
       synchronized(_cacheLock) { 
-        _residentQueue.remove(this); // remove modified document from queue if present
+        dequeue(); // remove modified document from queue if present
         _stat = UNMANAGED;
       }
     }
@@ -291,15 +385,32 @@ public class DocumentCache {
         _residentQueue.add(this);
         _stat = IN_QUEUE;
       }
-      if (_residentQueue.size() > CACHE_SIZE) IterUtil.first(_residentQueue).remove();
+      measure();  // the document may have changed since it was last measured
+      _evict(this);
+    }
+    
+    /** Updates the footprint of this manager, which must be in the queue.  Assumes _cacheLock is already held. */
+    private void measure() {
+      _residentBytes -= _footprint;
+      _footprint = (_byteBudget > 0 && _doc != null) ? estimateFootprint(_doc) : 0;
+      _residentBytes += _footprint;
     }
     
     /** Removes this DocManager from the queue and sets status to NOT_IN_QUEUE.  Assumes _cacheLock is already held. */
     private void remove() { 
-      _residentQueue.remove(this);
+      dequeue();
       kickOut();
     }
     
+    /** Removes this DocManager from the queue, if present, without changing its status.  Assumes _cacheLock is 
+      * already held. */
+    private void dequeue() {
+      if (_residentQueue.remove(this)) {
+        _residentBytes -= _footprint;
+        _footprint = 0;
+      }
+    }
+    
     /* All of the following private methods presume that _cacheLock is held */
     private boolean isUnmanagedOrUntitled() { return (_stat & 0x1) != 0; }  // tests if _stat is odd
     
@@ -322,6 +433,7 @@ public class DocumentCache {
         /* virtualize this document */
 //        Utilities.showDebug("Virtualizing " + _doc);
         _rec.saveDocInfo(_doc);
+        if (_byteBudget > 0) _rec.compressImage();
       }
       if (_doc != null) {
         _doc.close(); 
@@ -407,6 +407,67 @@ public class DocumentCacheTest extends DrJavaTestCase {
     assertEquals("There should be 4 documents in the cache", 4, _cache.getNumInCache());
   }
   
+  /** Tests that a byte budget bounds the resident documents by size rather than count and that virtualized documents
+    * are reconstructed intact from their compressed snapshots. */
+  public void testByteBudget() throws BadLocationException, IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 400; i++) sb.append("class C" + i + " { int f() { return " + i + "; } }\n");
+    String bigText = sb.toString();
+    String smallText = "class Small { }\n";
+    
+    File file1 = tempFile(1);
+    File file2 = tempFile(2);
+    File file3 = tempFile(3);
+    IOUtil.writeStringToFile(file1, bigText);
+    IOUtil.writeStringToFile(file2, smallText);
+    IOUtil.writeStringToFile(file3, smallText);
+    
+    OpenDefinitionsDocument doc1 = openFile(file1);
+    OpenDefinitionsDocument doc2 = openFile(file2);
+    OpenDefinitionsDocument doc3 = openFile(file3);
+    doc1.getCurrentLine();  // forces document to be read into memory
+    doc2.getCurrentLine();
+    doc3.getCurrentLine();
+    assertEquals("There should be 3 documents in the cache", 3, _cache.getNumInCache());
+    assertEquals("Count-bounded cache does not measure documents", 0, _cache.getResidentBytes());
+    
+    // A budget that cannot hold the big document forces it out but retains the two small ones
+    long smallFootprint = 2 * DocumentCache.BYTES_PER_CHAR * smallText.length() + 1024;
+    _cache.setByteBudget(smallFootprint * 2);
+    assertEquals("Wrong byte budget", smallFootprint * 2, _cache.getByteBudget());
+    assertFalse("Big document should be virtualized", _adapterTable.get(doc1).isReady());
+    assertTrue("Document 2 should be ready", _adapterTable.get(doc2).isReady());
+    assertTrue("Document 3 should be ready", _adapterTable.get(doc3).isReady());
+    assertEquals("There should be 2 documents in the cache", 2, _cache.getNumInCache());
+    assertTrue("Resident bytes should be within budget", _cache.getResidentBytes() <= _cache.getByteBudget());
+    assertTrue("Resident bytes should be measured", _cache.getResidentBytes() > 0);
+    
+    // The length of a virtualized document is available without reconstructing it
+    int reconstructed = _cache.getReconstructCount();
+    assertEquals("Wrong length for virtualized document", bigText.length(), doc1.getLength());
+    assertEquals("Length query should not reconstruct", reconstructed, _cache.getReconstructCount());
+    
+    // Deleting the file shows that reconstruction uses the in-memory snapshot rather than the disk
+    assertTrue("delete " + file1, file1.delete());
+    assertEquals("Wrong text for reconstructed document", bigText, doc1.getText());
+    doc1.getCurrentLine();  // forces document to be reconstructed
+    assertTrue("Document 1 should be ready", _adapterTable.get(doc1).isReady());
+    assertEquals("Wrong text for reconstructed document", bigText, doc1.getText());
+    assertEquals("Reconstruction should be counted", reconstructed + 1, _cache.getReconstructCount());
+    assertTrue("Reconstruction latency should be recorded", _cache.getLastReconstructNanos() > 0);
+    
+    // The most recently added document is retained even though it exceeds the budget
+    assertEquals("There should be 1 document in the cache", 1, _cache.getNumInCache());
+    assertFalse("Document 2 should be virtualized", _adapterTable.get(doc2).isReady());
+    
+    // Reverting to count-bounded operation
+    _cache.setByteBudget(0);
+    assertEquals("Count-bounded cache does not measure documents", 0, _cache.getResidentBytes());
+    doc2.getCurrentLine();
+    doc3.getCurrentLine();
+    assertEquals("There should be 3 documents in the cache", 3, _cache.getNumInCache());
+  }
+  
   
 //  private DefinitionsDocument _saved; // used for testReconstructor()
   
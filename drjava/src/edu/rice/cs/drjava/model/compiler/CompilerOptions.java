@@ -80,6 +80,11 @@ public class CompilerOptions implements OptionConstants {
     DrJava.getConfig().addOptionListener( OptionConstants.SHOW_FALLTHROUGH_WARNINGS, wol);    
   }
   
+  /** @return true if compilers should keep their state warm between compiles (see OptionConstants.WARM_COMPILER) */
+  public static boolean useWarmCompiler() {
+    return DrJava.getConfig().getSetting(WARM_COMPILER).booleanValue();
+  }
+  
   public static HashMap<String,String> getOptions(boolean warningsEnabled) {    
     HashMap<String,String> options = new HashMap<String,String>();
     if (warningsEnabled) {
@@ -99,6 +99,9 @@ public class DefaultCompilerModel implements CompilerModel {
     * numbers to .dj* line numbers when an error is thrown */
   public LanguageLevelStackTraceMapper _LLSTM;
   
+  /** The dependency graph of the last incremental build, or null if no incremental build has been done yet. */
+  private DependencyGraph _dependencyGraph = null;
+  
   /** Main constructor.  
     * @param m the GlobalModel that is the source of documents for this CompilerModel
     * @param compilers  The compilers to use.  The first will be made active; all are assumed
@@ -164,11 +167,12 @@ public class DefaultCompilerModel implements CompilerModel {
     * <p>This method formerly only compiled documents which were out of sync with their class file, as a performance 
     * optimization.  However, bug #634386 pointed out that unmodified files could depend on modified files, in which 
     * case this command would not recompile a file in some situations when it should.  Since we value correctness over
-    * performance, we now always compile all open documents.</p>
+    * performance, we now always compile all open documents.  If the INCREMENTAL_COMPILE option is set, only the
+    * documents that changed since the last build, and the documents that depend on them, are compiled.</p>
     * @throws IOException if a filesystem-related problem prevents compilation
     */
   public void compileAll() throws IOException {
-    if (_prepareForCompile()) { _doCompile(_model.getOpenDefinitionsDocuments()); }
+    if (_prepareForCompile()) { _doCompile(_model.getOpenDefinitionsDocuments(), true); }
     else _notifier.compileAborted(new UnexpectedException("Some modified open files are unsaved"));
   }
   
@@ -180,14 +184,15 @@ public class DefaultCompilerModel implements CompilerModel {
     * <p>This method formerly only compiled documents which were out of sync with their class file, as a performance 
     * optimization.  However, bug #634386 pointed out that unmodified files could depend on modified files, in which 
     * case this command would not recompile a file in some situations when it should.  Since we value correctness over
-    * performance, we now always compile all open documents.</p>
+    * performance, we now always compile all open documents.  If the INCREMENTAL_COMPILE option is set, only the
+    * documents that changed since the last build, and the documents that depend on them, are compiled.</p>
     * @throws IOException if a filesystem-related problem prevents compilation
     */
   public void compileProject() throws IOException {
     if (! _model.isProjectActive()) 
       throw new UnexpectedException("compileProject invoked when DrJava is not in project mode");
     
-    if (_prepareForCompile()) { _doCompile(_model.getProjectDocuments()); }
+    if (_prepareForCompile()) { _doCompile(_model.getProjectDocuments(), true); }
     else _notifier.compileAborted(new UnexpectedException("Project contains unsaved modified files"));
   }
   
@@ -203,7 +208,7 @@ public class DefaultCompilerModel implements CompilerModel {
     * @throws IOException if a filesystem-related problem prevents compilation
     */
   public void compile(List<OpenDefinitionsDocument> defDocs) throws IOException {
-    if (_prepareForCompile()) { _doCompile(defDocs); }
+    if (_prepareForCompile()) { _doCompile(defDocs, false); }
     else _notifier.compileAborted(new UnexpectedException("The files to be compiled include unsaved modified files"));
   }
   
@@ -219,7 +224,7 @@ public class DefaultCompilerModel implements CompilerModel {
     * @throws IOException if a filesystem-related problem prevents compilation
     */
   public void compile(OpenDefinitionsDocument doc) throws IOException {
-    if (_prepareForCompile()) { _doCompile(Arrays.asList(doc)); }
+    if (_prepareForCompile()) { _doCompile(Arrays.asList(doc), false); }
     else _notifier.compileAborted(new UnexpectedException(doc + "is modified but unsaved"));
   }
   
@@ -234,9 +239,10 @@ public class DefaultCompilerModel implements CompilerModel {
   
   /** Compile the given documents. 
     * @param docs the documents to be compiled
+    * @param incremental whether the build may skip documents that are unaffected by changes since the last build
     * @throws IOException if an IO operation fails
     */
-  private void _doCompile(List<OpenDefinitionsDocument> docs) throws IOException {
+  private void _doCompile(List<OpenDefinitionsDocument> docs, boolean incremental) throws IOException {
     _LLSTM.clearCache();
     final ArrayList<File> filesToCompile = new ArrayList<File>();
     final ArrayList<File> excludedFiles = new ArrayList<File>();
@@ -269,7 +275,7 @@ public class DefaultCompilerModel implements CompilerModel {
         if (buildDir != null && buildDir != FileOps.NULL_FILE && ! buildDir.exists() && ! buildDir.mkdirs())
           throw new IOException("Could not create build directory: " + buildDir);
         
-        _compileFiles(filesToCompile, buildDir);
+        _compileFiles(filesToCompile, buildDir, incremental);
       }
       catch (Throwable t) {
         DJError err = new DJError(t.toString(), false);
@@ -332,9 +338,11 @@ public class DefaultCompilerModel implements CompilerModel {
    * @param files The files to be compiled
    * @param buildDir The output directory for all the .class files; @code{null} 
    *        means output to the same directory as the source file
+   * @param incremental whether to compile only the files affected by changes since the last build (effective only 
+   *        if the INCREMENTAL_COMPILE option is set and no language level files are involved)
    * @throws IOException if an IO operation fails
    */
-  private void _compileFiles(List<File> files, File buildDir) throws IOException {
+  private void _compileFiles(List<File> files, File buildDir, boolean incremental) throws IOException {
     if (! files.isEmpty()) {
       /* Canonicalize buildDir */
       if (buildDir == FileOps.NULL_FILE) buildDir = null; // compiler interface wants null pointer if no build directory
@@ -349,6 +357,22 @@ public class DefaultCompilerModel implements CompilerModel {
       
       final LinkedList<DJError> errors = new LinkedList<DJError>();
       
+      DependencyGraph graph = null;
+      Map<File, long[]> stamps = null;
+      if (incremental && DrJava.getConfig().getSetting(OptionConstants.INCREMENTAL_COMPILE).booleanValue() &&
+          ! _containsLanguageLevelsFiles(files)) {
+        graph = _getDependencyGraph(buildDir, classPath, bootClassPath);
+        List<File> allFiles = files;
+        files = graph.filesToCompile(allFiles, buildDir);
+        _log.log("Incremental build compiles " + files.size() + " of " + allFiles.size() + " files");
+        if (files.isEmpty()) {
+          _distributeErrors(errors);
+          return;
+        }
+        stamps = DependencyGraph.takeStamps(files);
+      }
+      long buildStart = System.currentTimeMillis();
+      
       List<? extends File> preprocessedFiles = _compileLanguageLevelsFiles(files, errors, classPath, bootClassPath);
       
       System.out.println("Compiler is using classPath = '" + classPath + "';  bootClassPath = '" + bootClassPath + "'");
@@ -369,6 +393,7 @@ public class DefaultCompilerModel implements CompilerModel {
           }
         }
       }
+      if (graph != null) _updateDependencyGraph(graph, files, stamps, buildDir, buildStart, errors);
       _distributeErrors(errors);
     }
     else { 
@@ -377,6 +402,53 @@ public class DefaultCompilerModel implements CompilerModel {
     }
   }
   
+  /** @return true if any of files is a language levels file */
+  private static boolean _containsLanguageLevelsFiles(List<File> files) {
+    for (File f: files) { if (DrJavaFileUtils.isLLFile(f)) return true; }
+    return false;
+  }
+  
+  /** Returns the dependency graph for the current build configuration: the graph of the last build if it is still 
+    * valid, else the graph saved in the build directory, else an empty graph (which makes the build a full build).
+    * @param buildDir the canonical build directory, or null
+    * @param classPath the compilation class path
+    * @param bootClassPath the boot class path, or null
+    * @return the dependency graph to use
+    */
+  private DependencyGraph _getDependencyGraph(File buildDir, List<File> classPath, List<File> bootClassPath) {
+    String key = buildDir + File.pathSeparator + getActiveCompiler().getName() + File.pathSeparator + 
+      IOUtil.pathToString(classPath) + File.pathSeparator + 
+      (bootClassPath == null ? "" : IOUtil.pathToString(bootClassPath));
+    key = key.replace('\n', ' ');
+    DependencyGraph graph = _dependencyGraph;
+    if (graph != null && graph.getKey().equals(key)) return graph;
+    if (buildDir != null) graph = DependencyGraph.load(buildDir, key);
+    else graph = null;
+    if (graph == null) graph = new DependencyGraph(key);
+    _dependencyGraph = graph;
+    return graph;
+  }
+  
+  /** Records the outcome of an incremental build in graph and saves graph in the build directory.
+    * @param graph the dependency graph of the build
+    * @param compiled the files that were passed to the compiler
+    * @param stamps the stamps of compiled taken before the build
+    * @param buildDir the canonical build directory, or null
+    * @param buildStart the time at which the build started
+    * @param errors the errors and warnings reported by the build
+    */
+  private void _updateDependencyGraph(DependencyGraph graph, List<File> compiled, Map<File, long[]> stamps, 
+                                      File buildDir, long buildStart, List<DJError> errors) {
+    boolean failed = false;
+    for (DJError e: errors) { if (! e.isWarning()) { failed = true; break; } }
+    if (failed) graph.markStale(compiled);
+    else graph.recordBuild(compiled, stamps, buildDir, buildStart);
+    if (buildDir != null) {
+      try { graph.save(buildDir); }
+      catch(IOException e) { _log.log("Could not save dependency graph: " + e); }
+    }
+  }
+  
   /** Reorders files so that all file names containing "Test" are at the end.  
    * @param files the files to be sorted
    * @return the sorted list of files
@@ -0,0 +1,412 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.compiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.VersionedFile;
+
+/** A class-level dependency graph over the source files of a build, used to compile incrementally.  For each source
+  * file the graph records the size and modification time the file had when it was last compiled successfully, the
+  * classes it produced, and the classes those classes refer to (as read from the constant pools and member signatures
+  * of the class files).  Given a set of source files, filesToCompile returns the ones that changed since they were last
+  * compiled together with all of their transitive dependents.
+  * <p>
+  * Constants inlined by javac leave no trace in the referring class file, so a change that only affects the value of a
+  * compile-time constant is not propagated to the users of that constant unless they depend on the class in some
+  * other way.  A full build remains available for such cases.
+  * <p>
+  * The graph is persisted as a text file in the build directory.  It carries a key (built from the build directory,
+  * class path and compiler) and is discarded when the key no longer matches, in which case the caller falls back to a
+  * full build.
+  * @version $Id$
+  */
+public class DependencyGraph {
+  
+  /** for logging debug info */
+  private static final Log _log = new Log("DependencyGraph.txt", false);
+  
+  /** Name of the file holding the graph in the build directory. */
+  public static final String FILE_NAME = ".drjava-dependencies";
+  
+  /** The record of one source file. */
+  private static class SourceInfo {
+    /** Modification time of the source when last compiled successfully; -1 if it must be recompiled. */
+    long _lastModified = -1;
+    long _length = -1;
+    /** Binary names of the classes compiled from the source. */
+    final Set<String> _classes = new HashSet<String>();
+    /** Binary names of the classes referred to by _classes. */
+    final Set<String> _references = new HashSet<String>();
+  }
+  
+  private final String _key;
+  
+  /** Canonical source file to its record. */
+  private final HashMap<File, SourceInfo> _sources = new HashMap<File, SourceInfo>();
+  
+  /** Class name to referring source files; rebuilt lazily and discarded (set to null) whenever _sources changes. */
+  private HashMap<String, Set<File>> _referrers = null;
+  
+  /** Creates an empty graph.
+    * @param key identifies the build configuration for which the graph is valid
+    */
+  public DependencyGraph(String key) { _key = key; }
+  
+  /** @return the key identifying the build configuration for which this graph is valid */
+  public String getKey() { return _key; }
+  
+  /** @return the number of source files recorded in this graph */
+  public int size() { return _sources.size(); }
+  
+  /** Determines the files among files that must be compiled: those that are new or have changed (or whose class files
+    * have disappeared) since they were last compiled, and all files that depend on them directly or indirectly.  A
+    * recorded source that no longer exists counts as changed, so the files depending on it are recompiled.
+    * @param files the files requested for compilation
+    * @param outputDir the build directory, or null if class files are written next to their sources
+    * @return the subset of files that must be compiled, in the order of files
+    */
+  public List<File> filesToCompile(List<File> files, File outputDir) {
+    LinkedHashMap<File, File> requested = new LinkedHashMap<File, File>();  // canonical -> original
+    for (File f: files) requested.put(IOUtil.attemptCanonicalFile(f), f);
+    
+    Set<File> dirty = new HashSet<File>();
+    for (File f: requested.keySet()) {
+      SourceInfo info = _sources.get(f);
+      if (info == null || info._lastModified != f.lastModified() || info._length != f.length() ||
+          ! _classFilesExist(info, f, outputDir)) dirty.add(f);
+    }
+    for (File f: _sources.keySet()) {
+      if (! requested.containsKey(f) && ! f.exists()) dirty.add(f);
+    }
+    
+    // close dirty under the "is referred to by" relation
+    LinkedList<File> worklist = new LinkedList<File>(dirty);
+    while (! worklist.isEmpty()) {
+      SourceInfo info = _sources.get(worklist.removeFirst());
+      if (info == null) continue;
+      for (String c: info._classes) {
+        for (File r: _getReferrers(c)) { if (dirty.add(r)) worklist.add(r); }
+      }
+    }
+    
+    List<File> result = new ArrayList<File>();
+    for (Map.Entry<File, File> e: requested.entrySet()) { if (dirty.contains(e.getKey())) result.add(e.getValue()); }
+    _log.log("filesToCompile: " + result.size() + " of " + files.size() + " files");
+    return result;
+  }
+  
+  /** Takes the stamps of the given files.  Stamps taken before a build are passed to recordBuild so that a file edited
+    * while it is being compiled still counts as changed afterwards.
+    * @param files the source files to be compiled
+    * @return a map from the canonical form of each file to its modification time and length
+    */
+  public static Map<File, long[]> takeStamps(List<File> files) {
+    HashMap<File, long[]> stamps = new HashMap<File, long[]>();
+    for (File f: files) {
+      File canonical = IOUtil.attemptCanonicalFile(f);
+      stamps.put(canonical, new long[] { canonical.lastModified(), canonical.length() });
+    }
+    return stamps;
+  }
+  
+  /** Records the result of a successful build.  Scans the class files written since buildStart, attributes each one to
+    * the compiled source it came from, and replaces the records of the compiled sources.
+    * @param compiled the source files that were compiled
+    * @param stamps the stamps of compiled taken (by takeStamps) before the build
+    * @param outputDir the build directory, or null if class files are written next to their sources
+    * @param buildStart the time (as given by System.currentTimeMillis()) at which the build started
+    */
+  public void recordBuild(List<File> compiled, Map<File, long[]> stamps, File outputDir, long buildStart) {
+    HashMap<String, File> byPath = new HashMap<String, File>();  // path without extension -> canonical source
+    HashMap<File, SourceInfo> fresh = new HashMap<File, SourceInfo>();
+    Set<File> dirs = new LinkedHashSet<File>();
+    for (File f: compiled) {
+      File canonical = IOUtil.attemptCanonicalFile(f);
+      byPath.put(_stripExtension(canonical.getPath()), canonical);
+      fresh.put(canonical, new SourceInfo());
+      if (outputDir == null && canonical.getParentFile() != null) dirs.add(canonical.getParentFile());
+    }
+    
+    // File systems may round modification times to a couple of seconds
+    long since = buildStart - 2000;
+    List<File> classFiles = new ArrayList<File>();
+    if (outputDir != null) _collectClassFiles(outputDir, true, since, classFiles);
+    else for (File d: dirs) _collectClassFiles(d, false, since, classFiles);
+    
+    for (File cf: classFiles) {
+      try {
+        ClassInfo ci = readClassFile(IOUtil.toByteArray(cf));
+        if (ci.sourceFile == null) continue;
+        File source = _findSource(byPath, ci);
+        if (source == null) continue;
+        SourceInfo info = fresh.get(source);
+        info._classes.add(ci.name);
+        info._references.addAll(ci.references);
+      }
+      catch(IOException e) { _log.log("could not read " + cf + ": " + e); }
+      catch(RuntimeException e) { _log.log("could not parse " + cf + ": " + e); }  // malformed class file
+    }
+    
+    for (Map.Entry<File, SourceInfo> e: fresh.entrySet()) {
+      File f = e.getKey();
+      SourceInfo info = e.getValue();
+      info._references.removeAll(info._classes);
+      long[] stamp = stamps.get(f);
+      if (stamp != null) {
+        info._lastModified = stamp[0];
+        info._length = stamp[1];
+      }
+      _sources.put(f, info);
+    }
+    _referrers = null;
+  }
+  
+  /** Marks the given files as needing recompilation while retaining what is known about their classes, so that the
+    * files depending on them are recompiled along with them.  Used after a failed build.
+    * @param files the source files to mark
+    */
+  public void markStale(List<File> files) {
+    for (File f: files) {
+      SourceInfo info = _sources.get(IOUtil.attemptCanonicalFile(f));
+      if (info != null) info._lastModified = -1;
+    }
+  }
+  
+  /** Writes this graph to FILE_NAME in dir.
+    * @param dir the build directory
+    * @throws IOException if the file cannot be written
+    */
+  public void save(File dir) throws IOException { FILE.save(this, dir); }
+  
+  /** Reads the graph saved in dir.
+    * @param dir the build directory
+    * @param key the key of the current build configuration
+    * @return the saved graph, or null if there is none, it cannot be read, or it was saved for a different key
+    */
+  public static DependencyGraph load(File dir, String key) {
+    DependencyGraph g = FILE.load(dir);
+    return (g == null || ! g._key.equals(key)) ? null : g;
+  }
+  
+  /** The format of the file: a "K" line holding the key, then for each source file an "S" line with its stamps and
+    * path, followed by lines holding the classes it produced (C) and the classes they refer to (R).
+    */
+  private static final VersionedFile<DependencyGraph> FILE =
+    new VersionedFile<DependencyGraph>(FILE_NAME, "# DrJava dependency graph 1", _log) {
+    protected void write(DependencyGraph g, BufferedWriter w) throws IOException {
+      w.write("K " + g._key); w.newLine();
+      for (Map.Entry<File, SourceInfo> e: g._sources.entrySet()) {
+        SourceInfo info = e.getValue();
+        w.write("S " + info._lastModified + " " + info._length + " " + e.getKey().getPath()); w.newLine();
+        for (String c: info._classes) { w.write("C " + c); w.newLine(); }
+        for (String r: info._references) { w.write("R " + r); w.newLine(); }
+      }
+    }
+    protected DependencyGraph read(BufferedReader r) throws IOException {
+      String keyLine = r.readLine();
+      if (keyLine == null || ! keyLine.startsWith("K ")) return null;
+      DependencyGraph g = new DependencyGraph(keyLine.substring(2));
+      SourceInfo info = null;
+      String line;
+      while ((line = r.readLine()) != null) {
+        if (line.startsWith("S ")) {
+          int i = line.indexOf(' ', 2);
+          int j = line.indexOf(' ', i + 1);
+          info = new SourceInfo();
+          info._lastModified = Long.parseLong(line.substring(2, i));
+          info._length = Long.parseLong(line.substring(i + 1, j));
+          g._sources.put(new File(line.substring(j + 1)), info);
+        }
+        else if (info != null && line.startsWith("C ")) info._classes.add(line.substring(2));
+        else if (info != null && line.startsWith("R ")) info._references.add(line.substring(2));
+        else return null;
+      }
+      return g;
+    }
+  };
+  
+  /** The information extracted from one class file. */
+  static class ClassInfo {
+    /** Binary name of the class, e.g. "p.A$B". */
+    String name;
+    /** The SourceFile attribute, e.g. "A.java", or null if absent. */
+    String sourceFile;
+    /** Binary names of the classes and interfaces mentioned in the class file. */
+    final Set<String> references = new HashSet<String>();
+  }
+  
+  /** Reads the name, source file name and referenced classes of a class file.
+    * @param bytes the contents of the class file
+    * @return the extracted information
+    */
+  static ClassInfo readClassFile(byte[] bytes) {
+    final ClassInfo ci = new ClassInfo();
+    final ClassReader reader = new ClassReader(bytes);
+    char[] buf = new char[reader.getMaxStringLength()];
+    
+    // Class and NameAndType entries of the constant pool cover every class used in code, including supertypes
+    for (int i = 1; i < reader.getItemCount(); i++) {
+      int index = reader.getItem(i);
+      if (index == 0) continue;  // second slot of a long or double
+      switch(reader.b[index - 1]) {
+        case 7:   // CONSTANT_Class
+          _addInternalName(reader.readUTF8(index, buf), ci.references); break;
+        case 12:  // CONSTANT_NameAndType
+          _addDescriptor(reader.readUTF8(index + 2, buf), ci.references); break;
+        case 16:  // CONSTANT_MethodType
+          _addDescriptor(reader.readUTF8(index, buf), ci.references); break;
+        default:
+      }
+    }
+    
+    // Member signatures are not necessarily in the constant pool as NameAndType entries
+    reader.accept(new ClassVisitor(Opcodes.ASM5) {
+      public void visit(int version, int access, String name, String sig, String sup, String[] inters) {
+        ci.name = name.replace('/', '.');
+      }
+      public void visitSource(String source, String debug) { ci.sourceFile = source; }
+      public FieldVisitor visitField(int a, String n, String d, String s, Object v) {
+        _addDescriptor(d, ci.references);
+        return null;
+      }
+      public MethodVisitor visitMethod(int a, String n, String d, String s, String[] e) {
+        _addDescriptor(d, ci.references);
+        if (e != null) for (String x: e) _addInternalName(x, ci.references);
+        return null;
+      }
+    }, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+    
+    ci.references.remove(ci.name);
+    return ci;
+  }
+  
+  /** Adds the class named by an internal name or array descriptor (as found in CONSTANT_Class entries). */
+  private static void _addInternalName(String name, Set<String> result) {
+    if (name.startsWith("[")) _addDescriptor(name, result);
+    else result.add(name.replace('/', '.'));
+  }
+  
+  /** Adds the classes mentioned in a field or method descriptor. */
+  private static void _addDescriptor(String desc, Set<String> result) {
+    if (desc.startsWith("(")) {
+      for (Type t: Type.getArgumentTypes(desc)) _addType(t, result);
+      _addType(Type.getReturnType(desc), result);
+    }
+    else _addType(Type.getType(desc), result);
+  }
+  
+  private static void _addType(Type t, Set<String> result) {
+    if (t.getSort() == Type.ARRAY) t = t.getElementType();
+    if (t.getSort() == Type.OBJECT) result.add(t.getClassName());
+  }
+  
+  /** @return the compiled source whose path, minus its extension, is the class's package directory followed by the
+    * class's source file name, minus its extension; falls back to a unique source with the right name. */
+  private static File _findSource(HashMap<String, File> byPath, ClassInfo ci) {
+    String base = _stripExtension(ci.sourceFile);
+    int dot = ci.name.lastIndexOf('.');
+    String suffix = (dot < 0 ? "" : ci.name.substring(0, dot).replace('.', File.separatorChar) + File.separator) + base;
+    File match = null;
+    for (Map.Entry<String, File> e: byPath.entrySet()) {
+      String p = e.getKey();
+      if (p.endsWith(File.separator + suffix)) return e.getValue();
+      if (p.endsWith(File.separator + base)) {
+        if (match != null) return null;  // ambiguous
+        match = e.getValue();
+      }
+    }
+    return match;
+  }
+  
+  private static String _stripExtension(String path) {
+    int dot = path.lastIndexOf('.');
+    int sep = path.lastIndexOf(File.separatorChar);
+    return (dot > sep) ? path.substring(0, dot) : path;
+  }
+  
+  /** Adds the class files in dir (and its subdirectories if recursive) modified at or after since to result. */
+  private static void _collectClassFiles(File dir, boolean recursive, long since, List<File> result) {
+    File[] children = dir.listFiles();
+    if (children == null) return;
+    for (File f: children) {
+      if (f.isDirectory()) { if (recursive) _collectClassFiles(f, true, since, result); }
+      else if (f.getName().endsWith(".class") && f.lastModified() >= since) result.add(f);
+    }
+  }
+  
+  /** @return true if the class files recorded for source are present (checks only top-level classes) */
+  private static boolean _classFilesExist(SourceInfo info, File source, File outputDir) {
+    for (String c: info._classes) {
+      if (c.indexOf('$') >= 0) continue;
+      String rel = c.replace('.', File.separatorChar) + ".class";
+      File cf = (outputDir != null) ? new File(outputDir, rel) 
+        : new File(source.getParentFile(), c.substring(c.lastIndexOf('.') + 1) + ".class");
+      if (! cf.exists()) return false;
+    }
+    return true;
+  }
+  
+  /** @return the recorded sources whose classes refer to the class named c */
+  private Set<File> _getReferrers(String c) {
+    if (_referrers == null) {
+      _referrers = new HashMap<String, Set<File>>();
+      for (Map.Entry<File, SourceInfo> e: _sources.entrySet()) {
+        for (String r: e.getValue()._references) {
+          Set<File> s = _referrers.get(r);
+          if (s == null) { s = new HashSet<File>(); _referrers.put(r, s); }
+          s.add(e.getKey());
+        }
+      }
+    }
+    Set<File> s = _referrers.get(c);
+    return (s == null) ? Collections.<File>emptySet() : s;
+  }
+}
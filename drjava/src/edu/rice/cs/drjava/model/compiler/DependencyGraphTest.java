@@ -0,0 +1,170 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.compiler;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/** Tests the dependency graph used for incremental compilation.
+  * @version $Id$
+  */
+public final class DependencyGraphTest extends DrJavaTestCase {
+  
+  private File _tempDir;
+  private File _srcDir;
+  private File _outDir;
+  private File _a, _b, _c, _d;
+  private List<File> _all;
+  
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    _srcDir = new File(_tempDir, "src");
+    _outDir = new File(_tempDir, "classes");
+    assertTrue(new File(_srcDir, "p").mkdirs());
+    assertTrue(_outDir.mkdirs());
+    _a = _write("A", "package p; public class A { public int f() { return 1; } }");
+    _b = _write("B", "package p; public class B { A a; class Inner { } }");
+    _c = _write("C", "package p; public class C extends B { }");
+    _d = _write("D", "package p; public class D { }");
+    _all = Arrays.asList(_a, _b, _c, _d);
+  }
+  
+  public void tearDown() throws Exception {
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+  
+  private File _write(String name, String text) throws IOException {
+    File f = new File(new File(_srcDir, "p"), name + ".java");
+    IOUtil.writeStringToFile(f, text);
+    return f;
+  }
+  
+  /** Compiles files into _outDir and records the build in g. */
+  private void _build(DependencyGraph g, List<File> files) {
+    Map<File, long[]> stamps = DependencyGraph.takeStamps(files);
+    long start = System.currentTimeMillis();
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    String[] args = new String[files.size() + 4];
+    args[0] = "-d"; args[1] = _outDir.getPath(); args[2] = "-classpath"; args[3] = _outDir.getPath();
+    for (int i = 0; i < files.size(); i++) args[i + 4] = files.get(i).getPath();
+    assertEquals("compilation failed", 0, javac.run(null, null, null, args));
+    g.recordBuild(files, stamps, _outDir, start);
+  }
+  
+  /** Simulates an edit by rewriting f with a later time stamp. */
+  private void _touch(File f, String text) throws IOException {
+    long old = f.lastModified();
+    IOUtil.writeStringToFile(f, text);
+    f.setLastModified(old + 10000);
+  }
+  
+  public void testReadClassFile() throws IOException {
+    _build(new DependencyGraph("k"), _all);
+    DependencyGraph.ClassInfo b = DependencyGraph.readClassFile(IOUtil.toByteArray(new File(_outDir, "p/B.class")));
+    assertEquals("p.B", b.name);
+    assertEquals("B.java", b.sourceFile);
+    assertTrue("field type should be a reference", b.references.contains("p.A"));
+    assertFalse("class should not refer to itself", b.references.contains("p.B"));
+    DependencyGraph.ClassInfo c = DependencyGraph.readClassFile(IOUtil.toByteArray(new File(_outDir, "p/C.class")));
+    assertTrue("superclass should be a reference", c.references.contains("p.B"));
+  }
+  
+  public void testFullBuildWithoutGraph() {
+    DependencyGraph g = new DependencyGraph("k");
+    assertEquals("empty graph compiles everything", _all, g.filesToCompile(_all, _outDir));
+  }
+  
+  public void testChangePropagatesToTransitiveDependents() throws IOException {
+    DependencyGraph g = new DependencyGraph("k");
+    _build(g, _all);
+    assertEquals("nothing changed", 0, g.filesToCompile(_all, _outDir).size());
+    
+    _touch(_a, "package p; public class A { public int f() { return 2; } }");
+    assertEquals("A changed; B refers to A and C extends B", Arrays.asList(_a, _b, _c), g.filesToCompile(_all, _outDir));
+    _build(g, g.filesToCompile(_all, _outDir));
+    assertEquals("nothing changed", 0, g.filesToCompile(_all, _outDir).size());
+    
+    _touch(_d, "package p; public class D { int x; }");
+    assertEquals("nothing depends on D", Arrays.asList(_d), g.filesToCompile(_all, _outDir));
+  }
+  
+  public void testMissingClassFileAndStaleMark() {
+    DependencyGraph g = new DependencyGraph("k");
+    _build(g, _all);
+    assertTrue(new File(_outDir, "p/C.class").delete());
+    assertEquals("C lost its class file", Arrays.asList(_c), g.filesToCompile(_all, _outDir));
+    _build(g, Arrays.asList(_c));
+    
+    g.markStale(Arrays.asList(_b));
+    assertEquals("B marked stale; C extends B", Arrays.asList(_b, _c), g.filesToCompile(_all, _outDir));
+  }
+  
+  public void testDeletedSourceRecompilesDependents() {
+    DependencyGraph g = new DependencyGraph("k");
+    _build(g, _all);
+    assertTrue(_a.delete());
+    List<File> rest = Arrays.asList(_b, _c, _d);
+    assertEquals("B and C depend on the deleted A", Arrays.asList(_b, _c), g.filesToCompile(rest, _outDir));
+  }
+  
+  public void testSaveAndLoad() throws IOException {
+    DependencyGraph g = new DependencyGraph("k");
+    _build(g, _all);
+    g.save(_outDir);
+    assertNull("key mismatch means no graph", DependencyGraph.load(_outDir, "other"));
+    DependencyGraph h = DependencyGraph.load(_outDir, "k");
+    assertNotNull(h);
+    assertEquals(4, h.size());
+    assertEquals("nothing changed", 0, h.filesToCompile(_all, _outDir).size());
+    _touch(_b, "package p; public class B { A a; int y; }");
+    assertEquals(new HashSet<File>(Arrays.asList(_b, _c)), new HashSet<File>(h.filesToCompile(_all, _outDir)));
+    
+    IOUtil.writeStringToFile(new File(_outDir, DependencyGraph.FILE_NAME), "garbage");
+    assertNull("unreadable graph means no graph", DependencyGraph.load(_outDir, "k"));
+  }
+}
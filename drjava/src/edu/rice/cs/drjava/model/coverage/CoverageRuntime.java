@@ -0,0 +1,61 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.coverage;
+
+import org.jacoco.core.runtime.LoggerRuntime;
+
+/** A JaCoCo LoggerRuntime whose instrumented classes report to every CoverageRuntime, not only the one they were
+  * instrumented for.  LoggerRuntime writes a key into instrumented classes that it derives from its hash code, which
+  * normally differs from instance to instance; here it is a constant.  This is what allows the
+  * {@link InstrumentedClassCache} to reuse instrumented classes in later coverage runs.  Only one CoverageRuntime
+  * should be started at a time.
+  * <p>
+  * This class is compiled against the JaCoCo core jar, where LoggerRuntime implements
+  * {@code generateDataAccessor(long, String, int, org.objectweb.asm.MethodVisitor)}.  lib/jacocoant.jar bundles its own
+  * copy of the JaCoCo core classes with ASM repackaged as {@code org.jacoco.asm}; if it precedes the core jar on the
+  * runtime class path, instrumentation calls {@code generateDataAccessor(..., org.jacoco.asm.MethodVisitor)} and fails
+  * with an AbstractMethodError.  jacocoant.jar is only meant for the Ant task definitions and must be kept off the class
+  * path of DrJava and its tests.
+  * @version $Id$
+  */
+public class CoverageRuntime extends LoggerRuntime {
+  
+  /** The hash code of all CoverageRuntimes.  Changing it invalidates all cached classes. */
+  private static final int HASH_CODE = 0xd12a7a;
+  
+  public int hashCode() { return HASH_CODE; }
+}
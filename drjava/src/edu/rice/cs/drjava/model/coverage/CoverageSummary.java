@@ -0,0 +1,119 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.coverage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+
+/** The coverage status of each line of a set of classes, in a compact form that can be computed as soon as the
+  * coverage data has been analyzed (long before an HTML report is complete) and sent to the main JVM, so that the
+  * editor can shade covered and uncovered lines.
+  * @version $Id$
+  */
+public class CoverageSummary implements Serializable {
+  
+  private static final long serialVersionUID = 5633534083084237610L;
+  
+  /** The status of each line (one of the ICounter status constants), indexed by line number, by class name.  Lines
+    * past the end of an array contain no code.
+    */
+  private final HashMap<String, byte[]> _lineStatus = new HashMap<String, byte[]>();
+  
+  /** @param classes the coverage data of the classes */
+  public CoverageSummary(Collection<IClassCoverage> classes) {
+    for (IClassCoverage cc : classes) {
+      int last = cc.getLastLine();  // ISourceNode.UNKNOWN_LINE (-1) for classes without line numbers
+      byte[] status = new byte[last + 1];
+      for (int i = Math.max(cc.getFirstLine(), 0); i <= last; i++) status[i] = (byte) cc.getLine(i).getStatus();
+      _lineStatus.put(cc.getName(), status);
+    }
+  }
+  
+  /** @return the (internal, slash-separated) names of the summarized classes */
+  public Set<String> getClassNames() { return Collections.unmodifiableSet(_lineStatus.keySet()); }
+  
+  /** @param className the internal name of a class
+    * @param line a line number
+    * @return the status of the line, one of ICounter.EMPTY, NOT_COVERED, PARTLY_COVERED and FULLY_COVERED
+    */
+  public int getLineStatus(String className, int line) {
+    byte[] status = _lineStatus.get(className);
+    if (status == null || line < 0 || line >= status.length) return ICounter.EMPTY;
+    return status[line];
+  }
+  
+  /** Converts the input coverage status into the output color.
+    * @param status the status of the line (how well it was covered)
+    * @return a color corresponding to the amount of coverage
+    */
+  public static String getColor(int status) {
+    switch (status) {
+      case ICounter.NOT_COVERED: return "red";
+      case ICounter.PARTLY_COVERED: return "yellow";
+      case ICounter.FULLY_COVERED: return "green";
+      default: return ""; /* this line contains no code, so don't color it */
+    }
+  }
+  
+  /** @param className the internal name of a class
+    * @return a list of colors, where the i-th element in the list corresponds to the i-th line of code; empty if
+    *         the class is not summarized
+    */
+  public List<String> getLineColors(String className) {
+    byte[] status = _lineStatus.get(className);
+    if (status == null) return new ArrayList<String>();
+    List<String> colors = new ArrayList<String>(status.length);
+    for (byte s : status) colors.add(getColor(s));
+    return colors;
+  }
+  
+  /** @return a mapping of class names to the line colors for that class */
+  public Map<String, List<String>> getLineColors() {
+    Map<String, List<String>> allLineColors = new HashMap<String, List<String>>();
+    for (String className : _lineStatus.keySet()) allLineColors.put(className, getLineColors(className));
+    return allLineColors;
+  }
+}
@@ -0,0 +1,195 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.coverage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.UnexpectedException;
+
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.instr.Instrumenter;
+
+/** A store of classes instrumented for code coverage.  Instrumented classes are kept on disk, each in a file named
+  * after the class that begins with the SHA-1 hash of the original class file, so they are reused by later coverage
+  * runs (even in another JVM) until the class is recompiled.  Classes that will be needed can be instrumented in
+  * parallel ahead of time by {@link #prefetch}.  The instrumenter must use a {@link CoverageRuntime}, whose generated
+  * code does not depend on the runtime instance.
+  * @version $Id$
+  */
+public class InstrumentedClassCache {
+  
+  private static final Log _log = new Log("JUnitTestManager.txt", false);
+  
+  /** The name of the cache directory created in the build directory. */
+  public static final String CACHE_DIR_NAME = ".drjava-coverage";
+  
+  /** The length of the hash at the start of each cached file. */
+  private static final int HASH_LENGTH = 20;
+  
+  /** The cache directory, or null if instrumented classes are not kept on disk. */
+  private final File _dir;
+  private final Instrumenter _instrumenter;
+  
+  /** Instrumentation started by prefetch, by class name.  Entries are removed when they are used. */
+  private final Map<String, Future<byte[]>> _pending = new ConcurrentHashMap<String, Future<byte[]>>();
+  
+  /** Whether _dir is known to exist. */
+  private volatile boolean _dirCreated = false;
+  
+  /** The threads running prefetch tasks, or null if prefetch has not been called. */
+  private ExecutorService _workers = null;
+  
+  /** @param buildDir the build directory, in which the cache directory is created, or null to keep nothing on disk
+    * @param instrumenter the instrumenter used for classes that are not in the cache
+    */
+  public InstrumentedClassCache(File buildDir, Instrumenter instrumenter) {
+    _dir = (buildDir == null) ? null : new File(new File(buildDir, CACHE_DIR_NAME), "jacoco-" + JaCoCo.VERSION);
+    _instrumenter = instrumenter;
+  }
+  
+  /** Returns the instrumented version of a class, from the cache if the class file has not changed since it was
+    * stored.
+    * @param className the name of the class
+    * @param classFile the class file
+    * @return the instrumented class file contents
+    * @throws IOException if the class file cannot be read or instrumented
+    */
+  public byte[] getInstrumented(String className, File classFile) throws IOException {
+    Future<byte[]> f = _pending.remove(className);
+    if (f != null) {
+      try { return f.get(); }
+      catch (InterruptedException e) { throw new UnexpectedException(e); }
+      catch (ExecutionException e) { _log.log("Prefetching " + className + " failed", e.getCause()); }
+    }
+    return _instrument(className, classFile);
+  }
+  
+  /** Starts instrumenting the given classes in parallel, in background threads, unless they are in the cache.
+    * @param classFiles the class files of the classes, by class name
+    */
+  public synchronized void prefetch(Map<String, File> classFiles) {
+    if (_workers == null) {
+      _workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Coverage Instrumenter");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    for (final Map.Entry<String, File> e : classFiles.entrySet()) {
+      if (_pending.containsKey(e.getKey())) continue;
+      _pending.put(e.getKey(), _workers.submit(new Callable<byte[]>() {
+        public byte[] call() throws IOException { return _instrument(e.getKey(), e.getValue()); }
+      }));
+    }
+  }
+  
+  /** Stops the prefetch threads; classes not yet instrumented are instrumented on demand. */
+  public synchronized void dispose() {
+    if (_workers != null) _workers.shutdownNow();
+    _workers = null;
+    _pending.clear();
+  }
+  
+  /** Reads a class file and returns its instrumented version, from the cache file of the class if its hash matches,
+    * and otherwise from the instrumenter (storing the result in the cache).  May run in any thread. */
+  private byte[] _instrument(String className, File classFile) throws IOException {
+    byte[] original = IOUtil.toByteArray(classFile);
+    if (_dir == null) return _instrumenter.instrument(original, className);
+    
+    byte[] hash = _hash(original);
+    // not named .class, since other code looks for class files anywhere in the build directory
+    File cacheFile = new File(_dir, className + ".instrumented");
+    if (cacheFile.isFile()) {
+      try {
+        byte[] cached = IOUtil.toByteArray(cacheFile);
+        if (cached.length > HASH_LENGTH && Arrays.equals(hash, Arrays.copyOf(cached, HASH_LENGTH))) {
+          _log.log("Using cached instrumentation of " + className);
+          return Arrays.copyOfRange(cached, HASH_LENGTH, cached.length);
+        }
+      }
+      catch (IOException e) { _log.log("Cannot read " + cacheFile, e); }
+    }
+    
+    byte[] result = _instrumenter.instrument(original, className);
+    _store(cacheFile, hash, result);
+    return result;
+  }
+  
+  /** Writes a cache file.  The file is written under another name and then renamed, so that readers never see a
+    * partially written file.  Failures are logged and otherwise ignored, since the cache is only an optimization. */
+  private void _store(File cacheFile, byte[] hash, byte[] instrumented) {
+    if (! _dirCreated) _dirCreated = _dir.mkdirs() || _dir.isDirectory();
+    // only this thread writes to this file, and no other process should use the same cache at the same time
+    File temp = new File(_dir, cacheFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        out.write(hash);
+        out.write(instrumented);
+      }
+      finally { out.close(); }
+      if (IOUtil.attemptMove(temp, cacheFile)) temp = null;
+      else _log.log("Cannot rename " + temp + " to " + cacheFile);
+    }
+    catch (IOException e) { _log.log("Cannot write " + cacheFile, e); }
+    finally { if (temp != null && temp.exists()) IOUtil.attemptDelete(temp); }
+  }
+  
+  /** @return the SHA-1 hash of the given bytes */
+  private static byte[] _hash(byte[] bytes) {
+    try { return MessageDigest.getInstance("SHA-1").digest(bytes); }
+    catch (NoSuchAlgorithmException e) { throw new UnexpectedException(e); }
+  }
+}
@@ -0,0 +1,219 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.coverage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.RuntimeData;
+
+/** Tests the {@link InstrumentedClassCache} and its use by the {@link JacocoClassLoader}.  {@link #main} compares
+  * the time taken to instrument a directory of classes one at a time, in parallel, and from the cache.
+  * @version $Id$
+  */
+public final class InstrumentedClassCacheTest extends DrJavaTestCase {
+  
+  /** The class instrumented by the tests. */
+  public static class Target implements Runnable {
+    public void run() { System.getProperty("user.dir"); }
+  }
+  
+  /** Another class, standing in for a recompiled version of Target. */
+  public static class Target2 implements Runnable {
+    public void run() { }
+  }
+  
+  private static final String TARGET = Target.class.getName();
+  
+  private File _tempDir;
+  private File _binDir;
+  private File _buildDir;
+  private File _targetFile;
+  
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    _binDir = new File(_tempDir, "bin");
+    _buildDir = new File(_tempDir, "build");
+    _targetFile = new File(_binDir, TARGET.replace('.', '/') + ".class");
+    _targetFile.getParentFile().mkdirs();
+    _write(_targetFile, _classBytes(Target.class));
+  }
+  
+  public void tearDown() throws Exception {
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+  
+  private static byte[] _classBytes(Class<?> c) throws IOException {
+    String name = c.getName();
+    return IOUtil.toByteArray(c.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class"));
+  }
+  
+  private static void _write(File f, byte[] bytes) throws IOException {
+    OutputStream out = new FileOutputStream(f);
+    try { out.write(bytes); }
+    finally { out.close(); }
+  }
+  
+  /** Classes instrumented for different CoverageRuntimes must be identical, or cached classes could not be reused. */
+  public void testStableInstrumentation() throws IOException {
+    byte[] original = _classBytes(Target.class);
+    assertTrue("same instrumentation",
+               Arrays.equals(new Instrumenter(new CoverageRuntime()).instrument(original, TARGET),
+                             new Instrumenter(new CoverageRuntime()).instrument(original, TARGET)));
+  }
+  
+  /** Cached classes are reused by later caches, until the class file changes. */
+  public void testReuseAndInvalidation() throws IOException {
+    Instrumenter instrumenter = new Instrumenter(new CoverageRuntime());
+    byte[] instrumented = new InstrumentedClassCache(_buildDir, instrumenter).getInstrumented(TARGET, _targetFile);
+    assertTrue("instrumented", Arrays.equals(instrumenter.instrument(_classBytes(Target.class), TARGET),
+                                             instrumented));
+    File cacheDir = new File(_buildDir, InstrumentedClassCache.CACHE_DIR_NAME);
+    assertTrue("cache directory created", cacheDir.isDirectory());
+    
+    // a cached class is not instrumented again
+    Instrumenter failing = new Instrumenter(new CoverageRuntime()) {
+      public byte[] instrument(byte[] buffer, String name) throws IOException { throw new IOException("not cached"); }
+    };
+    byte[] cached = new InstrumentedClassCache(_buildDir, failing).getInstrumented(TARGET, _targetFile);
+    assertTrue("from cache", Arrays.equals(instrumented, cached));
+    
+    // a changed class is
+    byte[] recompiled = _classBytes(Target2.class);
+    _write(_targetFile, recompiled);
+    byte[] reinstrumented = new InstrumentedClassCache(_buildDir, instrumenter).getInstrumented(TARGET, _targetFile);
+    assertTrue("changed class instrumented again",
+               Arrays.equals(instrumenter.instrument(recompiled, TARGET), reinstrumented));
+    cached = new InstrumentedClassCache(_buildDir, failing).getInstrumented(TARGET, _targetFile);
+    assertTrue("new version cached", Arrays.equals(reinstrumented, cached));
+  }
+  
+  /** Classes loaded from the cache (here, after prefetching) report their coverage to a new runtime. */
+  public void testCoverageFromCache() throws Exception {
+    new InstrumentedClassCache(_buildDir, new Instrumenter(new CoverageRuntime())).getInstrumented(TARGET, _targetFile);
+    
+    CoverageRuntime runtime = new CoverageRuntime();
+    RuntimeData data = new RuntimeData();
+    runtime.startup(data);
+    InstrumentedClassCache cache = new InstrumentedClassCache(_buildDir, new Instrumenter(runtime));
+    try {
+      JacocoClassLoader loader = new JacocoClassLoader(Arrays.asList(_binDir), cache, getClass().getClassLoader());
+      loader.prefetch(Arrays.asList(TARGET));
+      Class<?> c = loader.loadClass(TARGET);
+      assertNotSame("loaded by the JacocoClassLoader", Target.class, c);
+      ((Runnable) c.getDeclaredConstructor().newInstance()).run();
+      
+      ExecutionDataStore executionData = new ExecutionDataStore();
+      data.collect(executionData, new SessionInfoStore(), false);
+      boolean covered = false;
+      for (ExecutionData d : executionData.getContents()) {
+        if (d.getName().equals(TARGET.replace('.', '/'))) {
+          for (boolean probe : d.getProbes()) covered |= probe;
+        }
+      }
+      assertTrue("execution data collected", covered);
+    }
+    finally {
+      runtime.shutdown();
+      cache.dispose();
+    }
+  }
+  
+  /** Compares the time taken to instrument all classes in a directory (by default classes/base) one at a time, as
+    * the JacocoClassLoader used to, with a prefetching cache that is cold and then warm.
+    * @param args optionally, the directory of classes
+    */
+  public static void main(String[] args) throws Exception {
+    File binDir = new File((args.length > 0) ? args[0] : "classes/base");
+    List<String> classNames = new ArrayList<String>();
+    _findClasses(binDir, "", classNames);
+    File buildDir = IOUtil.createAndMarkTempDirectory("DrJava-bench", "");
+    System.out.println(classNames.size() + " classes in " + binDir);
+    
+    for (int round = 0; round < 3; ++round) {
+      Instrumenter instrumenter = new Instrumenter(new CoverageRuntime());
+      long start = System.currentTimeMillis();
+      for (String name : classNames) {
+        instrumenter.instrument(IOUtil.toByteArray(new File(binDir, name.replace('.', '/') + ".class")), name);
+      }
+      long plainTime = System.currentTimeMillis() - start;
+      
+      IOUtil.deleteRecursively(new File(buildDir, InstrumentedClassCache.CACHE_DIR_NAME));
+      long coldTime = _loadAll(binDir, buildDir, classNames);
+      long warmTime = _loadAll(binDir, buildDir, classNames);
+      System.out.println("  one at a time: " + plainTime + "ms; cold cache: " + coldTime + "ms; warm cache: " +
+                         warmTime + "ms");
+    }
+    IOUtil.deleteRecursively(buildDir);
+  }
+  
+  /** Gets the instrumented versions of all the classes from a new prefetching cache.
+    * @return the time taken in milliseconds */
+  private static long _loadAll(File binDir, File buildDir, List<String> classNames) throws IOException {
+    long start = System.currentTimeMillis();
+    InstrumentedClassCache cache = new InstrumentedClassCache(buildDir, new Instrumenter(new CoverageRuntime()));
+    JacocoClassLoader loader = new JacocoClassLoader(Arrays.asList(binDir), cache, null);
+    loader.prefetch(classNames);
+    for (String name : classNames) cache.getInstrumented(name, loader.findBinaryFile(name));
+    cache.dispose();
+    return System.currentTimeMillis() - start;
+  }
+  
+  private static void _findClasses(File dir, String prefix, List<String> result) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File f : files) {
+      String name = f.getName();
+      if (f.isDirectory()) _findClasses(f, prefix + name + ".", result);
+      else if (name.endsWith(".class")) result.add(prefix + name.substring(0, name.length() - ".class".length()));
+    }
+  }
+}
@@ -55,8 +55,9 @@ import java.io.File;
 import java.io.IOException;
 
 import java.lang.ClassLoader;
+import java.util.HashMap;
+import java.util.Map;
 
-import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.util.Log;
 import edu.rice.cs.util.FileOps;
 import edu.rice.cs.util.IterableOps;
@@ -64,7 +65,8 @@ import edu.rice.cs.util.UnexpectedException;
 
 import org.jacoco.core.instr.Instrumenter;
 
-/** A class loader that instruments classes for code coverage.
+/** A class loader that instruments classes for code coverage.  The instrumented classes come from an
+  * {@link InstrumentedClassCache}.
   * @version $Id$
   */
 public class JacocoClassLoader extends ClassLoader {
@@ -72,17 +74,52 @@ public class JacocoClassLoader extends ClassLoader {
   private static final Log _log = new Log("JUnitTestManager.txt", false);
   
   private final File[] _binaryDirectories; 
-  private final Instrumenter _instrumenter; 
+  private final InstrumentedClassCache _cache; 
   
+  /** Creates a loader that instruments every class it loads, keeping nothing on disk. */
   public JacocoClassLoader(Iterable<File> binaryDirectories, Instrumenter instrumenter, ClassLoader parent) { 
+    this(binaryDirectories, new InstrumentedClassCache(null, instrumenter), parent);
+  } 
+  
+  public JacocoClassLoader(Iterable<File> binaryDirectories, InstrumentedClassCache cache, ClassLoader parent) { 
     super(parent); 
     
     _binaryDirectories = IterableOps.toArray(binaryDirectories, File.class); 
-    _instrumenter = instrumenter; 
+    _cache = cache; 
     
     _log.log("JaCoCoClassLoader has been created"); 
   } 
   
+  /** Starts instrumenting the given classes, and the classes nested in them, in the background, so that they are
+    * ready (or in the cache) when they are loaded.
+    * @param classNames the names of the top-level classes
+    */
+  public void prefetch(Iterable<String> classNames) {
+    Map<String, File> classFiles = new HashMap<String, File>();
+    Map<File, File[]> listings = new HashMap<File, File[]>();
+    for (String className : classNames) {
+      File classFile = findBinaryFile(className);
+      if (classFile == null) continue;
+      classFiles.put(className, classFile);
+      // nested and anonymous classes are compiled to files named Outer$Inner.class next to Outer.class
+      final String prefix = classFile.getName().substring(0, classFile.getName().length() - ".class".length()) + "$";
+      File[] nested = listings.get(classFile.getParentFile());
+      if (nested == null) {
+        nested = classFile.getParentFile().listFiles();
+        if (nested == null) continue;
+        listings.put(classFile.getParentFile(), nested);
+      }
+      String packagePrefix = className.substring(0, className.length() - prefix.length() + 1);
+      for (File f : nested) {
+        String name = f.getName();
+        if (name.startsWith(prefix) && name.endsWith(".class")) {
+          classFiles.put(packagePrefix + name.substring(0, name.length() - ".class".length()), f);
+        }
+      }
+    }
+    _cache.prefetch(classFiles);
+  }
+  
   @Override 
   protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException { 
     
@@ -100,7 +137,7 @@ public class JacocoClassLoader extends ClassLoader {
       if (classFile != null) {
         _log.log("Found the class file " + classFile + " for the class " + className);
         _log.log("Instrumenting and defining class: " + className); 
-        final byte[] instrumentedBytes = _instrumenter.instrument(IOUtil.toByteArray(classFile), className); 
+        final byte[] instrumentedBytes = _cache.getInstrumented(className, classFile); 
         final Class<?> definedClass = defineClass(className, instrumentedBytes, 0, instrumentedBytes.length);
         _log.log("Returning instrumented class " + className);
         return definedClass;
@@ -11,27 +11,70 @@ package edu.rice.cs.drjava.model.coverage;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.Locale;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.UnexpectedException;
+
+import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
 import org.jacoco.core.analysis.IClassCoverage;
-import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ICoverageNode;
+import org.jacoco.core.analysis.ICoverageVisitor;
+import org.jacoco.core.analysis.IPackageCoverage;
+import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.internal.data.CRC64;
 
 import org.jacoco.report.DirectorySourceFileLocator;
 import org.jacoco.report.FileMultiReportOutput;
-import org.jacoco.report.IReportVisitor;
+import org.jacoco.report.ILanguageNames;
+import org.jacoco.report.IMultiReportOutput;
+import org.jacoco.report.ISourceFileLocator;
 import org.jacoco.report.html.HTMLFormatter;
+import org.jacoco.report.internal.ReportOutputFolder;
+import org.jacoco.report.internal.html.IHTMLReportContext;
+import org.jacoco.report.internal.html.ILinkable;
+import org.jacoco.report.internal.html.index.ElementIndex;
+import org.jacoco.report.internal.html.index.IIndexUpdate;
+import org.jacoco.report.internal.html.page.PackagePage;
+import org.jacoco.report.internal.html.page.SessionsPage;
+import org.jacoco.report.internal.html.page.TablePage;
+import org.jacoco.report.internal.html.resources.Resources;
+import org.jacoco.report.internal.html.table.Table;
 
 /** This example creates a HTML report for eclipse like projects based on a single execution data store called 
   * jacoco.exec. The report contains no grouping information. The class files under test must be compiled with debug 
   * information, otherwise source highlighting will not work.
+  * 
+  * A ReportGenerator may be kept between coverage runs: {@link #analyze} then only analyzes the classes whose class
+  * files or execution data changed since the previous run, and {@link #createReport} only renders the pages of the
+  * packages containing such classes.  The pages of different packages are rendered in parallel.
+  * 
+  * Rendering single pages relies on classes that JaCoCo does not publish as API: the pages, index and resources in
+  * org.jacoco.report.internal.html (PackagePage, SessionsPage, TablePage, ElementIndex, Resources) are subclassed or
+  * wired together here as HTMLFormatter does in JaCoCo 0.7.7, the version in lib.  Upgrading JaCoCo requires checking
+  * the inner classes of this class against the new version of those classes.
   */
 public class ReportGenerator {
   
@@ -41,6 +84,21 @@ public class ReportGenerator {
   /* The output directory in which to place the report */
   private final String reportDirectoryPath;
   
+  /* The analysis of each class by the last call to analyze, by class name */
+  private Map<String, ClassAnalysis> analyzedClasses = new HashMap<String, ClassAnalysis>();
+  
+  /* The number of classes actually analyzed (rather than reused) by the last call to analyze */
+  private int analyzedClassCount = 0;
+  
+  /* The packages in the report directory, by folder name, as of the last call to createReport */
+  private Map<String, RenderedPackage> renderedPackages = new HashMap<String, RenderedPackage>();
+  
+  /* The number of package pages actually rendered by the last call to createReport */
+  private int renderedPackageCount = 0;
+  
+  /* The source directory of the last report */
+  private File lastSourceDirectory = null;
+  
   /** Simple constructor for a ReportGenerator; initializes fields based on input parameters. 
     * @param reportDirectoryPath output directory in which to place the report
     * @param coverageBuilder object which builds the coverage report
@@ -50,9 +108,97 @@ public class ReportGenerator {
     this.coverageBuilder = coverageBuilder;
   }
   
+  /** Creates a ReportGenerator for coverage data that will be computed by {@link #analyze}.
+    * @param reportDirectoryPath output directory in which to place the report
+    */
+  public ReportGenerator(String reportDirectoryPath) { this(reportDirectoryPath, new CoverageBuilder()); }
+  
+  /** @return the output directory in which the report is placed */
+  public String getReportDirectoryPath() { return this.reportDirectoryPath; }
+  
+  /** Computes the coverage of the given classes, which replaces the coverage data of this generator.  Classes are
+    * analyzed in parallel; the analysis of a class by the previous call is reused if neither its class file nor its
+    * execution data have changed since.
+    * @param classNames the names of the classes
+    * @param classFiles the loader from which the class files are read
+    * @param executionData execution data
+    * @return the builder holding the coverage of the classes
+    * @throws IOException if a class file cannot be read or analyzed
+    */
+  public CoverageBuilder analyze(Collection<String> classNames, final ClassLoader classFiles, 
+                                 final ExecutionDataStore executionData) throws IOException {
+    
+    Map<String, Future<ClassAnalysis>> pending = new LinkedHashMap<String, Future<ClassAnalysis>>();
+    ExecutorService workers = newWorkers("Coverage Analyzer");
+    try {
+      for (final String name : classNames) {
+        final ClassAnalysis previous = this.analyzedClasses.get(name);
+        pending.put(name, workers.submit(new Callable<ClassAnalysis>() {
+          public ClassAnalysis call() throws IOException { return analyzeClass(name, classFiles, executionData, previous); }
+        }));
+      }
+      
+      Map<String, ClassAnalysis> analyzed = new HashMap<String, ClassAnalysis>();
+      CoverageBuilder builder = new CoverageBuilder();
+      int count = 0;
+      for (Map.Entry<String, Future<ClassAnalysis>> e : pending.entrySet()) {
+        ClassAnalysis a = getResult(e.getValue());
+        if (a != this.analyzedClasses.get(e.getKey())) count++;
+        analyzed.put(e.getKey(), a);
+        if (a.coverage != null) builder.visitCoverage(a.coverage);
+      }
+      
+      this.analyzedClasses = analyzed;
+      this.analyzedClassCount = count;
+      this.coverageBuilder = builder;
+      return builder;
+    }
+    finally { workers.shutdownNow(); }
+  }
+  
+  /** Analyzes one class, unless its class file and execution data are those of the previous analysis.  May run in any
+    * thread.
+    * @param name the name of the class
+    * @param classFiles the loader from which the class file is read
+    * @param executionData execution data
+    * @param previous the previous analysis of the class, or null
+    * @return the analysis of the class
+    * @throws IOException if the class file cannot be read or analyzed
+    */
+  private static ClassAnalysis analyzeClass(String name, ClassLoader classFiles, ExecutionDataStore executionData,
+                                            ClassAnalysis previous) throws IOException {
+    InputStream is = classFiles.getResourceAsStream(name.replace('.', '/') + ".class");
+    if (is == null) throw new IOException("Class file for " + name + " not found");
+    byte[] bytes;
+    try { bytes = IOUtil.toByteArray(is); }
+    finally { is.close(); }
+    
+    /* JaCoCo identifies classes (and their execution data) by this checksum */
+    long id = CRC64.checksum(bytes);
+    ExecutionData data = executionData.get(id);
+    boolean[] probes = (data == null) ? null : data.getProbes();
+    if (previous != null && previous.id == id && Arrays.equals(previous.probes, probes)) return previous;
+    
+    final IClassCoverage[] coverage = new IClassCoverage[1];
+    new Analyzer(executionData, new ICoverageVisitor() {
+      public void visitCoverage(IClassCoverage cc) { coverage[0] = cc; }
+    }).analyzeClass(bytes, name);
+    return new ClassAnalysis(id, (probes == null) ? null : probes.clone(), coverage[0]);
+  }
+  
+  /** @return the number of classes actually analyzed, rather than reused, by the last call to analyze */
+  int getAnalyzedClassCount() { return this.analyzedClassCount; }
+  
+  /** @return the number of package pages actually rendered, rather than kept, by the last call to createReport */
+  int getRenderedPackageCount() { return this.renderedPackageCount; }
+  
+  /** @return the line coverage of all classes, which is available before (and without) a report */
+  public CoverageSummary getSummary() { return new CoverageSummary(this.coverageBuilder.getClasses()); }
+  
   /** Given the coverage/execution information for the project rooted in the  input sourceDirectory, generates the 
     * coverage report for that project.  Does not return anything; instead, creates a tree of HTML files rooted
-    * in this.reportDirectoryPath containing the coverage results.
+    * in this.reportDirectoryPath containing the coverage results.  The pages of packages whose classes have the
+    * same coverage as in the last report are not written again.
     * @param bundleCoverage coverage data
     * @param executionData execution data
     * @param sessionInfos session data
@@ -63,54 +209,65 @@ public class ReportGenerator {
   public void createReport(final IBundleCoverage bundleCoverage, ExecutionDataStore executionData, 
                            SessionInfoStore sessionInfos, File sourceDirectory) throws IOException {
     
-    /* Create a concrete report visitor using the default configuration. */
-    final HTMLFormatter htmlFormatter = new HTMLFormatter();
-    final IReportVisitor visitor = htmlFormatter.
-      createVisitor(new FileMultiReportOutput(new File(this.reportDirectoryPath)));
+    /* Pages of the previous report can only be kept if it is still there, and shows the same sources */
+    File reportDirectory = new File(this.reportDirectoryPath);
+    if (! sourceDirectory.equals(this.lastSourceDirectory) || ! new File(reportDirectory, "index.html").exists()) {
+      this.renderedPackages.clear();
+    }
+    this.lastSourceDirectory = sourceDirectory;
     
-    /* Initialize the report with all of the execution and session information. At this point the report doesn't yet 
-     * have any structure.
-     */
-    visitor.visitInfo(sessionInfos.getInfos(), executionData.getContents());
+    /* Set up the report as an HTMLFormatter would, but with a context that packages can share between threads. */
+    final IMultiReportOutput output = new FileMultiReportOutput(reportDirectory);
+    final ReportOutputFolder root = new ReportOutputFolder(output);
+    final Resources resources = new SharedResources(root);
+    resources.copyResources();
+    final ElementIndex index = new ElementIndex(root);
+    final ReportContext context = new ReportContext(root, resources, index);
+    final BundlePage bundlePage = new BundlePage(bundleCoverage, root, context);
+    final SessionsPage sessionsPage =
+      new SessionsPage(sessionInfos.getInfos(), executionData.getContents(), index, bundlePage, root, context);
+    context.sessionsPage = sessionsPage;
     
-    /* Populate the report structure with the bundle coverage information. Call visitGroup if you need groups in your
-     * report.
-     */
-    visitor.visitBundle(bundleCoverage, new DirectorySourceFileLocator(sourceDirectory, "utf-8", 4));
+    /* Links to pages in the root folder are computed by all threads; register their names in this one. */
+    bundlePage.getLink(root);
+    sessionsPage.getLink(root);
     
-    /* Signal end of structure information to allow report to write all information out. */
-    visitor.visitEnd();
-  }
-  
-  /** Converts the input coverage status into the output color.
-    * @param status the status of the line (how well it was covered)
-    * @return a color corresponding to the amount of coverage
-    */
-  private String getColor(final int status) {
-    
-    switch (status) {
-      case ICounter.NOT_COVERED: return "red";
-      case ICounter.PARTLY_COVERED: return "yellow";
-      case ICounter.FULLY_COVERED: return "green";
-      default: return ""; /* this line contains no code, so don't color it */
+    final ISourceFileLocator locator = new DirectorySourceFileLocator(sourceDirectory, "utf-8", 4);
+    final Map<String, RenderedPackage> rendered = new HashMap<String, RenderedPackage>();
+    final List<Future<?>> pending = new ArrayList<Future<?>>();
+    ExecutorService workers = newWorkers("Coverage Report Writer");
+    try {
+      for (IPackageCoverage p : bundleCoverage.getPackages()) {
+        final String name = (p.getName().length() == 0) ? "default" : p.getName().replace('/', '.');
+        final ReportContext packageContext = context.forPackage();
+        final PackagePage page = new PackagePage(p, bundlePage, locator, root.subFolder(name), packageContext);
+        bundlePage.addItem(page);
+        
+        final Set<IClassCoverage> classes = Collections.newSetFromMap(new IdentityHashMap<IClassCoverage, Boolean>());
+        classes.addAll(p.getClasses());
+        final RenderedPackage previous = this.renderedPackages.get(name);
+        if (previous != null && previous.classes.equals(classes)) {
+          /* The coverage of these classes was not recomputed, so their pages are up to date. */
+          for (Map.Entry<Long, String> e : previous.classLinks.entrySet()) context.addClassLink(e.getKey(), e.getValue());
+          rendered.put(name, previous);
+        }
+        else {
+          pending.add(workers.submit(new Callable<Void>() {
+            public Void call() throws IOException { page.render(); return null; }
+          }));
+          rendered.put(name, new RenderedPackage(classes, packageContext.classLinks));
+        }
+      }
+      for (Future<?> f : pending) getResult(f);
     }
-  }
-  
-  /** Help function which takes coverage data for a particular class and returns a corresponding list of line colors.
-    * @param cc the IClassCoverage object from which to get line colors
-    * @return a list of colors, where the i-th element in the list corresponds to the i-th line of code
-    */
-  private ArrayList<String> getLineColorsForClassHelper(IClassCoverage cc) {
-    
-    ArrayList<String> lineColors = new ArrayList<String>();
+    finally { workers.shutdownNow(); }
     
-    /* Begin by assigning no color to all of the lines before the first actual line of code.  */
-    for (int i = 0; i < cc.getFirstLine(); i++) lineColors.add("");               
+    bundlePage.render();
+    sessionsPage.render();
+    output.close();
     
-    /* Next, get the color of the lines after the first code line. */
-    for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) lineColors.add(getColor(cc.getLine(i).getStatus()));
-    
-    return lineColors;
+    this.renderedPackages = rendered;
+    this.renderedPackageCount = pending.size();
   }
   
   /** Given a class name, determines the color of each line in that class according to coverage results.
@@ -118,34 +275,131 @@ public class ReportGenerator {
     * @return a list of colors, where the i-th element in the list corresponds to the i-th line of code
     */
   public ArrayList<String> getLineColorsForClass(String className) {
-    
-    /* Initialize it to empty, in case the className is invalid */ 
-    ArrayList<String> lineColors = new ArrayList<String>();
-    
-    /* Search for the requested class */
-    for (final IClassCoverage cc : this.coverageBuilder.getClasses()) {
-      
-      /* Found the class! Get the color of each line. */
-      if (cc.getName().equals(className)) {
-        lineColors = getLineColorsForClassHelper(cc);
-        break;
-      }
-    }
-    
-    return lineColors;
+    return new ArrayList<String>(getSummary().getLineColors(className));
   }
   
   /** Given a list of classes, determines the color of each line in each class (based on coverage results).
     * @return a mapping of class names to the line colors for that class
     */
-  public Map<String, List<String>> getAllLineColors() {
+  public Map<String, List<String>> getAllLineColors() { return getSummary().getLineColors(); }
+  
+  /** @param name the name of the threads
+    * @return a pool of daemon threads, one per processor
+    */
+  private static ExecutorService newWorkers(final String name) {
+    return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+  
+  /** Waits for a task of a worker thread, and rethrows its exception, if any.
+    * @param f the result of the task
+    * @return the value of the task
+    * @throws IOException if the task threw one
+    */
+  private static <T> T getResult(Future<T> f) throws IOException {
+    try { return f.get(); }
+    catch (InterruptedException e) { throw new UnexpectedException(e); }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new UnexpectedException(cause);
+    }
+  }
+  
+  /** The analysis of a class file with some execution data. */
+  private static final class ClassAnalysis {
+    final long id;
+    final boolean[] probes;  // null if there was no execution data
+    final IClassCoverage coverage;  // null if the class contains no code
+    ClassAnalysis(long id, boolean[] probes, IClassCoverage coverage) {
+      this.id = id;
+      this.probes = probes;
+      this.coverage = coverage;
+    }
+  }
+  
+  /** The classes shown by the pages of a package in the report directory, and the links to their pages. */
+  private static final class RenderedPackage {
+    final Set<IClassCoverage> classes;  // identity set, since the coverage of changed classes is recomputed
+    final Map<Long, String> classLinks;
+    RenderedPackage(Set<IClassCoverage> classes, Map<Long, String> classLinks) {
+      this.classes = classes;
+      this.classLinks = classLinks;
+    }
+  }
+  
+  /** The root page of the report; renders like JaCoCo's BundlePage, but leaves the package pages to the caller. */
+  private static final class BundlePage extends TablePage<ICoverageNode> {
+    BundlePage(IBundleCoverage bundle, ReportOutputFolder folder, IHTMLReportContext context) {
+      super(bundle.getPlainCopy(), null, folder, context);
+    }
+    protected String getOnload() { return "initialSort(['breadcrumb', 'coveragetable'])"; }
+    protected String getFileName() { return "index.html"; }
+  }
+  
+  /** Report resources whose links may be computed by several threads. */
+  private static final class SharedResources extends Resources {
+    SharedResources(ReportOutputFolder root) { super(root); }
+    public synchronized String getLink(ReportOutputFolder base, String name) { return super.getLink(base, name); }
+  }
+  
+  /** The context of the pages of a report, with the default settings of an HTMLFormatter.  The pages of each package
+    * use their own copy (see forPackage), which records the links to the class pages of the package, so that they can
+    * be added to the index of later reports without rendering the package again.
+    */
+  private static final class ReportContext implements IHTMLReportContext {
+    private final HTMLFormatter defaults = new HTMLFormatter();  // tables keep state while rendering; not shared
+    private final ReportOutputFolder root;
+    private final Resources resources;
+    private final ElementIndex index;
+    private final Map<Long, String> classLinks = new HashMap<Long, String>();
+    private ILinkable sessionsPage;
+    
+    ReportContext(ReportOutputFolder root, Resources resources, ElementIndex index) {
+      this.root = root;
+      this.resources = resources;
+      this.index = index;
+    }
     
-    Map<String, List<String>> allLineColors = new HashMap<String, List<String>>();
+    ReportContext forPackage() {
+      ReportContext result = new ReportContext(root, resources, index);
+      result.sessionsPage = sessionsPage;
+      return result;
+    }
+    
+    /** Adds a link to the page of a class that was rendered by an earlier report. */
+    void addClassLink(long classId, final String link) {
+      synchronized(index) {
+        index.addClass(new ILinkable() {
+          public String getLink(ReportOutputFolder base) { return link; }  // base is the root
+          public String getLinkLabel() { return null; }
+          public String getLinkStyle() { return null; }
+        }, classId);
+      }
+    }
     
-    for (final IClassCoverage cc : this.coverageBuilder.getClasses()) {
-      allLineColors.put(cc.getName(), this.getLineColorsForClassHelper(cc));
+    public IIndexUpdate getIndexUpdate() {
+      return new IIndexUpdate() {
+        public void addClass(ILinkable link, long classId) {
+          classLinks.put(classId, link.getLink(root));
+          synchronized(index) { index.addClass(link, classId); }
+        }
+      };
     }
     
-    return allLineColors;
+    public Resources getResources() { return resources; }
+    public ILanguageNames getLanguageNames() { return defaults.getLanguageNames(); }
+    public Table getTable() { return defaults.getTable(); }
+    public String getFooterText() { return defaults.getFooterText(); }
+    public ILinkable getSessionsPage() { return sessionsPage; }
+    public String getOutputEncoding() { return defaults.getOutputEncoding(); }
+    public Locale getLocale() { return defaults.getLocale(); }
   }
 }
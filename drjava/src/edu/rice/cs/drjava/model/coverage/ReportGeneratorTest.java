@@ -0,0 +1,221 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.RuntimeData;
+
+/** Tests the incremental analysis and report generation of the {@link ReportGenerator}.  {@link #main} compares the
+  * time taken to analyze a build directory and write its report from scratch with the time taken after a rerun that
+  * changed the coverage of one class.
+  * @version $Id$
+  */
+public final class ReportGeneratorTest extends DrJavaTestCase {
+  
+  /** The class covered by the tests. */
+  public static class Target implements Runnable {
+    public void run() { System.getProperty("user.dir"); }
+  }
+  
+  private static final String TARGET = Target.class.getName();
+  /** A class in another package, which the tests never run. */
+  private static final String OTHER = edu.rice.cs.util.Log.class.getName();
+  
+  private File _tempDir;
+  private String _reportDir;
+  
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    _reportDir = new File(_tempDir, "report").getPath();
+  }
+  
+  public void tearDown() throws Exception {
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+  
+  /** @return the execution data of a run of an instrumented copy of Target */
+  private static ExecutionDataStore _runTarget() throws Exception {
+    CoverageRuntime runtime = new CoverageRuntime();
+    RuntimeData data = new RuntimeData();
+    runtime.startup(data);
+    try {
+      File testClasses = new File(ReportGeneratorTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      JacocoClassLoader loader = new JacocoClassLoader(Arrays.asList(testClasses), new Instrumenter(runtime),
+                                                       ReportGeneratorTest.class.getClassLoader());
+      ((Runnable) loader.loadClass(TARGET).getDeclaredConstructor().newInstance()).run();
+      ExecutionDataStore executionData = new ExecutionDataStore();
+      data.collect(executionData, new SessionInfoStore(), false);
+      return executionData;
+    }
+    finally { runtime.shutdown(); }
+  }
+  
+  /** @return the number of lines of a class with the given status */
+  private static int _count(CoverageSummary summary, String className, int status) {
+    int count = 0;
+    for (int i = 0; i < 1000; i++) if (summary.getLineStatus(className.replace('.', '/'), i) == status) count++;
+    return count;
+  }
+  
+  /** Only classes with new execution data are analyzed again, and the result matches a new analysis. */
+  public void testIncrementalAnalysis() throws Exception {
+    ClassLoader classFiles = getClass().getClassLoader();
+    List<String> classNames = Arrays.asList(TARGET, OTHER);
+    ReportGenerator rg = new ReportGenerator(_reportDir);
+    
+    rg.analyze(classNames, classFiles, new ExecutionDataStore());
+    assertEquals("all classes analyzed", 2, rg.getAnalyzedClassCount());
+    CoverageSummary summary = rg.getSummary();
+    assertEquals("summarized classes", 2, summary.getClassNames().size());
+    assertTrue("target not covered", _count(summary, TARGET, ICounter.NOT_COVERED) > 0);
+    assertEquals("target not covered", 0, _count(summary, TARGET, ICounter.FULLY_COVERED));
+    
+    rg.analyze(classNames, classFiles, new ExecutionDataStore());
+    assertEquals("nothing changed", 0, rg.getAnalyzedClassCount());
+    
+    ExecutionDataStore executionData = _runTarget();
+    rg.analyze(classNames, classFiles, executionData);
+    assertEquals("target analyzed again", 1, rg.getAnalyzedClassCount());
+    summary = rg.getSummary();
+    assertTrue("target covered", _count(summary, TARGET, ICounter.FULLY_COVERED) > 0);
+    assertEquals("other class not covered", 0, _count(summary, OTHER, ICounter.FULLY_COVERED));
+    
+    ReportGenerator fresh = new ReportGenerator(_reportDir);
+    fresh.analyze(classNames, classFiles, executionData);
+    assertEquals("same line colors as a new analysis", fresh.getAllLineColors(), rg.getAllLineColors());
+    String target = TARGET.replace('.', '/');
+    assertEquals("line colors of one class", summary.getLineColors(target), rg.getLineColorsForClass(target));
+  }
+  
+  /** Only the pages of packages whose coverage changed are written again, and the index still links to the others. */
+  public void testIncrementalReport() throws Exception {
+    ClassLoader classFiles = getClass().getClassLoader();
+    List<String> classNames = Arrays.asList(TARGET, OTHER);
+    ReportGenerator rg = new ReportGenerator(_reportDir);
+    ExecutionDataStore executionData = _runTarget();
+    
+    rg.createReport(rg.analyze(classNames, classFiles, executionData).getBundle("Test"), executionData,
+                    new SessionInfoStore(), _tempDir);
+    assertEquals("all packages rendered", 2, rg.getRenderedPackageCount());
+    File packageIndex = new File(new File(_reportDir, Target.class.getPackage().getName()), "index.html");
+    assertTrue("package page written", packageIndex.isFile());
+    File sessions = new File(_reportDir, "jacoco-sessions.html");
+    String classLink = Target.class.getPackage().getName() + "/ReportGeneratorTest$Target.html";
+    assertTrue("link to class page", IOUtil.toString(sessions).contains(classLink));
+    
+    IOUtil.writeStringToFile(packageIndex, "unchanged");
+    rg.createReport(rg.analyze(classNames, classFiles, executionData).getBundle("Test"), executionData,
+                    new SessionInfoStore(), _tempDir);
+    assertEquals("no packages rendered", 0, rg.getRenderedPackageCount());
+    assertEquals("package page kept", "unchanged", IOUtil.toString(packageIndex));
+    assertTrue("report index written", new File(_reportDir, "index.html").isFile());
+    assertTrue("link to kept class page", IOUtil.toString(sessions).contains(classLink));
+    
+    ExecutionDataStore noData = new ExecutionDataStore();
+    rg.createReport(rg.analyze(classNames, classFiles, noData).getBundle("Test"), noData, new SessionInfoStore(),
+                    _tempDir);
+    assertEquals("changed package rendered", 1, rg.getRenderedPackageCount());
+    assertFalse("package page rewritten", IOUtil.toString(packageIndex).equals("unchanged"));
+    
+    rg.createReport(rg.analyze(classNames, classFiles, noData).getBundle("Test"), noData, new SessionInfoStore(),
+                    new File(_tempDir, "src"));
+    assertEquals("all packages rendered for other sources", 2, rg.getRenderedPackageCount());
+  }
+  
+  /** Compares the time taken by a complete analysis and report with that of an incremental one.
+    * @param args the build directory to analyze (classes/base by default), and the directory in which the
+    *             test classes were compiled (classes/test by default) */
+  public static void main(String[] args) throws Exception {
+    File binDir = new File((args.length > 0) ? args[0] : "classes/base");
+    File testDir = new File((args.length > 1) ? args[1] : "classes/test");
+    List<String> classNames = new ArrayList<String>();
+    _findClasses(binDir, "", classNames);
+    classNames.add(TARGET);
+    ClassLoader classFiles = new URLClassLoader(new URL[] { binDir.toURI().toURL(), testDir.toURI().toURL() }, null);
+    File tempDir = IOUtil.createAndMarkTempDirectory("DrJava-bench", "");
+    System.out.println(classNames.size() + " classes in " + binDir);
+    
+    ExecutionDataStore noData = new ExecutionDataStore();
+    ExecutionDataStore rerun = _runTarget();
+    for (int round = 0; round < 3; ++round) {
+      String reportDir = new File(tempDir, "report" + round).getPath();
+      ReportGenerator rg = new ReportGenerator(reportDir);
+      long full = _generate(rg, classNames, classFiles, noData, tempDir);
+      long incremental = _generate(rg, classNames, classFiles, rerun, tempDir);
+      long fresh = _generate(new ReportGenerator(reportDir), classNames, classFiles, rerun, tempDir);
+      System.out.println("  complete: " + full + "ms; after a rerun: " + incremental + "ms incremental, " + fresh +
+                         "ms from scratch");
+    }
+    IOUtil.deleteRecursively(tempDir);
+  }
+  
+  /** Analyzes the classes and writes their report.
+    * @return the time taken in milliseconds */
+  private static long _generate(ReportGenerator rg, List<String> classNames, ClassLoader classFiles,
+                                ExecutionDataStore executionData, File sourceDir) throws IOException {
+    long start = System.currentTimeMillis();
+    rg.createReport(rg.analyze(classNames, classFiles, executionData).getBundle("Benchmark"), executionData,
+                    new SessionInfoStore(), sourceDir);
+    return System.currentTimeMillis() - start;
+  }
+  
+  private static void _findClasses(File dir, String prefix, List<String> result) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File f : files) {
+      String name = f.getName();
+      if (f.isDirectory()) _findClasses(f, prefix + name + ".", result);
+      else if (name.endsWith(".class")) result.add(prefix + name.substring(0, name.length() - ".class".length()));
+    }
+  }
+}
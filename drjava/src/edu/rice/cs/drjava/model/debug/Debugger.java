@@ -113,6 +113,11 @@ public interface Debugger {
    */
   public void step(StepType type) throws DebugException;
   
+  /** @return the time in milliseconds from the most recent step request until the thread was suspended again and its
+   * variables were available, or -1 if no step has completed since the thread was last resumed
+   */
+  public long getLastStepLatency();
+  
   /** Adds a watch on the given field or variable.
    * @param field the name of the field we will watch
    * @throws DebugException if an error occurs 
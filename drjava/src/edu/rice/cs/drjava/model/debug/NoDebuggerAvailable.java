@@ -99,6 +99,8 @@ public class NoDebuggerAvailable implements Debugger {
    */
   public void step(StepType type) throws DebugException { }
   
+  public long getLastStepLatency() { return -1; }
+  
   /** Called from interactionsEnded in MainFrame in order to clear any current 
    * StepRequests that remain. 
    */
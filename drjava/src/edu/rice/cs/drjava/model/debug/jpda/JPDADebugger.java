@@ -40,6 +40,8 @@ import java.awt.EventQueue;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.TreeMap;
@@ -99,11 +101,17 @@ public class JPDADebugger implements Debugger {
     "(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Class;" +
     "[Ljava/lang/Object;[Ljava/lang/String;[Ljava/lang/Class;)V";
   
-  /** Signature of the InterpreterJVM.getVariableValue method.
-    * @see edu.rice.cs.drjava.model.repl.newjvm.InterpreterJVM#getVariableValue
+  /** Signature of the InterpreterJVM.getVariableValues method.
+    * @see edu.rice.cs.drjava.model.repl.newjvm.InterpreterJVM#getVariableValues
     * @see #_copyVariablesFromInterpreter
     */
-  private static final String GET_VARIABLE_VALUE_SIG = "(Ljava/lang/String;)[Ljava/lang/Object;";
+  private static final String GET_VARIABLE_VALUES_SIG = "([Ljava/lang/String;)[[Ljava/lang/Object;";
+  
+  /** Signature of the InterpreterJVM.boxValues method.
+    * @see edu.rice.cs.drjava.model.repl.newjvm.InterpreterJVM#boxValues
+    * @see #_boxAll
+    */
+  private static final String BOX_VALUES_SIG = "([Ljava/lang/Object;)[Ljava/lang/Object;";
   
   private static final String NEW_INSTANCE_SIG = "(Ljava/lang/Class;I)Ljava/lang/Object;";
   
@@ -141,6 +149,24 @@ public class JPDADebugger implements Debugger {
   /** If not null, this field holds an error caught by the EventHandlerThread. */
   private volatile Throwable _eventHandlerError;
   
+  /** Classes looked up by _getClass since a thread was last resumed. */
+  private final HashMap<String, ReferenceType> _classes = new HashMap<String, ReferenceType>();
+  
+  /** The value fields of the wrapper classes unboxed since a thread was last resumed. */
+  private final HashMap<ReferenceType, Field> _valueFields = new HashMap<ReferenceType, Field>();
+  
+  /** The suspended thread whose stack frames are in _stackFrameData, or null. */
+  private volatile ThreadReference _stackFrameThread = null;
+  
+  /** The stack frames of _stackFrameThread, as returned by getCurrentStackFrameData. */
+  private volatile ArrayList<DebugStackData> _stackFrameData = null;
+  
+  /** The System.nanoTime() of the pending step request, or -1 if there is none. */
+  private volatile long _stepStart = -1;
+  
+  /** The latency of the last step in milliseconds, or -1; see getLastStepLatency. */
+  private volatile long _lastStepLatency = -1;
+  
   /*Determines whether automatic trace has been enabled*/
   private volatile boolean _isAutomaticTraceEnabled = false;
       
@@ -282,6 +308,9 @@ public class JPDADebugger implements Debugger {
         _suspendedThreads = new RandomAccessStack();
         _eventManager = null;
         _runningThread = null;
+        _clearSuspensionCaches();
+        _stepStart = -1;
+        _lastStepLatency = -1;
         _updateWatches();
       }
     }
@@ -438,9 +467,15 @@ public class JPDADebugger implements Debugger {
   public /* synchronized */ void step(StepType type) throws DebugException {
     assert EventQueue.isDispatchThread();
     _ensureReady();
+    _stepStart = System.nanoTime();
     _stepHelper(type, true);
   }
   
+  /** @return the time in milliseconds from the most recent step request until the thread was suspended again and its
+   * variables and watches were updated, or -1 if no step has completed since the thread was last resumed
+   */
+  public long getLastStepLatency() { return _lastStepLatency; }
+  
   /** Checks whether the argument is a valid variable or field access.   
       * @param var the name of the field   
       * @return true if the argument is a valid variable or field access */   
@@ -520,7 +555,7 @@ public class JPDADebugger implements Debugger {
     
     final DebugWatchData w = new DebugWatchData(field);
     _watches.add(w);
-    _updateWatches();
+    _updateWatches(Collections.singletonList(w));
     
 //    Utilities.invokeLater(new Runnable() { public void run() { 
       _notifier.watchSet(w); 
@@ -762,6 +797,8 @@ public class JPDADebugger implements Debugger {
     
     try {
       ThreadReference thread = _suspendedThreads.peek();
+      // the frames of a thread cannot change until it is resumed, which clears the cache
+      if (thread == _stackFrameThread && _stackFrameData != null) return new ArrayList<DebugStackData>(_stackFrameData);
       ArrayList<DebugStackData> frames = new ArrayList<DebugStackData>();
       // get a list of language level files whose line numbers need to be translated 
       final List<File> files = new ArrayList<File>();
@@ -772,7 +809,9 @@ public class JPDADebugger implements Debugger {
         StackTraceElement ste = getLLStackTraceElement(f.location(), files);
         frames.add(new JPDAStackData(method, ste.getLineNumber()));
       }
-      return frames;
+      _stackFrameThread = thread;
+      _stackFrameData = frames;
+      return new ArrayList<DebugStackData>(frames);
     }
     catch (IncompatibleThreadStateException itse) {
       error.log("Unable to obtain stack frame.", itse);
@@ -1254,7 +1293,9 @@ public class JPDADebugger implements Debugger {
       // Copy variables back into the thread
       _copyVariablesFromInterpreter();
       _updateWatches();
+      _lastStepLatency = -1;
     }
+    _clearSuspensionCaches();
     try {
       _removeCurrentDebugInterpreter(fromStep);
       _currThreadResumed();
@@ -1440,42 +1481,26 @@ public class JPDADebugger implements Debugger {
   
   /** Updates the stored value of each watched field and variable. Synchronization is necessary because this method is 
     * called from unsynchronized listeners. */
-  private /* synchronized */ void _updateWatches() {
+  private /* synchronized */ void _updateWatches() { _updateWatches(_watches); }
+  
+  /** Updates the stored values of the given watches, fetching all of them from the interpreter at once.
+    * @param watches the watches to update
+    */
+  private void _updateWatches(List<DebugWatchData> watches) {
     assert EventQueue.isDispatchThread();
-    if (! isReady()) return;
+    if (! isReady() || watches.isEmpty()) return;
+    
+    List<String> names = new ArrayList<String>(watches.size());
+    for (DebugWatchData w : watches) names.add(w.getName());
+    List<Pair<String,String>> pairs = _model.getInteractionsModel().getVariablesToString(names);
     
-    for (DebugWatchData w : _watches) {
-      String name = w.getName();
-      String val = "";
-      String type = "";
-//      ArrayList<Integer> arr_index = new ArrayList<Integer>();
-//      
-//      if(name.indexOf("[") != -1 && name.indexOf("]") != -1) {
-//        name = name.substring(0, name.indexOf("["));
-//        arr_index.add(Integer.parseInt(w.getName().substring(w.getName().indexOf("[")+1, w.getName().indexOf("]"))));      
-//        if(w.getName().indexOf("]")<(w.getName().length()-1)) {
-//          String iter = w.getName().substring(w.getName().indexOf("]")+1, w.getName().length());
-//          while(iter.indexOf("[") != -1 && iter.indexOf("]") != -1) {
-//            arr_index.add(Integer.parseInt(iter.substring(iter.indexOf("[")+1, iter.indexOf("]"))));      
-//            if(iter.indexOf("]")<(iter.length()-1))
-//              iter = iter.substring(iter.indexOf("]")+1, iter.length());
-//            else 
-//              iter = "";
-//          }
-//        }
-//      }
-//     
-//      int [] indices = new int[arr_index.size()];
-//      for (int i = 0; i < arr_index.size(); i++) {
-//        indices[i] = arr_index.get(i);
-//      }
-      Pair<String,String> pair = _model.getInteractionsModel().getVariableToString(name);
-      // System.out.println("pair == null? "+(pair == null));
-      val = pair.first();
-      type = pair.second();
+    for (int i = 0; i < watches.size(); i++) {
+      DebugWatchData w = watches.get(i);
+      String val = pairs.get(i).first();
+      String type = pairs.get(i).second();
       
       if (val == null) { w.setNoValue(); }
-      else { w.setValue(val); }
+      else { w.setValue(val); }  // also clears the changed flag of an unchanged value
       if (type == null) { w.setNoType(); }
       else { w.setType(type); }
     }
@@ -1488,23 +1513,25 @@ public class JPDADebugger implements Debugger {
    */
   private void _dumpVariablesIntoInterpreterAndSwitch() throws DebugException {
     _log.log(this + " invoked dumpVariablesIntoInterpreterAndSwitch");
-    List<ObjectReference> toRelease = new LinkedList<ObjectReference>();
+    List<ObjectReference> toRelease = new ArrayList<ObjectReference>();
     try {
       ThreadReference thread = _suspendedThreads.peek();
       
       // Name the new interpreter based on this thread
       String interpreterName = _getUniqueThreadName(thread);
       ObjectReference mirroredName = _mirrorString(interpreterName, toRelease);
-      ObjectReference thisVal = thread.frame(0).thisObject();
-      ClassObjectReference thisClass = thread.frame(0).location().declaringType().classObject();
       
-      List<ObjectReference> localVars = new LinkedList<ObjectReference>();
-      List<StringReference> localVarNames = new LinkedList<StringReference>();
-      List<ClassObjectReference> localVarClasses = new LinkedList<ClassObjectReference>();
+      // read everything we need from the frame before invoking any method in the thread (as in _boxAll), since that
+      // invalidates the frame
+      StackFrame frame = thread.frame(0);
+      ObjectReference thisVal = frame.thisObject();
+      ClassObjectReference thisClass = frame.location().declaringType().classObject();
+      
+      List<LocalVariable> vars = new ArrayList<LocalVariable>();
+      List<ClassObjectReference> localVarClasses = new ArrayList<ClassObjectReference>();
+      Map<LocalVariable, Value> values = Collections.emptyMap();
       try {
-        // we don't store the value thread.frame(0) anywhere, because it is invalidated
-        // each time we invoke a method in thread (as in _box)
-        for (LocalVariable v : thread.frame(0).visibleVariables()) {
+        for (LocalVariable v : frame.visibleVariables()) {
           try {
             // Get the type first, so that if an error occurs, we haven't mutated the lists.
             Type t = v.type();
@@ -1515,10 +1542,7 @@ public class JPDADebugger implements Debugger {
               // primitive types are represented by null
               localVarClasses.add(null);
             }
-            localVarNames.add(_mirrorString(v.name(), toRelease));
-            Value val = thread.frame(0).getValue(v);
-            if (val == null || val instanceof ObjectReference) { localVars.add((ObjectReference) val); }
-            else { localVars.add(_box((PrimitiveValue) val, thread, toRelease)); }
+            vars.add(v);
           }
           catch (ClassNotLoadedException e) {
             // This is a real possibility, as documented in the ClassNotLoadedException
@@ -1526,8 +1550,17 @@ public class JPDADebugger implements Debugger {
             // out-of-scope, since we can't talk about values of its type.
           }
         }
+        values = frame.getValues(vars);
       }
       catch (AbsentInformationException e) { /* ignore -- we just won't include any local variables */ }
+      
+      List<StringReference> localVarNames = new ArrayList<StringReference>(vars.size());
+      List<Value> localVals = new ArrayList<Value>(vars.size());
+      for (LocalVariable v : vars) {
+        localVarNames.add(_mirrorString(v.name(), toRelease));
+        localVals.add(values.get(v));
+      }
+      List<ObjectReference> localVars = _boxAll(localVals, thread, toRelease);
       ArrayReference mirroredVars = _mirrorArray("java.lang.Object", localVars, thread, toRelease);
       ArrayReference mirroredVarNames = _mirrorArray("java.lang.String", localVarNames, thread, toRelease);
       ArrayReference mirroredVarClasses = _mirrorArray("java.lang.Class", localVarClasses, thread, toRelease);
@@ -1586,13 +1619,21 @@ public class JPDADebugger implements Debugger {
   private ArrayReference _mirrorArray(String elementClass, List<? extends ObjectReference> elts,
                                       ThreadReference thread, List<ObjectReference> toRelease)
     throws DebugException {
-    ClassType arrayC = (ClassType) _getClass("java.lang.reflect.Array");
-    ReferenceType elementC = _getClass(elementClass);
+    // creating the array through its ArrayType does not invoke a method in the thread (and so does not invalidate
+    // its frames); if the array class has not been loaded, fall back on Array.newInstance
+    ArrayType arrayT = null;
+    try { arrayT = (ArrayType) _getClass(elementClass + "[]"); }
+    catch (DebugException e) { /* use Array.newInstance */ }
     for (int tries = 0; tries < OBJECT_COLLECTED_TRIES; tries++) {
       try {
-        ArrayReference result =
-          (ArrayReference) _invokeStaticMethod(thread, arrayC, "newInstance", NEW_INSTANCE_SIG,
-                                               elementC.classObject(), _vm.mirrorOf(elts.size()));
+        ArrayReference result;
+        if (arrayT != null) { result = arrayT.newInstance(elts.size()); }
+        else {
+          ClassType arrayC = (ClassType) _getClass("java.lang.reflect.Array");
+          ReferenceType elementC = _getClass(elementClass);
+          result = (ArrayReference) _invokeStaticMethod(thread, arrayC, "newInstance", NEW_INSTANCE_SIG,
+                                                        elementC.classObject(), _vm.mirrorOf(elts.size()));
+        }
         result.disableCollection();
         if (!result.isCollected()) {
           toRelease.add(result);
@@ -1607,6 +1648,85 @@ public class JPDADebugger implements Debugger {
     throw new DebugException("Ran out of OBJECT_COLLECTED_TRIES");
   }
   
+  /** Create boxed objects corresponding to the given values with a single method invocation in the thread.  Each
+   * primitive is copied into a new one-element array, which needs no invocation, and the arrays are passed to
+   * InterpreterJVM.boxValues.  If that fails, the primitives are boxed one at a time.
+   * @param vals the values to be boxed; values that are null or references are left alone
+   * @param thread a ThreadReference
+   * @param toRelease a list of objects
+   * @return the boxed values, in the order of vals
+   * @throws DebugException if something goes wrong
+   */
+  private List<ObjectReference> _boxAll(List<Value> vals, ThreadReference thread,
+                                        List<ObjectReference> toRelease) throws DebugException {
+    List<ObjectReference> result = new ArrayList<ObjectReference>(vals.size());
+    List<ObjectReference> wrapped = new ArrayList<ObjectReference>(vals.size());
+    boolean anyPrimitive = false;
+    try {
+      for (Value val : vals) {
+        if (val == null || val instanceof ObjectReference) {
+          result.add((ObjectReference) val);
+          wrapped.add(null);
+        }
+        else {
+          result.add(null);
+          wrapped.add(_wrap((PrimitiveValue) val, toRelease));
+          anyPrimitive = true;
+        }
+      }
+      if (! anyPrimitive) { return result; }
+      ArrayReference mirroredWrapped = _mirrorArray("java.lang.Object", wrapped, thread, toRelease);
+      for (int tries = 0; tries < OBJECT_COLLECTED_TRIES; tries++) {
+        try {
+          ArrayReference boxed = (ArrayReference) _invokeMethod(thread, _interpreterJVM, "boxValues", BOX_VALUES_SIG,
+                                                                mirroredWrapped);
+          boxed.disableCollection();
+          if (!boxed.isCollected()) {
+            toRelease.add(boxed);
+            for (int i = 0; i < result.size(); i++) {
+              if (wrapped.get(i) != null) { result.set(i, (ObjectReference) boxed.getValue(i)); }
+            }
+            return result;
+          }
+        }
+        catch (ObjectCollectedException e) { /* try again */ }
+      }
+    }
+    catch (DebugException e) { debug.log("Can't box values at once", e); }
+    
+    result.clear();
+    for (Value val : vals) {
+      if (val == null || val instanceof ObjectReference) { result.add((ObjectReference) val); }
+      else { result.add(_box((PrimitiveValue) val, thread, toRelease)); }
+    }
+    return result;
+  }
+  
+  /** Create a one-element primitive array holding the given primitive and prevent it from being garbage collected.
+   * @param val the value to be wrapped
+   * @param toRelease a list of objects
+   * @return reference to the new array
+   * @throws DebugException if something goes wrong
+   */
+  private ArrayReference _wrap(PrimitiveValue val, List<ObjectReference> toRelease) throws DebugException {
+    ArrayType arrayT = (ArrayType) _getClass(val.type().name() + "[]");
+    for (int tries = 0; tries < OBJECT_COLLECTED_TRIES; tries++) {
+      try {
+        ArrayReference result = arrayT.newInstance(1);
+        result.disableCollection();
+        if (!result.isCollected()) {
+          toRelease.add(result);
+          try { result.setValue(0, val); }
+          catch (InvalidTypeException e) { throw new DebugException(e); }
+          catch (ClassNotLoadedException e) { throw new DebugException(e); }
+          return result;
+        }
+      }
+      catch (ObjectCollectedException e) { /* try again */ }
+    }
+    throw new DebugException("Ran out of OBJECT_COLLECTED_TRIES");
+  }
+  
   /** Create a boxed object corresponding to the given primitive.
    * @param val the value to be boxed
    * @param thread a ThreadReference
@@ -1676,7 +1796,19 @@ public class JPDADebugger implements Debugger {
     else if (type.equals("java.lang.Float")) { m = "floatValue"; sig = "()F"; }
     
     if (m == null) { throw new DebugException("Value can't be unboxed"); }
-    else { return (PrimitiveValue) _invokeMethod(thread, val, m, sig); }
+    
+    // reading the wrapper's value field is much cheaper than invoking a method in the thread
+    ReferenceType t = val.referenceType();
+    Field valueField = _valueFields.get(t);
+    if (valueField == null && ! _valueFields.containsKey(t)) {
+      valueField = t.fieldByName("value");
+      _valueFields.put(t, valueField);
+    }
+    if (valueField != null) {
+      Value result = val.getValue(valueField);
+      if (result instanceof PrimitiveValue) { return (PrimitiveValue) result; }
+    }
+    return (PrimitiveValue) _invokeMethod(thread, val, m, sig);
   }
   
   
@@ -1690,19 +1822,33 @@ public class JPDADebugger implements Debugger {
    * @throws DebugException  If no loaded class has the given name.
    */
   private ReferenceType _getClass(String name) throws DebugException {
+    ReferenceType result = _classes.get(name);
+    if (result != null) { return result; }
     List<ReferenceType> classes = _vm.classesByName(name);
     if (classes.isEmpty()) {
       throw new DebugException("Class '" + name + "' is not loaded");
     }
     else {
+      result = classes.get(0);
       for (ReferenceType t : classes) {
         // class loader is null iff it comes from the bootstrap loader
-        if (t.classLoader() == null) { return t; }
+        if (t.classLoader() == null) { result = t; break; }
       }
-      return classes.get(0);
+      _classes.put(name, result);
+      return result;
     }
   }
   
+  /** Clears the classes, fields and stack frames cached while a thread was suspended.  Called whenever a thread
+    * resumes, since classes may be loaded and unloaded while it runs.
+    */
+  private void _clearSuspensionCaches() {
+    _classes.clear();
+    _valueFields.clear();
+    _stackFrameThread = null;
+    _stackFrameData = null;
+  }
+  
   
   /** Notifies all listeners that the current thread has been suspended. Synchronization is necessary because it is 
     * called from unsynchronized listeners and other classes (in same package). 
@@ -1756,6 +1902,10 @@ public class JPDADebugger implements Debugger {
     _log.log(this + " executing _switchToSuspendedThread()");
     _runningThread = null;
     if (updateWatches) _updateWatches();
+    if (_stepStart >= 0) {
+      _lastStepLatency = (System.nanoTime() - _stepStart) / 1000000;
+      _stepStart = -1;
+    }
     final ThreadReference currThread = _suspendedThreads.peek();
     _notifier.currThreadSuspended();
     // Anytime a thread is suspended, it becomes the current thread.
@@ -1795,24 +1945,34 @@ public class JPDADebugger implements Debugger {
     return Long.toString(thread.uniqueID());
   }
   
-  /** Assumes lock is already held.
-   * @see edu.rice.cs.drjava.model.repl.newjvm.InterpreterJVM#getVariableValue
-   * @see #GET_VARIABLE_VALUE_SIG
+  /** Copies the values of the visible variables of the running thread's frame back from its debug interpreter, fetching
+   * all of them with a single method invocation.  Only the variables whose values have changed are set.  Assumes lock
+   * is already held.
+   * @see edu.rice.cs.drjava.model.repl.newjvm.InterpreterJVM#getVariableValues
+   * @see #GET_VARIABLE_VALUES_SIG
    * @throws DebugException if something goes wrong
    */
   private void _copyVariablesFromInterpreter() throws DebugException {
     // copy variables' values out of interpreter's environment and
     // into the relevant stack frame
-    List<ObjectReference> toRelease = new LinkedList<ObjectReference>();
+    List<ObjectReference> toRelease = new ArrayList<ObjectReference>();
     try {
-      // we don't store _runningThread.frame(0) anywhere because it is invalidated
-      // every time we invoke a method in the thread (getVariable, for example)
-      for (LocalVariable var : _runningThread.frame(0).visibleVariables()) {
-        Value oldVal = _runningThread.frame(0).getValue(var);
-        StringReference name = _mirrorString(var.name(), toRelease);
-        ArrayReference wrappedVal =
-          (ArrayReference) _invokeMethod(_runningThread, _interpreterJVM, "getVariableValue",
-                                         GET_VARIABLE_VALUE_SIG, name);
+      // read the old values before invoking any method in the thread, since that invalidates the frame
+      StackFrame frame = _runningThread.frame(0);
+      List<LocalVariable> vars = frame.visibleVariables();
+      Map<LocalVariable, Value> oldVals = frame.getValues(vars);
+      List<StringReference> names = new ArrayList<StringReference>(vars.size());
+      for (LocalVariable var : vars) { names.add(_mirrorString(var.name(), toRelease)); }
+      ArrayReference wrappedVals =
+        (ArrayReference) _invokeMethod(_runningThread, _interpreterJVM, "getVariableValues", GET_VARIABLE_VALUES_SIG,
+                                       _mirrorArray("java.lang.String", names, _runningThread, toRelease));
+      if (wrappedVals == null) { return; }
+      wrappedVals.disableCollection();
+      toRelease.add(wrappedVals);
+      List<Value> wrappedList = wrappedVals.getValues();
+      for (int i = 0; i < vars.size(); i++) {
+        LocalVariable var = vars.get(i);
+        ArrayReference wrappedVal = (ArrayReference) wrappedList.get(i);
         if ((wrappedVal != null) && (wrappedVal.length() == 1)) { // if it can't be found (length is 0), just ignore it
           try {
             Value val = wrappedVal.getValue(0);
@@ -1821,7 +1981,8 @@ public class JPDADebugger implements Debugger {
               catch (DebugException e) { error.log("Can't unbox variable", e); }
             }
 
-            if ((val != null) && (!oldVal.equals(val))) {
+            if ((val != null) && (!val.equals(oldVals.get(var)))) {
+              // not the frame read above, which may have been invalidated by an invocation
               try { _runningThread.frame(0).setValue(var, val); }
               catch (InvalidTypeException e) { error.log("Can't set variable", e); }
               catch (ClassNotLoadedException e) { error.log("Can't set variable", e); }
@@ -39,7 +39,6 @@ package edu.rice.cs.drjava.model.definitions;
 import javax.swing.text.*;
 import java.awt.*;
 // TODO: Check synchronization.
-import java.util.ArrayList;
 
 import edu.rice.cs.drjava.DrJava;
 import edu.rice.cs.drjava.model.*;
@@ -117,12 +116,12 @@ public class ColoringGlyphPainter extends GlyphView.GlyphPainter implements Opti
     
     text = v.getText(start, end);
     
-    ArrayList<HighlightStatus> stats = djdoc.getHighlightStatus(start, end);
-    if (stats.size() < 1) throw  new RuntimeException("GetHighlightStatus returned nothing!");
+    int[] spans = djdoc.getHighlightSpans(start, end);
+    if (spans.length < 1) throw  new RuntimeException("GetHighlightSpans returned nothing!");
     try {
-      for (HighlightStatus stat: stats) {
-        int length = stat.getLength();
-        int location = stat.getLocation();
+      for (int i = 0; i < spans.length; i += HighlightCache.SPAN_SIZE) {
+        int location = spans[i];
+        int length = spans[i + 1];
         
         if (location < end && location + length > start) {
           
@@ -135,7 +134,7 @@ public class ColoringGlyphPainter extends GlyphView.GlyphPainter implements Opti
           
           if (! (djdoc instanceof InteractionsDJDocument) || 
               ! ((InteractionsDJDocument)djdoc).setColoring((start+end)/2,g))      
-            setFormattingForState(g, stat.getState());
+            setFormattingForState(g, spans[i + 2]);
           
           djdoc.getText(location, length, text);
           x = Utilities.drawTabbedText(text, x, y, g, v.getTabExpander(), location);
@@ -39,7 +39,6 @@ package edu.rice.cs.drjava.model.definitions;
 import javax.swing.text.*;
 import java.awt.*;
 import javax.swing.event.DocumentEvent;
-import java.util.ArrayList;
 
 import edu.rice.cs.drjava.DrJava;
 import edu.rice.cs.drjava.model.*;
@@ -77,6 +76,11 @@ public class ColoringView extends PlainView implements OptionConstants {
   public static Color ERROR_COLOR = DrJava.getConfig().getSetting(INTERACTIONS_ERROR_COLOR);
   public static Color DEBUGGER_COLOR = DrJava.getConfig().getSetting(DEBUG_MESSAGE_COLOR);
   
+  /** Frame-time statistics over all coloring views: a frame is one call of paint.  Only updated in the event thread. */
+  private static volatile int _frameCount = 0;
+  private static volatile long _frameNanos = 0;
+  private static volatile long _maxFrameNanos = 0;
+  
   /** Constructs a new coloring view.
     * @param elem the element
     */
@@ -130,6 +134,35 @@ public class ColoringView extends PlainView implements OptionConstants {
     }
   }
   
+  /** Paints the visible lines of this view, recording the time taken as a frame.
+    * @param g the graphics context
+    * @param a the allocated region in which to paint
+    */
+  public void paint(Graphics g, Shape a) {
+    long start = System.nanoTime();
+    super.paint(g, a);
+    long nanos = System.nanoTime() - start;
+    _frameCount++;
+    _frameNanos += nanos;
+    if (nanos > _maxFrameNanos) _maxFrameNanos = nanos;
+  }
+  
+  /** @return the number of frames painted since the last call of resetFrameTimes */
+  public static int getFrameCount() { return _frameCount; }
+  
+  /** @return the mean time in nanoseconds taken to paint a frame, or 0 if none has been painted */
+  public static long getMeanFrameNanos() { return (_frameCount == 0) ? 0 : _frameNanos / _frameCount; }
+  
+  /** @return the longest time in nanoseconds taken to paint a frame, or 0 if none has been painted */
+  public static long getMaxFrameNanos() { return _maxFrameNanos; }
+  
+  /** Resets the frame-time statistics, e.g., before scrolling through a document in a benchmark. */
+  public static void resetFrameTimes() {
+    _frameCount = 0;
+    _frameNanos = 0;
+    _maxFrameNanos = 0;
+  }
+  
   /** Renders the given range in the model as normal unselected text. Note that this text is all on one line.
     * The superclass deals with breaking lines and such. So all we have to do here is draw the text on [p0,p1) in the
     * model. We have to start drawing at (x,y), and the function returns the x coordinate when we're done.
@@ -153,19 +186,18 @@ public class ColoringView extends PlainView implements OptionConstants {
     
     final AbstractDJDocument _doc = (AbstractDJDocument) doc;
     
-    ArrayList<HighlightStatus> stats = _doc.getHighlightStatus(start, end);
-    if (stats.size() < 1) throw new UnexpectedException("GetHighlightStatus returned nothing!");
+    int[] spans = _doc.getHighlightSpans(start, end);
+    if (spans.length < 1) throw new UnexpectedException("GetHighlightSpans returned nothing!");
     
-    for (HighlightStatus stat: stats) {
-      int location = stat.getLocation();
-      int length = stat.getLength();
-      
-      // If this highlight status extends past p1, end at p1
-      if (location + length > end) length = end - stat.getLocation();
+    Segment text = getLineBuffer(); 
+    for (int i = 0; i < spans.length; i += HighlightCache.SPAN_SIZE) {
+      // The spans may cover the whole line, so clip them to [start, end)
+      int location = Math.max(spans[i], start);
+      int length = Math.min(spans[i] + spans[i + 1], end) - location;
+      if (length <= 0) continue;
       
       if (! (_doc instanceof InteractionsDJDocument) || ! ((InteractionsDJDocument)_doc).setColoring((start + end)/2, g))      
-        setFormattingForState(g, stat.getState());
-      Segment text = getLineBuffer(); 
+        setFormattingForState(g, spans[i + 2]);
       _doc.getText(location, length, text);
       x = Utilities.drawTabbedText(text, x, y, g, this, location);  // updates x on each iteration
     }
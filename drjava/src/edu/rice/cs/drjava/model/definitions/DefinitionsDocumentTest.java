@@ -40,16 +40,23 @@ import edu.rice.cs.drjava.DrJava;
 import edu.rice.cs.drjava.DrJavaTestCase;
 import edu.rice.cs.drjava.config.OptionConstants;
 import edu.rice.cs.drjava.model.GlobalEventNotifier;
+import edu.rice.cs.drjava.model.HighlightCache;
 import edu.rice.cs.drjava.model.definitions.reducedmodel.BraceReduction;
 import edu.rice.cs.drjava.model.definitions.reducedmodel.HighlightStatus;
 import edu.rice.cs.drjava.model.definitions.reducedmodel.ReducedModelStates;
+import edu.rice.cs.util.FileOps;
 import edu.rice.cs.util.UnexpectedException;
 import edu.rice.cs.util.swing.Utilities;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import javax.swing.JEditorPane;
 import javax.swing.text.BadLocationException;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /** Tests the functionality of the definitions document.
@@ -290,6 +297,80 @@ public final class DefinitionsDocumentTest extends DrJavaTestCase implements Red
     assertEquals(2, v.get(0).getLength());
   }
   
+  /** Checks that the cached highlight spans of each line of _doc agree with a fresh call of getHighlightStatus. */
+  private void _checkHighlightSpans() {
+    String text = _doc.getText();
+    int lineStart = 0;
+    while (lineStart <= text.length()) {
+      int newline = text.indexOf('\n', lineStart);
+      int lineEnd = (newline < 0) ? text.length() : newline + 1;
+      List<HighlightStatus> v = _doc.getHighlightStatus(lineStart, lineEnd);
+      int[] spans = _doc.getHighlightSpans(lineStart, lineEnd);
+      assertEquals("spans of line at " + lineStart, v.size() * HighlightCache.SPAN_SIZE, spans.length);
+      for (int i = 0; i < v.size(); i++) {
+        assertEquals("location", v.get(i).getLocation(), spans[i * HighlightCache.SPAN_SIZE]);
+        assertEquals("length", v.get(i).getLength(), spans[i * HighlightCache.SPAN_SIZE + 1]);
+        assertEquals("state", v.get(i).getState(), spans[i * HighlightCache.SPAN_SIZE + 2]);
+      }
+      if (newline < 0) break;
+      lineStart = lineEnd;
+    }
+  }
+  
+  /** Tests that the highlight spans cached for painting are reused, and recomputed after edits and their undo.  Like
+   * painting, the test runs in the event thread.
+   */
+  public void testHighlightSpans() {
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        try { _testHighlightSpans(); }
+        catch(BadLocationException e) { throw new UnexpectedException(e); }
+      }
+    });
+  }
+  
+  /** Body of testHighlightSpans, run in the event thread.
+   * @throws BadLocationException if attempts to reference an invalid location
+   */
+  private void _testHighlightSpans() throws BadLocationException {
+    final String s = "public class Foo {\n" +
+      "  private int _x = 0;\n" +
+      "  String _s = \"a\";\n" +
+      "}";
+    _doc.addUndoableEditListener(_doc.getUndoManager());
+    _doc.insertString(0, s, null);
+    _checkHighlightSpans();
+    
+    HighlightCache cache = _doc.getHighlightCache();
+    long misses = cache.getMisses();
+    _checkHighlightSpans();
+    assertEquals("lines are cached", misses, cache.getMisses());
+    
+    // Opening a block comment on the first line changes the highlighting of all following lines
+    _doc.insertString(s.indexOf('{') + 1, " /*", null);
+    _checkHighlightSpans();
+    int[] spans = _doc.getHighlightSpans(s.indexOf('\n') + 4, s.indexOf('\n') + 5);
+    assertEquals("one span", HighlightCache.SPAN_SIZE, spans.length);
+    assertEquals("second line commented", HighlightStatus.COMMENTED, spans[2]);
+    
+    // Undoing the insertion restores the original highlighting
+    _doc.getUndoManager().undo();
+    assertEquals("undo", s, _doc.getText());
+    _checkHighlightSpans();
+    
+    // A removal on the last line leaves the spans of the earlier lines cached
+    misses = cache.getMisses();
+    _doc.remove(_doc.getLength() - 1, 1);
+    _checkHighlightSpans();
+    assertEquals("only the last line is recomputed", misses + 1, cache.getMisses());
+    
+    // A range crossing a line boundary is computed directly
+    List<HighlightStatus> v = _doc.getHighlightStatus(5, 30);
+    spans = _doc.getHighlightSpans(5, 30);
+    assertEquals(v.size() * HighlightCache.SPAN_SIZE, spans.length);
+    assertEquals(5, spans[0]);
+  }
+  
   /** Test going to the second line in a two-line document.
    * @throws BadLocationException if attempts to reference an invalid location
    */
@@ -2616,4 +2697,63 @@ public final class DefinitionsDocumentTest extends DrJavaTestCase implements Red
     assertFalse(_doc.containsClassOrInterfaceOrEnum());
     _doc.remove(0, _doc.getText().length());
   }
+  
+  /** Benchmarks scrolling through a large document, painting it one screen at a time with a cold and a warm highlight
+    * cache, and prints the frame times recorded by ColoringView.  Not a test; run with the source file to paint as its
+    * argument.
+    * @param args the file to paint (AbstractGlobalModel.java by default)
+    * @throws Exception if the file cannot be read or painting fails
+    */
+  public static void main(String[] args) throws Exception {
+    final File file = new File((args.length > 0) ? args[0] : "src/edu/rice/cs/drjava/model/AbstractGlobalModel.java");
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        try { _scroll(FileOps.readFileAsSwingText(file)); }
+        catch(Exception e) { throw new UnexpectedException(e); }
+      }
+    });
+  }
+  
+  /** Paints text in screens of 600 x 800 pixels, from top to bottom, three times in each mode.  Runs in the event
+    * thread.
+    * @param text the text to paint
+    * @throws BadLocationException never
+    * @throws IOException never
+    */
+  private static void _scroll(String text) throws BadLocationException, IOException {
+    GlobalEventNotifier notifier = new GlobalEventNotifier();
+    DefinitionsEditorKit kit = new DefinitionsEditorKit(notifier);
+    DefinitionsDocument doc = kit.createNewDocument();
+    doc.insertString(0, text, null);
+    JEditorPane pane = new JEditorPane();
+    pane.setEditorKit(kit);
+    pane.setDocument(doc);
+    int width = 800;
+    int height = 600;
+    pane.setSize(width, Integer.MAX_VALUE / 2);
+    pane.setSize(width, pane.getPreferredSize().height);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    System.out.println(doc.getDefaultRootElement().getElementCount() + " lines, " + pane.getHeight() + " pixels");
+    
+    for (int round = 0; round < 3; ++round) {
+      for (boolean warm : new boolean[] { false, true }) {
+        ColoringView.resetFrameTimes();
+        HighlightCache cache = doc.getHighlightCache();
+        long hits = cache.getHits();
+        long start = System.nanoTime();
+        for (int y = 0; y < pane.getHeight(); y += height / 4) {  // scroll by a quarter screen
+          if (! warm) cache.clear(0);
+          Graphics2D g = image.createGraphics();
+          g.translate(0, -y);
+          g.setClip(0, y, width, height);
+          pane.paint(g);
+          g.dispose();
+        }
+        long total = System.nanoTime() - start;
+        System.out.println("  " + (warm ? "warm" : "cold") + ": " + ColoringView.getFrameCount() + " frames in " +
+                           total / 1000000 + "ms, mean " + ColoringView.getMeanFrameNanos() / 1000 + "us, max " +
+                           ColoringView.getMaxFrameNanos() / 1000 + "us, " + (cache.getHits() - hits) + " cache hits");
+      }
+    }
+  }
 }
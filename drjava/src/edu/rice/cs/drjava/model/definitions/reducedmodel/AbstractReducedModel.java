@@ -36,6 +36,8 @@
 
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
+import java.util.List;
+
 /** A refactoring of the common code between ReducedModelComment and ReducedModelBrace.  Both of the refactored classes
   * extend this class.
   * @version $Id$
@@ -53,8 +55,13 @@ public abstract class AbstractReducedModel implements ReducedModelStates {
   TokenList.Iterator _cursor;
   
   /** Constructor.  Creates a new reduced model with the cursor at the start of a blank "page." */
-  public AbstractReducedModel() {
-    _tokens = new TokenList();
+  public AbstractReducedModel() { this(false); }
+  
+  /** Constructor.  Creates a new reduced model with the cursor at the start of a blank "page."
+    * @param indexed whether the tokens should be kept in an IndexedTokenList, which supports logarithmic seeks
+    */
+  public AbstractReducedModel(boolean indexed) {
+    _tokens = indexed ? new IndexedTokenList() : new TokenList();
     _cursor = _tokens.getIterator();
     // we should be pointing to the head of the list
     _cursor.setBlockOffset(0);
@@ -81,6 +88,7 @@ public abstract class AbstractReducedModel implements ReducedModelStates {
    * @return the absolute offset of the cursor
    */
   public int absOffset(TokenList.Iterator cursor) {
+    if (_tokens.isIndexed()) return cursor.indexedOffset();
     int off = cursor.getBlockOffset();
     TokenList.Iterator it = cursor.copy();
     if (! it.atStart()) it.prev();
@@ -94,6 +102,7 @@ public abstract class AbstractReducedModel implements ReducedModelStates {
   }
   
   public int getLength() {
+    if (_tokens.isIndexed()) return _tokens.charLength();
     TokenList.Iterator it = _tokens.getIterator();
     it.next();
     if (it.atEnd()) return 0;
@@ -145,6 +154,25 @@ public abstract class AbstractReducedModel implements ReducedModelStates {
    */
   public abstract void insertChar(char ch);
   
+  /** Inserts a block of text into the reduced model at the cursor, leaving the cursor after it.  Equivalent to
+    * inserting the characters of text one at a time with insertChar.  If the model is empty (as when a document is 
+    * read or reconstructed), the tokens are built in a single pass over text and linked into the list in one step.
+    * @param text the text to be inserted
+    */
+  public void insertText(CharSequence text) {
+    if (_tokens.isEmpty()) {
+      _cursor.insertAll(tokenize(text));
+      _cursor.setBlockOffset(0);
+    }
+    else for (int i = 0; i < text.length(); i++) insertChar(text.charAt(i));
+  }
+  
+  /** Tokenizes text as this sub-model would if it were inserted into an empty model one character at a time.
+    * @param text the text to be tokenized
+    * @return the resulting tokens, in order
+    */
+  abstract List<ReducedToken> tokenize(CharSequence text);
+  
   /** Inserts a block of text into the reduced model which has no
     * special consideration in the reduced model.
     * <ol>
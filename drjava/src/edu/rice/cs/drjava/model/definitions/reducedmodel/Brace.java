@@ -148,6 +148,7 @@ class Brace extends ReducedToken implements ReducedModelStates {
     if (index == braces.length) throw new BraceException("Invalid brace type \"" + type + "\"");
     _type = index;
     _size = getType().length();
+    sizeChanged();
   }
 
   /** Determine the brace _type of the given String. The integer value returned is only used internally.
@@ -64,6 +64,11 @@ public interface BraceReduction {
    */
   public void insertChar(char ch);
 
+  /** Insert a block of text into the BraceReduction, as if its characters were inserted one at a time.
+   * @param text the text to be inserted
+   */
+  public void insertText(CharSequence text);
+
   /** <P>Updates the BraceReduction to reflect cursor movement.
     * Negative values move left from the cursor, positive values move
     * right. </P>
@@ -50,10 +50,16 @@ public abstract class BraceReductionTestCase extends DrJavaTestCase {
   /** Sets up the reduced model controls before each test. */
   protected void setUp() throws Exception {
     super.setUp();
-    model0 = new ReducedModelControl();
-    model1 = new ReducedModelControl();
-    model2 = new ReducedModelControl();
+    model0 = makeModel();
+    model1 = makeModel();
+    model2 = makeModel();
   }
+  
+  /** Creates the reduced models used by the tests.  Subclasses override this method to run the same tests against
+    * a different token list implementation.
+    * @return a fresh, empty reduced model
+    */
+  protected ReducedModelControl makeModel() { return new ReducedModelControl(); }
 
   /** Convenience function to insert a number of non-special characters into a reduced model.
     * @param model the model being modified
@@ -0,0 +1,76 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.definitions.reducedmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs the ReducedModelDeleteTest suite against reduced models backed by IndexedTokenLists.
+  * @version $Id$
+  */
+public final class IndexedReducedModelDeleteTest extends ReducedModelDeleteTest {
+  protected ReducedModelControl makeModel() { return IndexedReducedModelTest.makeIndexedModel(); }
+  
+  /** Checks that tokens cut out of the list by a deletion spanning several of them no longer refer to the index. */
+  public void testRemovedTokensLeaveIndex() {
+    ReducedModelControl model = makeModel();
+    String text = "a(b)c[d]e{f}g";
+    for (int i = 0; i < text.length(); i++) model.insertChar(text.charAt(i));
+    List<ReducedToken> before = new ArrayList<ReducedToken>();
+    TokenList.Iterator it = model._rmb._tokens.getIterator();
+    for (it.next(); ! it.atEnd(); it.next()) before.add(it.current());
+    it.dispose();
+    
+    model.move(-text.length() + 2);
+    model.delete(9);  // "b)c[d]e{f"
+    assertEquals("a(}g".length(), model._rmb.getLength());
+    
+    List<ReducedToken> after = new ArrayList<ReducedToken>();
+    it = model._rmb._tokens.getIterator();
+    for (it.next(); ! it.atEnd(); it.next()) after.add(it.current());
+    it.dispose();
+    int removed = 0;
+    for (ReducedToken t : before) {
+      if (after.contains(t)) assertNotNull("kept token " + t + " is indexed", t._indexNode);
+      else {
+        assertNull("removed token " + t + " is still indexed", t._indexNode);
+        removed++;
+      }
+    }
+    assertTrue("a range of tokens was removed", removed > 1);
+  }
+}
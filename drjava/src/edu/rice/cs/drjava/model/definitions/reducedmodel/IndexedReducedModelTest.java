@@ -0,0 +1,128 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.definitions.reducedmodel;
+
+import java.util.Random;
+
+/** Runs the ReducedModelTest suite against reduced models backed by IndexedTokenLists, with the seek threshold 
+  * lowered so that every move goes through the index, and cross-checks the two implementations on random edits.
+  * @version $Id$
+  */
+public final class IndexedReducedModelTest extends ReducedModelTest {
+  
+  protected ReducedModelControl makeModel() { return makeIndexedModel(); }
+  
+  /** @return an empty reduced model whose iterators always seek through the index. */
+  static ReducedModelControl makeIndexedModel() {
+    ReducedModelControl model = new ReducedModelControl(true);
+    ((IndexedTokenList) model._rmb._tokens)._seekThreshold = 1;
+    ((IndexedTokenList) model._rmc._tokens)._seekThreshold = 1;
+    return model;
+  }
+  
+  /** Applies the same random insertions, deletions, moves and walker queries to a plain and an indexed reduced model
+    * and checks that they stay identical.
+    */
+  public void testRandomEditsMatchPlainModel() {
+    Random random = new Random(42);
+    ReducedModelControl plain = new ReducedModelControl();
+    ReducedModelControl indexed = makeIndexedModel();
+    int length = 0;
+    
+    for (int i = 0; i < 4000; i++) {
+      int target = random.nextInt(length + 1);
+      int here = plain.absOffset();
+      plain.move(target - here);
+      indexed.move(target - here);
+      
+      int op = random.nextInt(10);
+      if (op < 6 || length == 0) {
+        char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        plain.insertChar(ch);
+        indexed.insertChar(ch);
+        length++;
+      }
+      else if (op < 8) {
+        int count = Math.min(length - target, 1 + random.nextInt(12));
+        if (count > 0) {
+          plain.delete(count);
+          indexed.delete(count);
+          length -= count;
+        }
+      }
+      else {
+        int rel = random.nextInt(length + 1) - plain.absOffset();
+        plain.resetLocation();
+        indexed.resetLocation();
+        assertEquals("walker state #" + i, plain.moveWalkerGetState(rel), indexed.moveWalkerGetState(rel));
+        assertEquals("walker offset #" + i, plain.walkerOffset(), indexed.walkerOffset());
+      }
+      
+      assertEquals("model #" + i, plain.simpleString(), indexed.simpleString());
+      assertEquals("offset #" + i, plain.absOffset(), indexed.absOffset());
+      assertEquals("brace offset #" + i, plain.braceCursorOffset(), indexed.braceCursorOffset());
+      assertEquals("length #" + i, length, indexed._rmc.getLength());
+      assertEquals("state #" + i, plain.getStateAtCurrent(), indexed.getStateAtCurrent());
+    }
+  }
+  
+  /** Checks that a plain TokenList answers the offset queries by walking, with the same results as the index. */
+  public void testPlainListOffsetQueries() {
+    ReducedModelControl plain = new ReducedModelControl();
+    ReducedModelControl indexed = makeIndexedModel();
+    String text = "a /* b { c */ \"d\" (e) // f\n{ 'g' }";
+    for (int i = 0; i < text.length(); i++) {
+      plain.insertChar(text.charAt(i));
+      indexed.insertChar(text.charAt(i));
+    }
+    TokenList p = plain._rmc._tokens;
+    TokenList q = indexed._rmc._tokens;
+    assertEquals(text.length(), p.charLength());
+    assertEquals(q.charLength(), p.charLength());
+    for (int offset = 0; offset < text.length(); offset++) {
+      ModelList.Node<ReducedToken> pn = p.nodeAt(offset);
+      ModelList.Node<ReducedToken> qn = q.nodeAt(offset);
+      assertEquals("token at " + offset, qn._item.toString(), pn._item.toString());
+      assertEquals("start of token at " + offset, q.startOf(qn), p.startOf(pn));
+      assertEquals("index of token at " + offset, q.indexOf(qn), p.indexOf(pn));
+    }
+    plain.move(-7);
+    indexed.move(-7);
+    assertEquals(text.length() - 7, plain.absOffset());
+    assertEquals(indexed._rmc._cursor.indexedOffset(), plain._rmc._cursor.indexedOffset());
+  }
+}
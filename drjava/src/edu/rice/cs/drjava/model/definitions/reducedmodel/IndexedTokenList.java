@@ -0,0 +1,312 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.definitions.reducedmodel;
+
+/** A TokenList that additionally organizes its nodes into a balanced binary tree (a treap keyed by list position) whose
+  * nodes cache the number of tokens and the number of characters in their subtrees.  The linked structure of ModelList
+  * is left intact, so stepping to an adjacent token is still O(1), but locating the token containing an absolute
+  * offset, computing the offset or index of a token, and removing a run of tokens all take O(log n) expected time.
+  * Long cursor moves in the reduced model therefore no longer cost time proportional to the distance moved.
+  * <p>
+  * Token sizes are mutable (gaps grow and shrink, multiple-character braces are split and combined), so each token
+  * held by this list points back to its node and reports size changes through ReducedToken.sizeChanged().
+  * @version $Id$
+  */
+class IndexedTokenList extends TokenList {
+  
+  /** The root of the treap; null iff the list is empty. */
+  private IndexNode _root = null;
+  
+  /** Minimum distance of a move for which iterators seek rather than walk.  Default visibility for testing purposes. */
+  int _seekThreshold = SEEK_THRESHOLD;
+  
+  /** State of the xorshift generator used to draw node priorities.  A fixed seed keeps tree shapes reproducible. */
+  private int _seed = 0x2545F491;
+  
+  /** A list node that is also a treap node.  The fields describing the subtree are only accessed while the enclosing
+    * reduced model is locked.
+    */
+  static final class IndexNode extends Node<ReducedToken> {
+    IndexNode _parent;
+    IndexNode _left;
+    IndexNode _right;
+    final int _priority;
+    /** The size of _item as last reported to the tree. */
+    int _size;
+    /** The number of nodes in the subtree rooted here. */
+    int _count;
+    /** The number of characters in the subtree rooted here. */
+    int _chars;
+    
+    IndexNode(ReducedToken item, int priority) {
+      super(item);
+      _priority = priority;
+      _size = item.getSize();
+      _count = 1;
+      _chars = _size;
+    }
+    
+    /** Propagates a change in the size of _item to the cached character counts of this node and its ancestors. */
+    void sizeChanged() {
+      int delta = _item.getSize() - _size;
+      if (delta == 0) return;
+      _size += delta;
+      for (IndexNode n = this; n != null; n = n._parent) n._chars += delta;
+    }
+    
+    /** Recomputes the cached counts of this node from those of its children. */
+    void update() {
+      _count = 1 + count(_left) + count(_right);
+      _chars = _size + chars(_left) + chars(_right);
+    }
+  }
+  
+  private static int count(IndexNode n) { return n == null ? 0 : n._count; }
+  
+  private static int chars(IndexNode n) { return n == null ? 0 : n._chars; }
+  
+  private int nextPriority() {
+    _seed ^= _seed << 13;
+    _seed ^= _seed >>> 17;
+    _seed ^= _seed << 5;
+    return _seed;
+  }
+  
+  boolean isIndexed() { return true; }
+  
+  int seekThreshold() { return _seekThreshold; }
+  
+  int charLength() { return chars(_root); }
+  
+  int startOf(Node<ReducedToken> node) {
+    IndexNode n = (IndexNode) node;
+    int start = chars(n._left);
+    for (IndexNode x = n; x._parent != null; x = x._parent) {
+      if (x == x._parent._right) start += chars(x._parent._left) + x._parent._size;
+    }
+    return start;
+  }
+  
+  int indexOf(Node<ReducedToken> node) {
+    IndexNode n = (IndexNode) node;
+    int index = count(n._left) + 1;  // _head has index 0
+    for (IndexNode x = n; x._parent != null; x = x._parent) {
+      if (x == x._parent._right) index += count(x._parent._left) + 1;
+    }
+    return index;
+  }
+  
+  Node<ReducedToken> nodeAt(int offset) {
+    assert 0 <= offset && offset < charLength();
+    IndexNode n = _root;
+    while (true) {
+      int leftChars = chars(n._left);
+      if (offset < leftChars) n = n._left;
+      else if (offset < leftChars + n._size) return n;
+      else {
+        offset -= leftChars + n._size;
+        n = n._right;
+      }
+    }
+  }
+  
+  Node<ReducedToken> makeNode(ReducedToken item) {
+    IndexNode node = new IndexNode(item, nextPriority());
+    item._indexNode = node;
+    return node;
+  }
+  
+  /** Attaches the freshly linked node as a leaf in its in-order position and then rotates it up to restore the heap 
+    * order on priorities.
+    */
+  void nodeInserted(Node<ReducedToken> node) {
+    IndexNode n = (IndexNode) node;
+    if (_root == null) {
+      _root = n;
+      return;
+    }
+    Node<ReducedToken> succ = n._next;
+    IndexNode parent;
+    if (! isTail(succ) && ((IndexNode) succ)._left == null) {
+      parent = (IndexNode) succ;
+      parent._left = n;
+    }
+    else {  // the list predecessor of n is the rightmost node of succ's left subtree (or of the whole tree)
+      parent = (IndexNode) n._prev;
+      parent._right = n;
+    }
+    n._parent = parent;
+    for (IndexNode p = parent; p != null; p = p._parent) {
+      p._count++;
+      p._chars += n._size;
+    }
+    while (n._parent != null && n._parent._priority < n._priority) rotateUp(n);
+  }
+  
+  /** Builds a treap of the freshly linked nodes in linear time (as a Cartesian tree on their priorities, keeping the
+    * right spine of the tree built so far on a stack) and then merges it into the tree at their position.
+    */
+  void rangeInserted(Node<ReducedToken> first, int count) {
+    IndexNode[] spine = new IndexNode[count];
+    int height = 0;
+    Node<ReducedToken> node = first;
+    for (int i = 0; i < count; i++) {
+      IndexNode n = (IndexNode) node;
+      IndexNode left = null;
+      while (height > 0 && spine[height - 1]._priority < n._priority) {
+        left = spine[--height];
+        left.update();  // its subtree is complete
+      }
+      n._left = left;
+      if (left != null) left._parent = n;
+      if (height > 0) {
+        spine[height - 1]._right = n;
+        n._parent = spine[height - 1];
+      }
+      spine[height++] = n;
+      node = node._next;
+    }
+    for (int i = height - 1; i >= 0; i--) spine[i].update();
+    
+    // node now follows the inserted range
+    IndexNode[] parts = split(_root, isTail(node) ? count(_root) : indexOf(node) - 1);
+    _root = merge(merge(parts[0], spine[0]), parts[1]);
+    _root._parent = null;
+  }
+  
+  /** Rotates the unlinked node down until it has at most one child and then splices it out of the tree. */
+  void nodeRemoved(Node<ReducedToken> node) {
+    IndexNode n = (IndexNode) node;
+    while (n._left != null && n._right != null) rotateUp(n._left._priority > n._right._priority ? n._left : n._right);
+    IndexNode child = (n._left != null) ? n._left : n._right;
+    IndexNode parent = n._parent;
+    replaceChild(parent, n, child);
+    for (IndexNode p = parent; p != null; p = p._parent) {
+      p._count--;
+      p._chars -= n._size;
+    }
+    n._parent = n._left = n._right = null;
+    n._item._indexNode = null;
+  }
+  
+  /** Cuts the nodes strictly between left and right out of the tree with two splits and a merge, and detaches them
+    * from the tree and their tokens as nodeRemoved does. */
+  void rangeRemoved(Node<ReducedToken> left, Node<ReducedToken> right, int count) {
+    int first = isHead(left) ? 0 : indexOf(left);  // number of nodes preceding the removed range
+    IndexNode[] outer = split(_root, first);
+    IndexNode[] inner = split(outer[1], count);
+    _root = merge(outer[0], inner[1]);
+    if (_root != null) _root._parent = null;
+    for (Node<ReducedToken> node = left._next; node != right; node = node._next) {
+      IndexNode n = (IndexNode) node;
+      n._parent = n._left = n._right = null;
+      n._item._indexNode = null;
+    }
+  }
+  
+  /** Splits the tree rooted at n into its first k nodes and the remainder.  The parent pointers of the returned roots
+    * are left for the caller to set.
+    * @return a two-element array holding the roots of the two resulting trees
+    */
+  private static IndexNode[] split(IndexNode n, int k) {
+    if (n == null) return new IndexNode[] { null, null };
+    int leftCount = count(n._left);
+    IndexNode[] result;
+    if (k <= leftCount) {
+      result = split(n._left, k);
+      n._left = result[1];
+      if (result[1] != null) result[1]._parent = n;
+      result[1] = n;
+    }
+    else {
+      result = split(n._right, k - leftCount - 1);
+      n._right = result[0];
+      if (result[0] != null) result[0]._parent = n;
+      result[0] = n;
+    }
+    n.update();
+    return result;
+  }
+  
+  /** Merges two trees, all of whose nodes in a precede all of those in b. 
+    * @return the root of the merged tree
+    */
+  private static IndexNode merge(IndexNode a, IndexNode b) {
+    if (a == null) return b;
+    if (b == null) return a;
+    if (a._priority > b._priority) {
+      a._right = merge(a._right, b);
+      a._right._parent = a;
+      a.update();
+      return a;
+    }
+    else {
+      b._left = merge(a, b._left);
+      b._left._parent = b;
+      b.update();
+      return b;
+    }
+  }
+  
+  /** Rotates n above its parent, preserving in-order position and the cached counts of all other nodes. */
+  private void rotateUp(IndexNode n) {
+    IndexNode p = n._parent;
+    if (n == p._left) {
+      p._left = n._right;
+      if (n._right != null) n._right._parent = p;
+      n._right = p;
+    }
+    else {
+      p._right = n._left;
+      if (n._left != null) n._left._parent = p;
+      n._left = p;
+    }
+    IndexNode g = p._parent;
+    p._parent = n;
+    replaceChild(g, p, n);
+    p.update();
+    n.update();
+  }
+  
+  /** Replaces oldChild of parent (or the root, if parent is null) with newChild. */
+  private void replaceChild(IndexNode parent, IndexNode oldChild, IndexNode newChild) {
+    if (newChild != null) newChild._parent = parent;
+    if (parent == null) _root = newChild;
+    else if (parent._left == oldChild) parent._left = newChild;
+    else parent._right = newChild;
+  }
+}
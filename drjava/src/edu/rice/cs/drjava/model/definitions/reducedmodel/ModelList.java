@@ -37,6 +37,7 @@
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
 import edu.rice.cs.plt.collect.WeakHashSet;
+import java.util.List;
 import java.util.Set;
 
 /** A doubly-linked list class with header and trailer nodes. Allows multiple iterators to make modifications to the 
@@ -77,11 +78,28 @@ class ModelList<T> {
    */
   private Node<T> insert(Node<T> point, T item) {
     assert point != _head;
-    Node<T> newNode = point.insert(item);
+    Node<T> newNode = point.insert(makeNode(item));
     _length++;
+    nodeInserted(newNode);
     return newNode;
   }
 
+  /** Insert nodes holding the given items, in order, immediately before the specified point.  Assumes point is not
+    * head and items is not empty.
+    * @param point the point at which to insert
+    * @param items the items to insert
+    */
+  private void insertAll(Node<T> point, List<? extends T> items) {
+    assert point != _head;
+    Node<T> first = null;
+    for (T item : items) {
+      Node<T> newNode = point.insert(makeNode(item));
+      if (first == null) first = newNode;
+    }
+    _length += items.size();
+    rangeInserted(first, items.size());
+  }
+
   /** Remove a node from the list.  Assumes point is not head or tail. 
    * @param point the point at which to remove
    */
@@ -89,7 +107,55 @@ class ModelList<T> {
     assert point != _head && point != _tail;
     point.remove();
     _length--;
+    nodeRemoved(point);
   } 
+  
+  /** Creates the node that will hold item.  Subclasses that maintain auxiliary structure over the nodes override this
+    * method (together with the nodeInserted, nodeRemoved, and rangeRemoved hooks) to supply their own node type.
+    * @param item the item to be held by the new node
+    * @return a fresh, unlinked node containing item
+    */
+  Node<T> makeNode(T item) { return new Node<T>(item); }
+  
+  /** Hook invoked after a node has been linked into the list.  Does nothing by default.
+    * @param node the inserted node
+    */
+  void nodeInserted(Node<T> node) { }
+  
+  /** Hook invoked after a run of nodes has been linked into the list by a bulk insertion.  By default, invokes 
+    * nodeInserted on each of them.
+    * @param first the first inserted node
+    * @param count the number of inserted nodes
+    */
+  void rangeInserted(Node<T> first, int count) {
+    Node<T> node = first;
+    for (int i = 0; i < count; i++) {
+      nodeInserted(node);
+      node = node._next;
+    }
+  }
+  
+  /** Hook invoked after a node has been unlinked from the list.  Does nothing by default.
+    * @param node the removed node
+    */
+  void nodeRemoved(Node<T> node) { }
+  
+  /** Hook invoked just before the count nodes strictly between left and right are unlinked by a collapse.  Does 
+    * nothing by default.
+    * @param left the node preceding the removed range (possibly _head)
+    * @param right the node following the removed range (possibly _tail)
+    * @param count the number of nodes being removed
+    */
+  void rangeRemoved(Node<T> left, Node<T> right, int count) { }
+  
+  /** @return true iff node is the head sentinel of this list. */
+  boolean isHead(Node<T> node) { return node == _head; }
+  
+  /** @return true iff node is the tail sentinel of this list. */
+  boolean isTail(Node<T> node) { return node == _tail; }
+  
+  /** @return the tail sentinel of this list. */
+  Node<T> tail() { return _tail; }
 
   private void addListener(ModelIterator that) { _listeners.add(that); }
 
@@ -109,8 +175,10 @@ class ModelList<T> {
    */
   public ModelIterator getIterator() { return new ModelIterator(); }
 
-  /** The Node class for ModelLists.  The _prev and _next pointers are mutable.  The _item field is null in _head and _tail. */
-  private static class Node<T> {
+  /** The Node class for ModelLists.  The _prev and _next pointers are mutable.  The _item field is null in _head and _tail.
+    * Package private so that subclasses of ModelList can attach auxiliary structure to nodes.
+    */
+  static class Node<T> {
     Node<T> _prev;
     Node<T> _next;
     T _item;
@@ -118,24 +186,19 @@ class ModelList<T> {
     /** Constructor for _head and _tail nodes. */
     Node() { }
 
-    /** Constructor for nodes containing data. 
+    /** Constructor for nodes containing data.  The node is not linked until it is inserted.
      * @param item data contained at this node
-     * @param pred predecessor node
-     * @param succ successor node
      */
-    Node(T item, Node<T> pred, Node<T> succ) {
-      _item = item;
-      _prev = pred;
-      _next = succ;
-    }
+    Node(T item) { _item = item; }
     
-    /** Insert a new node before "this". Assumes that "this" is not the head node. 
-     * @param item item to insert
+    /** Insert an unlinked node before "this". Assumes that "this" is not the head node. 
+     * @param newNode the node to insert
      * @return the newly-inserted node
      */
-    Node<T> insert(T item) {
+    Node<T> insert(Node<T> newNode) {
       assert _prev != null;
-      Node<T> newNode = new Node<T>(item, _prev, this);
+      newNode._prev = _prev;
+      newNode._next = this;
       _prev._next = newNode;
       _prev = newNode;
       return newNode;
@@ -228,6 +291,19 @@ class ModelList<T> {
     }
     
     public int pos() { return _pos; }
+    
+    /** @return the node at which this iterator currently points. */
+    Node<T> point() { return _point; }
+    
+    /** Repositions this iterator without walking the list.  The caller is responsible for supplying the position of
+      * point, i.e., its index in the list counting _head as 0.
+      * @param point the node to point at
+      * @param pos the index of point within the list
+      */
+    void jumpTo(Node<T> point, int pos) {
+      _point = point;
+      _pos = pos;
+    }
 
     /** Inserts an item before the current item.  If current is head, we need 
      * to move to the next node to perform the insert properly.  Otherwise, 
@@ -240,11 +316,23 @@ class ModelList<T> {
       if (atStart()) next();
       _point = ModelList.this.insert(_point, item);
       int savPos = _pos;
-      notifyOfInsert(_pos);
+      notifyOfInsert(_pos, 1);
 
       _pos = savPos;  // this._pos is incremented by notify; reverse this change
     }
 
+    /** Inserts items, in order, before the current item.  Equivalent to inserting them one at a time with insert (and
+      * moving past each one), but the listeners are notified only once.  If current is head, we first move to the next
+      * node, as insert does.  Ends pointing to the same node as before, i.e., immediately after the inserted items.
+      * @param items the items to insert
+      */
+    public void insertAll(List<? extends T> items) {
+      if (items.isEmpty()) return;
+      if (atStart()) next();
+      ModelList.this.insertAll(_point, items);
+      notifyOfInsert(_pos, items.size());  // moves this iterator, like the others at or after _pos, past the items
+    }
+
     /** Removes the current item from the list.  Ends pointing to the node following the removed node.
       * Throws exception if performed atStart() or atEnd().
       */
@@ -297,19 +385,21 @@ class ModelList<T> {
         rightPoint = iter._point;
       }
       
+      rangeRemoved(leftPoint, rightPoint, rightPos - leftPos - 1);
       rightPoint._prev = leftPoint;
       leftPoint._next = rightPoint;
       _length -= rightPos - leftPos - 1;  //determine new length
       notifyOfCollapse(leftPos, rightPos, rightPoint);
     }
 
-    /** Notifies the iterators in _listeners that a node has been inserted. 
+    /** Notifies the iterators in _listeners that nodes have been inserted. 
      * @param pos insertion position
+     * @param count the number of inserted nodes
      */
-    private void notifyOfInsert(int pos) {
+    private void notifyOfInsert(int pos, int count) {
       for (ModelIterator listener : _listeners) {
         int lisPos = listener._pos;
-        if (lisPos >= pos) listener._pos = lisPos + 1;
+        if (lisPos >= pos) listener._pos = lisPos + count;
       } 
     }
 
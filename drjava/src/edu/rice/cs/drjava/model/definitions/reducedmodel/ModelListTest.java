@@ -38,6 +38,8 @@ package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
 import edu.rice.cs.drjava.DrJavaTestCase;
 
+import java.util.Arrays;
+
 /** * Tests the functionality of the ModelList list class.
  * @version $Id$
  */
@@ -84,6 +86,30 @@ public final class ModelListTest extends DrJavaTestCase {
     }
   }
 
+  public void testInsertAll() {
+    ModelList<Integer>.ModelIterator itFull = fFull.getIterator();
+    itFull.insertAll(Arrays.asList(Integer.valueOf(0), Integer.valueOf(3)));
+    assertEquals("#0.0", 2, fFull.length());
+    assertTrue("#0.1", itFull.atEnd());
+    assertEquals("#0.2", 3, itFull.pos());
+    itFull.prev();
+    ModelList<Integer>.ModelIterator itFull2 = itFull.copy();
+    itFull2.prev();
+    itFull.insertAll(Arrays.asList(Integer.valueOf(1), Integer.valueOf(2)));
+    assertEquals("#1.0", 4, fFull.length());
+    assertEquals("#1.1", Integer.valueOf(3), itFull.current());
+    assertEquals("#1.2", 4, itFull.pos());
+    assertEquals("#1.3", Integer.valueOf(0), itFull2.current());
+    assertEquals("#1.4", 1, itFull2.pos());
+    itFull.insertAll(Arrays.<Integer>asList());
+    assertEquals("#2.0", 4, fFull.length());
+    ModelList<Integer>.ModelIterator it = fFull.getIterator();
+    for (int i = 0; i < 4; i++) {
+      it.next();
+      assertEquals("#2.1", Integer.valueOf(i), it.current());
+    }
+  }
+
   public void testRemove() {
     ModelList<Integer>.ModelIterator itFull = fFull.getIterator();
     //ModelList<Integer>.ModelIterator itEmpty = fEmpty.getIterator();
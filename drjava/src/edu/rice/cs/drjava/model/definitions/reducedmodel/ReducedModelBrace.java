@@ -36,6 +36,8 @@
 
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 /** Keeps track of the true braces (i.e., "() {}[]"). This reduced sub-model is used to balance braces for both 
@@ -48,8 +50,13 @@ public class ReducedModelBrace extends AbstractReducedModel {
   
   private volatile ReducedModelControl _parent;  // contains the walker which is moved by moveWalkerGetState
   
-  public ReducedModelBrace(ReducedModelControl parent) {
-    super();
+  public ReducedModelBrace(ReducedModelControl parent) { this(parent, false); }
+  
+  /** @param parent the enclosing reduced model
+    * @param indexed whether to keep the tokens in an IndexedTokenList
+    */
+  public ReducedModelBrace(ReducedModelControl parent, boolean indexed) {
+    super(indexed);
     _parent = parent;
   }
   
@@ -69,6 +76,32 @@ public class ReducedModelBrace extends AbstractReducedModel {
     }
   }
   
+  /** Splits text into the braces "{}[]()" and the gaps between them, all of which are FREE. */
+  List<ReducedToken> tokenize(CharSequence text) {
+    List<ReducedToken> tokens = new ArrayList<ReducedToken>();
+    int gap = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      switch(ch) {
+        case '{':
+        case '}':
+        case '[':
+        case ']':
+        case '(':
+        case ')':
+          if (gap > 0) tokens.add(new Gap(gap, FREE));
+          gap = 0;
+          tokens.add(Brace.MakeBrace(String.valueOf(ch), FREE));
+          break;
+        default:
+          gap++;
+          break;
+      }
+    }
+    if (gap > 0) tokens.add(new Gap(gap, FREE));
+    return tokens;
+  }
+  
   /** Helper function for top level brace insert functions.
     * <OL>
     *  <li> at Head: not special case
@@ -36,6 +36,9 @@
 
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Keeps track of newlines, comment blocks, and single and double-quoted strings. This reduced sub-model is used for 
   * coloring purposes.  Given the information contained here, the DefinitionsEditorKit can paint strings, comments, and
   * regular code in different colors.  DefinitionsEditorKit colors keywords by directly reading DefinitionsDocument, 
@@ -49,8 +52,13 @@ public class ReducedModelComment extends AbstractReducedModel {
   volatile TokenList.Iterator _walker;
   
   /** Constructor.  Creates a new reduced model with the cursor at the start of a blank "page." */
-  public ReducedModelComment() {
-    super();
+  public ReducedModelComment() { this(false); }
+  
+  /** Constructor.  Creates a new reduced model with the cursor at the start of a blank "page."
+    * @param indexed whether to keep the tokens in an IndexedTokenList
+    */
+  public ReducedModelComment(boolean indexed) {
+    super(indexed);
     _walker = _cursor.copy();
   }
   
@@ -67,6 +75,73 @@ public class ReducedModelComment extends AbstractReducedModel {
     }
   }
   
+  /** Tokenizes text by replaying, at the end of a list, the cases of insertSpecial, insertNewline, insertQuote, and
+    * _insertGap that apply at the end of the model.  A brace that combines with the one before it keeps that brace's 
+    * state; a new brace takes the state that the update method of the preceding state gives it.
+    */
+  List<ReducedToken> tokenize(CharSequence text) {
+    List<ReducedToken> tokens = new ArrayList<ReducedToken>();
+    ReducedToken last = null;
+    int gap = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      if (ch != '*' && ch != '/' && ch != '\n' && ch != '\\' && ch != '\'' && ch != '\"') {
+        gap++;
+        continue;
+      }
+      if (gap > 0) {
+        last = new Gap(gap, _stateAfter(last));
+        tokens.add(last);
+        gap = 0;
+      }
+      String type = String.valueOf(ch);
+      if (last != null) {
+        String lastType = last.getType();
+        if ((ch == '/' || ch == '*') && lastType.equals("/") && last.getState() == FREE) {
+          last.setType("/" + type);
+          continue;
+        }
+        else if (ch == '/' && lastType.equals("*") && _stateAfter(last) == INSIDE_BLOCK_COMMENT) {
+          last.setType("*/");
+          last.setState(FREE);
+          continue;
+        }
+        else if (ch == '\\' && lastType.equals("\\")) {
+          last.setType("\\\\");
+          continue;
+        }
+        else if ((ch == '\'' || ch == '\"') && lastType.equals("\\")) {  // see _getQuoteType
+          tokens.remove(tokens.size() - 1);
+          last = tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+          type = "\\" + type;
+        }
+      }
+      ReducedModelState state = _stateAfter(last);
+      Brace brace = Brace.MakeBrace(type, state);
+      if (state == INSIDE_LINE_COMMENT) {
+        if (ch == '\n') brace.setState(FREE);
+      }
+      else if (state == INSIDE_DOUBLE_QUOTE || state == INSIDE_SINGLE_QUOTE) {
+        if (ch == '\n') brace.setState(FREE);
+        else if (type.equals(state == INSIDE_DOUBLE_QUOTE ? "\"" : "'")) {
+          brace.flip();  // a close quote
+          brace.setState(FREE);
+        }
+      }
+      tokens.add(brace);
+      last = brace;
+    }
+    if (gap > 0) tokens.add(new Gap(gap, _stateAfter(last)));
+    return tokens;
+  }
+  
+  /** @param last the last token of the list, or null if it is empty
+    * @return the state at the end of the list
+    */
+  private static ReducedModelState _stateAfter(ReducedToken last) {
+    return (last == null) ? FREE : TokenList.stateAfter(last);
+  }
+  
   /** Inserts one of three special chars, (*),(/), or (\).
     * <OL>
     *  <li> empty list: insert slash
@@ -63,10 +63,17 @@ public class ReducedModelControl implements BraceReduction {
   final ReducedModelComment _rmc; // the reduced comment model
   volatile int _offset;
   
-  /** Standard constructor. */
-  public ReducedModelControl() {
-    _rmb = new ReducedModelBrace(this);
-    _rmc = new ReducedModelComment();
+  /** Standard constructor.  Creates a reduced model backed by plain linked token lists. */
+  public ReducedModelControl() { this(false); }
+  
+  /** Creates a reduced model whose brace and comment sub-models are backed either by plain linked token lists or by
+    * IndexedTokenLists.  The latter make moving the cursor or the walker a long distance cost O(log n) rather than 
+    * time proportional to the number of tokens passed over, at the price of some bookkeeping on every edit.
+    * @param indexed whether to use IndexedTokenLists
+    */
+  public ReducedModelControl(boolean indexed) {
+    _rmb = new ReducedModelBrace(this, indexed);
+    _rmc = new ReducedModelComment(indexed);
   }
   
   /** @return the absolute offset of the cursor in the brace model, which is expensive.  Used for testing purposes only. 
@@ -81,6 +88,10 @@ public class ReducedModelControl implements BraceReduction {
   /** @return the absolute offset of the walker in the comment model, which is expensive.  Used for testing purposes only. */
   public int walkerOffset() { return _rmc.walkerOffset(); }
   
+  /** @return the number of tokens held by the brace and comment models; used to estimate the memory footprint of the
+    * enclosing document. */
+  public int getTokenCount() { return _rmb._tokens.length() + _rmc._tokens.length(); }
+  
 //  private ReducedModelBrace _getRMB() { return _rmb; }
   
 //  private ReducedModelComment _getRMC() { return _rmc; }
@@ -90,6 +101,11 @@ public class ReducedModelControl implements BraceReduction {
     _rmc.insertChar(ch);
   }
   
+  public void insertText(CharSequence text) {
+    _rmb.insertText(text);
+    _rmc.insertText(text);
+  }
+  
   /** Updates the BraceReduction to reflect cursor movement. Negative values move left; positive values move right.
     * ASSUMES that count is within range, i.e. that {@code 0 <= absOffset() + count <= getLength}
     * NOTE: this method does NOT move the _walker in ReduceModelComment.
@@ -39,7 +39,7 @@ package edu.rice.cs.drjava.model.definitions.reducedmodel;
 /** * Test the delete functionality of the reduced model.
  * @version $Id$
  */
-public final class ReducedModelDeleteTest extends BraceReductionTestCase
+public class ReducedModelDeleteTest extends BraceReductionTestCase
   implements ReducedModelStates
 {
   /** Tests that line comments after code are indeted correctly.
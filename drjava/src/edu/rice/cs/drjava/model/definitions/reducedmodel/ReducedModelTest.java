@@ -36,10 +36,31 @@
 
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
-/** Tests insertion and move and other non-delete functionality of the reduced model.
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+
+import edu.rice.cs.drjava.DrJava;
+import edu.rice.cs.drjava.config.OptionConstants;
+import edu.rice.cs.drjava.model.GlobalEventNotifier;
+import edu.rice.cs.drjava.model.definitions.DefinitionsDocument;
+import edu.rice.cs.drjava.model.definitions.DefinitionsEditorKit;
+import edu.rice.cs.plt.io.IOUtil;
+
+/** Tests insertion and move and other non-delete functionality of the reduced model.  {@link #main} compares the time
+  * taken to load large files into definitions documents through the editor kit with that of a single insertion.
   * @version $Id$
   */
-public final class ReducedModelTest extends BraceReductionTestCase implements ReducedModelStates {
+public class ReducedModelTest extends BraceReductionTestCase implements ReducedModelStates {
+  
+  /** Characters from which random edits are drawn; weighted towards those that form reduced model tokens. */
+  static final String ALPHABET = "{}()[]/*\\\"'\n abc  xyz  ";
+  
   /** tests backwards balancer, e.g., ')' balances with '(' */
   public void testBalanceBackward() {
     assertEquals("#0.0", -1, model0.balanceBackward());
@@ -1001,7 +1022,7 @@ public final class ReducedModelTest extends BraceReductionTestCase implements Re
    * @return a ReducedModelControl object
    */
   protected ReducedModelControl setUpExample() {
-    ReducedModelControl model = new ReducedModelControl();
+    ReducedModelControl model = makeModel();
     model.insertChar('{');
     model.insertChar('\n');
     insertGap(model, 3);
@@ -1073,9 +1094,148 @@ public final class ReducedModelTest extends BraceReductionTestCase implements Re
 //    System.out.println(model0.currentToken());
     assertEquals("#9.0", -1, model1.balanceForward());
   }
+  
+  /** Checks that two reduced sub-models hold the same tokens, including their states and orientations. */
+  private static void assertSameTokens(String message, AbstractReducedModel expected, AbstractReducedModel actual) {
+    assertEquals(message + " length", expected._tokens.length(), actual._tokens.length());
+    TokenList.Iterator e = expected._tokens.getIterator();
+    TokenList.Iterator a = actual._tokens.getIterator();
+    for (int i = 0; i < expected._tokens.length(); i++) {
+      e.next();
+      a.next();
+      assertEquals(message + " type #" + i, e.current().getType(), a.current().getType());
+      assertEquals(message + " size #" + i, e.current().getSize(), a.current().getSize());
+      assertEquals(message + " state #" + i, e.current().getState(), a.current().getState());
+      assertEquals(message + " open #" + i, e.current().isOpen(), a.current().isOpen());
+    }
+    e.dispose();
+    a.dispose();
+  }
+  
+  /** Checks that inserting text in one step builds the same reduced model as inserting it one character at a time,
+    * both into an empty model and into one that already holds text. */
+  private void checkInsertText(String message, String before, String text) {
+    ReducedModelControl expected = makeModel();
+    ReducedModelControl actual = makeModel();
+    expected.insertText(before);
+    actual.insertText(before);
+    for (int i = 0; i < text.length(); i++) expected.insertChar(text.charAt(i));
+    actual.insertText(text);
+    assertSameTokens(message + " braces", expected._rmb, actual._rmb);
+    assertSameTokens(message + " comments", expected._rmc, actual._rmc);
+    assertEquals(message, expected.simpleString(), actual.simpleString());
+    assertEquals(message + " offset", expected.absOffset(), actual.absOffset());
+    assertEquals(message + " brace offset", expected.braceCursorOffset(), actual.braceCursorOffset());
+    assertEquals(message + " walker offset", expected.walkerOffset(), actual.walkerOffset());
+    assertEquals(message + " state", expected.getStateAtCurrent(), actual.getStateAtCurrent());
+    
+    // the models must also respond to subsequent edits alike
+    int length = before.length() + text.length();
+    Random random = new Random(length);
+    for (int i = 0; i < 20 && length > 0; i++) {
+      int rel = random.nextInt(length + 1) - expected.absOffset();
+      expected.move(rel);
+      actual.move(rel);
+      if (random.nextBoolean()) {
+        char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        expected.insertChar(ch);
+        actual.insertChar(ch);
+        length++;
+      }
+      else if (expected.absOffset() < length) {
+        expected.delete(1);
+        actual.delete(1);
+        length--;
+      }
+      assertSameTokens(message + " braces after edit #" + i, expected._rmb, actual._rmb);
+      assertSameTokens(message + " comments after edit #" + i, expected._rmc, actual._rmc);
+      assertEquals(message + " offset after edit #" + i, expected.absOffset(), actual.absOffset());
+      assertEquals(message + " state after edit #" + i, expected.getStateAtCurrent(), actual.getStateAtCurrent());
+    }
+  }
+  
+  /** Tests insertText on the combinations of comment, quote and escape characters that merge with or shadow one
+    * another. */
+  public void testInsertText() {
+    String[] texts = { "", "abc", "{(a)[b]}", "/**/", "/*/", "*/", "//*", "///", "a//b\n\"c\"", "\"a\\\"b\"",
+      "'\\''", "\\\\\"", "\"/*\"*/", "/*\"*/\"", "'\"'\"'\n", "a/*b\n*c*/d//e/*\nf", "/ /* * / */", "\\\n'" };
+    for (String text : texts) {
+      checkInsertText("\"" + text + "\"", "", text);
+      checkInsertText("\"" + text + "\" after text", "x/*\"", text);
+    }
+  }
+  
+  /** Tests insertText on random strings. */
+  public void testInsertTextRandom() {
+    Random random = new Random(21);
+    for (int i = 0; i < 200; i++) {
+      StringBuilder text = new StringBuilder();
+      int length = random.nextInt(300);
+      for (int j = 0; j < length; j++) text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+      checkInsertText("random #" + i, "", text.toString());
+    }
+  }
+  
+  /** Compares the time taken to load large files into definitions documents with plain and indexed reduced models
+    * as DrJava used to, through DefaultEditorKit.read (which inserts the text in 4K chunks, so that all but the first
+    * are inserted into the reduced model one character at a time), with that of loading them as DrJava now does when
+    * it opens, reconstructs or reverts a document (a single insertString, which builds the reduced model in one pass).
+    * @param args the Java source files or directories to load (src/edu/rice/cs/drjava/model by default); the last
+    *             measurement is of all of them concatenated into a single file */
+  public static void main(String[] args) throws IOException, BadLocationException {
+    List<String> texts = new ArrayList<String>();
+    for (String arg : (args.length > 0) ? args : new String[] { "src/edu/rice/cs/drjava/model" }) {
+      _findSources(new File(arg), texts);
+    }
+    StringBuilder all = new StringBuilder();
+    int lines = 0;
+    for (String text : texts) {
+      all.append(text);
+      for (int i = 0; i < text.length(); i++) if (text.charAt(i) == '\n') lines++;
+    }
+    System.out.println(texts.size() + " files, " + lines + " lines, " + all.length() + " characters");
+    
+    GlobalEventNotifier notifier = new GlobalEventNotifier();
+    DefinitionsEditorKit kit = new DefinitionsEditorKit(notifier);
+    for (int round = 0; round < 5; ++round) {
+      for (boolean indexed : new boolean[] { false, true }) {
+        DrJava.getConfig().setSetting(OptionConstants.INDEXED_REDUCED_MODEL, indexed);
+        long chunked = 0;
+        long whole = 0;
+        for (String text : texts) {
+          chunked += _load(text, notifier, kit);
+          whole += _load(text, notifier, null);
+        }
+        String kind = indexed ? "indexed" : "plain";
+        System.out.println("  " + kind + ", each file: " + chunked / 1000000 + "ms through the editor kit, " + 
+                           whole / 1000000 + "ms in one insertion");
+        System.out.println("  " + kind + ", one file: " + _load(all.toString(), notifier, kit) / 1000000 +
+                           "ms through the editor kit, " + _load(all.toString(), notifier, null) / 1000000 + 
+                           "ms in one insertion");
+      }
+    }
+  }
+  
+  /** Loads text into a new definitions document.
+    * @param kit the editor kit to read the text with, or null to insert it with a single insertString
+    * @return the time taken in nanoseconds */
+  private static long _load(String text, GlobalEventNotifier notifier, DefinitionsEditorKit kit)
+    throws IOException, BadLocationException {
+    System.gc();
+    long start = System.nanoTime();
+    DefinitionsDocument doc = new DefinitionsDocument(notifier);
+    if (kit != null) kit.read(new StringReader(text), doc, 0);
+    else doc.insertString(0, text, null);
+    long time = System.nanoTime() - start;
+    doc.close();  // unregisters the document's configuration listeners so that it can be collected
+    return time;
+  }
+  
+  private static void _findSources(File f, List<String> result) throws IOException {
+    if (f.isDirectory()) {
+      File[] files = f.listFiles();
+      if (files != null) for (File child : files) _findSources(child, result);
+    }
+    else if (f.getName().endsWith(".java")) result.add(IOUtil.toString(f));
+  }
 }
-
-
-
-;
-
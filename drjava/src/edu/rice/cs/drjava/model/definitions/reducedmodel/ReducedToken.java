@@ -42,10 +42,19 @@ package edu.rice.cs.drjava.model.definitions.reducedmodel;
 public abstract class ReducedToken implements ReducedModelStates {
   private volatile ReducedModelState _state;
   
+  /** The node holding this token when it belongs to an IndexedTokenList; null otherwise. */
+  volatile IndexedTokenList.IndexNode _indexNode;
+  
   public ReducedToken(ReducedModelState state) {
     _state = state;
   }
   
+  /** Notifies the enclosing IndexedTokenList (if any) that the size of this token has changed. */
+  void sizeChanged() {
+    IndexedTokenList.IndexNode node = _indexNode;
+    if (node != null) node.sizeChanged();
+  }
+  
   /** Get the size of the token.
     * @return the number of characters represented by the token
     */
@@ -36,14 +36,80 @@
 
 package edu.rice.cs.drjava.model.definitions.reducedmodel;
 
-/** A list of reduced model tokens.  Uses ModelList as its base.
+/** A list of reduced model tokens.  Uses ModelList as its base.  Cursor movement walks the list token by token unless
+  * the list is indexed (see IndexedTokenList), in which case long moves seek directly to the target offset.
   * @version $Id$
   */
 public class TokenList extends ModelList<ReducedToken> implements /*imports*/ ReducedModelStates {
   
+  /** Default minimum distance (in characters) of a move for which an indexed list seeks instead of walking. */
+  static final int SEEK_THRESHOLD = 64;
+  
   /** Gets a TokenList.Iterator for this list.  Overrides the weaker method in {@code ModelList<ReducedToken>.Iterator}. */
   public Iterator getIterator() { return new Iterator(); }
   
+  /** @return true if this list supports the offset queries below in logarithmic time.  A plain TokenList answers them
+    * by walking the list, in linear time.
+    */
+  boolean isIndexed() { return false; }
+  
+  /** @return the minimum distance of a move for which iterators seek rather than walk; never, for a plain TokenList. */
+  int seekThreshold() { return Integer.MAX_VALUE; }
+  
+  /** @return the total number of characters represented by the tokens in this list. */
+  int charLength() {
+    int length = 0;
+    for (Node<ReducedToken> n = tail()._prev; ! isHead(n); n = n._prev) length += n._item.getSize();
+    return length;
+  }
+  
+  /** @param node a node of this list other than _head or _tail
+    * @return the absolute offset of the first character of node
+    */
+  int startOf(Node<ReducedToken> node) {
+    int offset = 0;
+    for (Node<ReducedToken> n = node._prev; ! isHead(n); n = n._prev) offset += n._item.getSize();
+    return offset;
+  }
+  
+  /** @param node a node of this list other than _head or _tail
+    * @return the index of node in this list (counting _head as 0)
+    */
+  int indexOf(Node<ReducedToken> node) {
+    int index = 0;
+    for (Node<ReducedToken> n = node; ! isHead(n); n = n._prev) index++;
+    return index;
+  }
+  
+  /** @param offset an absolute offset with {@code 0 <= offset < charLength()}
+    * @return the node whose token contains the character at offset
+    */
+  Node<ReducedToken> nodeAt(int offset) {
+    assert 0 <= offset && offset < charLength();
+    Node<ReducedToken> n = tail();
+    while (! isHead(n._prev)) n = n._prev;
+    while (offset >= n._item.getSize()) {
+      offset -= n._item.getSize();
+      n = n._next;
+    }
+    return n;
+  }
+  
+  /** @param prev a token
+    * @return the commented/quoted state of the text immediately following prev
+    */
+  static ReducedModelState stateAfter(ReducedToken prev) {
+    if (prev.isLineComment() || (prev.getState() == INSIDE_LINE_COMMENT)) return INSIDE_LINE_COMMENT;
+    else if (prev.isBlockCommentStart() || (prev.getState() == INSIDE_BLOCK_COMMENT)) return INSIDE_BLOCK_COMMENT;
+    else if ((prev.isDoubleQuote() && prev.isOpen() && (prev.getState() == FREE)) ||
+             (prev.getState() == INSIDE_DOUBLE_QUOTE))
+      return INSIDE_DOUBLE_QUOTE;
+    else if ((prev.isSingleQuote() && prev.isOpen() && (prev.getState() == FREE)) ||
+             (prev.getState() == INSIDE_SINGLE_QUOTE))
+      return INSIDE_SINGLE_QUOTE;
+    else return FREE;
+  }
+  
   public class Iterator extends ModelIterator {
     
     private int _offset;
@@ -78,17 +144,7 @@ public class TokenList extends ModelList<ReducedToken> implements /*imports*/ Re
       */
     public ReducedModelState getStateAtCurrent() {
       if (atFirstItem() || atStart() || TokenList.this.isEmpty())  return FREE;
-      else if (prevItem().isLineComment() || (prevItem().getState() == INSIDE_LINE_COMMENT))
-        return INSIDE_LINE_COMMENT;
-      else if (prevItem().isBlockCommentStart() || (prevItem().getState() == INSIDE_BLOCK_COMMENT))
-        return INSIDE_BLOCK_COMMENT;
-      else if ((prevItem().isDoubleQuote() && prevItem().isOpen() && (prevItem().getState() == FREE)) ||
-               (prevItem().getState() == INSIDE_DOUBLE_QUOTE))
-        return INSIDE_DOUBLE_QUOTE;
-      else if ((prevItem().isSingleQuote() && prevItem().isOpen() && (prevItem().getState() == FREE)) ||
-               (prevItem().getState() == INSIDE_SINGLE_QUOTE))
-        return INSIDE_SINGLE_QUOTE;
-      else return FREE;
+      else return stateAfter(prevItem());
     }
     
     
@@ -173,7 +229,42 @@ public class TokenList extends ModelList<ReducedToken> implements /*imports*/ Re
       * or end.
       * @param count indicates the direction and magnitude of cursor movement
       */
-    public void move(int count) { _offset = _move(count, _offset); }
+    public void move(int count) {
+      if (Math.abs(count) >= seekThreshold()) _offset = _seek(count, _offset);
+      else _offset = _move(count, _offset);
+    }
+    
+    /** @return the absolute offset of this iterator.  Takes linear time unless the list is indexed. */
+    int indexedOffset() {
+      if (atStart()) return _offset;
+      if (atEnd()) return charLength() + _offset;
+      return startOf(point()) + _offset;
+    }
+    
+    /** Indexed counterpart of _move.  Finds the target token by descending the index rather than walking, and leaves
+      * the iterator in exactly the position _move would.  Only efficient when the list is indexed.
+      * @param count  the number of chars to move.  Negative values move back, positive values move forward.
+      * @param currentOffset the current offset
+      * @return the updated offset
+      */
+    private int _seek(int count, int currentOffset) {
+      int length = charLength();
+      int from;
+      if (atStart()) from = 0;
+      else if (atEnd()) from = length + currentOffset;
+      else from = startOf(point()) + currentOffset;
+      
+      int target = from + count;
+      if (target < 0) throw new IllegalArgumentException("At Start");
+      if (target > length) throw new IllegalArgumentException("At end");
+      if (target == length) {
+        jumpTo(tail(), length() + 1);
+        return 0;
+      }
+      Node<ReducedToken> node = nodeAt(target);
+      jumpTo(node, indexOf(node));
+      return target - startOf(node);
+    }
     
     /** Helper function for move(int).  Assumes that count is in range!
       * @param count  the number of chars to move.  Negative values move back, positive values move forward.
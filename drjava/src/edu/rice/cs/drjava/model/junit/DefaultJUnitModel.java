@@ -47,6 +47,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import edu.rice.cs.drjava.DrJava;
 import edu.rice.cs.drjava.config.BooleanOption;
 import edu.rice.cs.drjava.model.GlobalModel;
 import edu.rice.cs.drjava.model.FileMovedException;
@@ -60,10 +61,9 @@ import edu.rice.cs.drjava.model.definitions.InvalidPackageException;
 import edu.rice.cs.drjava.ui.DrJavaErrorHandler;
 import edu.rice.cs.drjava.config.OptionConstants;
 
+import edu.rice.cs.plt.concurrent.CompletionMonitor;
 import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.plt.iter.IterUtil;
-import edu.rice.cs.plt.lambda.Box;
-import edu.rice.cs.plt.lambda.SimpleBox;
 import edu.rice.cs.util.FileOps;
 import edu.rice.cs.util.UnexpectedException;
 import edu.rice.cs.util.classloader.ClassFileError;
@@ -71,8 +71,6 @@ import edu.rice.cs.util.text.SwingDocument;
 import edu.rice.cs.util.swing.Utilities;
 import edu.rice.cs.util.Log;
 
-import org.objectweb.asm.*;
-
 import static edu.rice.cs.plt.debug.DebugUtil.debug;
 
 import edu.rice.cs.drjava.model.coverage.CoverageMetadata;
@@ -83,6 +81,11 @@ import edu.rice.cs.drjava.model.coverage.CoverageMetadata;
 public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
 
   private CoverageMetadata coverageMetadata = new CoverageMetadata(false, "");
+  
+  /** Signaled when the slave JVM returns from running a test suite, which is after it has written any coverage
+    * report.  The suite's results are announced (by testSuiteEnded) before the report is written.
+    */
+  private final CompletionMonitor _testRunDone = new CompletionMonitor(true);
 
   /** log for use in debugging */
   private static Log _log = new Log("DefaultJUnitModel.txt", false);
@@ -111,6 +114,30 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
     */
   private volatile boolean _testInProgress = false;
   
+  /** Runs tests across a pool of slave JVMs; created on first use. */
+  private volatile ParallelJUnitRunner _parallelRunner = null;
+  
+  /** Running times of the test classes, used to balance parallel test runs; loaded on first use. */
+  private volatile TestDurationHistory _durationHistory = null;
+  
+  /** Index of the class files searched for tests, kept up to date after each compile; loaded on first use. */
+  private volatile TestClassIndex _testClassIndex = null;
+  
+  /** The build directory from which _testClassIndex was loaded. */
+  private volatile File _testClassIndexDir = null;
+  
+  /** Guards the following fields, which describe the refreshes of the test class index after compiles. */
+  private final Object _refreshLock = new Object();
+  
+  /** Whether a thread is refreshing the test class index. */
+  private boolean _refreshRunning = false;
+  
+  /** The index and class directories of the latest refresh not yet started, or null if there is none.  A refresh
+    * requested while another is running replaces any refresh still waiting, so at most one thread reads class files.
+    */
+  private TestClassIndex _pendingRefreshIndex = null;
+  private Set<File> _pendingRefreshDirs = null;
+  
   /** State flag to record if test classes in projects must end in "Test" */
   private boolean _forceTestSuffix = false;
   
@@ -129,6 +156,9 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
     _junitErrorModel = new JUnitErrorModel(new JUnitError[0], _model, false);
     BooleanOption suffixOption = OptionConstants.FORCE_TEST_SUFFIX;
     _forceTestSuffix = edu.rice.cs.drjava.DrJava.getConfig().getSetting(suffixOption).booleanValue();
+    _compilerModel.addListener(new DummyCompilerListener() {
+      @Override public void compileEnded(File workDir, List<? extends File> excludedFiles) { _refreshTestClassIndex(); }
+    });
   }
   
   //-------------------------- Field Setters --------------------------------//
@@ -148,6 +178,8 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
     //return this._jvm.getLastJUnitResult(); 
   }
 
+  public void waitForCoverageReport() throws InterruptedException { _testRunDone.ensureSignaled(); }
+  
   public boolean getCoverage() { 
       return (this.coverageMetadata != null) ? this.coverageMetadata.getFlag() : false; 
   }
@@ -324,10 +356,6 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
    * @param allTests true if all tests are to be run
    */
   private void _rawJUnitOpenDefDocs(List<OpenDefinitionsDocument> lod, final boolean allTests) {
-
-    File buildDir = _model.getBuildDirectory();
-
-//    Utilities.show("Running JUnit tests. Build directory is " + buildDir);
     
     /** Open java source files */
     HashSet<String> openDocFiles = new HashSet<String>();
@@ -335,41 +363,7 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
     /** A map whose keys are directories containing class files corresponding to open java source files.
       * Their values are the corresponding source roots. 
       */
-    HashMap<File, File> classDirsAndRoots = new HashMap<File, File>();
-    
-    // Initialize openDocFiles and classDirsAndRoots
-    // All packageNames should be valid because all source files are compiled
-    
-    for (OpenDefinitionsDocument doc: lod) /* for all nonEmpty documents in lod */ {
-      if (doc.isSourceFile())  { // excludes Untitled documents and open non-source files
-        try {
-//          System.err.println("Processing " + doc);
-          File sourceRoot = doc.getSourceRoot(); // may throw an InvalidPackageException
-          
-          // doc has valid package name; add it to list of open java source doc files
-          openDocFiles.add(doc.getCanonicalPath());
-          
-          String packagePath = doc.getPackageName().replace('.', File.separatorChar);
-          
-          // Add (canonical path name for) build directory for doc to classDirs
-          
-          File buildRoot = (buildDir == FileOps.NULL_FILE) ? sourceRoot: buildDir;
-          
-          File classFileDir = new File(IOUtil.attemptCanonicalFile(buildRoot), packagePath);
-          
-          File sourceDir = 
-            (buildDir == FileOps.NULL_FILE) ? classFileDir : 
-                                              new File(IOUtil.attemptCanonicalFile(sourceRoot), packagePath);
-          
-          if (! classDirsAndRoots.containsKey(classFileDir)) {
-            classDirsAndRoots.put(classFileDir, sourceDir);
-//            System.err.println("Adding " + classFileDir + " with source root " + sourceRoot + 
-//            " to list of class directories");
-          }
-        }
-        catch (InvalidPackageException e) { /* Skip the file, since it doesn't have a valid package */ }
-      }
-    }
+    HashMap<File, File> classDirsAndRoots = _getClassDirsAndRoots(lod, openDocFiles);
 
 //    System.err.println("classDirs = " + classDirsAndRoots.keySet());
     
@@ -384,97 +378,80 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
     /* Source files corresonding to potential test class files */
     final ArrayList<File> files = new ArrayList<File>();
     
+    /* Classes that are certainly not tests need not be loaded by the slave JVM, except to measure coverage. */
+    final boolean skipNonTests = ! coverageMetadata.getFlag();
+    
+    final TestClassIndex index = _getTestClassIndex();
+    
     try {
       for (File dir: classDirs) { // foreach class file directory
 //        System.err.println("Examining directory " + dir);
         
-        File[] listing = dir.listFiles();
-        
-//        System.err.println("Directory contains the files: " + Arrays.asList(listing));
-        
-        if (listing != null) { // listFiles may return null if there's an IO error
-          for (File entry : listing) { /* for each class file in the build directory */        
-            
-            //System.err.println("Examining file " + entry);
-            
-            /* ignore non-class files */
-            String name = entry.getName();
-            if (! name.endsWith(".class")) continue;
-            
-            /* Ignore class names that do not end in "Test" if FORCE_TEST_SUFFIX option is set */
-            String noExtName = "";
-            if (_forceTestSuffix) {
-              noExtName = name.substring(0, name.length() - 6);  // remove ".class" from name
-              int indexOfLastDot = noExtName.lastIndexOf('.');
-              String simpleClassName = noExtName.substring(indexOfLastDot + 1);
+        for (File entry : index.update(dir)) { /* for each class file in the build directory */        
+          
+          //System.err.println("Examining file " + entry);
+          
+          String name = entry.getName();
+          
+          /* Ignore class names that do not end in "Test" if FORCE_TEST_SUFFIX option is set */
+          String noExtName = "";
+          if (_forceTestSuffix) {
+            noExtName = name.substring(0, name.length() - 6);  // remove ".class" from name
+            int indexOfLastDot = noExtName.lastIndexOf('.');
+            String simpleClassName = noExtName.substring(indexOfLastDot + 1);
 //              System.err.println("Simple class name is " + simpleClassName);  
-              if (/*isProject &&*/ ! simpleClassName.endsWith("Test")) continue;
-            }
-                       
-            /* ignore entries that do not correspond to files?  Can this happen? */
-            if (! entry.isFile()) continue;
+            if (/*isProject &&*/ ! simpleClassName.endsWith("Test")) continue;
+          }
+          
+          if (skipNonTests && index.isTest(entry) == Boolean.FALSE) continue;
+          
+          // Add this class and the corrresponding source file to classNames and files, respectively.
+          // Finding the source file is non-trivial because it may be a language-levels file
+          
+          try {
+            String className = index.getClassName(entry);
+            String sourceName = index.getSourceName(entry);
+            if (sourceName == null) continue;  // no SourceFile attribute
             
-            // Add this class and the corrresponding source file to classNames and files, respectively.
-            // Finding the source file is non-trivial because it may be a language-levels file
+            File rootDir = classDirsAndRoots.get(dir);
             
-            try {
-              final Box<String> className = new SimpleBox<String>();
-              final Box<String> sourceName = new SimpleBox<String>();
-              new ClassReader(IOUtil.toByteArray(entry)).accept(new ClassVisitor(Opcodes.ASM4) {
-                public void visit(int version, int access, String name, String sig, String sup, String[] inters) {
-                  className.set(name.replace('/', '.'));
-                }
-                public void visitSource(String source, String debug) {
-                  sourceName.set(source);
-                }
-                public void visitOuterClass(String owner, String name, String desc) { }
-                public AnnotationVisitor visitAnnotation(String desc, boolean visible) { return null; }
-                public void visitAttribute(Attribute attr) { }
-                public void visitInnerClass(String name, String out, String in, int access) { }
-                public FieldVisitor visitField(int a, String n, String d, String s, Object v) { return null; }
-                public MethodVisitor visitMethod(int a, String n, String d, String s, String[] e) { return null; }
-                public void visitEnd() { }
-              }, 0);
-              
-              File rootDir = classDirsAndRoots.get(dir);
-              
-              /** The canonical pathname for the file (including the file name) */
-              String javaSourceFileName = getCanonicalPath(rootDir) + File.separator + sourceName.value();
+            /** The canonical pathname for the file (including the file name) */
+            String javaSourceFileName = getCanonicalPath(rootDir) + File.separator + sourceName;
  
 //              System.err.println("Full java source fileName = " + javaSourceFileName);
-              
-              /* The index in fileName of the dot preceding the extension ".java", ".dj", ".dj0*, ".dj1", or ".dj2" */
-              int indexOfExtDot = javaSourceFileName.lastIndexOf('.');
+            
+            /* The index in fileName of the dot preceding the extension ".java", ".dj", ".dj0*, ".dj1", or ".dj2" */
+            int indexOfExtDot = javaSourceFileName.lastIndexOf('.');
 //              System.err.println("indexOfExtDot = " + indexOfExtDot);
-              if (indexOfExtDot == -1) continue;  // RMI stub class files return source file names without extensions
+            if (indexOfExtDot == -1) continue;  // RMI stub class files return source file names without extensions
 //              System.err.println("File found in openDocFiles = "  + openDocFiles.contains(sourceFileName));
-              
-              /* Determine if this java source file was generated from a language levels file. */
-              String strippedName = javaSourceFileName.substring(0, indexOfExtDot);
+            
+            /* Determine if this java source file was generated from a language levels file. */
+            String strippedName = javaSourceFileName.substring(0, indexOfExtDot);
 //              System.err.println("Stripped name = " + strippedName);
-              
-              String sourceFileName;
-              
-              if (openDocFiles.contains(javaSourceFileName)) sourceFileName = javaSourceFileName;
-              else if (openDocFiles.contains(strippedName + OptionConstants.DJ_FILE_EXTENSION))
-                sourceFileName = strippedName + OptionConstants.DJ_FILE_EXTENSION;
-              else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ0_FILE_EXTENSION))
-                sourceFileName = strippedName + OptionConstants.OLD_DJ0_FILE_EXTENSION;
-              else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ1_FILE_EXTENSION))
-                sourceFileName = strippedName + OptionConstants.OLD_DJ1_FILE_EXTENSION;
-              else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ2_FILE_EXTENSION))
-                sourceFileName = strippedName + OptionConstants.OLD_DJ2_FILE_EXTENSION;
-              else continue; // no matching source file is open
-              
-              File sourceFile = new File(sourceFileName);
-              classNames.add(className.value());
-              files.add(sourceFile);
-              _log.log("Class " + className + "added to classNames.   File " + sourceFileName + " added to files.");
-            }
-            catch(IOException e) { /* ignore it; can't read class file */ }
+            
+            String sourceFileName;
+            
+            if (openDocFiles.contains(javaSourceFileName)) sourceFileName = javaSourceFileName;
+            else if (openDocFiles.contains(strippedName + OptionConstants.DJ_FILE_EXTENSION))
+              sourceFileName = strippedName + OptionConstants.DJ_FILE_EXTENSION;
+            else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ0_FILE_EXTENSION))
+              sourceFileName = strippedName + OptionConstants.OLD_DJ0_FILE_EXTENSION;
+            else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ1_FILE_EXTENSION))
+              sourceFileName = strippedName + OptionConstants.OLD_DJ1_FILE_EXTENSION;
+            else if (openDocFiles.contains(strippedName + OptionConstants.OLD_DJ2_FILE_EXTENSION))
+              sourceFileName = strippedName + OptionConstants.OLD_DJ2_FILE_EXTENSION;
+            else continue; // no matching source file is open
+            
+            File sourceFile = new File(sourceFileName);
+            classNames.add(className);
+            files.add(sourceFile);
+            _log.log("Class " + className + "added to classNames.   File " + sourceFileName + " added to files.");
           }
+          catch(IOException e) { /* ignore it; can't resolve the source root */ }
         }
       }
+      _saveTestClassIndex(index);
     }
 
     catch(Exception e) {
@@ -482,6 +459,11 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
       throw new UnexpectedException(e); // triggers _junitInterrupted which runs hourglassOff
     }
     
+    /* Tests are distributed across several slave JVMs unless coverage is measured or the debugger is attached to the
+     * interactions JVM. */
+    final int jvmCount = DrJava.getConfig().getSetting(OptionConstants.JUNIT_PARALLEL_JVMS);
+    final boolean parallel = jvmCount > 1 && ! coverageMetadata.getFlag() && ! _model.getDebugger().isReady();
+    
     /** Run the junit test suite that has already been set up on the slave JVM */
     _testInProgress = true;
     // System.err.println("Spawning test thread");
@@ -500,7 +482,20 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
           // synchronized over _compilerModel to ensure that compilation and junit testing are mutually exclusive.
           /** Set up junit test suite on slave JVM; get TestCase classes forming that suite */
           _log.log("Calling findTestClasses(" + classNames + ", " + files + " ... )");
-          List<String> tests = _jvm.findTestClasses(classNames, files, coverageMetadata).unwrap(null);
+          List<String> tests;
+          if (parallel) {
+            boolean allowAssertions = DrJava.getConfig().getSetting(OptionConstants.RUN_WITH_ASSERT);
+            try {
+              tests = _getParallelRunner().findTestClasses(jvmCount, _model.getWorkingDirectory(), allowAssertions,
+                                                           getClassPath(), classNames, files, DefaultJUnitModel.this,
+                                                           _getDurationHistory());
+            }
+            catch (RuntimeException e) {
+              nonTestCase(allTests, false);  // ends the test run (and turns off the hourglass) before reporting e
+              throw e;
+            }
+          }
+          else tests = _jvm.findTestClasses(classNames, files, coverageMetadata).unwrap(null);
 
           if (tests == null || tests.isEmpty()) {
             nonTestCase(allTests, false);
@@ -508,10 +503,11 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
           }
         }
         
+        _testRunDone.reset();
         try {
           _notifyJUnitStarted(); 
           // The false return value could be changed to an exception.
-          boolean testsPresent = _jvm.runTestSuite();
+          boolean testsPresent = parallel ? _parallelRunner.runTestSuite() : _jvm.runTestSuite();
           if (!testsPresent) {
               throw new RemoteException("No unit test classes were passed to the slave JVM");
           }
@@ -520,12 +516,150 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
           _notifyJUnitEnded();  // balances junitStarted()
           _testInProgress = false;
         }
+        finally { _testRunDone.signal(); }
       }
 
     }).start();
  }
    
 //-------------------------------- Helpers --------------------------------//
+
+  /** Finds the directories holding the class files of the given documents.
+    * @param lod list of open documents
+    * @param openDocFiles receives the canonical paths of the source files among lod that have a valid package
+    * @return a map from each class file directory to the corresponding source directory
+    */
+  private HashMap<File, File> _getClassDirsAndRoots(List<OpenDefinitionsDocument> lod, Set<String> openDocFiles) {
+    
+    File buildDir = _model.getBuildDirectory();
+    
+    HashMap<File, File> classDirsAndRoots = new HashMap<File, File>();
+    
+    // All packageNames should be valid because all source files are compiled
+    
+    for (OpenDefinitionsDocument doc: lod) /* for all nonEmpty documents in lod */ {
+      if (doc.isSourceFile())  { // excludes Untitled documents and open non-source files
+        try {
+//          System.err.println("Processing " + doc);
+          File sourceRoot = doc.getSourceRoot(); // may throw an InvalidPackageException
+          
+          // doc has valid package name; add it to list of open java source doc files
+          openDocFiles.add(doc.getCanonicalPath());
+          
+          String packagePath = doc.getPackageName().replace('.', File.separatorChar);
+          
+          // Add (canonical path name for) build directory for doc to classDirs
+          
+          File buildRoot = (buildDir == FileOps.NULL_FILE) ? sourceRoot: buildDir;
+          
+          File classFileDir = new File(IOUtil.attemptCanonicalFile(buildRoot), packagePath);
+          
+          File sourceDir = 
+            (buildDir == FileOps.NULL_FILE) ? classFileDir : 
+                                              new File(IOUtil.attemptCanonicalFile(sourceRoot), packagePath);
+          
+          if (! classDirsAndRoots.containsKey(classFileDir)) {
+            classDirsAndRoots.put(classFileDir, sourceDir);
+//            System.err.println("Adding " + classFileDir + " with source root " + sourceRoot + 
+//            " to list of class directories");
+          }
+        }
+        catch (InvalidPackageException e) { /* Skip the file, since it doesn't have a valid package */ }
+      }
+    }
+    return classDirsAndRoots;
+  }
+  
+  
+  /** @return the runner for parallel test runs, creating it if necessary */
+  private ParallelJUnitRunner _getParallelRunner() {
+    if (_parallelRunner == null) _parallelRunner = new ParallelJUnitRunner(_model.getInteractionsModel());
+    return _parallelRunner;
+  }
+  
+  /** @return the running times of the test classes, loaded from the build directory if there is one */
+  private TestDurationHistory _getDurationHistory() {
+    if (_durationHistory == null) {
+      File buildDir = _model.getBuildDirectory();
+      _durationHistory = (buildDir != null && buildDir.isDirectory()) ? TestDurationHistory.load(buildDir)
+        : new TestDurationHistory();
+    }
+    return _durationHistory;
+  }
+  
+  /** Saves the running times of the test classes to the build directory if there is one. */
+  private void _saveDurationHistory() {
+    File buildDir = _model.getBuildDirectory();
+    if (_durationHistory == null || buildDir == null || ! buildDir.isDirectory()) return;
+    try { _durationHistory.save(buildDir); }
+    catch(IOException e) { _log.log("could not save test durations: " + e); }
+  }
+  
+  /** @return the index of the class files searched for tests, loaded from the build directory if there is one */
+  private synchronized TestClassIndex _getTestClassIndex() {
+    File buildDir = _model.getBuildDirectory();
+    boolean sameDir = (buildDir == null) ? _testClassIndexDir == null : buildDir.equals(_testClassIndexDir);
+    if (_testClassIndex == null || ! sameDir) {
+      _testClassIndex = _isUsableBuildDir(buildDir) ? TestClassIndex.load(buildDir) : new TestClassIndex();
+      _testClassIndexDir = buildDir;
+    }
+    return _testClassIndex;
+  }
+  
+  /** Saves the given index to the build directory if there is one and the index changed. */
+  private synchronized void _saveTestClassIndex(TestClassIndex index) {
+    File buildDir = _testClassIndexDir;
+    if (index != _testClassIndex || ! index.isDirty() || ! _isUsableBuildDir(buildDir)) return;
+    try { index.save(buildDir); }
+    catch(IOException e) { _log.log("could not save test class index: " + e); }
+  }
+  
+  private static boolean _isUsableBuildDir(File buildDir) {
+    return buildDir != null && buildDir != FileOps.NULL_FILE && buildDir.isDirectory();
+  }
+  
+  /** Brings the test class index up to date with the class files of the open documents, so that the next test run
+    * does not have to read them.  The directories are determined in the calling thread; the class files are read
+    * in a separate thread.  If that thread is still busy with an earlier refresh, this refresh is queued behind it,
+    * replacing any refresh already queued.
+    */
+  private void _refreshTestClassIndex() {
+    Set<File> classDirs = _getClassDirsAndRoots(_model.getOpenDefinitionsDocuments(), new HashSet<String>()).keySet();
+    TestClassIndex index = _getTestClassIndex();
+    synchronized(_refreshLock) {
+      _pendingRefreshIndex = index;
+      _pendingRefreshDirs = classDirs;
+      if (_refreshRunning) return;  // the running thread picks up the pending refresh when it is done
+      _refreshRunning = true;
+    }
+    Thread t = new Thread(new Runnable() {
+      public void run() {
+        while (true) {
+          TestClassIndex index;
+          Set<File> classDirs;
+          synchronized(_refreshLock) {
+            index = _pendingRefreshIndex;
+            classDirs = _pendingRefreshDirs;
+            _pendingRefreshIndex = null;
+            _pendingRefreshDirs = null;
+            if (index == null) { _refreshRunning = false; return; }
+          }
+          try {
+            for (File dir: classDirs) index.update(dir);
+            _saveTestClassIndex(index);
+          }
+          catch(RuntimeException e) { _log.log("could not refresh test class index", e); }
+        }
+      }
+    }, "Test Class Index Refresh");
+    t.setDaemon(true);
+    t.start();
+  }
+  
+  /** Stops the slave JVMs used for parallel test runs. */
+  public void dispose() {
+    if (_parallelRunner != null) _parallelRunner.dispose();
+  }
   
   /** Helper method to notify JUnitModel listeners that JUnit test suite execution has started. */
   private void _notifyJUnitStarted() { 
@@ -643,6 +777,7 @@ public class DefaultJUnitModel implements JUnitModel, JUnitModelCallback {
       _junitErrorModel = new JUnitErrorModel(errors, _model, true);
       _notifyJUnitEnded();
       _testInProgress = false;
+      _saveDurationHistory();
 //    new ScrollableDialog(null, "DefaultJUnitModel.testSuiteEnded(...) finished", "", "").show();
     }});
   }
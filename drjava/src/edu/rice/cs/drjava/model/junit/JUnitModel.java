@@ -58,6 +58,12 @@ public interface JUnitModel {
   public JUnitResultTuple getFinalResult(); 
   public boolean getCoverage();
   
+  /** Waits until the coverage report of the current test run, if any, has been written.  The run's results are
+    * announced before the report is written.  Returns at once if no test run is in progress.
+    * @throws InterruptedException if the thread is interrupted while waiting
+    */
+  public void waitForCoverageReport() throws InterruptedException;
+  
   //-------------------------- Listener Management --------------------------//
   
   /** Add a JUnitListener to the model.
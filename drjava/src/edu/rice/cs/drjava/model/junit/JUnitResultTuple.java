@@ -41,21 +41,28 @@ import java.util.List;
 
 import java.io.Serializable;
 
+import edu.rice.cs.drjava.model.coverage.CoverageSummary;
+
 public class JUnitResultTuple implements Serializable {
 
     private boolean retval;
-    private Map<String, List<String>> lineColors;
+    private CoverageSummary summary;
 
-    public JUnitResultTuple(boolean retval, Map<String, List<String>> lineColors) {
+    public JUnitResultTuple(boolean retval, CoverageSummary summary) {
         this.retval = retval;
-        this.lineColors = lineColors;  
+        this.summary = summary;  
     }
 
     public boolean getRetval() {
         return this.retval;
     }
 
+    /** @return the line coverage of the tested classes, or null if coverage was not computed */
+    public CoverageSummary getSummary() {
+        return this.summary;
+    }
+
     public Map<String, List<String>> getLineColors() {
-        return this.lineColors;
+        return (this.summary == null) ? null : this.summary.getLineColors();
     }
 }
@@ -0,0 +1,185 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.rice.cs.util.classloader.ClassFileError;
+
+/** Merges the callbacks of a test run split into shards, each running in its own slave JVM, into the callbacks of a
+  * single test run.  The target sees one testSuiteStarted call carrying the total number of tests, the testStarted and
+  * testEnded calls of all shards, and one testSuiteEnded call carrying the errors of all shards.  Test events that
+  * arrive before every shard has reported its number of tests are held back until it has.  Along the way the running
+  * time of every test class is measured and recorded in a TestDurationHistory.
+  * @version $Id$
+  */
+public class JUnitShardMerger {
+  
+  private final JUnitModelCallback _target;
+  private final TestDurationHistory _history;
+  private final int _shardCount;
+  
+  /** Which shards have reported testSuiteStarted and testSuiteEnded, respectively. */
+  private final boolean[] _started;
+  private final boolean[] _ended;
+  private int _startedCount = 0;
+  private int _endedCount = 0;
+  private int _numTests = 0;
+  
+  /** Test events held back until all shards have started; null once they have been released. */
+  private List<Runnable> _held = new ArrayList<Runnable>();
+  
+  private final List<JUnitError> _errors = new ArrayList<JUnitError>();
+  
+  /** Start times (from System.nanoTime) of the running tests, keyed by shard and test name. */
+  private final HashMap<String, Long> _testStarts = new HashMap<String, Long>();
+  
+  /** Accumulated running time in nanoseconds of each test class. */
+  private final HashMap<String, Long> _classNanos = new HashMap<String, Long>();
+  
+  /** @param target the callback receiving the merged events
+    * @param history the history in which to record the running times of the test classes
+    * @param shardCount the number of shards
+    */
+  public JUnitShardMerger(JUnitModelCallback target, TestDurationHistory history, int shardCount) {
+    _target = target;
+    _history = history;
+    _shardCount = shardCount;
+    _started = new boolean[shardCount];
+    _ended = new boolean[shardCount];
+  }
+  
+  /** @return the number of shards */
+  public int getShardCount() { return _shardCount; }
+  
+  /** @return true if every shard has ended and the target has been sent testSuiteEnded */
+  public synchronized boolean isDone() { return _endedCount == _shardCount; }
+  
+  /** @param shard the index of a shard
+    * @return the callback to which the slave JVM running the given shard reports
+    */
+  public JUnitModelCallback shard(final int shard) {
+    return new JUnitModelCallback() {
+      public void nonTestCase(boolean isTestAll, boolean didCompileFail) { }
+      public void classFileError(ClassFileError e) { _target.classFileError(e); }
+      public void testSuiteStarted(int numTests) { _suiteStarted(shard, numTests); }
+      public void testStarted(String testName) { _testStarted(shard, testName); }
+      public void testEnded(String testName, boolean wasSuccessful, boolean causedError) {
+        _testEnded(shard, testName, wasSuccessful, causedError);
+      }
+      public void testSuiteEnded(JUnitError[] errors) { _suiteEnded(shard, errors); }
+      public File getFileForClassName(String className) { return _target.getFileForClassName(className); }
+      public Iterable<File> getClassPath() { return _target.getClassPath(); }
+      public void junitJVMReady() { }
+    };
+  }
+  
+  /** Ends a shard that contains no tests.
+    * @param shard the index of the shard
+    */
+  public void shardEmpty(int shard) { _suiteEnded(shard, new JUnitError[0]); }
+  
+  /** Ends a shard whose slave JVM failed without reporting the end of its suite.  Does nothing if the shard has
+    * already ended.
+    * @param shard the index of the shard
+    * @param message describes the failure
+    */
+  public void shardFailed(int shard, String message) {
+    _suiteEnded(shard, new JUnitError[] { new JUnitError(message, false, "") });
+  }
+  
+  private synchronized void _suiteStarted(int shard, int numTests) {
+    if (_started[shard]) return;
+    _started[shard] = true;
+    _numTests += numTests;
+    if (++_startedCount == _shardCount) {
+      _target.testSuiteStarted(_numTests);
+      for (Runnable r: _held) r.run();
+      _held = null;
+    }
+  }
+  
+  private synchronized void _testStarted(int shard, final String testName) {
+    _testStarts.put(shard + " " + testName, System.nanoTime());
+    _release(new Runnable() { public void run() { _target.testStarted(testName); } });
+  }
+  
+  private synchronized void _testEnded(int shard, final String testName, final boolean wasSuccessful, 
+                                       final boolean causedError) {
+    Long start = _testStarts.remove(shard + " " + testName);
+    if (start != null) {
+      String className = _className(testName);
+      Long old = _classNanos.get(className);
+      _classNanos.put(className, System.nanoTime() - start + ((old == null) ? 0 : old));
+    }
+    _release(new Runnable() { public void run() { _target.testEnded(testName, wasSuccessful, causedError); } });
+  }
+  
+  private synchronized void _suiteEnded(int shard, JUnitError[] errors) {
+    if (_ended[shard]) return;
+    _suiteStarted(shard, 0);  // a shard that never started must not hold back the others
+    _ended[shard] = true;
+    for (JUnitError e: errors) _errors.add(e);
+    if (++_endedCount == _shardCount) {
+      for (Map.Entry<String, Long> e: _classNanos.entrySet()) {
+        _history.record(e.getKey(), e.getValue() / 1000000);
+      }
+      _target.testSuiteEnded(_errors.toArray(new JUnitError[_errors.size()]));
+    }
+  }
+  
+  /** Runs r now if all shards have started, and later otherwise. */
+  private void _release(Runnable r) {
+    if (_held == null) r.run();
+    else _held.add(r);
+  }
+  
+  /** Extracts the class name from a JUnit test name of the form "method(class)".
+    * @param testName the name of a test
+    * @return the name of the class of the test
+    */
+  static String _className(String testName) {
+    int open = testName.lastIndexOf('(');
+    int close = testName.lastIndexOf(')');
+    if (open < 0 || close < open) return testName;
+    return testName.substring(open + 1, close);
+  }
+}
@@ -0,0 +1,124 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.util.classloader.ClassFileError;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Tests the merging of the callbacks of a sharded test run.
+  * @version $Id$
+  */
+public final class JUnitShardMergerTest extends DrJavaTestCase {
+  
+  /** Records the calls it receives. */
+  private static class RecordingCallback implements JUnitModelCallback {
+    final List<String> events = new ArrayList<String>();
+    JUnitError[] errors = null;
+    public void nonTestCase(boolean isTestAll, boolean didCompileFail) { events.add("nonTestCase"); }
+    public void classFileError(ClassFileError e) { events.add("classFileError"); }
+    public void testSuiteStarted(int numTests) { events.add("suiteStarted " + numTests); }
+    public void testStarted(String testName) { events.add("started " + testName); }
+    public void testEnded(String testName, boolean wasSuccessful, boolean causedError) {
+      events.add("ended " + testName + " " + wasSuccessful);
+    }
+    public void testSuiteEnded(JUnitError[] errors) { events.add("suiteEnded"); this.errors = errors; }
+    public File getFileForClassName(String className) { return null; }
+    public Iterable<File> getClassPath() { return new ArrayList<File>(); }
+    public void junitJVMReady() { }
+  }
+  
+  /** Tests that test events are held back until all shards have started and that errors are merged. */
+  public void testMerge() {
+    RecordingCallback target = new RecordingCallback();
+    TestDurationHistory history = new TestDurationHistory();
+    JUnitShardMerger m = new JUnitShardMerger(target, history, 3);
+    JUnitModelCallback s0 = m.shard(0);
+    JUnitModelCallback s1 = m.shard(1);
+    
+    s0.testSuiteStarted(2);
+    s0.testStarted("testA(p.ATest)");
+    s0.testEnded("testA(p.ATest)", true, false);
+    assertTrue("events held back", target.events.isEmpty());
+    
+    m.shardEmpty(2);
+    s1.testSuiteStarted(1);
+    assertEquals(Arrays.asList("suiteStarted 3", "started testA(p.ATest)", "ended testA(p.ATest) true"), target.events);
+    
+    s1.testStarted("testB(p.BTest)");
+    s0.testStarted("testC(p.ATest)");
+    s1.testEnded("testB(p.BTest)", false, true);
+    s0.testEnded("testC(p.ATest)", true, false);
+    s1.testSuiteEnded(new JUnitError[] { new JUnitError("b failed", false, "testB") });
+    assertFalse(m.isDone());
+    s0.testSuiteEnded(new JUnitError[0]);
+    assertTrue(m.isDone());
+    
+    assertEquals(8, target.events.size());
+    assertEquals("suiteEnded", target.events.get(7));
+    assertEquals(1, target.errors.length);
+    assertEquals("b failed", target.errors[0].message());
+    assertTrue(history.getDuration("p.ATest") >= 0);
+    assertTrue(history.getDuration("p.BTest") >= 0);
+    assertEquals(-1, history.getDuration("testA(p.ATest)"));
+  }
+  
+  /** Tests that a failed shard ends the run with an error, and that late reports are ignored. */
+  public void testShardFailed() {
+    RecordingCallback target = new RecordingCallback();
+    JUnitShardMerger m = new JUnitShardMerger(target, new TestDurationHistory(), 2);
+    m.shard(0).testSuiteStarted(1);
+    m.shard(0).testSuiteEnded(new JUnitError[0]);
+    m.shardFailed(0, "ignored");
+    m.shardFailed(1, "shard 1 failed");
+    m.shard(1).testSuiteEnded(new JUnitError[0]);
+    
+    assertEquals(Arrays.asList("suiteStarted 1", "suiteEnded"), target.events);
+    assertEquals(1, target.errors.length);
+    assertEquals("shard 1 failed", target.errors[0].message());
+  }
+  
+  /** Tests extracting class names from JUnit test names. */
+  public void testClassName() {
+    assertEquals("p.ATest", JUnitShardMerger._className("testA(p.ATest)"));
+    assertEquals("p.ATest", JUnitShardMerger._className("p.ATest"));
+  }
+}
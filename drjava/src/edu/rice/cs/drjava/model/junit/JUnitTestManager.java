@@ -37,7 +37,6 @@
 package edu.rice.cs.drjava.model.junit;
 
 import java.io.File;
-import java.io.InputStream;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -49,7 +48,6 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Enumeration;
 import java.util.Arrays;
 
@@ -66,6 +64,8 @@ import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.plt.tuple.Pair;
 import edu.rice.cs.plt.iter.IterUtil;
 
+import edu.rice.cs.drjava.model.coverage.CoverageRuntime;
+import edu.rice.cs.drjava.model.coverage.InstrumentedClassCache;
 import edu.rice.cs.drjava.model.coverage.JacocoClassLoader;
 import edu.rice.cs.plt.reflect.EmptyClassLoader;
 
@@ -81,7 +81,6 @@ import junit.framework.TestSuite;
 import junit.framework.TestFailure;
 import junit.framework.JUnit4TestCaseFacade;
 
-import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IBundleCoverage;
 import org.jacoco.core.data.ExecutionDataStore;
@@ -89,7 +88,6 @@ import org.jacoco.core.data.SessionInfoStore;
 
 import org.jacoco.core.instr.Instrumenter;
 import org.jacoco.core.runtime.IRuntime;
-import org.jacoco.core.runtime.LoggerRuntime;
 import org.jacoco.core.runtime.RuntimeData;
 
 /** Runs in the InterpreterJVM. Runs tests given a classname and formats the results into a (serializable) array of 
@@ -121,8 +119,11 @@ public class JUnitTestManager {
   // Create and initialize fields for JaCoCo
   private String _coverageOutdir = null;
   private IRuntime _runtime = null;
+  private InstrumentedClassCache _instrumentedClasses = null;
   private RuntimeData _myData = null;
   private List<String> _nonTestClassNames = null;
+  /** Kept between runs, so that unchanged classes and packages are not analyzed and rendered again. */
+  private ReportGenerator _reportGenerator = null;
   private JUnitResultTuple _finalResult = new JUnitResultTuple(false, null);
   
   /** Standard constructor 
@@ -172,9 +173,16 @@ public class JUnitTestManager {
     else {
       // create a Jacoco runtime, output directory, report descriptors, and loader
       _coverageOutdir = coverageMetadata.getOutdirPath();
-      _runtime = new LoggerRuntime();
+      _runtime = new CoverageRuntime();
       _myData = new RuntimeData();
-      loader = new JacocoClassLoader(_classPathManager.getClassPath(), new Instrumenter(_runtime), defaultLoader);
+      // instrumented classes are cached in the build directory, if there is one
+      File buildDir = IterUtil.isEmpty(_classPathManager.getBuildDirectoryCP()) ? null :
+        IterUtil.first(_classPathManager.getBuildDirectoryCP());
+      _instrumentedClasses = new InstrumentedClassCache(buildDir, new Instrumenter(_runtime));
+      JacocoClassLoader jacocoLoader =
+        new JacocoClassLoader(_classPathManager.getClassPath(), _instrumentedClasses, defaultLoader);
+      jacocoLoader.prefetch(classNames);
+      loader = jacocoLoader;
       _nonTestClassNames = new ArrayList(classNames.size());
       try { _runtime.startup(_myData); }
       catch (Exception e) {
@@ -238,13 +246,13 @@ public class JUnitTestManager {
       _finalResult = new JUnitResultTuple(false, null);
       return false;
     }
-    Map<String, List<String>> lineColors = null;
     _finalResult = new JUnitResultTuple(true, null);
     
 //    _log.log("runTestSuite() in SlaveJVM called");
     
     /* Declare fault array for amalgamating errors and failures */
     JUnitError[] faults = new JUnitError[0];
+    boolean suiteEnded = false;  // whether _jmc has been sent testSuiteEnded
     try {
       _log.log("Calling _testRunner.runSuite(" + _suite + ")");
       TestResult result = _testRunner.runSuite(_suite);
@@ -288,23 +296,24 @@ public class JUnitTestManager {
         _log.log("Collected coverage information");
         _runtime.shutdown();
         
-        /** Together with the original class definitions we can calculate coverage information. */
-        final CoverageBuilder coverageBuilder = new CoverageBuilder();
-        final Analyzer analyzer = new Analyzer(_executionDataStore, coverageBuilder);
-        URLClassLoader urlCL = newURLLoader();
-        
-        String cName = null;
-        try {
-          for (int j = 0; j < _nonTestClassNames.size(); j++) {
-            cName = _nonTestClassNames.get(j);
-            InputStream is = urlCL.getResource(cName + ".class").openStream();
-            _log.log("Constructed InputStream " + is + " for class " + cName);
-            analyzer.analyzeClass(is, cName);
-          } 
-        } catch(Exception e) {
-          throw new UnexpectedException(e, "Coverage analysis threw this exception while processing class " + cName);
+        /** Together with the original class definitions we can calculate coverage information.  Only classes whose
+          * class files or execution data changed since the last run are analyzed again. */
+        if (_reportGenerator == null || ! _reportGenerator.getReportDirectoryPath().equals(_coverageOutdir)) {
+          _reportGenerator = new ReportGenerator(_coverageOutdir);
+        }
+        final CoverageBuilder coverageBuilder;
+        try { coverageBuilder = _reportGenerator.analyze(_nonTestClassNames, newURLLoader(), _executionDataStore); }
+        catch(Exception e) {
+          throw new UnexpectedException(e, "Coverage analysis threw this exception while processing " + 
+                                        _nonTestClassNames);
         }
         
+        /* The line coverage is available before the report is written, so the results are announced now and the
+         * (slower) HTML report is written afterwards. */
+        _finalResult = new JUnitResultTuple(true, _reportGenerator.getSummary());
+        _jmc.testSuiteEnded(faults);
+        suiteEnded = true;
+        
         /* Run the structure analyzer on the project source folder to build up the coverage model. In flat file
          * mode, only the first source directory (if there are multiple source directories) is analyzed.  TODO:
          * extend this analysis to all source directories for the open classes in flat file mode.
@@ -312,15 +321,12 @@ public class JUnitTestManager {
         
         _log.log("Generating test coverage");
         IBundleCoverage bundleCoverage = coverageBuilder.getBundle("Coverage Summary");
-        ReportGenerator rg = new ReportGenerator(_coverageOutdir, coverageBuilder);
         _log.log("Determining project root");
         _log.log("getProjectCP() = " + _classPathManager.getProjectFilesCP());
         File f = _classPathManager.getProjectFilesCP().iterator().next();
         if (! f.exists()) _log.log("****** Project root does not exist!");
         _log.log("Creating coverage report for code base rooted at " + f);
-        rg.createReport(bundleCoverage, _executionDataStore, sessionInfos, f);
-        lineColors = rg.getAllLineColors();
-        _finalResult = new JUnitResultTuple(true, lineColors);
+        _reportGenerator.createReport(bundleCoverage, _executionDataStore, sessionInfos, f);
         
       } else {
         _log.log("runtime was null");
@@ -328,16 +334,19 @@ public class JUnitTestManager {
       /* Reset the runtime */
       _runtime = null;
       _reset();
-      _jmc.testSuiteEnded(faults);
+      if (! suiteEnded) _jmc.testSuiteEnded(faults);
     }
     
     catch (Exception e) { 
-      faults = new JUnitError[] { 
-        new JUnitError(null, -1, -1, e.getMessage(), false, "", "", e.toString(), e.getStackTrace())
-      };
-      _log.log("Slave JVM: testSuite ended with faults:" + Arrays.toString(faults));
       _reset();
-      _jmc.testSuiteEnded(faults);
+      if (suiteEnded) _log.log("Slave JVM: coverage report failed: " + e);  // the tests have already been reported
+      else {
+        faults = new JUnitError[] { 
+          new JUnitError(null, -1, -1, e.getMessage(), false, "", "", e.toString(), e.getStackTrace())
+        };
+        _log.log("Slave JVM: testSuite ended with faults:" + Arrays.toString(faults));
+        _jmc.testSuiteEnded(faults);
+      }
     }
     
     _log.log("Exiting runTestSuite()");
@@ -345,6 +354,10 @@ public class JUnitTestManager {
   }
   
   private void _reset() {
+    if (_instrumentedClasses != null) {
+      _instrumentedClasses.dispose();
+      _instrumentedClasses = null;
+    }
     _suite = null;
     _testClassNames = null;
     _testFiles = null;
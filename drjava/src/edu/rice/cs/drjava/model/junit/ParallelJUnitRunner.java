@@ -0,0 +1,237 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.rice.cs.drjava.model.repl.InteractionsModelCallback;
+import edu.rice.cs.drjava.model.repl.newjvm.MainJVM;
+import edu.rice.cs.drjava.model.coverage.CoverageMetadata;
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.UnexpectedException;
+
+/** Runs a test suite split into shards across a pool of slave JVMs, one shard per JVM.  The shards are balanced by the
+  * running times recorded in a TestDurationHistory, and the callbacks of all shards are merged by a JUnitShardMerger
+  * into those of a single run.  Like MainJVM, a run consists of a call to findTestClasses followed by a call to
+  * runTestSuite.  The slave JVMs are ordinary interpreter JVMs managed by their own MainJVM; they are started on
+  * demand, receive the class path of the interactions JVM, and are restarted after each run so that every run starts
+  * fresh and the next one does not wait for startup.
+  * @version $Id$
+  */
+public class ParallelJUnitRunner {
+  
+  /** log for use in debugging */
+  private static final Log _log = new Log("ParallelJUnitRunner.txt", false);
+  
+  /** Receives the console output of the slave JVMs and supplies their boot class path. */
+  private final InteractionsModelCallback _output;
+  
+  /** The slave JVMs of the pool. */
+  private final List<MainJVM> _workers = new ArrayList<MainJVM>();
+  
+  /** The merger of the pending run, or null if no run is pending. */
+  private volatile JUnitShardMerger _merger = null;
+  
+  /** Indices of the shards of the pending run that contain tests. */
+  private volatile List<Integer> _activeShards = null;
+  
+  /** @param output receives the console output of the slave JVMs */
+  public ParallelJUnitRunner(InteractionsModelCallback output) { _output = output; }
+  
+  /** @return the number of slave JVMs in the pool */
+  public synchronized int getPoolSize() { return _workers.size(); }
+  
+  /** Distributes the given classes across up to jvmCount slave JVMs and finds the test classes among them.  Blocks
+    * until all slave JVMs have answered.  If a shard fails, its exception is rethrown and no test suite is pending.
+    * @param jvmCount the maximum number of slave JVMs to use
+    * @param workDir the working directory of the slave JVMs
+    * @param allowAssertions whether the slave JVMs run assert statements
+    * @param classPath the class path of the tests
+    * @param classNames the class names to run in a test
+    * @param files the source files of classNames
+    * @param target the callback receiving the merged events of the run
+    * @param history the running times used to balance the shards; updated with the times of this run
+    * @return the class names that are actually test cases
+    */
+  public List<String> findTestClasses(int jvmCount, File workDir, boolean allowAssertions, 
+                                      final Iterable<File> classPath, final List<String> classNames,
+                                      final List<File> files, JUnitModelCallback target, TestDurationHistory history) {
+    if (_merger != null && ! _merger.isDone()) throw new IllegalStateException("Test suite is still pending!");
+    
+    final List<List<Integer>> shards = history.planShards(classNames, jvmCount);
+    final JUnitShardMerger merger = new JUnitShardMerger(target, history, shards.size());
+    final List<MainJVM> workers = _getWorkers(shards.size(), workDir, allowAssertions);
+    _log.log("Running " + classNames.size() + " classes in " + shards.size() + " shards");
+    
+    final List<List<String>> found =
+      new ArrayList<List<String>>(Collections.<List<String>>nCopies(shards.size(), null));
+    try {
+      _forEachShard(shards.size(), new ShardTask() {
+        public void run(int i) {
+          MainJVM w = workers.get(i);
+          w.setJUnitModel(merger.shard(i));
+          w.startInterpreterJVM();
+          for (File f: classPath) w.addExtraClassPath(f);
+          List<String> names = new ArrayList<String>();
+          List<File> shardFiles = new ArrayList<File>();
+          for (int j: shards.get(i)) { names.add(classNames.get(j)); shardFiles.add(files.get(j)); }
+          found.set(i, w.findTestClasses(names, shardFiles, new CoverageMetadata(false, "")).unwrap(null));
+          _log.log("Shard " + i + " " + names + " has tests " + found.get(i));
+        }
+      });
+    }
+    catch (RuntimeException e) {
+      // the run is abandoned; leave every slave JVM fresh for the next one
+      for (MainJVM w: workers) _restart(w);
+      throw e;
+    }
+    
+    List<String> tests = new ArrayList<String>();
+    List<Integer> active = new ArrayList<Integer>();
+    for (int i = 0; i < shards.size(); ++i) {
+      if (found.get(i) != null && ! found.get(i).isEmpty()) { tests.addAll(found.get(i)); active.add(i); }
+    }
+    for (int i = 0; i < shards.size(); ++i) {
+      if (! active.contains(i)) {
+        if (! active.isEmpty()) merger.shardEmpty(i);  // otherwise there is no run whose end must be reported
+        _restart(workers.get(i));
+      }
+    }
+    if (active.isEmpty()) return tests;
+    _merger = merger;
+    _activeShards = active;
+    return tests;
+  }
+  
+  /** Runs the shards set up by the preceding call to findTestClasses, each in its own slave JVM.  Blocks until all
+    * shards have finished.
+    * @return false if no test suite is pending; true otherwise
+    */
+  public boolean runTestSuite() {
+    final JUnitShardMerger merger = _merger;
+    final List<Integer> active = _activeShards;
+    if (merger == null || active == null || active.isEmpty()) return false;
+    _activeShards = null;
+    final List<MainJVM> workers;
+    synchronized(this) { workers = new ArrayList<MainJVM>(_workers); }
+    
+    _forEachShard(active.size(), new ShardTask() {
+      public void run(int i) {
+        int shard = active.get(i);
+        MainJVM w = workers.get(shard);
+        boolean ok = false;
+        try { ok = w.runTestSuite(); }
+        finally {
+          // a shard reports its end before runTestSuite returns, so this only has an effect if the slave JVM failed
+          merger.shardFailed(shard, "The slave JVM running shard " + shard + 
+                             (ok ? " did not report its results" : " failed"));
+          _restart(w);
+        }
+      }
+    });
+    return true;
+  }
+  
+  /** Stops all slave JVMs of the pool. */
+  public synchronized void dispose() {
+    for (MainJVM w: _workers) w.dispose();
+    _workers.clear();
+  }
+  
+  /** Restarts a slave JVM so that it is fresh for the next run, unless the pool has been disposed in the meantime. */
+  private static void _restart(MainJVM w) {
+    try { w.restartInterpreterJVM(true); }
+    catch (IllegalStateException e) { _log.log("not restarting " + w + ": " + e); }
+  }
+  
+  /** Grows or shrinks the pool to count slave JVMs.
+    * @return the slave JVMs of the pool
+    */
+  private synchronized List<MainJVM> _getWorkers(int count, File workDir, boolean allowAssertions) {
+    while (_workers.size() > count) _workers.remove(_workers.size() - 1).dispose();
+    while (_workers.size() < count) {
+      MainJVM w = new MainJVM(workDir);
+      w.setInteractionsModel(new WorkerInteractionsModel());
+      _workers.add(w);
+    }
+    for (MainJVM w: _workers) {
+      w.setWorkingDirectory(workDir);
+      w.setAllowAssertions(allowAssertions);
+    }
+    return new ArrayList<MainJVM>(_workers);
+  }
+  
+  /** A task performed for each shard. */
+  private interface ShardTask { public void run(int shard); }
+  
+  /** Performs task for shards 0 to count - 1, each in its own thread, and waits until all have finished.  If any task
+    * throws, the exception of the lowest such shard is rethrown once all have finished; the others are only logged.
+    */
+  private static void _forEachShard(int count, final ShardTask task) {
+    Thread[] threads = new Thread[count];
+    final Throwable[] failures = new Throwable[count];
+    for (int i = 0; i < count; ++i) {
+      final int shard = i;
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          try { task.run(shard); }
+          catch (Throwable t) {
+            _log.log("Shard " + shard + " failed", t);
+            failures[shard] = t;
+          }
+        }
+      }, "JUnit shard " + shard);
+      threads[i].start();
+    }
+    try { for (Thread t: threads) t.join(); }
+    catch (InterruptedException e) { throw new UnexpectedException(e); }
+    for (Throwable t: failures) {
+      if (t instanceof Error) throw (Error) t;
+      else if (t != null) UnexpectedException.throwRuntimeException(t);
+    }
+  }
+  
+  /** Forwards the console output of a slave JVM to the interactions model. */
+  private class WorkerInteractionsModel extends MainJVM.DummyInteractionsModel {
+    public void replSystemOutPrint(String s) { _output.replSystemOutPrint(s); }
+    public void replSystemErrPrint(String s) { _output.replSystemErrPrint(s); }
+    public List<File> getCompilerBootClassPath() { return _output.getCompilerBootClassPath(); }
+  }
+}
@@ -0,0 +1,297 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.*;
+
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.VersionedFile;
+
+/** An index of the class files in the class directories searched for tests.  For each class file the index records
+  * the size and modification time the file had when it was read, the name of the class, the name of its source file,
+  * and what is needed to tell whether the class is a test: its superclass and interfaces, whether it is abstract, and
+  * whether it declares methods annotated with org.junit.Test.  A class file is only read again when its size or
+  * modification time changes, so refreshing a directory after a compile costs little more than listing it.
+  * <p>
+  * Whether a class is a test is decided as in JUnitTestManager, but from the class files alone.  When a supertype is
+  * neither in the index nor a platform or JUnit class the answer is unknown, and the class must be loaded to decide.
+  * <p>
+  * The index can be persisted as a text file in the build directory.
+  * @version $Id$
+  */
+public class TestClassIndex {
+  
+  /** for logging debug info */
+  private static final Log _log = new Log("TestClassIndex.txt", false);
+  
+  /** Name of the file holding the index in the build directory. */
+  public static final String FILE_NAME = ".drjava-test-index";
+  
+  /** Descriptor of the org.junit.Test annotation. */
+  private static final String TEST_ANNOTATION = "Lorg/junit/Test;";
+  
+  /** The record of one class file.  Class names are internal names, with '/' as separator. */
+  private static class Entry {
+    long _lastModified;
+    long _length;
+    String _className;
+    /** The SourceFile attribute; null if absent. */
+    String _sourceName;
+    /** The superclass; null for java/lang/Object. */
+    String _superName;
+    String[] _interfaces;
+    boolean _isAbstract;
+    boolean _hasTestMethods;
+  }
+  
+  /** Class file to its record. */
+  private final HashMap<File, Entry> _entries = new HashMap<File, Entry>();
+  
+  /** Internal class name to record; rebuilt lazily and discarded (set to null) whenever _entries changes. */
+  private HashMap<String, Entry> _byName = null;
+  
+  /** Whether the index changed since it was loaded or last saved. */
+  private boolean _dirty = false;
+  
+  /** Number of class files read, for testing. */
+  private int _readCount = 0;
+  
+  /** @return the number of class files in the index */
+  public synchronized int size() { return _entries.size(); }
+  
+  /** @return the number of class files read since this index was created */
+  public synchronized int getReadCount() { return _readCount; }
+  
+  /** @return true if the index changed since it was loaded or last saved */
+  public synchronized boolean isDirty() { return _dirty; }
+  
+  /** Brings the records of the class files in dir up to date, reading only the class files that are new or whose size
+    * or modification time changed, and dropping the records of class files that no longer exist.
+    * @param dir a class file directory; subdirectories are not searched
+    * @return the class files in dir that could be read
+    */
+  public synchronized List<File> update(File dir) {
+    List<File> result = new ArrayList<File>();
+    Set<File> present = new HashSet<File>();
+    File[] listing = dir.listFiles();
+    if (listing != null) { // listFiles may return null if there's an IO error
+      for (File f: listing) {
+        if (! f.getName().endsWith(".class")) continue;
+        present.add(f);
+        long lastModified = f.lastModified();
+        long length = f.length();
+        Entry e = _entries.get(f);
+        if (e == null || e._lastModified != lastModified || e._length != length) {
+          e = _read(f, lastModified, length);
+          if (e == null) { _remove(f); continue; }
+          _entries.put(f, e);
+          _byName = null;
+          _dirty = true;
+        }
+        result.add(f);
+      }
+    }
+    for (Iterator<File> it = _entries.keySet().iterator(); it.hasNext(); ) {
+      File f = it.next();
+      if (dir.equals(f.getParentFile()) && ! present.contains(f)) { it.remove(); _byName = null; _dirty = true; }
+    }
+    return result;
+  }
+  
+  /** @param classFile a class file returned by update
+    * @return the binary name of the class, or null if the file is not in the index
+    */
+  public synchronized String getClassName(File classFile) {
+    Entry e = _entries.get(classFile);
+    return (e == null) ? null : e._className.replace('/', '.');
+  }
+  
+  /** @param classFile a class file returned by update
+    * @return the name of the source file recorded in the class file, or null if there is none
+    */
+  public synchronized String getSourceName(File classFile) {
+    Entry e = _entries.get(classFile);
+    return (e == null) ? null : e._sourceName;
+  }
+  
+  /** @param classFile a class file returned by update
+    * @return TRUE if the class is a JUnit test, FALSE if it is not, and null if that cannot be decided without loading
+    *         the class
+    */
+  public synchronized Boolean isTest(File classFile) {
+    Entry e = _entries.get(classFile);
+    if (e == null) return null;
+    if (e._hasTestMethods) return Boolean.TRUE;
+    if (e._isAbstract) return Boolean.FALSE;
+    if (_byName == null) {
+      _byName = new HashMap<String, Entry>();
+      for (Entry x: _entries.values()) _byName.put(x._className, x);
+    }
+    return _isAssignableToTest(e._className, new HashSet<String>());
+  }
+  
+  /** @return whether the named type is a subtype of junit.framework.Test, or null if that is unknown */
+  private Boolean _isAssignableToTest(String name, Set<String> seen) {
+    if (name == null) return Boolean.FALSE;
+    if (name.equals("junit/framework/Test") || name.equals("junit/framework/TestCase") || 
+        name.equals("junit/framework/TestSuite")) return Boolean.TRUE;
+    if (name.startsWith("java/") || name.startsWith("javax/")) return Boolean.FALSE;
+    Entry e = _byName.get(name);
+    if (e == null || ! seen.add(name)) return null;
+    Boolean result = _isAssignableToTest(e._superName, seen);
+    for (String i: e._interfaces) {
+      if (result == Boolean.TRUE) break;
+      Boolean r = _isAssignableToTest(i, seen);
+      if (r == null || r) result = r;
+    }
+    return result;
+  }
+  
+  /** Reads the given class file.
+    * @return the record of the class file, or null if it cannot be read
+    */
+  private Entry _read(File f, long lastModified, long length) {
+    final Entry e = new Entry();
+    e._lastModified = lastModified;
+    e._length = length;
+    try {
+      ++_readCount;
+      new ClassReader(IOUtil.toByteArray(f)).accept(new ClassVisitor(Opcodes.ASM4) {
+        public void visit(int version, int access, String name, String sig, String sup, String[] inters) {
+          e._className = name;
+          e._superName = sup;
+          e._interfaces = (inters == null) ? new String[0] : inters;
+          e._isAbstract = (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) != 0;
+        }
+        public void visitSource(String source, String debug) { e._sourceName = source; }
+        public MethodVisitor visitMethod(int a, String n, String d, String s, String[] x) {
+          if (e._hasTestMethods) return null;
+          return new MethodVisitor(Opcodes.ASM4) {
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+              if (TEST_ANNOTATION.equals(desc)) e._hasTestMethods = true;
+              return null;
+            }
+          };
+        }
+      }, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+      return (e._className == null) ? null : e;
+    }
+    catch(IOException ex) { _log.log("could not read " + f + ": " + ex); return null; }
+    catch(RuntimeException ex) { _log.log("malformed " + f + ": " + ex); return null; }  // ASM errors
+  }
+  
+  private void _remove(File f) {
+    if (_entries.remove(f) != null) { _byName = null; _dirty = true; }
+  }
+  
+  /** Writes the index to the file FILE_NAME in dir.
+    * @param dir the build directory
+    * @throws IOException if the file cannot be written
+    */
+  public synchronized void save(File dir) throws IOException {
+    FILE.save(this, dir);
+    _dirty = false;
+  }
+  
+  /** Reads the index saved in dir.
+    * @param dir the build directory
+    * @return the saved index, or an empty index if there is none or it cannot be read
+    */
+  public static TestClassIndex load(File dir) {
+    TestClassIndex index = FILE.load(dir);
+    return (index == null) ? new TestClassIndex() : index;
+  }
+  
+  /** The format of the file: for each class file, an "F" line with its stamps, flags and path, followed by lines
+    * holding the class name (C), source file (S), superclass (E) and interfaces (I).
+    */
+  private static final VersionedFile<TestClassIndex> FILE =
+    new VersionedFile<TestClassIndex>(FILE_NAME, "# DrJava test class index 1", _log) {
+    protected void write(TestClassIndex index, BufferedWriter w) throws IOException {
+      for (Map.Entry<File, Entry> me: index._entries.entrySet()) {
+        Entry e = me.getValue();
+        w.write("F " + e._lastModified + " " + e._length + " " + (e._isAbstract ? 1 : 0) + (e._hasTestMethods ? 1 : 0) +
+                " " + me.getKey().getPath());
+        w.newLine();
+        w.write("C " + e._className); w.newLine();
+        if (e._sourceName != null) { w.write("S " + e._sourceName); w.newLine(); }
+        if (e._superName != null) { w.write("E " + e._superName); w.newLine(); }
+        for (String i: e._interfaces) { w.write("I " + i); w.newLine(); }
+      }
+    }
+    protected TestClassIndex read(BufferedReader r) throws IOException {
+      TestClassIndex index = new TestClassIndex();
+      Entry e = null;
+      List<String> interfaces = new ArrayList<String>();
+      String line;
+      while ((line = r.readLine()) != null) {
+        if (line.startsWith("F ")) {
+          if (e != null) e._interfaces = interfaces.toArray(new String[interfaces.size()]);
+          interfaces.clear();
+          String[] parts = line.split(" ", 5);
+          e = new Entry();
+          e._lastModified = Long.parseLong(parts[1]);
+          e._length = Long.parseLong(parts[2]);
+          e._isAbstract = parts[3].charAt(0) == '1';
+          e._hasTestMethods = parts[3].charAt(1) == '1';
+          index._entries.put(new File(parts[4]), e);
+        }
+        else if (e != null && line.startsWith("C ")) e._className = line.substring(2);
+        else if (e != null && line.startsWith("S ")) e._sourceName = line.substring(2);
+        else if (e != null && line.startsWith("E ")) e._superName = line.substring(2);
+        else if (e != null && line.startsWith("I ")) interfaces.add(line.substring(2));
+        else return null;
+      }
+      if (e != null) e._interfaces = interfaces.toArray(new String[interfaces.size()]);
+      for (Entry x: index._entries.values()) { if (x._className == null) return null; }
+      return index;
+    }
+  };
+}
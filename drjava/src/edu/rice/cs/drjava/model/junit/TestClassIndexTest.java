@@ -0,0 +1,150 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/** Tests the index of class files searched for tests.
+  * @version $Id$
+  */
+public final class TestClassIndexTest extends DrJavaTestCase {
+  
+  private File _tempDir;
+  private File _srcDir;
+  private File _outDir;
+  private File _pkgDir;
+  
+  public void setUp() throws Exception {
+    super.setUp();
+    _tempDir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    _srcDir = new File(_tempDir, "src");
+    _outDir = new File(_tempDir, "classes");
+    _pkgDir = new File(_outDir, "p");
+    assertTrue(new File(_srcDir, "p").mkdirs());
+    assertTrue(_outDir.mkdirs());
+    _compile(_write("Plain", "package p; public class Plain implements Runnable { public void run() { } }"),
+             _write("ATest", "package p; public class ATest extends junit.framework.TestCase { }"),
+             _write("BTest", "package p; public class BTest extends ATest { }"),
+             _write("Base", "package p; public abstract class Base extends junit.framework.TestCase { }"),
+             _write("Four", "package p; public class Four { @org.junit.Test public void t() { } }"),
+             _write("Other", "package p; public class Other extends edu.rice.cs.drjava.DrJavaTestCase { }"));
+  }
+  
+  public void tearDown() throws Exception {
+    IOUtil.deleteRecursively(_tempDir);
+    super.tearDown();
+  }
+  
+  private File _write(String name, String text) throws IOException {
+    File f = new File(new File(_srcDir, "p"), name + ".java");
+    IOUtil.writeStringToFile(f, text);
+    return f;
+  }
+  
+  private void _compile(File... files) {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    String[] args = new String[files.length + 4];
+    args[0] = "-d"; args[1] = _outDir.getPath(); 
+    args[2] = "-classpath"; args[3] = _outDir.getPath() + File.pathSeparator + System.getProperty("java.class.path");
+    for (int i = 0; i < files.length; i++) args[i + 4] = files[i].getPath();
+    assertEquals("compilation failed", 0, javac.run(null, null, null, args));
+  }
+  
+  private File _class(String name) { return new File(_pkgDir, name + ".class"); }
+  
+  /** Tests that class files are read once and classified correctly. */
+  public void testUpdate() throws IOException {
+    TestClassIndex index = new TestClassIndex();
+    List<File> files = index.update(_pkgDir);
+    assertEquals(6, files.size());
+    assertEquals(6, index.getReadCount());
+    assertTrue(index.isDirty());
+    
+    assertEquals("p.ATest", index.getClassName(_class("ATest")));
+    assertEquals("ATest.java", index.getSourceName(_class("ATest")));
+    assertEquals(Boolean.FALSE, index.isTest(_class("Plain")));
+    assertEquals(Boolean.TRUE, index.isTest(_class("ATest")));
+    assertEquals(Boolean.TRUE, index.isTest(_class("BTest")));
+    assertEquals(Boolean.FALSE, index.isTest(_class("Base")));
+    assertEquals(Boolean.TRUE, index.isTest(_class("Four")));
+    assertNull("superclass outside the index", index.isTest(_class("Other")));
+    
+    assertEquals(6, index.update(_pkgDir).size());
+    assertEquals("unchanged files are not read again", 6, index.getReadCount());
+    
+    _compile(_write("Plain", "package p; public class Plain extends junit.framework.TestCase { }"));
+    assertTrue(_class("Plain").setLastModified(_class("Plain").lastModified() + 10000));
+    index.update(_pkgDir);
+    assertEquals(7, index.getReadCount());
+    assertEquals(Boolean.TRUE, index.isTest(_class("Plain")));
+    
+    assertTrue(_class("ATest").delete());
+    assertEquals(5, index.update(_pkgDir).size());
+    assertEquals(5, index.size());
+    assertNull("superclass no longer in the index", index.isTest(_class("BTest")));
+  }
+  
+  /** Tests saving and loading the index. */
+  public void testSaveLoad() throws IOException {
+    TestClassIndex index = new TestClassIndex();
+    index.update(_pkgDir);
+    index.save(_outDir);
+    assertFalse(index.isDirty());
+    
+    TestClassIndex loaded = TestClassIndex.load(_outDir);
+    assertEquals(6, loaded.size());
+    assertFalse(loaded.isDirty());
+    assertEquals(6, loaded.update(_pkgDir).size());
+    assertEquals("loaded records are current", 0, loaded.getReadCount());
+    assertEquals("p.Four", loaded.getClassName(_class("Four")));
+    assertEquals("Four.java", loaded.getSourceName(_class("Four")));
+    assertEquals(Boolean.TRUE, loaded.isTest(_class("Four")));
+    assertEquals(Boolean.TRUE, loaded.isTest(_class("BTest")));
+    assertEquals(Boolean.FALSE, loaded.isTest(_class("Base")));
+    assertEquals(Boolean.FALSE, loaded.isTest(_class("Plain")));
+    
+    IOUtil.writeStringToFile(new File(_outDir, TestClassIndex.FILE_NAME), "garbage\n");
+    assertEquals(0, TestClassIndex.load(_outDir).size());
+  }
+}
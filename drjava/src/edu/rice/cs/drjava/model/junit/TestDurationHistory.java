@@ -0,0 +1,168 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.rice.cs.util.Log;
+import edu.rice.cs.util.VersionedFile;
+
+/** Running times of test classes recorded in earlier test runs, used to split a test run into shards of similar
+  * length.  Times are kept in milliseconds per class; a new measurement is averaged with the recorded one so that a
+  * single slow run does not dominate the estimate.  The history can be persisted as a text file in the build
+  * directory.
+  * @version $Id$
+  */
+public class TestDurationHistory {
+  
+  /** for logging debug info */
+  private static final Log _log = new Log("TestDurationHistory.txt", false);
+  
+  /** Name of the file holding the history in the build directory. */
+  public static final String FILE_NAME = ".drjava-test-durations";
+  
+  /** The format of the file: one line per class, holding the running time and the class name. */
+  private static final VersionedFile<TestDurationHistory> FILE =
+    new VersionedFile<TestDurationHistory>(FILE_NAME, "# DrJava test durations 1", _log) {
+    protected void write(TestDurationHistory h, BufferedWriter w) throws IOException {
+      for (Map.Entry<String, Long> e: h._durations.entrySet()) { w.write(e.getValue() + " " + e.getKey()); w.newLine(); }
+    }
+    protected TestDurationHistory read(BufferedReader r) throws IOException {
+      TestDurationHistory h = new TestDurationHistory();
+      String line;
+      while ((line = r.readLine()) != null) {
+        int i = line.indexOf(' ');
+        h._durations.put(line.substring(i + 1), Long.parseLong(line.substring(0, i)));
+      }
+      return h;
+    }
+  };
+  
+  /** Estimate used for a class that has never been timed when no other class has been timed either. */
+  private static final long DEFAULT_ESTIMATE = 1000;
+  
+  /** Class name to recorded running time in milliseconds. */
+  private final HashMap<String, Long> _durations = new HashMap<String, Long>();
+  
+  /** @return the number of classes with a recorded running time */
+  public synchronized int size() { return _durations.size(); }
+  
+  /** Records a measured running time.
+    * @param className the fully qualified name of the test class
+    * @param millis the time the class took to run
+    */
+  public synchronized void record(String className, long millis) {
+    Long old = _durations.get(className);
+    _durations.put(className, (old == null) ? millis : (old + millis) / 2);
+  }
+  
+  /** @param className the fully qualified name of a class
+    * @return the recorded running time of the class in milliseconds, or -1 if it has never been timed
+    */
+  public synchronized long getDuration(String className) {
+    Long d = _durations.get(className);
+    return (d == null) ? -1 : d;
+  }
+  
+  /** Splits classes into at most shardCount shards of similar estimated running time, using the longest processing
+    * time first rule: classes are taken in order of decreasing estimate and each is added to the shard with the
+    * smallest total so far.  Classes that have never been timed are estimated at the mean of the recorded times.
+    * The order of the classes within a shard is the order of classNames.  Empty shards are omitted.
+    * @param classNames the classes to distribute
+    * @param shardCount the maximum number of shards
+    * @return the shards as lists of indices into classNames
+    */
+  public synchronized List<List<Integer>> planShards(List<String> classNames, int shardCount) {
+    final int n = classNames.size();
+    shardCount = Math.max(1, Math.min(shardCount, n));
+    
+    long unknown = DEFAULT_ESTIMATE;
+    if (! _durations.isEmpty()) {
+      long sum = 0;
+      for (long d: _durations.values()) sum += d;
+      unknown = Math.max(1, sum / _durations.size());
+    }
+    final long[] estimates = new long[n];
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; ++i) {
+      Long d = _durations.get(classNames.get(i));
+      estimates[i] = (d == null) ? unknown : d;
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        if (estimates[a] != estimates[b]) return (estimates[a] > estimates[b]) ? -1 : 1;
+        return a - b;
+      }
+    });
+    
+    long[] loads = new long[shardCount];
+    List<List<Integer>> shards = new ArrayList<List<Integer>>(shardCount);
+    for (int s = 0; s < shardCount; ++s) shards.add(new ArrayList<Integer>());
+    for (int i: order) {
+      int min = 0;
+      for (int s = 1; s < shardCount; ++s) if (loads[s] < loads[min]) min = s;
+      loads[min] += estimates[i];
+      shards.get(min).add(i);
+    }
+    for (Iterator<List<Integer>> it = shards.iterator(); it.hasNext(); ) {
+      List<Integer> shard = it.next();
+      if (shard.isEmpty()) it.remove();
+      else Collections.sort(shard);
+    }
+    return shards;
+  }
+  
+  /** Writes the history to the file FILE_NAME in dir.
+    * @param dir the directory to write to
+    * @throws IOException if the file cannot be written
+    */
+  public synchronized void save(File dir) throws IOException { FILE.save(this, dir); }
+  
+  /** Reads the history saved in dir.
+    * @param dir the directory to read from
+    * @return the saved history, or an empty history if there is none or it cannot be read
+    */
+  public static TestDurationHistory load(File dir) {
+    TestDurationHistory h = FILE.load(dir);
+    return (h == null) ? new TestDurationHistory() : h;
+  }
+}
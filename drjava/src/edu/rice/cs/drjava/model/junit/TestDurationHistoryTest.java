@@ -0,0 +1,104 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.junit;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/** Tests the recording, persistence and shard planning of test class running times.
+  * @version $Id$
+  */
+public final class TestDurationHistoryTest extends DrJavaTestCase {
+  
+  /** Tests that shards are balanced by the recorded running times. */
+  public void testPlanShards() {
+    TestDurationHistory h = new TestDurationHistory();
+    h.record("A", 900);
+    h.record("B", 500);
+    h.record("C", 400);
+    h.record("D", 100);
+    List<String> names = Arrays.asList("A", "B", "C", "D");
+    List<List<Integer>> shards = h.planShards(names, 2);
+    assertEquals(2, shards.size());
+    assertEquals(Arrays.asList(0, 3), shards.get(0));
+    assertEquals(Arrays.asList(1, 2), shards.get(1));
+    
+    assertEquals("one shard per class at most", 4, h.planShards(names, 10).size());
+    assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3)), h.planShards(names, 1));
+    assertTrue(h.planShards(Arrays.<String>asList(), 3).isEmpty());
+  }
+  
+  /** Tests that unknown classes are estimated at the mean of the recorded times. */
+  public void testUnknownClasses() {
+    TestDurationHistory h = new TestDurationHistory();
+    assertEquals(-1, h.getDuration("X"));
+    assertEquals(3, h.planShards(Arrays.asList("X", "Y", "Z"), 3).size());
+    
+    h.record("A", 1000);
+    h.record("B", 200);
+    // X and Y are estimated at 600 each and end up together opposite A
+    List<List<Integer>> shards = h.planShards(Arrays.asList("A", "X", "Y"), 2);
+    assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1, 2)), shards);
+  }
+  
+  /** Tests averaging of measurements and saving and loading. */
+  public void testRecordSaveLoad() throws Exception {
+    TestDurationHistory h = new TestDurationHistory();
+    h.record("p.A", 100);
+    h.record("p.A", 300);
+    h.record("p.B", 50);
+    assertEquals(200, h.getDuration("p.A"));
+    
+    File dir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    try {
+      assertEquals(0, TestDurationHistory.load(dir).size());
+      h.save(dir);
+      TestDurationHistory loaded = TestDurationHistory.load(dir);
+      assertEquals(2, loaded.size());
+      assertEquals(200, loaded.getDuration("p.A"));
+      assertEquals(50, loaded.getDuration("p.B"));
+      
+      IOUtil.writeStringToFile(new File(dir, TestDurationHistory.FILE_NAME), "garbage\n");
+      assertEquals(0, TestDurationHistory.load(dir).size());
+    }
+    finally { IOUtil.deleteRecursively(dir); }
+  }
+}
@@ -90,6 +90,15 @@ public class DefaultInteractionsModel extends RMIInteractionsModel {
         _jvm.setAllowAssertions(oce.value.booleanValue());
       }
     });
+    _document.setScrollbackLimit(1000 * DrJava.getConfig().getSetting(OptionConstants.CONSOLE_SCROLLBACK_LIMIT));
+    DrJava.getConfig().addOptionListener(OptionConstants.CONSOLE_SCROLLBACK_LIMIT,
+                                         new OptionListener<Integer>() {
+      public void optionChanged(final OptionEvent<Integer> oce) {
+        Utilities.invokeLater(new Runnable() {
+          public void run() { _document.setScrollbackLimit(1000 * oce.value); }
+        });
+      }
+    });
   }
   
   /** Called when the repl prints to System.out.  This method can safely be called from outside the event thread.
@@ -51,6 +51,7 @@ import edu.rice.cs.util.swing.Utilities;
 import java.awt.*;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.ListIterator;
 import javax.swing.text.AbstractDocument;
 import javax.swing.undo.*;
 
@@ -215,12 +216,41 @@ public class InteractionsDJDocument extends AbstractDJDocument implements Consol
       _stylesList.clear();    
       _toClear = false;
     }
-    if (style != null)
+    if (style != null) {
+      if (! _stylesList.isEmpty()) {
+        // extend the latest style run if this one continues it
+        Pair<Pair<Integer,Integer>,String> last = _stylesList.get(0);
+        if (last.first().second() == start && last.second().equals(style)) {
+          start = last.first().first();
+          _stylesList.remove(0);
+        }
+      }
       _stylesList.add(0, new Pair<Pair<Integer,Integer>,String>
                       (new Pair<Integer,Integer>(Integer.valueOf(start),Integer.valueOf(end)), style));
+    }
 //    }
   }
   
+  /** Discards the styles of the text before the given offset, which has been removed from the start of the document, 
+    * and moves the remaining styles accordingly.  Only runs in event thread.
+    * @param removed the number of characters removed from the start of the document
+    */
+  public void removeColoringBefore(int removed) {
+    synchronized(_stylesList) {
+      ListIterator<Pair<Pair<Integer,Integer>,String>> it = _stylesList.listIterator();
+      while (it.hasNext()) {
+        Pair<Pair<Integer,Integer>,String> p = it.next();
+        int start = p.first().first() - removed;
+        int end = p.first().second() - removed;
+        if (end <= 0) it.remove();
+        else {
+          it.set(new Pair<Pair<Integer,Integer>,String>(new Pair<Integer,Integer>(Math.max(start, 0), end), 
+                                                       p.second()));
+        }
+      }
+    }
+  }
+  
   /** Accessor method used to copy contents of _stylesList to an array.  Used in test cases. 
    * @return a copy of the contents of _styleList
    */
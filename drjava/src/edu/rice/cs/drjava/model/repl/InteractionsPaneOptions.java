@@ -57,4 +57,8 @@ public class InteractionsPaneOptions extends Options {
   private volatile boolean _requireVariableType = false;
   public boolean requireVariableType() { return _requireVariableType; }
   public void setRequireVariableType(boolean require) { _requireVariableType = require; }
+  
+  private volatile boolean _compileStatements = true;
+  public boolean compileStatements() { return _compileStatements; }
+  public void setCompileStatements(boolean compile) { _compileStatements = compile; }
 }
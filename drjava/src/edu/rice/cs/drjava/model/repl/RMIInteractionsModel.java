@@ -43,6 +43,8 @@ import edu.rice.cs.plt.tuple.Pair;
 import edu.rice.cs.util.text.ConsoleDocumentInterface;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.awt.EventQueue;
 
 import static edu.rice.cs.plt.debug.DebugUtil.debug;
@@ -89,6 +91,18 @@ public abstract class RMIInteractionsModel extends InteractionsModel {
     return retval;
   }
   
+  /** Gets the string representations of the values of several variables in the current interpreter with a single
+    * call to the interpreter JVM.
+    * @param vars the names of the variables
+    */
+  public List<Pair<String,String>> getVariablesToString(List<String> vars) {
+    Option<List<Pair<String,String>>> result = _jvm.getVariablesToString(vars);
+    if (result.isSome()) return result.unwrap();
+    List<Pair<String,String>> none = new ArrayList<Pair<String,String>>(vars.size());
+    for (int i = 0; i < vars.size(); ++i) none.add(new Pair<String,String>("",""));
+    return none;
+  }
+  
   /** Adds the given path to the interpreter's class path.
     * @param f  the path to add
     */
@@ -194,6 +208,9 @@ public abstract class RMIInteractionsModel extends InteractionsModel {
   /** @param require true if variable declarations are required to include an explicit type. */
   public void setRequireVariableType(boolean require) { _jvm.setRequireVariableType(require); }
   
+  /** @param compile true if loops should be compiled to bytecode rather than interpreted. */
+  public void setCompileStatements(boolean compile) { _jvm.setCompileStatements(compile); }
+  
   /** Gets the interpreter class path from the interpreter jvm.
     * @return a list of class path elements
     */
@@ -37,10 +37,15 @@
 package edu.rice.cs.drjava.model.repl.newjvm;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.lang.ClassLoader;
 
 import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.plt.iter.AbstractIterable;
 import edu.rice.cs.plt.iter.IterUtil;
 import edu.rice.cs.plt.lambda.Lambda;
 import edu.rice.cs.plt.reflect.PathClassLoader;
@@ -58,9 +63,18 @@ public class ClassPathManager implements Lambda<ClassLoader, ClassLoader> {
   private final LinkedList<File> _projectFilesCP;  /* The open project files. */
   private final LinkedList<File> _externalFilesCP; /* The open external files. */
   private final LinkedList<File> _extraCP;         /* The extra preferences class path. */
+  private final List<File> _builtInCP;             /* The built-in class path. */
   // these can be accessed concurrently:
   
-  private final Iterable<File> _fullPath;
+  /** A snapshot of the full path, replaced whenever one of the lists changes.  Class loaders compare their path
+    * with the current one on every lookup, so traversing the path must be cheap.
+    */
+  private volatile List<File> _fullPathSnapshot;
+  
+  /** A dynamic view of the full path. */
+  private final Iterable<File> _fullPath = new AbstractIterable<File>() {
+    public Iterator<File> iterator() { return _fullPathSnapshot.iterator(); }
+  };
   
   public ClassPathManager(Iterable<File> builtInCP) {
     _projectCP = new LinkedList<File>();
@@ -68,33 +82,26 @@ public class ClassPathManager implements Lambda<ClassLoader, ClassLoader> {
     _projectFilesCP = new LinkedList<File>();
     _externalFilesCP = new LinkedList<File>();
     _extraCP = new LinkedList<File>();
-    // conversions to SizedIterables are necessary to support 1.4 compatibility
-    Iterable<Iterable<File>> allPaths =
-      IterUtil.<Iterable<File>>make(IterUtil.asSizedIterable(_projectCP),
-                                    IterUtil.asSizedIterable(_buildCP),
-                                    IterUtil.asSizedIterable(_projectFilesCP),
-                                    IterUtil.asSizedIterable(_externalFilesCP),
-                                    IterUtil.asSizedIterable(_extraCP),
-                                    IterUtil.snapshot(builtInCP));
-    // lazily map the lists to their snapshots -- the snapshot code executes every time
-    // _fullPath is traversed
-    _fullPath = IterUtil.collapse(IterUtil.map(allPaths, _makeSafeSnapshot));
+    _builtInCP = new ArrayList<File>();
+    for (File f : builtInCP) { _builtInCP.add(f); }
     updateProperty();
   }
   
   public static final String INTERACTIONS_CLASS_PATH_PROPERTY = "edu.rice.cs.drjava.interactions.class.path";
   
-  protected void updateProperty() {
+  /** Updates the snapshot of the full path and the corresponding system property. */
+  protected synchronized void updateProperty() {
+    List<File> fullPath = new ArrayList<File>();
+    fullPath.addAll(_projectCP);
+    fullPath.addAll(_buildCP);
+    fullPath.addAll(_projectFilesCP);
+    fullPath.addAll(_externalFilesCP);
+    fullPath.addAll(_extraCP);
+    fullPath.addAll(_builtInCP);
+    _fullPathSnapshot = Collections.unmodifiableList(fullPath);
     System.setProperty(INTERACTIONS_CLASS_PATH_PROPERTY,IOUtil.pathToString(_fullPath));
   }
   
-  private final Lambda<Iterable<File>, Iterable<File>> _makeSafeSnapshot =
-    new Lambda<Iterable<File>, Iterable<File>>() {
-    public Iterable<File> value(Iterable<File> arg) {
-      synchronized(ClassPathManager.this) { return IterUtil.snapshot(arg); }
-    }
-  };
-  
   /** Adds the entry to the front of the project classpath (this is the classpath specified in project properties)
     * @param f the file to be added to the classpath
     */
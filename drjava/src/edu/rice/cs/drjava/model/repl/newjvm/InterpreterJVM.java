@@ -45,7 +45,6 @@ import java.rmi.*;
 //  (This class runs in a different JVM, and will not share the config object)
 
 
-import edu.rice.cs.util.OutputStreamRedirector;
 import edu.rice.cs.util.InputStreamRedirector;
 import edu.rice.cs.util.UnexpectedException;
 import edu.rice.cs.util.classloader.ClassFileError;
@@ -113,6 +112,12 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
   /** Remote reference to the MainJVM class in DrJava's primary JVM.  Assigned ONLY once. */
   private volatile MainJVMRemoteI _mainJVM;
   
+  /** Sends System.out and System.err to the main JVM.  Assigned ONLY once, in handleStart. */
+  private volatile OutputBatcher _output;
+  
+  /** Time in milliseconds that output may take to be sent when this JVM exits. */
+  private static final int EXIT_FLUSH_TIMEOUT = 1000;
+  
   /** Private constructor; use the singleton ONLY instance. */
   private InterpreterJVM() {
     super("Reset Interactions Thread", "Poll DrJava Thread");
@@ -140,9 +145,20 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     //_dialog("handleStart");
     _mainJVM = (MainJVMRemoteI) mainJVM;
     
+    // stdout and stderr are sent to the main JVM in batches
+    _output = new OutputBatcher(new OutputBatcher.Sink() {
+      public void print(String[] texts, boolean[] isErr) throws RemoteException {
+        _mainJVM.systemOutputBatch(texts, isErr);
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(new Thread("Flush Output") {
+      public void run() { _output.flush(EXIT_FLUSH_TIMEOUT); }
+    });
+    
     // redirect stdin
     System.setIn(new InputStreamRedirector() {
       protected String _getInput() {
+        _output.flush();  // show any prompt before asking for input
         try { return _mainJVM.getConsoleInput(); }
         catch(RemoteException re) {
           error.log(re);
@@ -152,26 +168,10 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     });
     
     // redirect stdout
-    System.setOut(new PrintStream(new OutputStreamRedirector() {
-      public void print(String s) {
-        try { _mainJVM.systemOutPrint(s); }
-        catch (RemoteException re) {
-          error.log(re);
-          throw new UnexpectedException("Main JVM can't be reached for output.\n" + re);
-        }
-      }
-    }));
+    System.setOut(new PrintStream(_output.out()));
     
     // redirect stderr
-    System.setErr(new PrintStream(new OutputStreamRedirector() {
-      public void print(String s) {
-        try { _mainJVM.systemErrPrint(s); }
-        catch (RemoteException re) {
-          error.log(re);
-          throw new UnexpectedException("Main JVM can't be reached for output.\n" + re);
-        }
-      }
-    }));
+    System.setErr(new PrintStream(_output.err()));
     
     /* On Windows, any frame or dialog opened from Interactions pane will appear *behind* DrJava's frame, unless a 
      * previous frame or dialog is shown here.  Not sure what the difference is, but this hack seems to work.  (I'd
@@ -237,6 +237,12 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
   }
   
   private InterpretResult interpret(String input, Interpreter interpreter) {
+    // the output of the interaction must reach the main JVM before its result
+    try { return _interpret(input, interpreter); }
+    finally { _output.flush(); }
+  }
+  
+  private InterpretResult _interpret(String input, Interpreter interpreter) {
     debug.logStart("Interpret " + input);
     
     boolean available = addBusyInterpreter(interpreter);
@@ -280,13 +286,11 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
   }
   
   /** Gets the value of the variable with the given name in the current interpreter.
-    * Invoked reflectively by the debugger.  To simplify the inter-process exchange,
-    * an array here is used as the return type rather than an {@code Option<Object>} --
+    * Used by {@link #getVariableValues}, which the debugger invokes reflectively.  To simplify the inter-process
+    * exchange, an array here is used as the return type rather than an {@code Option<Object>} --
     * an empty array corresponds to "none," and a singleton array corresponds to a "some."
     * @param var name of the variable to look up
     * @return empty array for "none", singleton array for "some" value
-    * @see edu.rice.cs.drjava.model.debug.jpda.JPDADebugger#GET_VARIABLE_VALUE_SIG
-    * @see edu.rice.cs.drjava.model.debug.jpda.JPDADebugger#_copyVariablesFromInterpreter()
     */
   public Object[] getVariableValue(String var) {
     Pair<Object,String>[] arr = getVariable(var);
@@ -294,6 +298,37 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     else return new Object[] { arr[0].first() };
   }
   
+  /** Gets the values of the variables with the given names in the current interpreter, as by
+    * {@link #getVariableValue} for each name.  Invoked reflectively by the debugger, so that all the variables of a
+    * stack frame are copied back with a single method invocation in the debugged thread.
+    * @param vars names of the variables to look up
+    * @return an array of the same length as vars, holding an empty array for "none" and a singleton array for "some"
+    * @see edu.rice.cs.drjava.model.debug.jpda.JPDADebugger#GET_VARIABLE_VALUES_SIG
+    * @see edu.rice.cs.drjava.model.debug.jpda.JPDADebugger#_copyVariablesFromInterpreter()
+    */
+  public Object[][] getVariableValues(String[] vars) {
+    synchronized(_stateLock) {
+      Object[][] result = new Object[vars.length][];
+      for (int i = 0; i < vars.length; ++i) result[i] = getVariableValue(vars[i]);
+      return result;
+    }
+  }
+  
+  /** Boxes primitive values.  Invoked reflectively by the debugger, which can create arrays in this JVM without
+    * invoking any methods, but must invoke a method to box a primitive.  Each primitive is passed as the only element
+    * of a primitive array, so that all the primitives of a stack frame are boxed with a single method invocation.
+    * @param wrapped an array holding one-element primitive arrays (and null for values that need no boxing)
+    * @return an array of the same length as wrapped, holding the boxed values (and null where wrapped holds null)
+    * @see edu.rice.cs.drjava.model.debug.jpda.JPDADebugger#BOX_VALUES_SIG
+    */
+  public Object[] boxValues(Object[] wrapped) {
+    Object[] result = new Object[wrapped.length];
+    for (int i = 0; i < wrapped.length; ++i) {
+      if (wrapped[i] != null) result[i] = java.lang.reflect.Array.get(wrapped[i], 0);
+    }
+    return result;
+  }
+  
   //public JUnitResultTuple getLastJUnitResult() {
   //  return this._junitTestManager.getFinalResult();
   //}
@@ -348,6 +383,19 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     }
   }
 
+  /** Gets the string representations of the values of several variables in the current interpreter, as by
+    * {@link #getVariableToString} for each name, holding the interpreter lock throughout.
+    * @param vars the names of the variables
+    * @return the value and type strings, in the order of vars
+    */
+  public List<Pair<String,String>> getVariablesToString(List<String> vars) {
+    synchronized(_stateLock) {
+      List<Pair<String,String>> result = new ArrayList<Pair<String,String>>(vars.size());
+      for (String var : vars) result.add(getVariableToString(var));
+      return result;
+    }
+  }
+  
   /** @param c the class to get the name of
    * @return the name of the class, with the right number of array suffixes 
    *         "[]" and while being ambiguous about boxed and primitive types. 
@@ -523,6 +571,13 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     }
   }
   
+  /** Compile loops to bytecode rather than interpreting them. */
+  public void setCompileStatements(boolean compile) {
+    synchronized(_stateLock) {
+      _interpreterOptions.setCompileStatements(compile);
+    }
+  }
+  
   // ---------- JUnit methods ----------
   /** Sets up a JUnit test suite in the Interpreter JVM and finds which classes are really TestCases classes (by 
     * loading them).  Unsynchronized because it contains a remote call and does not involve mutable local state.
@@ -584,6 +639,7 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     * @param causedError If not successful, whether the test caused an error or simply failed.
     */
   public void testEnded(String testName, boolean wasSuccessful, boolean causedError) {
+    _output.flush();
     try { _mainJVM.testEnded(testName, wasSuccessful, causedError); }
     catch (RemoteException re) { error.log(re); }
   }
@@ -593,6 +649,7 @@ public class InterpreterJVM extends AbstractSlaveJVM implements InterpreterJVMRe
     * @param errors The array of errors from all failed tests in the suite.
     */
   public void testSuiteEnded(JUnitError[] errors) {
+    _output.flush();
     try { _mainJVM.testSuiteEnded(errors); }
     catch (RemoteException re) { error.log(re); }
   }
@@ -78,6 +78,11 @@ public interface InterpreterJVMRemoteI extends SlaveRemote {
    */
   public void setRequireVariableType(boolean require) throws RemoteException;
   
+  /** @param compile true if the interpreter compiles loops to bytecode rather than interpreting them. 
+   * @throws RemoteException if communication over RMI fails
+   */
+  public void setCompileStatements(boolean compile) throws RemoteException;
+  
   /** Adds a named Interpreter to the list.
    * @param name the unique name for the interpreter
    * @throws IllegalArgumentException if the name is not unique
@@ -121,6 +126,13 @@ public interface InterpreterJVMRemoteI extends SlaveRemote {
    */
   public Pair<String,String> getVariableToString(String var) throws RemoteException;
   
+  /** Gets the string representations of the values of several variables in the current interpreter.
+   * @param vars the names of the variables
+   * @return for each variable, in order, its value and type strings as by {@link #getVariableToString}
+   * @throws RemoteException if communication over RMI fails
+   */
+  public List<Pair<String,String>> getVariablesToString(List<String> vars) throws RemoteException;
+  
   /** @return the current class path.
    * @throws RemoteException if communication over RMI fails
    */
@@ -127,6 +127,16 @@ public class MainJVM extends AbstractMasterJVM implements MainJVMRemoteI {
   /** Working directory for slave JVM */
   private volatile File _workingDir;
   
+  /** Number of characters of interpreter output that may be waiting to be appended to the documents. */
+  private static final int OUTPUT_CREDITS = 4 * OutputBatcher.CAPACITY;
+  
+  /** Maximum time in milliseconds that a batch of output waits for credits. */
+  private static final int OUTPUT_CREDIT_TIMEOUT = 1000;
+  
+  /** Characters of output that may still be accepted; guarded by _outputCreditLock. */
+  private int _outputCredits = OUTPUT_CREDITS;
+  private final Object _outputCreditLock = new Object();
+  
   /** Creates a new MainJVM to interface to another JVM;  the MainJVM has a 
    * link to the partially initialized global model.  The MainJVM but does 
    * not automatically start the Interpreter JVM.  Callers must set the
@@ -229,6 +239,40 @@ public class MainJVM extends AbstractMasterJVM implements MainJVMRemoteI {
     debug.logEnd();
   }
   
+  /** Forwards a batch of output from InterpreterJVM to the local InteractionsModel, one call per text run.  Blocks
+    * while more than OUTPUT_CREDITS characters of earlier batches have not yet been appended to the documents (but at
+    * most OUTPUT_CREDIT_TIMEOUT milliseconds, in case the event thread is itself waiting for the interpreter).
+    * @param texts the text runs, in the order they were printed
+    * @param isErr whether each text run was printed to System.err rather than System.out
+    */
+  public void systemOutputBatch(String[] texts, boolean[] isErr) {
+    int size = 0;
+    for (String s: texts) { size += s.length(); }
+    final int credits = Math.min(size, OUTPUT_CREDITS);
+    synchronized(_outputCreditLock) {
+      long deadline = System.currentTimeMillis() + OUTPUT_CREDIT_TIMEOUT;
+      long remaining;
+      while (_outputCredits < credits && (remaining = deadline - System.currentTimeMillis()) > 0) {
+        try { _outputCreditLock.wait(remaining); }
+        catch (InterruptedException e) { break; }
+      }
+      _outputCredits -= credits;
+    }
+    for (int i = 0; i < texts.length; ++i) {
+      if (isErr[i]) systemErrPrint(texts[i]);
+      else systemOutPrint(texts[i]);
+    }
+    // the appends above are queued on the event thread; return the credits once they have run
+    Utilities.invokeLater(new Runnable() {
+      public void run() {
+        synchronized(_outputCreditLock) {
+          _outputCredits += credits;
+          _outputCreditLock.notifyAll();
+        }
+      }
+    });
+  }
+  
   /** Asks the main jvm for input from the console.
    * @return the console input
    */
@@ -383,6 +427,19 @@ public class MainJVM extends AbstractMasterJVM implements MainJVMRemoteI {
     catch (RemoteException e) { _handleRemoteException(e); return Option.none(); }
   }
   
+  /** Gets the string representations of the values of several variables in the current interpreter with a single
+    * remote call, or "none" if the remote JVM is unavailable or an error occurs.  Blocks until the interpreter is
+    * connected.
+    * @param vars the names of the variables
+    * @return string representations of vars, in order
+    */
+  public Option<List<Pair<String,String>>> getVariablesToString(List<String> vars) {
+    InterpreterJVMRemoteI remote = _state.value().interpreter(false);
+    if (remote == null) { return Option.none(); }
+    try { return Option.some(remote.getVariablesToString(vars)); }
+    catch (RemoteException e) { _handleRemoteException(e); return Option.none(); }
+  }
+  
   /** Blocks until the interpreter is connected. 
     * @param f file to be added to the class path
     * @return {@code true} if the change was successfully passed to the remote JVM.
@@ -595,6 +652,18 @@ public class MainJVM extends AbstractMasterJVM implements MainJVMRemoteI {
     catch (RemoteException e) { _handleRemoteException(e); return false; }
   }
   
+  /** Compile loops to bytecode rather than interpreting them. 
+   * Blocks until the interpreter is connected.
+   * @param compile value to be set
+   * @return {@code false} if the remote JVM is unavailable or if an exception occurs; true otherwise.
+   */
+  public boolean setCompileStatements(boolean compile) {
+    InterpreterJVMRemoteI remote = _state.value().interpreter(false);
+    if (remote == null) { return false; }
+    try { remote.setCompileStatements(compile); return true; }
+    catch (RemoteException e) { _handleRemoteException(e); return false; }
+  }
+  
   /*
    * === Helper methods ===
    */
@@ -897,6 +966,10 @@ public class MainJVM extends AbstractMasterJVM implements MainJVMRemoteI {
         try { i.setRequireVariableType(requireVariableType); }
         catch (RemoteException re) { _handleRemoteException(re); }
         
+        Boolean compileStatements = DrJava.getConfig().getSetting(OptionConstants.DYNAMICJAVA_COMPILE_STATEMENTS);
+        try { i.setCompileStatements(compileStatements); }
+        catch (RemoteException re) { _handleRemoteException(re); }
+        
         // Note that _workingDir isn't guaranteed to be the dir at the time startup began.  Is that a problem?
         // (Is the user ever going to see a working dir message that doesn't match the actual setting?)
         _interactionsModel.interpreterReady(_workingDir);
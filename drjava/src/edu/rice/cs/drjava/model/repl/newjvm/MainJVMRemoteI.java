@@ -60,6 +60,15 @@ public interface MainJVMRemoteI extends MasterRemote {
     */
   public void systemOutPrint(String s) throws RemoteException;
   
+  /** Forwards a batch of System.out and System.err output from InterpreterJVM to the MainJVM for output to the user.
+    * Blocks until the MainJVM has room for the batch.
+    * @param texts the text runs, in the order they were printed
+    * @param isErr whether each text run was printed to System.err rather than System.out
+    * @throws RemoteException if remote communication fails
+    * @see OutputBatcher
+    */
+  public void systemOutputBatch(String[] texts, boolean[] isErr) throws RemoteException;
+  
   /** Asks the main jvm for input from the console.
    * @return the console input
     * @throws RemoteException if remote communication fails
@@ -40,6 +40,7 @@ import edu.rice.cs.drjava.DrJavaTestCase;
 
 import edu.rice.cs.plt.concurrent.CompletionMonitor;
 import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.plt.tuple.Pair;
 import edu.rice.cs.util.Log;
 import edu.rice.cs.util.UnexpectedException;
 
@@ -48,6 +49,8 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.List;
 
 import static edu.rice.cs.plt.debug.DebugUtil.debug;
 
@@ -207,6 +210,22 @@ public final class NewJVMTest extends DrJavaTestCase {
     debug.logEnd();
   }
 
+  /** The batched variable lookup must agree with looking up each variable on its own. */
+  public void testGetVariablesToString() {
+    assertTrue(_jvm.interpret("int x = 6;"));
+    assertTrue(_jvm.interpret("String s = \"monkey\";"));
+    List<String> vars = Arrays.asList("x", "s", "undefined", "x + 1");
+    List<Pair<String,String>> values = _jvm.getVariablesToString(vars).unwrap();
+    assertEquals("number of values", vars.size(), values.size());
+    for (int i = 0; i < vars.size(); ++i) {
+      assertEquals(vars.get(i), _jvm.getVariableToString(vars.get(i)).unwrap(), values.get(i));
+    }
+    assertEquals("value of x", "6", values.get(0).first());
+    assertEquals("value of s", "monkey", values.get(1).first());
+    assertNull("undefined variable", values.get(2).first());
+    assertEquals("value of expression", "7", values.get(3).first());
+  }
+
   private static class TestJVMExtension extends MainJVM {
     private static final int WAIT_TIMEOUT = 30000; // time to wait for an interaction to complete
     
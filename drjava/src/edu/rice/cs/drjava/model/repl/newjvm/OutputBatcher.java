@@ -0,0 +1,214 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.repl.newjvm;
+
+import java.io.OutputStream;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+
+import edu.rice.cs.util.OutputStreamRedirector;
+
+import static edu.rice.cs.plt.debug.DebugUtil.error;
+
+/** Collects the text written to System.out and System.err in the interpreter JVM and ships it to the main JVM in
+  * batches.  Consecutive writes to the same stream are coalesced.  A daemon thread sends the pending text once it
+  * reaches BATCH_SIZE characters, or FLUSH_DELAY milliseconds after the first unsent write, whichever comes first.
+  * Writers block while CAPACITY characters are waiting to be sent, so a program cannot print faster than the main
+  * JVM accepts its output; the main JVM in turn only accepts a batch when it has room for it (see
+  * {@link MainJVM#systemOutputBatch}).  Text is sent in the order it was written, across both streams.
+  * @version $Id$
+  */
+public class OutputBatcher {
+  
+  /** Number of pending characters that causes a batch to be sent immediately. */
+  public static final int BATCH_SIZE = 32 * 1024;
+  
+  /** Number of pending characters at which writers block until a batch has been taken. */
+  public static final int CAPACITY = 4 * BATCH_SIZE;
+  
+  /** Maximum time in milliseconds that a write waits to be sent. */
+  public static final int FLUSH_DELAY = 20;
+  
+  /** Destination of the batches. */
+  public interface Sink {
+    /** Receives a batch.  texts[i] was written to System.err if isErr[i] is true, to System.out otherwise.
+      * @param texts the text runs, in the order they were written
+      * @param isErr whether each text run was written to System.err
+      * @throws RemoteException if remote communication fails
+      */
+    public void print(String[] texts, boolean[] isErr) throws RemoteException;
+  }
+  
+  private final Sink _sink;
+  
+  /* All of the following fields are guarded by this. */
+  
+  /** Completed text runs of the pending batch, and the streams they were written to. */
+  private final ArrayList<String> _texts = new ArrayList<String>();
+  private final ArrayList<Boolean> _isErr = new ArrayList<Boolean>();
+  
+  /** The last, still growing text run of the pending batch. */
+  private final StringBuilder _current = new StringBuilder();
+  private boolean _currentIsErr = false;
+  
+  /** Number of characters pending. */
+  private int _pending = 0;
+  
+  /** Time of the first write of the pending batch. */
+  private long _firstWrite = 0;
+  
+  /** Total number of characters written, and total number of characters sent. */
+  private long _written = 0;
+  private long _sent = 0;
+  
+  /** True if the pending batch should be sent without waiting for more output. */
+  private boolean _flushRequested = false;
+  
+  /** Create a new batcher and start its sending thread.
+    * @param sink destination of the batches
+    */
+  public OutputBatcher(Sink sink) {
+    _sink = sink;
+    Thread sender = new Thread("Output Batcher") {
+      public void run() { _sendLoop(); }
+    };
+    sender.setDaemon(true);
+    sender.start();
+  }
+  
+  /** @return a stream that writes to the batch as System.out */
+  public OutputStream out() { return new BatchStream(false); }
+  
+  /** @return a stream that writes to the batch as System.err */
+  public OutputStream err() { return new BatchStream(true); }
+  
+  /** Adds text to the pending batch, blocking while the batch is full.
+    * @param s the text written
+    * @param isErr true if s was written to System.err
+    */
+  public synchronized void print(String s, boolean isErr) {
+    if (s.length() == 0) return;
+    try {
+      while (_pending >= CAPACITY) wait();
+    }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); /* write anyway */ }
+    if (_current.length() > 0 && _currentIsErr != isErr) {
+      _texts.add(_current.toString());
+      _isErr.add(_currentIsErr);
+      _current.setLength(0);
+    }
+    _current.append(s);
+    _currentIsErr = isErr;
+    if (_pending == 0) _firstWrite = System.currentTimeMillis();
+    _pending += s.length();
+    _written += s.length();
+    if (_pending == s.length() || _pending >= BATCH_SIZE) notifyAll();
+  }
+  
+  /** Blocks until everything written so far has been sent. */
+  public void flush() { flush(0); }
+  
+  /** Blocks until everything written so far has been sent, or until the timeout expires.
+    * @param timeout the maximum time to wait in milliseconds, or 0 to wait indefinitely
+    */
+  public synchronized void flush(long timeout) {
+    long target = _written;
+    if (_sent >= target) return;
+    _flushRequested = true;
+    notifyAll();
+    long deadline = System.currentTimeMillis() + timeout;
+    try {
+      while (_sent < target) {
+        if (timeout == 0) wait();
+        else {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) return;
+          wait(remaining);
+        }
+      }
+    }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+  }
+  
+  /** Takes the pending batch whenever it is due and sends it. */
+  private void _sendLoop() {
+    while (true) {
+      String[] texts;
+      boolean[] isErr;
+      int size;
+      synchronized(this) {
+        try {
+          while (_pending == 0) wait();
+          // give the batch time to fill, unless it is full or someone is waiting for it
+          long remaining;
+          while (_pending < BATCH_SIZE && ! _flushRequested &&
+                 (remaining = _firstWrite + FLUSH_DELAY - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+          }
+        }
+        catch (InterruptedException e) { continue; }
+        _texts.add(_current.toString());
+        _isErr.add(_currentIsErr);
+        _current.setLength(0);
+        texts = _texts.toArray(new String[_texts.size()]);
+        isErr = new boolean[texts.length];
+        for (int i = 0; i < isErr.length; ++i) { isErr[i] = _isErr.get(i); }
+        _texts.clear();
+        _isErr.clear();
+        size = _pending;
+        _pending = 0;
+        _flushRequested = false;
+        notifyAll();  // writers waiting for room
+      }
+      try { _sink.print(texts, isErr); }
+      catch (RemoteException re) { error.log(re); /* the output is lost */ }
+      catch (RuntimeException e) { error.log(e); }
+      synchronized(this) {
+        _sent += size;
+        notifyAll();  // flushers
+      }
+    }
+  }
+  
+  /** A stream that adds the text written to it to the batch.  Flushing it blocks until the text has been sent. */
+  private class BatchStream extends OutputStreamRedirector {
+    private final boolean _isErr;
+    public BatchStream(boolean isErr) { _isErr = isErr; }
+    public void print(String s) { OutputBatcher.this.print(s, _isErr); }
+    public void flush() { OutputBatcher.this.flush(); }
+  }
+}
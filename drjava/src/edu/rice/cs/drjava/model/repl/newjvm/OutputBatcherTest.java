@@ -0,0 +1,151 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.repl.newjvm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.drjava.model.repl.InteractionsDJDocument;
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.util.swing.Utilities;
+import edu.rice.cs.util.text.ConsoleDocument;
+
+/** Tests the batching of interpreter output.  {@link #main} measures the throughput of output from the interpreter
+  * JVM to a console document.
+  * @version $Id$
+  */
+public final class OutputBatcherTest extends DrJavaTestCase {
+  
+  /** A sink that records the batches it receives, optionally taking some time for each. */
+  private static class RecordingSink implements OutputBatcher.Sink {
+    final List<String> texts = new ArrayList<String>();
+    final List<Boolean> isErr = new ArrayList<Boolean>();
+    volatile int batches = 0;
+    volatile long delay = 0;
+    public void print(String[] t, boolean[] e) {
+      try { Thread.sleep(delay); }
+      catch (InterruptedException ie) { /* continue */ }
+      synchronized(this) {
+        for (int i = 0; i < t.length; ++i) {
+          texts.add(t[i]);
+          isErr.add(e[i]);
+        }
+      }
+      ++batches;
+    }
+    synchronized String all() {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < texts.size(); ++i) { sb.append(isErr.get(i) ? "E:" : "O:").append(texts.get(i)); }
+      return sb.toString();
+    }
+    /** @return the text received, with a prefix naming the stream only where the stream changes, so that the result
+      *         does not depend on how the text was split into batches */
+    synchronized String merged() {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < texts.size(); ++i) {
+        if (i == 0 || isErr.get(i) != isErr.get(i - 1)) sb.append(isErr.get(i) ? "E:" : "O:");
+        sb.append(texts.get(i));
+      }
+      return sb.toString();
+    }
+  }
+  
+  public void testOrderAndCoalescing() {
+    RecordingSink sink = new RecordingSink();
+    OutputBatcher batcher = new OutputBatcher(sink);
+    PrintStream out = new PrintStream(batcher.out());
+    PrintStream err = new PrintStream(batcher.err());
+    for (int i = 0; i < 100; ++i) { out.print("a"); }
+    err.print("b");
+    err.print("c");
+    out.print("d");
+    out.flush();
+    assertEquals("O:" + "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" +
+                 "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" + "aaaaaaaaaa" + "E:bcO:d", sink.merged());
+    // usually a single batch, but the delayed send may fire while the text is being printed
+    assertTrue("writes should be coalesced", sink.batches < 103);
+  }
+  
+  public void testDelayedSend() throws InterruptedException {
+    RecordingSink sink = new RecordingSink();
+    OutputBatcher batcher = new OutputBatcher(sink);
+    batcher.print("x", false);
+    // sent without a flush, after the delay
+    for (int i = 0; i < 100 && sink.batches == 0; ++i) { Thread.sleep(OutputBatcher.FLUSH_DELAY); }
+    assertEquals("O:x", sink.all());
+  }
+  
+  public void testBackPressure() {
+    RecordingSink sink = new RecordingSink();
+    sink.delay = 200;
+    OutputBatcher batcher = new OutputBatcher(sink);
+    String line = "0123456789012345678901234567890123456789012345678901234567890123456789\n";
+    int count = 3 * OutputBatcher.CAPACITY / line.length();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < count; ++i) { batcher.print(line, false); }
+    // the writer must have waited for at least one slow batch to be taken
+    assertTrue(System.currentTimeMillis() - start >= sink.delay);
+    batcher.flush();
+    assertEquals(count * line.length(), sink.all().length() - 2 * sink.texts.size());
+  }
+  
+  /** Print lines in the interpreter JVM and measure how fast they are appended to a console document. */
+  public static void main(String[] args) throws Exception {
+    final ConsoleDocument doc = new ConsoleDocument(new InteractionsDJDocument());
+    MainJVM jvm = new MainJVM(IOUtil.WORKING_DIRECTORY) {
+      @Override public void systemOutPrint(final String s) {
+        Utilities.invokeLater(new Runnable() {
+          public void run() { doc.insertBeforeLastPrompt(s, ConsoleDocument.SYSTEM_OUT_STYLE); }
+        });
+      }
+    };
+    jvm.startInterpreterJVM();
+    int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    for (int run = 0; run < 3; ++run) {
+      long start = System.currentTimeMillis();
+      jvm.interpret("for (int i = 0; i < " + lines + "; i++) { System.out.println(i); }");
+      Utilities.clearEventQueue();
+      long time = Math.max(1, System.currentTimeMillis() - start);
+      System.out.println(lines + " lines in " + time + "ms: " + (lines * 1000L / time) + " lines/s; document length " +
+                         doc.getLength());
+    }
+    jvm.dispose();
+    System.exit(0);
+  }
+}
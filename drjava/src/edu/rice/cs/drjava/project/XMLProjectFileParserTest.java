@@ -39,6 +39,7 @@ package edu.rice.cs.drjava.project;
 import java.io.*;
 import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.plt.iter.IterUtil;
+import edu.rice.cs.plt.tuple.Pair;
 import edu.rice.cs.drjava.DrJavaTestCase;
 import edu.rice.cs.drjava.project.ProjectFileParserFacade;
 import edu.rice.cs.drjava.project.ProjectFileIR;
@@ -167,4 +168,33 @@ public class XMLProjectFileParserTest extends DrJavaTestCase {
     assertEquals("main-class name", "some.main.ClassName", 
                  pfir.getMainClass());
   }
+  
+  /** Measures the time taken to write and to parse a project file with many source files.
+    * @param args optionally, the number of source files (default 3000)
+    */
+  public static void main(String[] args) throws Exception {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 3000;
+    File dir = IOUtil.createAndMarkTempDirectory("drjava-bench", "");
+    File f = new File(dir, "bench.drjava");
+    ProjectProfile pp = new ProjectProfile(f);
+    pp.setProjectRoot(dir);
+    pp.setWorkingDirectory(dir);
+    for (int i = 0; i < n; ++i) {
+      String pkg = "p" + (i / 50);
+      pp.addSourceFile(new DocFile(new File(dir, pkg + "/C" + i + ".java"), new Pair<Integer,Integer>(i, i),
+                                   new Pair<Integer,Integer>(0, i), false, pkg));
+    }
+    pp.write();
+    System.out.println(n + " source files, " + f.length() + " bytes");
+    for (int round = 0; round < 10; ++round) {
+      long start = System.nanoTime();
+      pp.write();
+      long written = System.nanoTime();
+      ProjectFileIR pfir = ProjectFileParserFacade.ONLY.parse(f);
+      long parsed = System.nanoTime();
+      assertEquals("number of source files", n, pfir.getSourceFiles().length);
+      System.out.println("  write " + (written - start) / 1000000 + "ms, parse " + (parsed - written) / 1000000 + "ms");
+    }
+    IOUtil.deleteRecursively(dir);
+  }
 }
@@ -86,6 +86,7 @@ public class DebugPanel extends JPanel implements OptionConstants {
   private JButton _stepOverButton;
   private JButton _stepOutButton;
   private JLabel _statusBar;
+  private JLabel _latencyLabel;
 
   private ArrayList<DebugWatchData> _watches;
   private ArrayList<DebugThreadData> _threads;
@@ -125,7 +126,13 @@ public class DebugPanel extends JPanel implements OptionConstants {
     _statusBar = new JLabel("");
     _statusBar.setForeground(Color.blue.darker());
 
-    _tabsAndStatusPane.add(_statusBar, BorderLayout.SOUTH);
+    _latencyLabel = new JLabel("");
+    _latencyLabel.setForeground(Color.gray.darker());
+
+    JPanel statusPane = new JPanel(new BorderLayout());
+    statusPane.add(_statusBar, BorderLayout.CENTER);
+    statusPane.add(_latencyLabel, BorderLayout.EAST);
+    _tabsAndStatusPane.add(statusPane, BorderLayout.SOUTH);
 
     this.add(_tabsAndStatusPane, BorderLayout.CENTER);
 
@@ -160,6 +167,9 @@ public class DebugPanel extends JPanel implements OptionConstants {
         else  _stackFrames = new ArrayList<DebugStackData>();
         
         _threads = _debugger.getCurrentThreadData();
+        
+        long latency = _debugger.getLastStepLatency();
+        _latencyLabel.setText((latency >= 0) ? "Last step: " + latency + " ms " : "");
       }
       catch (DebugException de) {
         // Thrown if
@@ -171,6 +181,7 @@ public class DebugPanel extends JPanel implements OptionConstants {
       _watches = new ArrayList<DebugWatchData>();
       _threads = new ArrayList<DebugThreadData>();
       _stackFrames = new ArrayList<DebugStackData>();
+      _latencyLabel.setText("");
     }
 
     ((AbstractTableModel)_watchTable.getModel()).fireTableDataChanged();
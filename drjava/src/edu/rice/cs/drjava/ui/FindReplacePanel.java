@@ -51,6 +51,7 @@ import edu.rice.cs.drjava.DrJava;
 import edu.rice.cs.drjava.config.*;
 import edu.rice.cs.drjava.model.SingleDisplayModel;
 import edu.rice.cs.drjava.model.OpenDefinitionsDocument;
+import edu.rice.cs.drjava.model.FindAllSearch;
 import edu.rice.cs.drjava.model.FindReplaceMachine;
 import edu.rice.cs.drjava.model.FindResult;
 import edu.rice.cs.drjava.model.ClipboardHistoryModel;
@@ -59,6 +60,7 @@ import edu.rice.cs.drjava.model.RegionManager;
 import edu.rice.cs.plt.lambda.Runnable1;
 import edu.rice.cs.util.UnexpectedException;
 import edu.rice.cs.util.swing.BorderlessScrollPane;
+import edu.rice.cs.util.swing.DocumentIterator;
 import edu.rice.cs.util.text.SwingDocument;
 
 /** The tabbed panel that handles requests for finding and replacing text.
@@ -609,6 +611,11 @@ class FindReplacePanel extends TabbedPanel implements ClipboardOwner {
     final int searchLen = searchStr.length();
     if (searchLen == 0) return;
     
+    if (searchAll) {
+      _findAllInBackground(searchStr, matchCase, wholeWord, noComments, noTestCases, startDoc, rm, panel);
+      return;
+    }
+    
     final OpenDefinitionsDocument oldDoc = _machine.getDocument();
     final OpenDefinitionsDocument oldFirstDoc = _machine.getFirstDoc();
     final String oldFindWord = _machine.getFindWord();
@@ -669,17 +676,7 @@ class FindReplacePanel extends TabbedPanel implements ClipboardOwner {
     _machine.setPosition(oldPosition);
     
 //    System.out.println("Adding found regions to corresponding documents");
-    for (FindResult fr: results) {
-      
-      final OpenDefinitionsDocument doc = fr.getDocument();
-      
-      final int end = fr.getFoundOffset();
-      final int start = end - searchLen;
-      final int lineStart = doc._getLineStartPos(start);
-      final int lineEnd = doc._getLineEndPos(end);
-      
-      rm.addRegion(new MovingDocumentRegion(doc, start, end, lineStart, lineEnd));                       
-    }
+    rm.addRegions(_toRegions(results, searchLen));
       
     if (count > 0) _frame.showFindResultsPanel(panel);
     else panel.freeResources();
@@ -700,6 +697,75 @@ class FindReplacePanel extends TabbedPanel implements ClipboardOwner {
     _frame.setStatusMessage("Found " + count + " occurrence" + ((count == 1) ? "" : "s") + ".");
   }
   
+  /** Performs "find all" in all documents with a {@link FindAllSearch}, which searches the documents in background
+    * threads.  Matches are added to rm in batches as they are found; the results panel is shown when the first batch
+    * arrives.  Closing the panel cancels the search.
+    * @param searchStr string to search for
+    * @param matchCase true if search should be case-sensitive
+    * @param wholeWord true if we want to match the whole word
+    * @param noComments true if we want to ignore comments
+    * @param noTestCases true if we want to ignore test cases
+    * @param startDoc first document to search within
+    * @param rm the RegionManager for the matches
+    * @param panel panel in which to display search results
+    */
+  private void _findAllInBackground(final String searchStr, boolean matchCase, boolean wholeWord, boolean noComments,
+                                    boolean noTestCases, OpenDefinitionsDocument startDoc, 
+                                    final RegionManager<MovingDocumentRegion> rm, final FindResultsPanel panel) {
+    // Collect the documents in the order in which the FindReplaceMachine visits them
+    final DocumentIterator docIterator = _model.getDocumentIterator();
+    final int n = docIterator.getDocumentCount();
+    final List<OpenDefinitionsDocument> docs = new ArrayList<OpenDefinitionsDocument>(n);
+    for (OpenDefinitionsDocument doc = startDoc; doc != null && docs.size() < n; ) {
+      docs.add(doc);
+      if (docs.size() < n) doc = docIterator.getNextDocument(doc, _frame);  // null if the user declined to continue
+    }
+    
+    final FindAllSearch search = new FindAllSearch(docs, searchStr, matchCase, wholeWord, noComments, noTestCases);
+    panel.setSearch(search);
+    _frame.setStatusMessage("Finding All");
+    search.start(new Runnable1<List<FindResult>>() {
+      public void run(List<FindResult> batch) {
+        boolean first = (search.getMatchCount() == batch.size());
+        rm.addRegions(_toRegions(batch, searchStr.length()));
+        if (first) _frame.showFindResultsPanel(panel);
+        _frame.setStatusMessage("Finding All: " + search.getMatchCount() + " so far, " + search.getFilesSearched() + 
+                                " of " + docs.size() + " files searched");
+      }
+    }, new Runnable() {
+      public void run() {
+        if (search.isCancelled()) return;
+        int count = search.getMatchCount();
+        if (count == 0) panel.freeResources();
+        Toolkit.getDefaultToolkit().beep();
+        _frame.setStatusMessage("Found " + count + " occurrence" + ((count == 1) ? "" : "s") + " in " + 
+                                search.getFilesSearched() + " files (" + Math.round(search.getFilesPerSecond()) + 
+                                " files/s).");
+      }
+    });
+  }
+  
+  /** Converts the results of a search into regions.
+    * @param results the results, giving the end offsets of matches
+    * @param searchLen the length of the matched text
+    * @return the regions of the matches
+    */
+  private static ArrayList<MovingDocumentRegion> _toRegions(List<FindResult> results, int searchLen) {
+    ArrayList<MovingDocumentRegion> regions = new ArrayList<MovingDocumentRegion>(results.size());
+    for (FindResult fr: results) {
+      
+      final OpenDefinitionsDocument doc = fr.getDocument();
+      
+      final int end = fr.getFoundOffset();
+      final int start = end - searchLen;
+      final int lineStart = doc._getLineStartPos(start);
+      final int lineEnd = doc._getLineEndPos(end);
+      
+      regions.add(new MovingDocumentRegion(doc, start, end, lineStart, lineEnd));                       
+    }
+    return regions;
+  }
+  
   /** Performs the "replace all" command. */
   private void _replaceAll() {
     _frame.updateStatusField("Replacing All");
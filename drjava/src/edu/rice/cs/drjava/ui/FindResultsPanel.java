@@ -53,6 +53,7 @@ import javax.swing.border.CompoundBorder;
 import javax.swing.border.LineBorder;
 import javax.swing.border.MatteBorder;
 
+import edu.rice.cs.drjava.model.FindAllSearch;
 import edu.rice.cs.drjava.model.MovingDocumentRegion;
 import edu.rice.cs.drjava.model.OpenDefinitionsDocument;
 import edu.rice.cs.drjava.model.RegionManager;
@@ -86,6 +87,7 @@ public class FindResultsPanel extends RegionsTreePanel<MovingDocumentRegion> {
   private volatile JButton _removeButton;
   private volatile JComboBox<Color> _colorBox;
   private volatile int _lastIndex;
+  private volatile FindAllSearch _search = null;  // the background search filling this panel, if any
   
   /** Saved option listeners kept in this field so they can be removed for garbage collection  */
   private final LinkedList<Pair<Option<Color>, OptionListener<Color>>> _colorOptionListeners = 
@@ -388,8 +390,20 @@ public class FindResultsPanel extends RegionsTreePanel<MovingDocumentRegion> {
     super._close();  // Not redundant.  _close may be called from removeRegion.
   }
   
+  /** Sets the background search that fills this panel, cancelling the previous one, if any.  The search is cancelled
+    * when the panel's resources are freed.
+    * @param search the search
+    */
+  public void setSearch(FindAllSearch search) {
+    FindAllSearch old = _search;
+    if (old != null) old.cancel();
+    _search = search;
+  }
+  
   /** Called from FindReplacePanel.findAll if search finds no matches. */
   public void freeResources() {
+    FindAllSearch search = _search;
+    if (search != null) search.cancel();
     _docToTreeNode.clear();
     _regionToTreeNode.clear();
     getGlobalModel().removeFindResultsManager(getRegionManager());  // removes manager from global model (should be done by listener!)
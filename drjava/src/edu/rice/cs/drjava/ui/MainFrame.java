@@ -9302,6 +9302,11 @@ public class MainFrame extends SwingFrame implements ClipboardOwner, DropTargetL
       PropertyMaps.TEMPLATE.getProperty("DrJava", "drjava.all.files").invalidate(); 
     }
     
+    public void filesOpened(final List<OpenDefinitionsDocument> docs) { 
+      for (OpenDefinitionsDocument d: docs) _fileOpened(d);
+      PropertyMaps.TEMPLATE.getProperty("DrJava", "drjava.all.files").invalidate(); 
+    }
+    
     private void _fileOpened(final OpenDefinitionsDocument doc) {
       try {
         File f = doc.getFile();
@@ -9601,14 +9606,27 @@ public class MainFrame extends SwingFrame implements ClipboardOwner, DropTargetL
       EventQueue.invokeLater(new Runnable() { 
         public void run() { 
           _junitPanel.reset();
-          if (_model.getJUnitModel().getCoverage()) {
-            _coverageFrame.displayReport(_model.getJUnitModel().getFinalResult());
-          }
+          if (_model.getJUnitModel().getCoverage()) _displayCoverageReport();
         }
       });
       _model.refreshActiveDocument();
     }
     
+    /** Displays the coverage report once the slave JVM has written it, which it does after announcing the results of
+      * the tests.  Only runs in the event thread.
+      */
+    private void _displayCoverageReport() {
+      new Thread(new Runnable() {
+        public void run() {
+          try { _model.getJUnitModel().waitForCoverageReport(); }
+          catch (InterruptedException e) { return; }
+          EventQueue.invokeLater(new Runnable() {
+            public void run() { _coverageFrame.displayReport(_model.getJUnitModel().getFinalResult()); }
+          });
+        }
+      }, "Coverage Report Display").start();
+    }
+    
     /** Fire just before javadoc asynchronous thread is started. Only runs in the event thread. */
     public void javadocStarted() {
       
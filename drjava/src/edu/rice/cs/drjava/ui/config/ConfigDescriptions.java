@@ -608,6 +608,11 @@ public class ConfigDescriptions {
         "Require Variable Type",
         "<html>Whether DrJava should require a variable type for<br>"+
         "variable declarations in the Interactions Pane.</html>");
+    add(OptionConstants.DYNAMICJAVA_COMPILE_STATEMENTS, 
+        "Compile Loops",
+        "<html>Whether DrJava should compile loops in the Interactions Pane<br>"+
+        "to bytecode rather than interpret them.  Loops that cannot be<br>"+
+        "compiled are always interpreted.</html>");
     
     /** Add all of the components for the JUnit panel of the preferences window. */
     add(OptionConstants.JUNIT_LOCATION_ENABLED, "Use external JUnit",
@@ -1332,6 +1332,7 @@ public class ConfigFrame extends SwingFrame {
                        newForcedChoiceOptionComponent(OptionConstants.DYNAMICJAVA_ACCESS_CONTROL));
     addOptionComponent(panel, newBooleanOptionComponent(OptionConstants.DYNAMICJAVA_REQUIRE_SEMICOLON));
     addOptionComponent(panel, newBooleanOptionComponent(OptionConstants.DYNAMICJAVA_REQUIRE_VARIABLE_TYPE));
+    addOptionComponent(panel, newBooleanOptionComponent(OptionConstants.DYNAMICJAVA_COMPILE_STATEMENTS));
     
     panel.displayComponents();
   }
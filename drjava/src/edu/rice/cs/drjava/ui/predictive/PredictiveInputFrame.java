@@ -217,7 +217,8 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
     _currentStrategy = _strategies.get(0);
     _pim = new PredictiveInputModel<T>(ignoreCase, _currentStrategy, items);
      @SuppressWarnings("unchecked")
-    T[] matchingItems = (T[]) IterUtil.toArray(_pim.getMatchingItems(), Comparable.class);  // T erases to Comparable!
+    // T erases to Comparable!
+    T[] matchingItems = (T[]) IterUtil.toArray(_pim.getRankedMatchingItems(), Comparable.class);
     _matchList = new JList<T>(matchingItems);
     _force = force;
     _info = info;
@@ -489,7 +490,7 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
           if (i > 0) {
             _matchList.setSelectedIndex(i - 1);
             _matchList.ensureIndexIsVisible(i - 1);
-            _pim.setCurrentItem(_pim.getMatchingItems().get(i - 1));
+            _pim.setCurrentItem(_matchList.getModel().getElementAt(i - 1));
             updateInfo();
           }
           addListener();
@@ -505,7 +506,7 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
           if (i < _matchList.getModel().getSize() - 1) {
             _matchList.setSelectedIndex(i + 1);
             _matchList.ensureIndexIsVisible(i + 1);
-            _pim.setCurrentItem(_pim.getMatchingItems().get(i + 1));
+            _pim.setCurrentItem(_matchList.getModel().getElementAt(i + 1));
             updateInfo();
           }
           addListener();
@@ -522,7 +523,7 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
           if (i < 0)  i = 0;
           _matchList.setSelectedIndex(i);
           _matchList.ensureIndexIsVisible(i);
-          _pim.setCurrentItem(_pim.getMatchingItems().get(i));
+          _pim.setCurrentItem(_matchList.getModel().getElementAt(i));
           updateInfo();
           addListener();
         }
@@ -540,7 +541,7 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
           }
           _matchList.setSelectedIndex(i);
           _matchList.ensureIndexIsVisible(i);
-          _pim.setCurrentItem(_pim.getMatchingItems().get(i));
+          _pim.setCurrentItem(_matchList.getModel().getElementAt(i));
           updateInfo();
           addListener();
         }
@@ -568,7 +569,7 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
         removeListener();
         int i = _matchList.getSelectedIndex();
         if (i >= 0) {
-          _pim.setCurrentItem(_pim.getMatchingItems().get(i));
+          _pim.setCurrentItem(_matchList.getModel().getElementAt(i));
           _matchList.ensureIndexIsVisible(i);
           updateInfo();
         }
@@ -757,7 +758,8 @@ public class PredictiveInputFrame<T extends Comparable<? super T>> extends Swing
   /** Update the match list based on the model. */
   private void updateList() {
     @SuppressWarnings("unchecked")
-    T[] matchingItems = (T[]) IterUtil.toArray(_pim.getMatchingItems(), Comparable.class);  // T erases to Comparable!
+    // T erases to Comparable!
+    T[] matchingItems = (T[]) IterUtil.toArray(_pim.getRankedMatchingItems(), Comparable.class);
     _matchList.setListData(matchingItems);
     _matchList.setSelectedValue(_pim.getCurrentItem(), true);
     updateExtensionLabel();
@@ -0,0 +1,202 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.ui.predictive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Index over the keys of a {@link PredictiveInputModel}, used to find the items matching a mask without
+  * testing every item.  Keys are the items' strings (in lower case if the model ignores case).  Two structures
+  * are built, each on first use: the key positions sorted by key, which turn a prefix query into a binary
+  * search, and a trigram index, which narrows a fragment query to the keys containing all of the fragments'
+  * trigrams.  All query results are positions in the key array, in increasing order.
+  * @version $Id$
+  */
+public class PredictiveInputIndex {
+  /** The keys, in the order of the model's items. */
+  private final String[] _keys;
+
+  /** Positions of the keys, sorted by key; null until needed. */
+  private volatile int[] _sorted = null;
+
+  /** Trigram postings: for each trigram, the positions of the keys containing it; null until needed. */
+  private volatile HashMap<Long, int[]> _trigrams = null;
+
+  /** Create an index over the given keys.  The array must not be modified afterwards.
+    * @param keys the keys to index
+    */
+  public PredictiveInputIndex(String[] keys) { _keys = keys; }
+
+  /** @return the number of keys */
+  public int size() { return _keys.length; }
+
+  /** @param prefix the prefix to look for
+    * @return positions of the keys starting with the prefix, in increasing order
+    */
+  public int[] prefixMatches(String prefix) {
+    int[] sorted = sortedPositions();
+    // the matching keys are contiguous in sorted order, starting at the first key >= prefix
+    int lo = 0;
+    int hi = sorted.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (_keys[sorted[mid]].compareTo(prefix) < 0) { lo = mid + 1; }
+      else { hi = mid; }
+    }
+    int start = lo;
+    hi = sorted.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (_keys[sorted[mid]].startsWith(prefix)) { lo = mid + 1; }
+      else { hi = mid; }
+    }
+    int[] result = Arrays.copyOfRange(sorted, start, lo);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /** Narrow a fragment query using the trigram index.  The result contains all keys that contain every
+    * fragment, but also some that do not; the caller must check each candidate.
+    * @param fragments the fragments that must occur in a matching key
+    * @return positions of the candidate keys in increasing order, or null if no fragment is long enough to
+    *         narrow the search (in which case every key is a candidate)
+    */
+  public int[] fragmentCandidates(List<String> fragments) {
+    List<int[]> postings = new ArrayList<int[]>();
+    HashMap<Long, int[]> trigrams = null;
+    for (String f: fragments) {
+      for (int i = 0; i + 3 <= f.length(); ++i) {
+        if (trigrams == null) { trigrams = trigrams(); }
+        int[] p = trigrams.get(trigram(f, i));
+        if (p == null) { return new int[0]; }
+        postings.add(p);
+      }
+    }
+    if (postings.size() == 0) { return null; }
+    // intersect, shortest lists first
+    Collections.sort(postings, new Comparator<int[]>() {
+      public int compare(int[] a, int[] b) { return a.length - b.length; }
+    });
+    int[] result = postings.get(0);
+    for (int k = 1; k < postings.size() && result.length > 0; ++k) {
+      result = intersect(result, postings.get(k));
+    }
+    return result;
+  }
+
+  /** @return key positions sorted by key, building the array if necessary */
+  private int[] sortedPositions() {
+    int[] sorted = _sorted;
+    if (sorted == null) {
+      Integer[] boxed = new Integer[_keys.length];
+      for (int i = 0; i < boxed.length; ++i) { boxed[i] = i; }
+      Arrays.sort(boxed, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) { return _keys[a].compareTo(_keys[b]); }
+      });
+      sorted = new int[boxed.length];
+      for (int i = 0; i < sorted.length; ++i) { sorted[i] = boxed[i]; }
+      _sorted = sorted;
+    }
+    return sorted;
+  }
+
+  /** A posting list under construction. */
+  private static class Posting {
+    int[] positions;
+    int size = 0;
+    int last = -1;
+  }
+
+  /** @return the trigram postings, building them if necessary */
+  private HashMap<Long, int[]> trigrams() {
+    HashMap<Long, int[]> result = _trigrams;
+    if (result == null) {
+      // two passes -- count, then fill -- so that each list is allocated once at its final size
+      HashMap<Long, Posting> postings = new HashMap<Long, Posting>();
+      for (int pass = 0; pass < 2; ++pass) {
+        for (int k = 0; k < _keys.length; ++k) {
+          String key = _keys[k];
+          for (int i = 0; i + 3 <= key.length(); ++i) {
+            Long t = trigram(key, i);
+            Posting p = postings.get(t);
+            if (p == null) { p = new Posting(); postings.put(t, p); }
+            if (p.last != k) {
+              if (pass == 1) { p.positions[p.size] = k; }
+              p.size++;
+              p.last = k;
+            }
+          }
+        }
+        if (pass == 0) {
+          for (Posting p: postings.values()) {
+            p.positions = new int[p.size];
+            p.size = 0;
+            p.last = -1;
+          }
+        }
+      }
+      result = new HashMap<Long, int[]>(postings.size() * 4 / 3 + 1);
+      for (Map.Entry<Long, Posting> e: postings.entrySet()) {
+        result.put(e.getKey(), e.getValue().positions);
+      }
+      _trigrams = result;
+    }
+    return result;
+  }
+
+  /** @return the trigram starting at position i of s, packed into a long */
+  private static Long trigram(String s, int i) {
+    return (((long) s.charAt(i)) << 32) | (((long) s.charAt(i + 1)) << 16) | s.charAt(i + 2);
+  }
+
+  /** @return the values in both sorted arrays, in increasing order */
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int i = 0, j = 0, n = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) { ++i; }
+      else if (a[i] > b[j]) { ++j; }
+      else { result[n++] = a[i]; ++i; ++j; }
+    }
+    return Arrays.copyOf(result, n);
+  }
+}
@@ -36,7 +36,9 @@
 
 package edu.rice.cs.drjava.ui.predictive;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -545,12 +547,31 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
   /** Array of items. */
   private volatile ArrayList<T> _items = new ArrayList<T>();
 
+  /** Keys of the items, used by the built-in strategies: each item's string, in lower case if case is ignored. */
+  private volatile String[] _keys = new String[0];
+
+  /** Index over _keys, or null if it has not been created for the current items. */
+  private volatile PredictiveInputIndex _keyIndex = null;
+
   /** Index of currently selected full string. */
   private volatile int _index = 0;
 
   /** Array of matching items. */
   private final ArrayList<T> _matchingItems = new ArrayList<T>();
 
+  /** Positions of the matching items in _items, in increasing order. */
+  private volatile int[] _matchingPositions = new int[0];
+
+  /** Equivalence keys of the matching items (built-in strategies only), or null if not yet computed. */
+  private volatile HashSet<String> _matchingKeys = null;
+
+  /** Matching items ordered by match quality, or null if not yet computed. */
+  private volatile List<T> _rankedItems = null;
+
+  /** The mask and strategy for which the matching items were computed. */
+  private volatile String _matchedMask = null;
+  private volatile MatchingStrategy<T> _matchedStrategy = null;
+
   /** Currently entered mask. */
   private volatile String _mask = "";
   
@@ -597,7 +618,7 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
    */
   public void setStrategy(MatchingStrategy<T> strategy) {
     _strategy = strategy;
-    updateMatchingStrings(_items);
+    updateMatchingStrings(false);
   }
 
   /** Returns a copy of the list of items.
@@ -611,9 +632,9 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
    * @param items list of items
    */
   public void setItems(Collection<T> items) {
-    _items = new ArrayList<T>(items);
-    Collections.sort(_items);
-    updateMatchingStrings(_items);
+    ArrayList<T> sorted = new ArrayList<T>(items);
+    Collections.sort(sorted);
+    setSortedItems(sorted);
   }
 
   /** Sets the list
@@ -621,10 +642,10 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
     */
   @SafeVarargs
   public final void setItems(T... items) {
-    _items = new ArrayList<T>(items.length);
-    for(T s: items) _items.add(s);
-    Collections.sort(_items);
-    updateMatchingStrings(_items);
+    ArrayList<T> sorted = new ArrayList<T>(items.length);
+    for(T s: items) sorted.add(s);
+    Collections.sort(sorted);
+    setSortedItems(sorted);
   }
 
   /** Sets the list.
@@ -632,17 +653,37 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
     */
   public void setItems(PredictiveInputModel<T> pim) { setItems(pim._items); }  
 
+  /** Replace the items and their keys, and recompute the matches.
+    * @param sorted sorted list of items, which becomes owned by this model
+    */
+  private void setSortedItems(ArrayList<T> sorted) {
+    String[] keys = new String[sorted.size()];
+    for (int i = 0; i < keys.length; ++i) {
+      String s = sorted.get(i).toString();
+      keys[i] = (_ignoreCase) ? (s.toLowerCase()) : (s);
+    }
+    _items = sorted;
+    _keys = keys;
+    _keyIndex = null;
+    updateMatchingStrings(false);
+  }
+
   /** Return the current mask.
     * @return current mask
     */
   public String getMask() { return _mask; }
 
-  /** Set the current mask.
+  /** Set the current mask.  If the new mask extends the previous one and the strategy can only narrow the
+    * matches as the mask grows, only the previous matches are tested.
     * @param mask new mask
     */
   public void setMask(String mask) {
+    Class<?> c = _strategy.getClass();
+    boolean narrow = (_matchedMask != null) && (_matchedStrategy == _strategy) && mask.startsWith(_matchedMask) &&
+      (c == PrefixStrategy.class || c == FragmentStrategy.class ||
+       c == PrefixLineNumStrategy.class || c == FragmentLineNumStrategy.class);
     _mask = mask;
-    updateMatchingStrings(_items);
+    updateMatchingStrings(narrow);
   }
 
   /** Helper function that does indexOf with ignoreCase option.
@@ -659,23 +700,151 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
     return -1;
   }
   
+  /* The built-in strategies are evaluated directly on the precomputed keys, narrowed by the key index,
+   * rather than item by item through the MatchingStrategy interface.  Other strategies are used as is. */
+  
+  /** @return true if the strategy is one of the built-in strategies, whose behavior is known */
+  private boolean isBuiltIn(MatchingStrategy<T> s) {
+    Class<?> c = s.getClass();
+    return c == PrefixStrategy.class || c == FragmentStrategy.class || c == RegExStrategy.class ||
+      c == PrefixLineNumStrategy.class || c == FragmentLineNumStrategy.class || c == RegExLineNumStrategy.class;
+  }
+  
+  /** @return true if the built-in strategy accepts line numbers after a colon */
+  private boolean usesLineNumbers(MatchingStrategy<T> s) {
+    Class<?> c = s.getClass();
+    return c == PrefixLineNumStrategy.class || c == FragmentLineNumStrategy.class || c == RegExLineNumStrategy.class;
+  }
+  
+  /** @return the part of the mask that a built-in strategy matches against, not yet case-normalized */
+  private String maskPart() {
+    if (!usesLineNumbers(_strategy)) { return _mask; }
+    int pos = _mask.lastIndexOf(':');
+    return (pos < 0) ? _mask : _mask.substring(0, pos);
+  }
+  
+  /** @return the key under which a built-in strategy considers the item equivalent to others */
+  private String equivalenceKey(String key) {
+    if (!usesLineNumbers(_strategy)) { return key; }
+    int pos = key.lastIndexOf(':');
+    return (pos < 0) ? key : key.substring(0, pos);
+  }
+  
+  /** @return the index over the current keys, creating it if necessary */
+  private PredictiveInputIndex keyIndex() {
+    PredictiveInputIndex index = _keyIndex;
+    if (index == null) {
+      index = new PredictiveInputIndex(_keys);
+      _keyIndex = index;
+    }
+    return index;
+  }
+  
+  /** Find the positions of the items matched by a built-in strategy.
+    * @param candidates positions to test, in increasing order, or null to consider all items
+    * @return positions of the matching items, in increasing order
+    */
+  private int[] findBuiltInMatches(int[] candidates) {
+    Class<?> c = _strategy.getClass();
+    String part = maskPart();
+    String[] keys = _keys;
+    int[] result;
+    int n = 0;
+    if (c == PrefixStrategy.class || c == PrefixLineNumStrategy.class) {
+      String b = (_ignoreCase) ? (part.toLowerCase()) : (part);
+      if (candidates == null) { return keyIndex().prefixMatches(b); }
+      result = new int[candidates.length];
+      for (int i: candidates) { if (keys[i].startsWith(b)) { result[n++] = i; } }
+    }
+    else if (c == FragmentStrategy.class || c == FragmentLineNumStrategy.class) {
+      String b = (_ignoreCase) ? (part.toLowerCase()) : (part);
+      List<String> fragments = new ArrayList<String>();
+      java.util.StringTokenizer tok = new java.util.StringTokenizer(b);
+      while(tok.hasMoreTokens()) { fragments.add(tok.nextToken()); }
+      if (candidates == null) { candidates = keyIndex().fragmentCandidates(fragments); }
+      if (candidates == null) { candidates = allPositions(); }
+      result = new int[candidates.length];
+      for (int i: candidates) {
+        boolean match = true;
+        for (String f: fragments) {
+          if (keys[i].indexOf(f) < 0) { match = false; break; }
+        }
+        if (match) { result[n++] = i; }
+      }
+    }
+    else {
+      // regular expressions: compile the pattern once, rather than once per item
+      if (candidates == null) { candidates = allPositions(); }
+      result = new int[candidates.length];
+      try {
+        Matcher m = Pattern.compile(part, (_ignoreCase) ? (Pattern.CASE_INSENSITIVE) : (0)).matcher("");
+        for (int i: candidates) {
+          if (m.reset(_items.get(i).toString()).matches()) { result[n++] = i; }
+        }
+      }
+      catch (PatternSyntaxException e) { /* nothing matches */ }
+    }
+    return Arrays.copyOf(result, n);
+  }
+  
+  /** @return the positions of all items */
+  private int[] allPositions() {
+    int[] result = new int[_items.size()];
+    for (int i = 0; i < result.length; ++i) { result[i] = i; }
+    return result;
+  }
+  
   /** Update the list of matching strings and current index.
-    * @param items list of items to base the matching on
+    * @param narrow true if only the current matches need to be tested
     */
-  private void updateMatchingStrings(ArrayList<T> items) {
-    items = new ArrayList<T>(items); // create a new copy, otherwise we might be clearing the list in the next line
-    _matchingItems.clear();
-    for(T s: items) {
-      if (_strategy.isMatch(s, this)) _matchingItems.add(s);
+  private void updateMatchingStrings(boolean narrow) {
+    ArrayList<T> items = _items;
+    int[] matches;
+    if (isBuiltIn(_strategy)) {
+      matches = findBuiltInMatches((narrow) ? (_matchingPositions) : (null));
     }
-    if (_items.size() > 0) {
-      for(int i = 0; i < _items.size(); ++i) {
-        if (_strategy.isPerfectMatch(_items.get(i), this)) {
-          _index = i;
-          break;
+    else {
+      int[] candidates = (narrow) ? (_matchingPositions) : (allPositions());
+      matches = new int[candidates.length];
+      int n = 0;
+      for (int i: candidates) {
+        if (_strategy.isMatch(items.get(i), this)) { matches[n++] = i; }
+      }
+      matches = Arrays.copyOf(matches, n);
+    }
+    _matchingItems.clear();
+    _matchingItems.ensureCapacity(matches.length);
+    for (int i: matches) { _matchingItems.add(items.get(i)); }
+    _matchingPositions = matches;
+    _matchingKeys = null;
+    _rankedItems = null;
+    _matchedMask = _mask;
+    _matchedStrategy = _strategy;
+    
+    if (items.size() > 0) {
+      if (_index >= items.size()) { _index = 0; }
+      if (isBuiltIn(_strategy)) {
+        // a perfect match is one whose key equals the mask; for all but regular expressions, it is also a match
+        String b = (_ignoreCase) ? (maskPart().toLowerCase()) : (maskPart());
+        boolean regEx = (_strategy.getClass() == RegExStrategy.class) ||
+          (_strategy.getClass() == RegExLineNumStrategy.class);
+        int[] candidates = (regEx) ? (allPositions()) : (matches);
+        for (int i: candidates) {
+          if (_keys[i].equals(b)) {
+            _index = i;
+            break;
+          }
+        }
+      }
+      else {
+        for(int i = 0; i < items.size(); ++i) {
+          if (_strategy.isPerfectMatch(items.get(i), this)) {
+            _index = i;
+            break;
+          }
         }
       }
-      setCurrentItem(_items.get(_index));
+      setCurrentItem(items.get(_index));
     }
     else _index = 0;
   }
@@ -698,23 +867,52 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
       return;
     }
     boolean found = false;
-    int index = indexOf(_items, item);
-    if (index < 0) {
-      // not in list of items, pick first item
-      pickClosestMatch(item);
+    if (isBuiltIn(_strategy)) {
+      // equivalence is equality of keys, so use the precomputed keys and a set of the matching keys
+      String s = item.toString();
+      String key = equivalenceKey((_ignoreCase) ? (s.toLowerCase()) : (s));
+      int index = -1;
+      for (int i = 0; i < _keys.length; ++i) {
+        if (equivalenceKey(_keys[i]).equals(key)) { index = i; break; }
+      }
+      if (index >= 0) {
+        HashSet<String> matchingKeys = matchingKeys();
+        for (int i = index; i < _keys.length; ++i) {
+          if (matchingKeys.contains(equivalenceKey(_keys[i]))) {
+            _index = i;
+            found = true;
+            break;
+          }
+        }
+      }
     }
     else {
-      for (int i=index; i < _items.size(); ++i) {
-        if (0 <= indexOf(_matchingItems, _items.get(i))) {
-          _index = i;
-          found = true;
-          break;
+      int index = indexOf(_items, item);
+      if (index >= 0) {
+        for (int i=index; i < _items.size(); ++i) {
+          if (0 <= indexOf(_matchingItems, _items.get(i))) {
+            _index = i;
+            found = true;
+            break;
+          }
         }
       }
-      if (!found) {
-        pickClosestMatch(item);
-      }
     }
+    if (!found) {
+      // not in list of items, or no matching item follows it: pick the closest match
+      pickClosestMatch(item);
+    }
+  }
+  
+  /** @return the equivalence keys of the matching items */
+  private HashSet<String> matchingKeys() {
+    HashSet<String> result = _matchingKeys;
+    if (result == null) {
+      result = new HashSet<String>(_matchingPositions.length * 4 / 3 + 1);
+      for (int i: _matchingPositions) { result.add(equivalenceKey(_keys[i])); }
+      _matchingKeys = result;
+    }
+    return result;
   }
 
   /** Select as current item the item in the list of current matches that lexicographically precedes it most closely.
@@ -743,6 +941,65 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
   public List<T> getMatchingItems() {
     return new ArrayList<T>(_matchingItems);
   }
+  
+  /** Get matching items ordered by how well they match: first perfect matches, then items that start with
+    * the mask (or, for fragments, with the first fragment), then items in which it occurs at the start of a word
+    * (including a capitalized word in a camel-case name), then the rest.  Within each group, shorter items come
+    * first; ties keep the sorted order.
+    * Regular expression matches are only ordered by perfect match.
+    * @return list of matching items, best first
+    */
+  public List<T> getRankedMatchingItems() {
+    List<T> result = _rankedItems;
+    if (result == null) {
+      int[] positions = _matchingPositions;
+      if (_mask.length() == 0 || !isBuiltIn(_strategy)) {
+        result = new ArrayList<T>(_matchingItems);
+      }
+      else {
+        String b = (_ignoreCase) ? (maskPart().toLowerCase()) : (maskPart());
+        java.util.StringTokenizer tok = new java.util.StringTokenizer(b);
+        String first = (tok.hasMoreTokens()) ? (tok.nextToken()) : ("");
+        Class<?> c = _strategy.getClass();
+        boolean regEx = (c == RegExStrategy.class) || (c == RegExLineNumStrategy.class);
+        long[] ranks = new long[positions.length];
+        for (int k = 0; k < positions.length; ++k) {
+          int i = positions[k];
+          String key = _keys[i];
+          long score;
+          if (key.equals(b)) { score = 0; }
+          else if (regEx) { score = 1; }
+          else if (key.startsWith(first)) { score = 1; }
+          else if (startsWord(key, _items.get(i).toString(), first)) { score = 2; }
+          else { score = 3; }
+          // pack score, length and position so that a primitive sort orders by all three
+          long length = Math.min(key.length(), 0xFFFFFF);
+          ranks[k] = (score << 56) | (length << 32) | i;
+        }
+        Arrays.sort(ranks);
+        ArrayList<T> ranked = new ArrayList<T>(ranks.length);
+        for (long r: ranks) { ranked.add(_items.get((int) (r & 0xFFFFFFFFL))); }
+        result = ranked;
+      }
+      _rankedItems = result;
+    }
+    return new ArrayList<T>(result);
+  }
+  
+  /** @return true if s occurs in key at the start of a word, i.e. at an upper case letter of the item's string
+    *         (which is the key before case is ignored) or after a character that is not a letter or digit.
+    *         Upper case letters are only consulted if ignoring case did not change the length of the string (as it
+    *         does for some letters, e.g. '\u0130'), since otherwise positions in key and item do not correspond. */
+  private static boolean startsWord(String key, String item, String s) {
+    boolean aligned = (key.length() == item.length());
+    for (int pos = key.indexOf(s); pos >= 0; pos = key.indexOf(s, pos + 1)) {
+      if (pos == 0 || (aligned && Character.isUpperCase(item.charAt(pos))) ||
+          !Character.isLetterOrDigit(key.charAt(pos - 1))) {
+        return true;
+      }
+    }
+    return false;
+  }
 
   /** Returns the shared mask extension.
    * The shared mask extension is the string that can be added to the mask such that the list of
@@ -759,7 +1016,7 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
    */
   public void extendMask(String extension) {
     _mask = _mask + extension;
-    updateMatchingStrings(_matchingItems);
+    updateMatchingStrings(true);
   }
   
 
@@ -767,6 +1024,6 @@ public class PredictiveInputModel<T extends Comparable<? super T>> {
    */
   public void extendSharedMask() {
     _mask = _strategy.getExtendedSharedMask(_matchingItems, this);
-    updateMatchingStrings(_matchingItems);
+    updateMatchingStrings(true);
   }
 }
@@ -38,7 +38,10 @@ package edu.rice.cs.drjava.ui.predictive;
 
 import edu.rice.cs.drjava.DrJavaTestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /** * Unit tests for PredictiveInputModel class.
@@ -1093,6 +1096,115 @@ public class PredictiveInputModelTest extends DrJavaTestCase {
     assertTrue(pim.getMatchingItems().contains("JFrame"));
   }
 
+  public void testRankedMatchingItems() {
+    PredictiveInputModel<String> pim = new PredictiveInputModel<String>(true,
+                                                                        new PredictiveInputModel.FragmentStrategy<String>(),
+                                                                        "AbstractFrameTest.java",
+                                                                        "JFrame.java",
+                                                                        "Frame.java",
+                                                                        "MyframeHelper.java",
+                                                                        "FrameworkUtil.java");
+    pim.setMask("frame");
+    assertEquals(Arrays.asList("AbstractFrameTest.java", "Frame.java", "FrameworkUtil.java", "JFrame.java",
+                               "MyframeHelper.java"), pim.getMatchingItems());
+    // prefix matches first, shortest first; then the rest
+    assertEquals(Arrays.asList("Frame.java", "FrameworkUtil.java", "JFrame.java", "AbstractFrameTest.java",
+                               "MyframeHelper.java"), pim.getRankedMatchingItems());
+    pim.setMask("frame.java");
+    assertEquals(Arrays.asList("Frame.java", "JFrame.java"), pim.getRankedMatchingItems());
+    assertEquals("Frame.java", pim.getCurrentItem());
+  }
+
+  /** Ranking must not index past the end of an item whose lower case form is longer than the item itself. */
+  public void testRankedMatchingItemsWithLongerLowerCase() {
+    PredictiveInputModel<String> pim = new PredictiveInputModel<String>(true,
+                                                                        new PredictiveInputModel.FragmentStrategy<String>(),
+                                                                        "\u0130\u0130\u0130\u0130xab",
+                                                                        "x_ab",
+                                                                        "xab");
+    pim.setMask("ab");
+    assertEquals(Arrays.asList("x_ab", "xab", "\u0130\u0130\u0130\u0130xab"), pim.getRankedMatchingItems());
+  }
+
+  public void testIndexedMatchingAgreesWithStrategy() {
+    List<String> items = corpus(2000, new Random(42));
+    List<PredictiveInputModel.MatchingStrategy<String>> indexed =
+      new ArrayList<PredictiveInputModel.MatchingStrategy<String>>();
+    List<PredictiveInputModel.MatchingStrategy<String>> linear =
+      new ArrayList<PredictiveInputModel.MatchingStrategy<String>>();
+    // subclasses of the built-in strategies are matched item by item through the MatchingStrategy interface
+    indexed.add(new PredictiveInputModel.PrefixStrategy<String>());
+    linear.add(new PredictiveInputModel.PrefixStrategy<String>() { });
+    indexed.add(new PredictiveInputModel.FragmentStrategy<String>());
+    linear.add(new PredictiveInputModel.FragmentStrategy<String>() { });
+    indexed.add(new PredictiveInputModel.FragmentLineNumStrategy<String>());
+    linear.add(new PredictiveInputModel.FragmentLineNumStrategy<String>() { });
+    indexed.add(new PredictiveInputModel.RegExStrategy<String>());
+    linear.add(new PredictiveInputModel.RegExStrategy<String>() { });
+    String[] masks = { "", "c", "co", "com", "comp", "compi", "compiler", "compiler t", "comp te", "comp:12",
+      "utilmod", "Ab", "x y z", "Model.java", "A.*Test.*" };
+    for (boolean ignoreCase: new boolean[] { true, false }) {
+      for (int k = 0; k < indexed.size(); ++k) {
+        PredictiveInputModel<String> fast = new PredictiveInputModel<String>(ignoreCase, indexed.get(k), items);
+        PredictiveInputModel<String> slow = new PredictiveInputModel<String>(ignoreCase, linear.get(k), items);
+        for (String mask: masks) {
+          fast.setMask(mask);
+          slow.setMask(mask);
+          assertEquals(mask, slow.getMatchingItems(), fast.getMatchingItems());
+          assertEquals(mask, slow.getCurrentItem(), fast.getCurrentItem());
+          assertEquals(mask, slow.getMatchingItems().size(), fast.getRankedMatchingItems().size());
+        }
+      }
+    }
+  }
+
+  /** @return n random class file names made up of common words */
+  private static List<String> corpus(int n, Random r) {
+    String[] words = { "Abstract", "Compiler", "Model", "Util", "Test", "Frame", "Document", "Reduced", "Interactions",
+      "Config", "Option", "Debug", "Listener", "Event", "Helper", "Impl", "Factory", "Manager", "Region", "Java" };
+    List<String> result = new ArrayList<String>(n);
+    for (int i = 0; i < n; ++i) {
+      StringBuilder sb = new StringBuilder();
+      int count = 1 + r.nextInt(4);
+      for (int j = 0; j < count; ++j) { sb.append(words[r.nextInt(words.length)]); }
+      sb.append(i % 97).append(".java");
+      result.add(sb.toString());
+    }
+    return result;
+  }
+
+  /** Compare the time needed to type a mask one character at a time into a model of 500,000 items with the
+    * time needed to filter the items through the strategy, one item at a time, for each of the masks. */
+  public static void main(String[] args) {
+    List<String> items = corpus(500000, new Random(1));
+    String[] typed = { "compilermodeltest", "frame doc", "utilimp" };
+    for (int run = 0; run < 3; ++run) {
+      for (String text: typed) {
+        PredictiveInputModel.MatchingStrategy<String> strategy = (text.indexOf(' ') >= 0)
+          ? new PredictiveInputModel.FragmentStrategy<String>() : new PredictiveInputModel.PrefixStrategy<String>();
+        PredictiveInputModel<String> pim = new PredictiveInputModel<String>(true, strategy, items);
+        long start = System.currentTimeMillis();
+        for (int i = 1; i <= text.length(); ++i) {
+          pim.setMask(text.substring(0, i));
+          pim.getRankedMatchingItems();
+        }
+        long indexed = System.currentTimeMillis() - start;
+        // the model only provides the mask to the strategy here; only the filtering is timed
+        long linear = 0;
+        int count = 0;
+        for (int i = 1; i <= text.length(); ++i) {
+          pim.setMask(text.substring(0, i));
+          start = System.currentTimeMillis();
+          count = 0;
+          for (String item: items) { if (strategy.isMatch(item, pim)) { ++count; } }
+          linear += System.currentTimeMillis() - start;
+        }
+        System.out.println("'" + text + "' (" + count + " matches): indexed " + indexed + "ms, linear " +
+                           linear + "ms");
+      }
+    }
+  }
+
   // What about Java 6, 7, 8?
   public void testJavaAPIFragmentLineNumStrategy() {
     final String base = edu.rice.cs.drjava.DrJava.
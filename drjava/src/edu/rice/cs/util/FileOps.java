@@ -39,6 +39,14 @@ package edu.rice.cs.util;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.*;
 import java.util.jar.*;
 
@@ -408,34 +416,62 @@ public abstract class FileOps {
     return out.toByteArray();
   }
   
+  /** Files at least this long are memory-mapped rather than read into a heap buffer.  On some platforms a mapped file
+    * cannot be renamed or deleted until the mapping is garbage-collected, so the threshold is well above the size of 
+    * typical source files. */
+  static final long MAP_THRESHOLD = 1 << 22;
+  
+  /** Size of the character and byte buffers used when encoding text. */
+  private static final int BUFFER_SIZE = 1 << 13;
+  
   /** Reads the entire contents of a file and return them as canonicalized 
    * Swing Document text. All newLine sequences, including "\n", "\r", and 
    * "\r\n" are converted to "\n". Characters below 32, except for newlines, 
-   * are changed to spaces. 
+   * are changed to spaces.  The file is decoded using the platform's default charset.
    * @param file the file to read
    * @return contents of the file as canonicalized Swing Document text
    * @throws IOException if an IO operation fails
    */
   public static String readFileAsSwingText(final File file) throws IOException {
-    FileReader reader = null;
-    try {
-      reader = new FileReader(file);
-      final StringBuilder buf = new StringBuilder();
-      
-      char pred = (char) 0; // initialize as null character
-      while (reader.ready()) {
-        char c = (char) reader.read();
-        
-        if (c == '\n' && pred == '\r') { } // do nothing ignoring second character of "\r\n";
-        else if (c == '\r') buf.append('\n');
-        else if ((c < 32) && (c != '\n')) buf.append(' ');
-        else buf.append(c);
-        
-        pred = c;
+    return readFileAsSwingText(file, Charset.defaultCharset());
+  }
+  
+  /** Reads the entire contents of a file and return them as canonicalized Swing Document text, as in
+   * {@link #readFileAsSwingText(File)}.
+   * @param file the file to read
+   * @param charset the encoding of the file
+   * @return contents of the file as canonicalized Swing Document text
+   * @throws IOException if an IO operation fails
+   */
+  public static String readFileAsSwingText(final File file, final Charset charset) throws IOException {
+    CharBuffer text = _decode(file, charset);
+    char[] chars = text.array();
+    int start = text.arrayOffset() + text.position();
+    int end = text.arrayOffset() + text.limit();
+    return new String(chars, start, normalizeSwingText(chars, start, end) - start);
+  }
+  
+  /** Canonicalizes the text in chars[start, end) in place as in {@link #readFileAsSwingText(File)}.  The text is 
+   * scanned for the first character that needs to change and only the remainder is rewritten.
+   * @param chars the text
+   * @param start the start of the text in chars
+   * @param end the end of the text in chars
+   * @return the end of the canonicalized text, which is no greater than end
+   */
+  static int normalizeSwingText(final char[] chars, final int start, final int end) {
+    int r = start;
+    while (r < end && (chars[r] >= 32 || chars[r] == '\n')) r++;
+    int w = r;
+    while (r < end) {
+      char c = chars[r++];
+      if (c >= 32 || c == '\n') chars[w++] = c;
+      else if (c == '\r') {
+        chars[w++] = '\n';
+        if (r < end && chars[r] == '\n') r++;  // ignore the second character of "\r\n"
       }
-      return buf.toString();
+      else chars[w++] = ' ';
     }
-    finally { if (reader != null) reader.close(); }
+    return w;
   }
   
   /** Reads the entire contents of a file and return them as a String.
@@ -446,18 +482,95 @@ public abstract class FileOps {
    *              instead, which provides the same functionality.
    */
   @Deprecated public static String readFileAsString(final File file) throws IOException {
-    FileReader reader = null;
+    return _decode(file, Charset.defaultCharset()).toString();
+  }
+  
+  /** Decodes the contents of a file in one step, replacing malformed input as a FileReader does.  Large files are 
+   * memory-mapped; others are read into a single buffer.
+   * @param file the file to read
+   * @param charset the encoding of the file
+   * @return a buffer, backed by an array, holding the decoded contents
+   * @throws IOException if an IO operation fails
+   */
+  private static CharBuffer _decode(final File file, final Charset charset) throws IOException {
+    FileInputStream stream = new FileInputStream(file);
     try {
-      reader = new FileReader(file);
-      final StringBuilder buf = new StringBuilder();
-      
-      while (reader.ready()) {
-        char c = (char) reader.read();
-        buf.append(c);
+      FileChannel channel = stream.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) throw new IOException("File " + file + " is too large to read");
+      ByteBuffer bytes;
+      if (size >= MAP_THRESHOLD) bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      else {
+        bytes = ByteBuffer.allocate((int) size);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) { }
+        bytes.flip();
       }
-      return buf.toString();
+      CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      return decoder.decode(bytes);
     }
-    finally { if (reader != null) reader.close(); }
+    finally { stream.close(); }
+  }
+  
+  /** Writes Swing Document text to a stream, replacing each "\n" with the given line separator.  The text is encoded 
+   * in fixed-size chunks, replacing unmappable characters as an OutputStreamWriter does.  The stream is not closed.
+   * @param os the stream to write to
+   * @param text the text to write
+   * @param eol the line separator to write in place of "\n"
+   * @param charset the encoding to write
+   * @throws IOException if an IO operation fails
+   */
+  public static void writeSwingText(final OutputStream os, final CharSequence text, final String eol, 
+                                    final Charset charset) throws IOException {
+    CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    String string = text.toString();
+    int len = string.length();
+    int eolLength = eol.length();
+    int newline = eol.equals("\n") ? len : _indexOfNewline(string, 0);  // the next "\n" to be replaced
+    CharBuffer in = CharBuffer.allocate(BUFFER_SIZE);
+    char[] chars = in.array();
+    ByteBuffer out = ByteBuffer.allocate((int) Math.ceil(BUFFER_SIZE * encoder.maxBytesPerChar()));
+    int i = 0;
+    boolean endOfInput;
+    do {
+      int pos = in.position();
+      while (i < len && pos < BUFFER_SIZE) {
+        if (i == newline) {
+          if (BUFFER_SIZE - pos < eolLength) break;
+          eol.getChars(0, eolLength, chars, pos);
+          pos += eolLength;
+          newline = _indexOfNewline(string, ++i);
+        }
+        else {  // copy the characters up to the next newline (or as many as fit)
+          int n = Math.min(newline - i, BUFFER_SIZE - pos);
+          string.getChars(i, i + n, chars, pos);
+          pos += n;
+          i += n;
+        }
+      }
+      in.position(pos);
+      in.flip();
+      endOfInput = (i == len);
+      CoderResult result;
+      while ((result = encoder.encode(in, out, endOfInput)).isOverflow()) _drain(out, os);
+      if (result.isError()) result.throwException();
+      in.compact();  // keeps any unmatched surrogate for the next chunk
+    } while (! endOfInput);
+    while (encoder.flush(out).isOverflow()) _drain(out, os);
+    _drain(out, os);
+  }
+  
+  /** @return the index of the first "\n" in s at or after start, or the length of s if there is none */
+  private static int _indexOfNewline(String s, int start) {
+    int index = s.indexOf('\n', start);
+    return (index < 0) ? s.length() : index;
+  }
+  
+  /** Writes the contents of buffer to os and clears buffer. */
+  private static void _drain(ByteBuffer buffer, OutputStream os) throws IOException {
+    os.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+    buffer.clear();
   }
     
   /** Copies the text of one file into another.
@@ -507,12 +620,9 @@ public abstract class FileOps {
    * @deprecated  Use the equivalent {@link edu.rice.cs.plt.io.IOUtil#writeStringToFile(File, String, boolean)} instead
    */
   @Deprecated public static void writeStringToFile(File file, String text, boolean append) throws IOException {
-    FileWriter writer = null;
-    try {
-      writer = new FileWriter(file, append);
-      writer.write(text);
-    }
-    finally { if (writer != null) writer.close(); }
+    FileOutputStream stream = new FileOutputStream(file, append);
+    try { writeSwingText(stream, text, "\n", Charset.defaultCharset()); }
+    finally { stream.close(); }
   }
   
   /** Writes text to the given file returning true if it succeeded and false if 
@@ -37,6 +37,7 @@
 package edu.rice.cs.util;
 
 import java.io.*;
+import java.nio.charset.Charset;
 
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -47,6 +48,10 @@ import edu.rice.cs.drjava.DrJavaTestCase;
 import edu.rice.cs.plt.concurrent.JVMBuilder;
 import edu.rice.cs.util.FileOps;
 
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.PlainDocument;
+
 /** Test cases for {@link FileOps}.
   * @version $Id$
   */
@@ -82,6 +87,65 @@ public class FileOpsTest extends DrJavaTestCase {
     }
   }
   
+  /** @return a new temp file holding the given bytes */
+  private static File _tempFile(byte[] bytes) throws IOException {
+    File file = File.createTempFile(PREFIX, SUFFIX);
+    file.deleteOnExit();
+    OutputStream os = new FileOutputStream(file);
+    try { os.write(bytes); }
+    finally { os.close(); }
+    return file;
+  }
+  
+  public void testReadFileAsSwingText() throws IOException {
+    Charset utf8 = Charset.forName("UTF-8");
+    Charset latin1 = Charset.forName("ISO-8859-1");
+    File file = _tempFile("a\r\nb\rc\n\r\r\nd\te\u0000\r".getBytes(latin1));
+    assertEquals("newlines and control characters", "a\nb\nc\n\n\nd e \n", FileOps.readFileAsSwingText(file));
+    assertTrue("delete file", file.delete());
+    
+    file = _tempFile("x\u00e9\u20ac\ud83d\ude00\r\n".getBytes(utf8));
+    assertEquals("UTF-8", "x\u00e9\u20ac\ud83d\ude00\n", FileOps.readFileAsSwingText(file, utf8));
+    assertEquals("ISO-8859-1", new String("x\u00e9\u20ac\ud83d\ude00\n".getBytes(utf8), latin1), 
+                 FileOps.readFileAsSwingText(file, latin1));
+    assertTrue("delete file", file.delete());
+    
+    file = _tempFile(new byte[] { 'a', (byte) 0xff, 'b' });
+    assertEquals("malformed input", "a\ufffdb", FileOps.readFileAsSwingText(file, utf8));
+    assertTrue("delete file", file.delete());
+    
+    file = _tempFile(new byte[0]);
+    assertEquals("empty file", "", FileOps.readFileAsSwingText(file));
+    assertTrue("delete file", file.delete());
+    
+    // a file large enough to be memory-mapped
+    StringBuilder text = new StringBuilder();
+    while (text.length() <= FileOps.MAP_THRESHOLD) text.append("line\t").append(text.length()).append("\r\n");
+    file = _tempFile(text.toString().getBytes(latin1));
+    assertEquals("mapped file", text.toString().replace("\r\n", "\n").replace('\t', ' '), 
+                 FileOps.readFileAsSwingText(file, latin1));
+    assertEquals("mapped file as string", text.toString(), FileOps.readFileAsString(file));
+    assertTrue("delete file", file.delete());
+  }
+  
+  public void testWriteSwingText() throws IOException {
+    Charset utf8 = Charset.forName("UTF-8");
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FileOps.writeSwingText(os, "a\nb\n\n", "\r\n", utf8);
+    assertEquals("CRLF", "a\r\nb\r\n\r\n", os.toString("UTF-8"));
+    
+    os = new ByteArrayOutputStream();
+    FileOps.writeSwingText(os, "a\nb\u20ac", "\n", Charset.forName("ISO-8859-1"));
+    assertEquals("unmappable character", "a\nb?", os.toString("ISO-8859-1"));
+    
+    // longer than the encoding buffers, with surrogate pairs and separators straddling their boundaries
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) text.append(i % 7 == 0 ? "\n" : "\ud83d\ude00").append((char) ('a' + i % 26));
+    os = new ByteArrayOutputStream();
+    FileOps.writeSwingText(os, text, "\r\n", utf8);
+    assertEquals("long text", text.toString().replace("\n", "\r\n"), os.toString("UTF-8"));
+  }
+  
   public void testRecursiveDirectoryDelete() throws IOException {
     final File baseDir = FileOps.createTempDirectory(PREFIX);
     
@@ -562,4 +626,77 @@ public class FileOpsTest extends DrJavaTestCase {
     
     FileOps.deleteDirectory(dir1);
   }
+  
+  /** Compares the throughput of readFileAsSwingText and writeSwingText with that of the character-at-a-time reader and
+    * the editor kit writer they replaced. */
+  public static class Benchmark {
+    
+    /** @param args the number of megabytes of text to read and write (8 by default) */
+    public static void main(String[] args) throws IOException, BadLocationException {
+      int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+      StringBuilder text = new StringBuilder();
+      int line = 0;
+      while (text.length() < megabytes << 20) {
+        text.append("    /* line ").append(line++).append(" */ int x").append(line % 97).append(" = foo(\"bar\");\r\n");
+      }
+      File file = File.createTempFile("benchmark", ".java");
+      file.deleteOnExit();
+      FileOps.writeStringToFile(file, text.toString());
+      double mb = file.length() / (double) (1 << 20);
+      System.out.println(String.format("%.1f MB", mb));
+      
+      PlainDocument doc = new PlainDocument();
+      doc.insertString(0, FileOps.readFileAsSwingText(file), null);
+      doc.putProperty(DefaultEditorKit.EndOfLineStringProperty, "\r\n");
+      String swingText = doc.getText(0, doc.getLength());
+      
+      for (int round = 0; round < 5; ++round) {
+        System.gc();
+        long start = System.nanoTime();
+        String read = _readCharByChar(file);
+        double oldRead = mb / ((System.nanoTime() - start) / 1e9);
+        start = System.nanoTime();
+        boolean same = read.equals(FileOps.readFileAsSwingText(file));
+        double newRead = mb / ((System.nanoTime() - start) / 1e9);
+        
+        read = null;
+        System.gc();
+        start = System.nanoTime();
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        new DefaultEditorKit().write(os, doc, 0, doc.getLength());
+        os.close();
+        double oldWrite = mb / ((System.nanoTime() - start) / 1e9);
+        System.gc();
+        start = System.nanoTime();
+        os = new BufferedOutputStream(new FileOutputStream(file));
+        FileOps.writeSwingText(os, swingText, "\r\n", Charset.defaultCharset());
+        os.close();
+        double newWrite = mb / ((System.nanoTime() - start) / 1e9);
+        
+        System.out.println(String.format("  read: %.1f MB/s before, %.1f MB/s after (%s); " +
+                                          "write: %.1f MB/s before, %.1f MB/s after",
+                                          oldRead, newRead, same ? "same text" : "DIFFERENT TEXT", oldWrite, newWrite));
+      }
+      file.delete();
+    }
+    
+    /** The implementation of readFileAsSwingText before it used NIO. */
+    private static String _readCharByChar(File file) throws IOException {
+      FileReader reader = new FileReader(file);
+      try {
+        final StringBuilder buf = new StringBuilder();
+        char pred = (char) 0;
+        while (reader.ready()) {
+          char c = (char) reader.read();
+          if (c == '\n' && pred == '\r') { }
+          else if (c == '\r') buf.append('\n');
+          else if ((c < 32) && (c != '\n')) buf.append(' ');
+          else buf.append(c);
+          pred = c;
+        }
+        return buf.toString();
+      }
+      finally { reader.close(); }
+    }
+  }
 }
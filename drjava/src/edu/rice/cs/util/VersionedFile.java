@@ -0,0 +1,115 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/** A text file holding one saved object, such as a cache kept in the build directory.  The first line of the file is a
+  * header naming the format and its version; a file with any other first line is ignored, so changing the header is
+  * enough to invalidate files written in an old format.  Subclasses write and read the lines after the header.
+  * @param <T> the type of the saved object
+  * @version $Id$
+  */
+public abstract class VersionedFile<T> {
+  
+  private final String _fileName;
+  private final String _header;
+  private final Log _log;
+  
+  /** @param fileName the name of the file within the directory passed to save and load
+    * @param header the first line of the file, e.g. "# DrJava test durations 1"
+    * @param log the log receiving the reasons a file could not be loaded
+    */
+  protected VersionedFile(String fileName, String header, Log log) {
+    _fileName = fileName;
+    _header = header;
+    _log = log;
+  }
+  
+  /** @return the name of the file within the directory passed to save and load */
+  public String getFileName() { return _fileName; }
+  
+  /** Writes the contents of value, following the header.
+    * @param value the object to save
+    * @param w the writer; closed by the caller
+    * @throws IOException if writing fails
+    */
+  protected abstract void write(T value, BufferedWriter w) throws IOException;
+  
+  /** Reads the contents following the header.  A RuntimeException (such as a NumberFormatException) counts as a
+    * malformed file.
+    * @param r the reader, positioned after the header; closed by the caller
+    * @return the object read, or null if the contents are malformed or do not apply
+    * @throws IOException if reading fails
+    */
+  protected abstract T read(BufferedReader r) throws IOException;
+  
+  /** Writes value to the file in dir, replacing the old contents.
+    * @param value the object to save
+    * @param dir the directory to write to
+    * @throws IOException if the file cannot be written
+    */
+  public void save(T value, File dir) throws IOException {
+    BufferedWriter w = new BufferedWriter(new FileWriter(new File(dir, _fileName)));
+    try {
+      w.write(_header); w.newLine();
+      write(value, w);
+    }
+    finally { w.close(); }
+  }
+  
+  /** Reads the object saved in dir.
+    * @param dir the directory to read from
+    * @return the saved object, or null if there is no file, it has a different header, or it cannot be read
+    */
+  public T load(File dir) {
+    File f = new File(dir, _fileName);
+    if (! f.isFile()) return null;
+    try {
+      BufferedReader r = new BufferedReader(new FileReader(f));
+      try { return _header.equals(r.readLine()) ? read(r) : null; }
+      finally { r.close(); }
+    }
+    catch(IOException e) { _log.log("could not load " + f + ": " + e); return null; }
+    catch(RuntimeException e) { _log.log("malformed " + f + ": " + e); return null; }  // NumberFormatException etc.
+  }
+}
@@ -0,0 +1,79 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * Copyright (c) 2001-2016, JavaPLT group at Rice University (drjava@rice.edu)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the names of DrJava, the JavaPLT group, Rice University, nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This software is Open Source Initiative approved Open Source Software.
+ * Open Source Initative Approved is a trademark of the Open Source Initiative.
+ * 
+ * This file is part of DrJava.  Download the current version of this project
+ * from http://www.drjava.org/ or http://sourceforge.net/projects/drjava/
+ * 
+ * END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+
+import edu.rice.cs.drjava.DrJavaTestCase;
+import edu.rice.cs.plt.io.IOUtil;
+
+/** Tests saving and loading a VersionedFile.
+  * @version $Id$
+  */
+public class VersionedFileTest extends DrJavaTestCase {
+  
+  /** Saves a number as a single line. */
+  private static class NumberFile extends VersionedFile<Integer> {
+    public NumberFile(String header) { super("number", header, new Log("VersionedFileTest.txt", false)); }
+    protected void write(Integer value, BufferedWriter w) throws IOException { w.write(value.toString()); w.newLine(); }
+    protected Integer read(BufferedReader r) throws IOException {
+      String line = r.readLine();
+      return (line == null) ? null : Integer.valueOf(line);
+    }
+  }
+  
+  public void testSaveLoad() throws Exception {
+    NumberFile v1 = new NumberFile("# number 1");
+    File dir = IOUtil.createAndMarkTempDirectory("DrJava-test-" + System.getProperty("user.name"), "");
+    try {
+      assertNull("no file", v1.load(dir));
+      v1.save(42, dir);
+      assertEquals("# number 1\n42\n", IOUtil.toString(new File(dir, "number")));
+      assertEquals(Integer.valueOf(42), v1.load(dir));
+      assertNull("other version", new NumberFile("# number 2").load(dir));
+      
+      IOUtil.writeStringToFile(new File(dir, "number"), "# number 1\n");
+      assertNull("read returned null", v1.load(dir));
+      IOUtil.writeStringToFile(new File(dir, "number"), "# number 1\nforty-two\n");
+      assertNull("read threw NumberFormatException", v1.load(dir));
+    }
+    finally { IOUtil.deleteRecursively(dir); }
+  }
+}
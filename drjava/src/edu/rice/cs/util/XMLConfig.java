@@ -42,6 +42,10 @@ import org.xml.sax.InputSource;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -65,6 +69,13 @@ import java.util.*;
   *
   * When using getMultiple, any node or attribute name can be substituted with "*" to get all elements:
   * The path "foo/*" returns both the value "abc" and "def".
+  *
+  * Documents are read with a streaming (StAX) parser, which also builds an index from the paths of the elements to
+  * the elements.  Paths without "*" that start at the document or at an element whose path is unique are looked up
+  * in the index instead of walking the document.  The serialized form of the document is kept until the document is
+  * changed, so saving an unchanged configuration again does not serialize it again.  Both the index and the
+  * serialized form are discarded by the methods of this class that change the document; the document must not be
+  * changed through the nodes returned by {@link #getNodes}.
   * @author Mathias Ricken
   */
 public class XMLConfig {
@@ -80,6 +91,16 @@ public class XMLConfig {
   /** Node where this XMLConfig starts if delegation is used, or null. */
   private Node _startNode = null;
   
+  /** Index from the paths of the elements in the document (e.g. "foo/bar") to the elements with that path, in
+    * document order, or null if the document was not read from a source or has changed since. */
+  private Map<String, List<Node>> _index = null;
+  
+  /** The paths of the elements that are the only elements with their path, or null if _index is null. */
+  private Map<Node, String> _uniquePaths = null;
+  
+  /** The document serialized in UTF-8, or null if it has not been serialized since it last changed. */
+  private byte[] _serialized = null;
+  
   /** Creates an empty configuration.
    */
   public XMLConfig() {
@@ -119,21 +140,88 @@ public class XMLConfig {
     _document = null;
   }
   
-  /** Initialize this XML configuration.
+  /** Initialize this XML configuration.  The document is built from the events of a streaming parser, which builds
+   * the same tree as a (non-validating, namespace-unaware) DocumentBuilder and indexes the elements as they are read.
    * @param is the XML input source
    */
   private void init(InputSource is) {
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder builder = null;
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+    XMLStreamReader reader = null;
     try {
-      builder = factory.newDocumentBuilder();
-      _document = builder.parse(is);
-      // NOTE: not 1.4 compatible -- _document.setXmlStandalone(true);
+      _document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      _index = new HashMap<String, List<Node>>();
+      if (is.getCharacterStream() != null) { reader = factory.createXMLStreamReader(is.getCharacterStream()); }
+      else { reader = factory.createXMLStreamReader(is.getByteStream()); }
+      if (reader.standaloneSet()) { _document.setXmlStandalone(reader.isStandalone()); }
+      
+      Node parent = _document;
+      ArrayList<String> paths = new ArrayList<String>();  // paths of parent and its ancestors
+      paths.add("");
+      while(reader.hasNext()) {
+        switch(reader.next()) {
+          case XMLStreamConstants.START_ELEMENT: {
+            Element e = _document.createElement(reader.getLocalName());
+            for(int i = 0; i < reader.getAttributeCount(); ++i) {
+              String prefix = reader.getAttributePrefix(i);
+              String name = reader.getAttributeLocalName(i);
+              e.setAttribute((prefix == null || prefix.length() == 0) ? name : prefix + ":" + name,
+                             reader.getAttributeValue(i));
+            }
+            parent.appendChild(e);
+            String parentPath = paths.get(paths.size() - 1);
+            String path = (parentPath.length() == 0) ? e.getNodeName() : parentPath + "/" + e.getNodeName();
+            List<Node> elements = _index.get(path);
+            if (elements == null) { _index.put(path, elements = new ArrayList<Node>()); }
+            elements.add(e);
+            paths.add(path);
+            parent = e;
+            break;
+          }
+          case XMLStreamConstants.END_ELEMENT:
+            paths.remove(paths.size() - 1);
+            parent = parent.getParentNode();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.SPACE:
+          case XMLStreamConstants.ENTITY_REFERENCE:
+            // the document itself cannot contain text
+            if (parent != _document) { parent.appendChild(_document.createTextNode(reader.getText())); }
+            break;
+          case XMLStreamConstants.CDATA:
+            parent.appendChild(_document.createCDATASection(reader.getText()));
+            break;
+          case XMLStreamConstants.COMMENT:
+            parent.appendChild(_document.createComment(reader.getText()));
+            break;
+          case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            parent.appendChild(_document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+            break;
+          default: // DTD, END_DOCUMENT
+        }
+      }
     }
     catch(Exception e) {
       throw new XMLConfigException("Error in ctor", e);
     }
+    finally {
+      try {
+        if (reader != null) reader.close();
+      }
+      catch(XMLStreamException e) { /* ignore exception when closing */ }
+    }
     _document.normalize();
+    _uniquePaths = new IdentityHashMap<Node, String>();
+    for(Map.Entry<String, List<Node>> entry: _index.entrySet()) {
+      if (entry.getValue().size() == 1) { _uniquePaths.put(entry.getValue().get(0), entry.getKey()); }
+    }
+  }
+  
+  /** Discards the index and the serialized form of the document after the document has changed. */
+  private void changed() {
+    _index = null;
+    _uniquePaths = null;
+    _serialized = null;
   }
   
   /** Creates a configuration from a file.
@@ -168,29 +256,40 @@ public class XMLConfig {
   public void save(OutputStream os) {
     if (isDelegated()) { _parent.save(os); return; }
     
+    try {
+      os.write(serialize());
+      os.flush();
+    }
+    catch(IOException e) {
+      throw new XMLConfigException("Error in save", e);
+    }
+  }
+  
+  /** Serializes the document, unless it has not changed since it was last serialized.
+   * @return the document in UTF-8
+   */
+  private byte[] serialize() {
+    if (_serialized != null) { return _serialized; }
+    
     // Prepare the DOM document for writing
     Source source = new DOMSource(_document);
-    /*
-     // Prepare the output file
-     Result result = new StreamResult(os);
-     */
-    // Write the DOM document to the file
+    // Write the DOM document to the buffer
     try {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      Writer w = new OutputStreamWriter(os, "utf-8");
       TransformerFactory tf = TransformerFactory.newInstance();
       tf.setAttribute("indent-number", Integer.valueOf(2));
       Transformer t = tf.newTransformer();
       t.setOutputProperty(OutputKeys.INDENT, "yes");
-      t.transform(source, new StreamResult(new OutputStreamWriter(os, "utf-8")));
-      /*            
-       Transformer xformer = TransformerFactory.newInstance().newTransformer();
-       xformer.setOutputProperty(OutputKeys.INDENT, "yes");
-       xformer.transform(source, result);
-       */
+      t.transform(source, new StreamResult(w));
+      w.flush();
+      _serialized = os.toByteArray();
+      return _serialized;
     }
     catch(TransformerException e) {
       throw new XMLConfigException("Error in save", e);
     }
-    catch(UnsupportedEncodingException e) {
+    catch(IOException e) {
       throw new XMLConfigException("Error in save", e);
     }
   }
@@ -427,7 +526,7 @@ public class XMLConfig {
    */
   public List<String> getMultiple(String path, Node root) {
     List<Node> accum = getNodes(path, root);
-    List<String> strings = new LinkedList<String>();
+    List<String> strings = new ArrayList<String>(accum.size());
     for(Node n: accum) {
       if (n instanceof Attr) {
         strings.add(n.getNodeValue());
@@ -470,8 +569,47 @@ public class XMLConfig {
    * @return list of nodes.
    */
   public List<Node> getNodes(String path, Node root) {
-    List<Node> accum = new LinkedList<Node>();
-    getMultipleHelper(path, root, accum, false);
+    List<Node> accum = getIndexedNodes(path, root);
+    if (accum == null) {
+      accum = new ArrayList<Node>();
+      getMultipleHelper(path, root, accum, false);
+    }
+    return accum;
+  }
+  
+  /** Returns the nodes as specified by the DOM path, looked up in the index.
+   * @param path DOM path
+   * @param root node where the search should start
+   * @return list of nodes, or null if the index cannot be used for this path and root.
+   */
+  private List<Node> getIndexedNodes(String path, Node root) {
+    XMLConfig owner = isDelegated() ? _parent : this;
+    Map<String, List<Node>> index = owner._index;
+    if ((index == null) || (path.length() == 0) || path.endsWith("/") ||
+        (path.indexOf('*') > -1) || (path.indexOf('#') > -1)) { return null; }
+    int dotPos = path.indexOf('.');
+    if ((dotPos == 0) ||
+        ((dotPos > 0) && ((path.indexOf('.', dotPos+1) > -1) || (path.indexOf('/', dotPos+1) > -1)))) {
+      return null;  // relative to the root itself, or an invalid path
+    }
+    
+    String rootPath = (root == owner._document) ? "" : owner._uniquePaths.get(root);
+    if (rootPath == null) { return null; }  // other elements with the same path may have different children
+    
+    String elementPath = (dotPos == -1) ? path : path.substring(0, dotPos);
+    List<Node> elements = index.get((rootPath.length() == 0) ? elementPath : rootPath + "/" + elementPath);
+    List<Node> accum = new ArrayList<Node>();
+    if (elements == null) { return accum; }
+    if (dotPos == -1) {
+      accum.addAll(elements);
+    }
+    else {
+      String attrName = path.substring(dotPos+1);
+      for(Node e: elements) {
+        Node attr = e.getAttributes().getNamedItem(attrName);
+        if (attr != null) { accum.add(attr); }
+      }
+    }
     return accum;
   }
   
@@ -605,6 +743,7 @@ public class XMLConfig {
   public Node set(String path, String value, Node n, boolean overwrite) {
     if (isDelegated()) { return _parent.set(path, value, n, overwrite); }
     
+    changed();
     int dotPos = path.lastIndexOf('.');
     Node node;
     if (dotPos == 0) {
@@ -651,6 +790,7 @@ public class XMLConfig {
   public Node createNode(String path, Node n, boolean overwrite) {
     if (isDelegated()) { return _parent.createNode(path, n, overwrite); }
 
+    changed();
     if (n == null) { n = _document; }
     while(path.indexOf('/') > -1) {
       Node child = null;
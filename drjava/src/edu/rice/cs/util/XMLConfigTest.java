@@ -1161,4 +1161,63 @@ public class XMLConfigTest extends TestCase {
     Assert.assertTrue("Want to get default value", b);
     
   }
+  
+  /** Tests that lookups through the index agree with walking the document, also after the document changed.
+    * @throws Exception if something goes wrong
+    */
+  public void testIndexedLookups() throws Exception {
+    XMLConfig xc = new XMLConfig(new StringReader(
+                                                  "<?xml version=\"1.0\" encoding=\"UTF-8\"?><foo a=\"foo.a\">\n"
+                                                    + "  <!-- comment -->\n"
+                                                    + "  <bar x=\"1\">abc</bar>\n"
+                                                    + "  <bar x=\"2\"><fum>def</fum></bar>\n"
+                                                    + "  <baz><fum>ghi</fum></baz>\n"
+                                                    + "</foo>"));
+    assertEquals(Arrays.asList("1", "2"), xc.getMultiple("foo/bar.x"));
+    assertEquals(Arrays.asList("def"), xc.getMultiple("foo/bar/fum"));
+    assertEquals(0, xc.getMultiple("foo/bar", xc.getNodes("foo").get(0)).size());
+    assertEquals(0, xc.getMultiple("foo/bar/xyz").size());
+    assertEquals(0, xc.getMultiple("foo//bar").size());
+    
+    // relative to an element with a unique path, and to elements without one
+    List<Node> bars = xc.getNodes("foo/bar");
+    Node baz = xc.getNodes("foo/baz").get(0);
+    assertEquals("ghi", xc.get("fum", baz));
+    assertEquals("def", xc.get("fum", bars.get(1)));
+    assertEquals(0, xc.getMultiple("fum", bars.get(0)).size());
+    assertEquals("2", xc.get(".x", bars.get(1)));
+    
+    // a delegated configuration uses the index of its parent
+    XMLConfig delegate = new XMLConfig(xc, xc.getNodes("foo").get(0));
+    assertEquals(Arrays.asList("def"), delegate.getMultiple("bar/fum"));
+    assertEquals("foo.a", delegate.get(".a"));
+    
+    // changes discard the index
+    delegate.set("bar/fum", "jkl", false);
+    xc.set("fum", "mno", baz, false);
+    assertEquals(Arrays.asList("jkl", "def"), xc.getMultiple("foo/bar/fum"));
+    assertEquals(Arrays.asList("jkl", "def"), delegate.getMultiple("bar/fum"));
+    assertEquals(Arrays.asList("ghi", "mno"), xc.getMultiple("foo/baz/fum"));
+  }
+  
+  /** Tests that the serialized document is reused only until the document changes.
+    * @throws Exception if something goes wrong
+    */
+  public void testSaveAfterChange() throws Exception {
+    XMLConfig xc = new XMLConfig(new StringReader(
+                                                  "<?xml version=\"1.0\" encoding=\"UTF-8\"?><foo xmlns:a=\"u\" a:b=\"c\">"
+                                                    + "<bar>abc</bar></foo>"));
+    String first = xc.toString();
+    assertEquals(first, xc.toString());
+    assertTrue(first.contains("<foo xmlns:a=\"u\" a:b=\"c\">"));
+    xc.set("foo/bar", "def");
+    assertEquals(remove16XML("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + NL +
+                             "<foo xmlns:a=\"u\" a:b=\"c\">" + NL +
+                             "  <bar>def</bar>" + NL +
+                             "</foo>" + NL), xc.toString());
+    xc.set("foo.a:b", "d");
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    xc.save(os);
+    assertTrue(os.toString("UTF-8").contains("<foo xmlns:a=\"u\" a:b=\"d\">"));
+  }
 }
@@ -58,6 +58,13 @@ public interface IDocumentNavigator<ItemT extends INavigatorItem> extends IAWTCo
     */
   public void addDocument(ItemT doc, String path);
   
+  /** Adds a batch of {@code INavigatorItem}s into this navigator, as if by addDocument(docs.get(i), paths.get(i)) for 
+    * each i, but without updating the view after each.
+    * @param docs the documents to be added into this navigator.
+    * @param paths the relative path at which to insert each document.
+    */
+  public void addDocuments(List<ItemT> docs, List<String> paths);
+  
   /** @return the currently selected navigator item, or null if no navigator item is selected. */
   public ItemT getCurrent();
   
@@ -136,6 +136,14 @@ class JListNavigator<ItemT extends INavigatorItem> extends JList<ItemT> implemen
     */
   public void addDocument(ItemT doc, String path) { addDocument(doc); }
   
+  /** Adds the documents to this navigator and ignores the specified paths.  Should only be executed in event thread.
+    * @param docs the documents to add
+    * @param paths unused parameter in this class
+    */
+  public void addDocuments(java.util.List<ItemT> docs, java.util.List<String> paths) {
+    synchronized(_model) { for (ItemT doc: docs) addDocument(doc); }
+  }
+  
   /** A typesafe version of {@code _model.get(i)}.  This is a workaround for the
    * non-generic implementation of DefaultListModel, and should be removed once that
    * is fixed.
@@ -71,6 +71,19 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
   private final OneToOneRelation<String, InnerNode<?, ItemT>> _path2node =
     new IndexedOneToOneRelation<String, InnerNode<?, ItemT>>();
   
+  /** The leaves of the tree in enumeration order, or null if the tree has changed since they were last listed. */
+  private ArrayList<LeafNode<ItemT>> _leaves = null;
+  
+  /** Maps documents to their indices in _leaves.  Only valid while _leaves is not null. */
+  private final HashMap<ItemT, Integer> _doc2index = new HashMap<ItemT, Integer>();
+  
+  /** Orders leaves by name, ignoring case. */
+  private static final Comparator<LeafNode<?>> LEAF_ORDER = new Comparator<LeafNode<?>>() {
+    public int compare(LeafNode<?> l1, LeafNode<?> l2) {
+      return l1.toString().toUpperCase().compareTo(l2.toString().toUpperCase());
+    }
+  };
+  
   /** The collection of INavigationListeners listening to this JListNavigator */
   private final ArrayList<INavigationListener<? super ItemT>> navListeners =
     new ArrayList<INavigationListener<? super ItemT>>();
@@ -215,6 +228,94 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     }
   }
   
+  /** Adds a batch of {@code INavigatorItem}s to this navigator at the specified paths, with the same result as adding
+    * them one at a time.  The new leaves of each folder are sorted once and placed by binary search, and the tree model
+    * fires one insertion event per folder that already existed.  Only runs in event-handling thread.
+    * @param docs the documents to be added into this navigator.
+    * @param paths the path in navigator to the parent directory of each document
+    */
+  public void addDocuments(java.util.List<ItemT> docs, java.util.List<String> paths) {
+    assert (EventQueue.isDispatchThread() || Utilities.TEST_MODE);
+    synchronized(_model) { // lock for mutation
+      DefaultMutableTreeNode treeRoot = (DefaultMutableTreeNode) _model.getRoot();
+      HashSet<TreeNode> added = new HashSet<TreeNode>();  // nodes new to the tree model, including detached groups
+      ArrayList<GroupNode<ItemT>> detachedGroups = new ArrayList<GroupNode<ItemT>>();
+      LinkedHashSet<InnerNode<?, ItemT>> changed = new LinkedHashSet<InnerNode<?, ItemT>>();
+      LinkedHashMap<InnerNode<?, ItemT>, ArrayList<LeafNode<ItemT>>> newLeaves =
+        new LinkedHashMap<InnerNode<?, ItemT>, ArrayList<LeafNode<ItemT>>>();
+      
+      /* Find or create the folder of each document, without firing events */
+      for (int i = 0; i < docs.size(); i++) {
+        ItemT doc = docs.get(i);
+        GroupNode<ItemT> root = null;
+        for (GroupNode<ItemT> r: _roots) {
+          if (r.getFilter().accept(doc)) {
+            root = r;
+            break;
+          }
+        }
+        if (root == null) continue;
+        if (treeRoot.getIndex(root) == -1 && added.add(root)) detachedGroups.add(root);
+        
+        StringTokenizer tok = new StringTokenizer(paths.get(i), File.separator);
+        final StringBuilder pathSoFarBuf = new StringBuilder();
+        InnerNode<?, ItemT> lastNode = root;
+        while (tok.hasMoreTokens()) {
+          pathSoFarBuf.append(tok.nextToken()).append('/');
+          String pathSoFar = pathSoFarBuf.toString();
+          InnerNode<?, ItemT> thisNode = _path2node.value(pathSoFar);
+          if (thisNode == null) {
+            thisNode = new FileNode<ItemT>(new File(pathSoFar));
+            lastNode.insert(thisNode, folderIndex(lastNode, thisNode.toString().toUpperCase()));
+            _path2node.add(pathSoFar, thisNode);
+            added.add(thisNode);
+            changed.add(lastNode);
+          }
+          lastNode = thisNode;
+        }
+        
+        LeafNode<ItemT> child = new LeafNode<ItemT>(doc);
+        _doc2node.put(doc, child);
+        added.add(child);
+        ArrayList<LeafNode<ItemT>> leaves = newLeaves.get(lastNode);
+        if (leaves == null) {
+          leaves = new ArrayList<LeafNode<ItemT>>();
+          newLeaves.put(lastNode, leaves);
+        }
+        leaves.add(child);
+      }
+      
+      /* Merge the sorted new leaves of each folder into its sorted children */
+      for (Map.Entry<InnerNode<?, ItemT>, ArrayList<LeafNode<ItemT>>> e: newLeaves.entrySet()) {
+        InnerNode<?, ItemT> folder = e.getKey();
+        ArrayList<LeafNode<ItemT>> leaves = e.getValue();
+        Collections.sort(leaves, LEAF_ORDER);  // stable, so equal names keep their order in the batch
+        int i = 0;
+        for (LeafNode<ItemT> leaf: leaves) {
+          i = leafIndex(folder, leaf.toString().toUpperCase(), i);
+          folder.insert(leaf, i++);
+        }
+        changed.add(folder);
+      }
+      if (! newLeaves.isEmpty()) _leaves = null;
+      
+      /* Announce the new children of each folder already in the tree model */
+      for (InnerNode<?, ItemT> folder: changed) {
+        boolean isNew = false;
+        for (TreeNode n = folder; n != null && ! isNew; n = n.getParent()) isNew = added.contains(n);
+        if (isNew) continue;
+        int[] indices = new int[folder.getChildCount()];
+        int count = 0;
+        for (int j = 0; j < indices.length; j++) {
+          if (added.contains(folder.getChildAt(j))) indices[count++] = j;
+        }
+        _model.nodesWereInserted(folder, Arrays.copyOf(indices, count));
+      }
+      for (GroupNode<ItemT> g: detachedGroups) addTopLevelGroupToRoot(g);
+      for (InnerNode<?, ItemT> folder: newLeaves.keySet()) expandPath(new TreePath(folder.getPath()));
+    }
+  }
+  
   private void addTopLevelGroupToRoot(InnerNode<?, ItemT> parent) {
     assert (EventQueue.isDispatchThread() || Utilities.TEST_MODE);
     synchronized(_model) { // lock for mutation
@@ -226,7 +327,59 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
         if(_roots.indexOf(n) > indexInRoots) break;
       }
       _model.insertNodeInto(parent, (MutableTreeNode)_model.getRoot(), i);
+      _leaves = null;
+    }
+  }
+  
+  /** Returns the number of folders among the children of parent, which precede its leaves.
+    * @param parent the node to search
+    * @return the index of the first leaf under parent, or its child count if it has no leaves
+    */
+  private static int folderCount(InnerNode<?, ?> parent) {
+    int lo = 0;
+    int hi = parent.getChildCount();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (parent.getChildAt(mid) instanceof LeafNode<?>) hi = mid;
+      else lo = mid + 1;
+    }
+    return lo;
+  }
+  
+  /** Finds by binary search the sorted position of a new folder under parent: after the folders whose names are less
+    * than or equal to name, ignoring case.
+    * @param parent the node to search
+    * @param name the upper case name of the new folder
+    * @return the index at which to insert the folder
+    */
+  private static int folderIndex(InnerNode<?, ?> parent, String name) {
+    int lo = 0;
+    int hi = folderCount(parent);
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (name.compareTo(parent.getChildAt(mid).toString().toUpperCase()) < 0) hi = mid;
+      else lo = mid + 1;
+    }
+    return lo;
+  }
+  
+  /** Finds by binary search the sorted position of a new leaf under parent: after the folders and after the leaves
+    * whose names are less than or equal to name, ignoring case.  Leaves are compared by the names they were inserted
+    * under, which keep them sorted even if their documents have since been renamed.
+    * @param parent the node to search
+    * @param name the upper case name of the new leaf
+    * @param from an index known to be no greater than the result
+    * @return the index at which to insert the leaf
+    */
+  private static int leafIndex(InnerNode<?, ?> parent, String name, int from) {
+    int lo = Math.max(from, folderCount(parent));
+    int hi = parent.getChildCount();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (name.compareTo(parent.getChildAt(mid).toString().toUpperCase()) < 0) hi = mid;
+      else lo = mid + 1;
     }
+    return lo;
   }
   
   /** Inserts the child node (INavigatorItem) into the sorted position as a parent node's child.  Only executes in the 
@@ -235,26 +388,12 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     * @param parent the node to add under
     */
   private void insertNodeSortedInto(LeafNode<ItemT> child, InnerNode<?, ItemT> parent) {
-    int numChildren = parent.getChildCount();
-    String newName = child.toString();
-    String oldName = parent.getUserObject().toString();
-    DefaultMutableTreeNode parentsKid;
-    
     /** Make sure that if the parent is a top level group, it is added to the tree model group. */
     if (((DefaultMutableTreeNode)_model.getRoot()).getIndex(parent) == -1 && _roots.contains(parent)) {
       addTopLevelGroupToRoot(parent);
     }
-    int i;
-    for (i = 0; i < numChildren; i++ ) {
-      parentsKid = ((DefaultMutableTreeNode) parent.getChildAt(i));
-      if (parentsKid instanceof InnerNode<?,?>) {
-        // do nothing, it's a folder
-      } else if(parentsKid instanceof LeafNode<?>) {
-        oldName = ((LeafNode<?>)parentsKid).getData().getName();
-        if ((newName.toUpperCase().compareTo(oldName.toUpperCase()) < 0)) break;
-      } else throw new IllegalStateException("found a node in navigator that is not an InnerNode or LeafNode");
-    }
-    _model.insertNodeInto(child, parent, i);
+    _model.insertNodeInto(child, parent, leafIndex(parent, child.toString().toUpperCase(), 0));
+    _leaves = null;
   }
   
   /** Inserts a folder (String) into sorted position under the parent.  Only executes in event thread. Assumes that
@@ -263,27 +402,10 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     * @param parent the folder to add under
     */
   private void insertFolderSortedInto(InnerNode<?, ItemT> child, InnerNode<?, ItemT> parent) {
-    int numChildren = parent.getChildCount();
-    String newName = child.toString();
-    String oldName = parent.getUserObject().toString();
-    DefaultMutableTreeNode parentsKid;
-    
     if (((DefaultMutableTreeNode)_model.getRoot()).getIndex(parent) == -1 && _roots.contains(parent)) {
       addTopLevelGroupToRoot(parent);
     }
-    
-    int i;
-    for (i = 0; i < numChildren; i++) {
-      parentsKid = ((DefaultMutableTreeNode)parent.getChildAt(i));
-      if (parentsKid instanceof InnerNode<?,?>) {
-        oldName = parentsKid.toString();
-        if ((newName.toUpperCase().compareTo(oldName.toUpperCase()) < 0)) break;
-      } 
-      else if (parentsKid instanceof LeafNode<?>) break;
-      // we're out of folders, and starting into the files, so just break out.
-      else throw new IllegalStateException("found a node in navigator that is not an InnerNode or LeafNode");
-    }
-    _model.insertNodeInto(child, parent, i);
+    _model.insertNodeInto(child, parent, folderIndex(parent, child.toString().toUpperCase()));
   }
   
   /** Removes a given {@code INavigatorItem} from this navigator. Removes all {@code INavigatorItem}s
@@ -323,6 +445,7 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     DefaultMutableTreeNode parent = (DefaultMutableTreeNode)node.getParent();
     _model.removeNodeFromParent(node);
     _doc2node.remove(node.getData());
+    _leaves = null;
     cleanFolderNode(parent);
     return node.getData();
   }
@@ -380,8 +503,8 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
         synchronized(_model) {
           LeafNode<ItemT> newLeaf = new LeafNode<ItemT>(doc);
           _doc2node.put(doc, newLeaf);
+          _model.removeNodeFromParent(node);  // first, since it is out of order under its new name
           insertNodeSortedInto(newLeaf, newParent);
-          _model.removeNodeFromParent(node);
         }
       }
       // don't do anything if its name or parents haven't changed
@@ -425,18 +548,40 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     return result;
   }
   
+  /** Returns the leaves of the tree in enumeration order, listing them again if the tree has changed.  Assumes that
+    * _model lock is already held.
+    * @return the leaves of the tree
+    */
+  private ArrayList<LeafNode<ItemT>> getLeaves() {
+    if (_leaves == null) {
+      ArrayList<LeafNode<ItemT>> leaves = new ArrayList<LeafNode<ItemT>>(_doc2node.size());
+      _doc2index.clear();
+      // e has a raw type because preorderEnumeration() has a raw type signature
+      Enumeration<?> e = ((DefaultMutableTreeNode)_model.getRoot()).preorderEnumeration();
+      while (e.hasMoreElements()) {
+        Object node = e.nextElement();
+        if (node instanceof LeafNode<?>) {
+          @SuppressWarnings("unchecked") LeafNode<ItemT> leaf = (LeafNode<ItemT>) node;
+          _doc2index.put(leaf.getData(), leaves.size());
+          leaves.add(leaf);
+        }
+      }
+      _leaves = leaves;
+    }
+    return _leaves;
+  }
+  
   /** Returns the next document in the collection (using enumeration order).  Executes in any thread.
     * @param doc the INavigatorItem of interest
     * @return the INavigatorItem which comes after doc
     */
   public ItemT getNext(ItemT doc) {
     synchronized(_model) { // locks out mutation
-      DefaultMutableTreeNode node = _doc2node.get(doc);
-      if (node == null) return doc; // doc may not be contained in navigator
+      ArrayList<LeafNode<ItemT>> leaves = getLeaves();
+      Integer i = _doc2index.get(doc);
+      if (i == null || i + 1 == leaves.size()) return doc; // doc may not be contained in navigator
       // TODO: check for "package" case
-      DefaultMutableTreeNode next = node.getNextLeaf();
-      if (next == null || next == _model.getRoot()) { return doc; }
-      else { return getNodeUserObject(next); }
+      return leaves.get(i + 1).getData();
     }
   }
   
@@ -446,12 +591,11 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     */
   public ItemT getPrevious(ItemT doc) {
     synchronized(_model) { // locks out mutation
-      DefaultMutableTreeNode node = _doc2node.get(doc);
-      if (node == null) return doc; // doc may not be contained in navigator
+      ArrayList<LeafNode<ItemT>> leaves = getLeaves();
+      Integer i = _doc2index.get(doc);
+      if (i == null || i == 0) return doc; // doc may not be contained in navigator
       // TODO: check for "package" case
-      DefaultMutableTreeNode prev = node.getPreviousLeaf();
-      if (prev == null || prev == _model.getRoot()) { return doc; }
-      else { return getNodeUserObject(prev); }
+      return leaves.get(i - 1).getData();
     }
   }
   
@@ -496,21 +640,12 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     * @return an {@code INavigatorItem} enumeration of this navigator's contents.
     */
   public ArrayList<ItemT> getDocuments() {
-    
-    final ArrayList<ItemT> list = new ArrayList<ItemT>(getDocumentCount()); // Use Vector because it implements an Enumeration
-    
     synchronized(_model) { // locks out mutation
-      // e has a raw type because depthFirstEnumeration() has a raw type signature
-      Enumeration<?> e = ((DefaultMutableTreeNode)_model.getRoot()).depthFirstEnumeration();
-      
-      while(e.hasMoreElements()) {
-        DefaultMutableTreeNode node = (DefaultMutableTreeNode) e.nextElement();
-        if (node.isLeaf() && node != _model.getRoot()) {
-          list.add(getNodeUserObject(node));
-        }
-      }
+      ArrayList<LeafNode<ItemT>> leaves = getLeaves();
+      final ArrayList<ItemT> list = new ArrayList<ItemT>(leaves.size());
+      for (LeafNode<ItemT> leaf: leaves) list.add(leaf.getData());
+      return list;
     }
-    return list;
   }
   
   /** Returns all the {@code IDocument}s contained in the specified bin.
@@ -560,6 +695,7 @@ public class JTreeSortNavigator<ItemT extends INavigatorItem> extends JTree
     synchronized(_model) {
       _doc2node.clear();
       ((DefaultMutableTreeNode)_model.getRoot()).removeAllChildren();
+      _leaves = null;
     }
   }
   
@@ -40,11 +40,18 @@ import edu.rice.cs.util.UnexpectedException;
 import edu.rice.cs.util.swing.Utilities;
 import edu.rice.cs.drjava.DrJavaTestCase;
 
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 public class JTreeSortNavigatorTest extends DrJavaTestCase {
   
@@ -214,6 +221,27 @@ public class JTreeSortNavigatorTest extends DrJavaTestCase {
     Utilities.invokeAndWait(new Runnable() { public void run() { tree.removeDocument(newItem); } });
   }
   
+  /** Tests that a renamed document moves to its sorted position, and that later insertions stay sorted. */
+  public void testRenameDocumentOrder() {
+    final DummyINavigatorItem[] items = new DummyINavigatorItem[5];
+    for (int i = 0; i < items.length; i++) items[i] = new DummyINavigatorItem("" + (char) ('a' + i));
+    final DummyINavigatorItem bb = new DummyINavigatorItem("bb");
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        for (DummyINavigatorItem item: items) tree.addDocument(item, "folder3");
+        items[2].setName("a");
+        tree.refreshDocument(items[2], "folder3");
+        items[4].setName("b");  // not yet refreshed
+        tree.addDocument(bb, "folder3");
+      }
+    });
+    TreeNode folder3 = source.getChildAt(2);
+    assertEquals("folder3\n  a\n  a\n  b\n  bb\n  d\n  e\n", _dump(folder3));
+    assertSame(items[0], tree.getNext(i4));
+    assertSame(items[2], tree.getNext(items[0]));
+    assertSame(items[1], tree.getNext(items[2]));
+  }
+  
   /** Test the enumeration of items based on top-level bins. */
   public void testGetDocumentsInBin() {
     Iterator<DummyINavigatorItem> items = tree.getDocumentsInBin(SOURCE_BIN_NAME).iterator();
@@ -435,4 +463,161 @@ public class JTreeSortNavigatorTest extends DrJavaTestCase {
       assertEquals("Exception isn't a GroupNotSelectedException", GroupNotSelectedException.class, e.getClass());
     }
   }
-}
\ No newline at end of file
+  
+  /** Tests that adding a batch of items builds the same tree, in the same order, as adding them one at a time. */
+  public void testAddDocuments() {
+    final List<DummyINavigatorItem> items = new ArrayList<DummyINavigatorItem>();
+    final List<String> paths = new ArrayList<String>();
+    String[] names = { "b", "A", "a", "c", "B", "auxb", "auxA", "b" };
+    String[] folders = { "", "folder1", "Folder0", "folder1" + File.separator + "sub", "z", "auxfolder" };
+    Random random = new Random(0);
+    for (int i = 0; i < 60; i++) {
+      items.add(new DummyINavigatorItem(names[random.nextInt(names.length)] + random.nextInt(4)));
+      paths.add(folders[random.nextInt(folders.length)]);
+    }
+    final JTreeSortNavigator<DummyINavigatorItem> one = _makeTree();
+    final JTreeSortNavigator<DummyINavigatorItem> batch = _makeTree();
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        for (int i = 0; i < items.size(); i++) one.addDocument(items.get(i), paths.get(i));
+        batch.addDocuments(items.subList(0, 30), paths.subList(0, 30));
+        batch.getNext(items.get(0));  // lists the leaves before the second batch
+        batch.addDocuments(items.subList(30, 60), paths.subList(30, 60));
+      }
+    });
+    assertEquals("tree", _dump((TreeNode) one.getModel().getRoot()), _dump((TreeNode) batch.getModel().getRoot()));
+    ArrayList<DummyINavigatorItem> docs = one.getDocuments();
+    assertEquals("documents", docs, batch.getDocuments());
+    assertEquals(60, docs.size());
+    for (int i = 0; i < docs.size(); i++) {
+      DummyINavigatorItem next = docs.get(Math.min(i + 1, docs.size() - 1));
+      DummyINavigatorItem prev = docs.get(Math.max(i - 1, 0));
+      assertSame("getNext " + i, next, one.getNext(docs.get(i)));
+      assertSame("getNext " + i, next, batch.getNext(docs.get(i)));
+      assertSame("getPrevious " + i, prev, one.getPrevious(docs.get(i)));
+      assertSame("getPrevious " + i, prev, batch.getPrevious(docs.get(i)));
+    }
+    
+    Utilities.invokeAndWait(new Runnable() { public void run() { batch.removeDocument(items.get(5)); } });
+    assertEquals(59, batch.getDocuments().size());
+    DummyINavigatorItem missing = items.get(5);
+    assertSame("removed item", missing, batch.getNext(missing));
+    int i = docs.indexOf(missing);
+    if (i > 0 && i < docs.size() - 1) assertSame(docs.get(i + 1), batch.getNext(docs.get(i - 1)));
+  }
+  
+  /** Tests that a batch fires one insertion event per folder already in the tree, and none for new folders. */
+  public void testAddDocumentsEvents() {
+    final DummyINavigatorItem i10 = new DummyINavigatorItem("item10");
+    final DummyINavigatorItem i13 = new DummyINavigatorItem("item13");
+    final DummyINavigatorItem i31 = new DummyINavigatorItem("item31");
+    final DummyINavigatorItem auxi24 = new DummyINavigatorItem("auxitem24");
+    final List<String> events = new ArrayList<String>();
+    TreeModelListener listener = new TreeModelListener() {
+      public void treeNodesChanged(TreeModelEvent e) { events.add("changed " + e.getTreePath()); }
+      public void treeNodesInserted(TreeModelEvent e) {
+        events.add(e.getTreePath().getLastPathComponent() + " " + e.getChildIndices().length);
+      }
+      public void treeNodesRemoved(TreeModelEvent e) { events.add("removed " + e.getTreePath()); }
+      public void treeStructureChanged(TreeModelEvent e) { events.add("structure " + e.getTreePath()); }
+    };
+    tree.getModel().addTreeModelListener(listener);
+    Utilities.invokeAndWait(new Runnable() {
+      public void run() {
+        List<DummyINavigatorItem> items = new ArrayList<DummyINavigatorItem>();
+        Collections.addAll(items, i13, i31, i10, auxi24);
+        List<String> paths = new ArrayList<String>();
+        Collections.addAll(paths, "folder1", "folder3", "folder1", "auxfolder2");
+        tree.addDocuments(items, paths);
+      }
+    });
+    tree.getModel().removeTreeModelListener(listener);
+    
+    assertEquals("[" + SOURCE_BIN_NAME + " 1, folder1 2, auxfolder2 1]", events.toString());
+    assertEquals(4, folder1.getChildCount());
+    assertEquals(3, source.getChildCount());
+    assertEquals(13, tree.getDocumentCount());
+    assertSame(i10, tree.getFirst());
+    assertSame(i13, tree.getNext(i2));
+    assertSame(i3, tree.getNext(i13));
+    assertSame(i31, tree.getNext(i4));
+    assertSame(auxi1, tree.getNext(i31));
+    assertSame(i10, tree.getPrevious(i1));
+    assertSame(auxi24, tree.getLast());
+  }
+  
+  /** @return a navigator with the same top-level groups as the one built by setUp */
+  private JTreeSortNavigator<DummyINavigatorItem> _makeTree() {
+    JTreeSortNavigator<DummyINavigatorItem> t = new JTreeSortNavigator<DummyINavigatorItem>("project");
+    t.addTopLevelGroup(SOURCE_BIN_NAME, new INavigatorItemFilter<INavigatorItem>() {
+      public boolean accept(INavigatorItem n) { return ! n.getName().startsWith("aux"); }
+    });
+    t.addTopLevelGroup(EXTERNAL_BIN_NAME, new INavigatorItemFilter<INavigatorItem>() {
+      public boolean accept(INavigatorItem n) { return n.getName().startsWith("aux"); }
+    });
+    return t;
+  }
+  
+  /** @return the names of node and its descendants, in enumeration order, indented by depth */
+  private static String _dump(TreeNode node) {
+    StringBuilder sb = new StringBuilder();
+    _dump(node, "", sb);
+    return sb.toString();
+  }
+  
+  private static void _dump(TreeNode node, String indent, StringBuilder sb) {
+    sb.append(indent).append(node).append('\n');
+    for (int i = 0; i < node.getChildCount(); i++) _dump(node.getChildAt(i), indent + "  ", sb);
+  }
+  
+  /** Adds documents to a navigator one at a time and in one batch, then walks through them, and prints the times.
+    * @param args the number of documents (5000 by default)
+    */
+  public static void main(String[] args) {
+    final int n = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+    for (final int folderCount: new int[] { 50, 1 }) {
+      final List<DummyINavigatorItem> items = new ArrayList<DummyINavigatorItem>();
+      final List<String> paths = new ArrayList<String>();
+      for (int i = 0; i < n; i++) {
+        items.add(new DummyINavigatorItem("C" + i + ".java"));
+        paths.add("src" + File.separator + "p" + (i % folderCount));
+      }
+      Collections.shuffle(items, new Random(0));
+      System.out.println(n + " documents in " + folderCount + " folder(s)");
+      for (int round = 0; round < 3; round++) {
+        Utilities.invokeAndWait(new Runnable() {
+          public void run() {
+            JTreeSortNavigator<DummyINavigatorItem> t = new JTreeSortNavigator<DummyINavigatorItem>("project");
+            t.addTopLevelGroup("[ Source Files ]", new INavigatorItemFilter<INavigatorItem>() {
+              public boolean accept(INavigatorItem i) { return true; }
+            });
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) t.addDocument(items.get(i), paths.get(i));
+            long single = System.nanoTime() - start;
+            
+            t = new JTreeSortNavigator<DummyINavigatorItem>("project");
+            t.addTopLevelGroup("[ Source Files ]", new INavigatorItemFilter<INavigatorItem>() {
+              public boolean accept(INavigatorItem i) { return true; }
+            });
+            start = System.nanoTime();
+            t.addDocuments(items, paths);
+            long batch = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            DummyINavigatorItem doc = t.getFirst();
+            for (int i = 1; i < n; i++) doc = t.getNext(doc);
+            for (int i = 1; i < n; i++) doc = t.getPrevious(doc);
+            long walk = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (int i = 0; i < 100; i++) t.getDocuments();
+            long list = System.nanoTime() - start;
+            System.out.println("  one at a time " + single / 1000000 + "ms, batch " + batch / 1000000 + 
+                               "ms, walk forward and back " + walk / 1000000 + "ms, 100 x getDocuments " + 
+                               list / 1000000 + "ms");
+          }
+        });
+      }
+    }
+  }
+}
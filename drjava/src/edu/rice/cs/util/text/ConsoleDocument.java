@@ -90,6 +90,13 @@ public class ConsoleDocument implements ConsoleDocumentInterface {
   /** The book object used for printing that represents several pages */
   protected volatile DrJavaBook _book;
   
+  /** Maximum number of characters kept before the prompt, or 0 if the document may grow without limit. */
+  private volatile int _scrollbackLimit = 0;
+  
+  /** When the scrollback limit is exceeded, the text is trimmed to this fraction of the limit, so that trimming
+    * happens in large chunks rather than on every insertion. */
+  private static final double SCROLLBACK_TRIM_TARGET = 0.75;
+  
   /** Creates a new ConsoleDocument with the given embedded ConsoleDocumentInterface (a SwingDocument in native DrJava).
     * @param doc the embedded ConsoleDocumentInterface object
     */
@@ -139,6 +146,18 @@ public class ConsoleDocument implements ConsoleDocumentInterface {
     _promptPos = newPos; 
   }
   
+  /** @return the maximum number of characters kept before the prompt, or 0 if there is no limit */
+  public int getScrollbackLimit() { return _scrollbackLimit; }
+  
+  /** Sets the maximum number of characters kept before the prompt.  When output pushes the document beyond the
+    * limit, the oldest lines are removed.  Only runs in the event thread.
+    * @param limit the maximum number of characters, or 0 for no limit
+    */
+  public void setScrollbackLimit(int limit) {
+    _scrollbackLimit = limit;
+    _trimScrollback();
+  }
+  
   /** Sets a runnable action to use as a beep.
     * @param beep Runnable beep command
     */
@@ -216,10 +235,39 @@ public class ConsoleDocument implements ConsoleDocumentInterface {
 //      System.err.println("_promptPos before update = " + _promptPos);
       _promptPos = _promptPos + text.length();
       forceInsertText(pos, text, style);
+      _trimScrollback();
     }
     catch (EditDocumentException ble) { throw new UnexpectedException(ble); }
   }
   
+  /** If the text before the prompt exceeds the scrollback limit, removes whole lines from the start of the document
+    * until it is at most SCROLLBACK_TRIM_TARGET of the limit.  If no line ends between that point and the prompt, only
+    * the complete lines before it are removed, so the line currently being printed is kept; if there are none (as when
+    * a program prints one huge line), the text is trimmed in the middle of the line.  Only runs in event thread except
+    * for legacy test code.
+    */
+  protected void _trimScrollback() {
+    int limit = _scrollbackLimit;
+    if (limit == 0) return;
+    try {
+      int end = _getPositionBeforePrompt();
+      if (end <= limit) return;
+      int cut = end - (int) (limit * SCROLLBACK_TRIM_TARGET);
+      // remove the rest of the line containing the cut as well
+      int lineEnd = _document.getDocText(cut, end - cut).indexOf('\n');
+      if (lineEnd >= 0) cut = cut + lineEnd + 1;
+      else {
+        // the last line is still being printed: only remove the lines before it, or part of it if there are none
+        int lastLineStart = _document.getDocText(0, cut).lastIndexOf('\n') + 1;
+        if (lastLineStart > 0) cut = lastLineStart;
+      }
+      forceRemoveText(0, cut);
+      _promptPos = Math.max(0, _promptPos - cut);
+      if (_document instanceof SwingDocument) ((SwingDocument)_document).removeColoringBefore(cut);
+    }
+    catch (EditDocumentException e) { throw new UnexpectedException(e); }
+  }
+  
   /** Inserts a string into the document at the given offset and named style, if the edit condition allows it.
     * @param offs Offset into the document
     * @param str String to be inserted
@@ -244,6 +292,7 @@ public class ConsoleDocument implements ConsoleDocumentInterface {
     int offs = _document.getLength();
     _addToStyleLists(offs, str, style);
     _document.insertText(offs, str, style);
+    _trimScrollback();
   }
   
   /** Inserts a string into the document at the given offset and  style, regardless of the edit condition.
@@ -125,4 +125,91 @@ public class ConsoleDocumentTest extends DrJavaTestCase {
     _doc.setPromptPos(_doc.getLength());
     assertEquals("promptPos is character position at end of document", _doc.getLength(), _doc.getPromptPos());
   }
+  
+  /** Tests that output beyond the scrollback limit is trimmed in whole lines and that styles move with the text.
+   * @throws EditDocumentException if an error occurs during editing
+   */
+  public void testScrollbackLimit() throws EditDocumentException {
+    final InteractionsDJDocument adapter = new InteractionsDJDocument();
+    _doc = new ConsoleDocument(adapter);
+    _doc.setScrollbackLimit(100);
+    for (int i = 0; i < 10; ++i) { _doc.insertBeforeLastPrompt("line " + i + "\n", ConsoleDocument.SYSTEM_OUT_STYLE); }
+    assertEquals("below the limit, nothing is trimmed", 70, _doc.getLength());
+    String last = "the last line, printed to System.err\n";
+    _doc.insertBeforeLastPrompt(last, ConsoleDocument.SYSTEM_ERR_STYLE);
+    String text = _doc.getText();
+    // 107 characters are trimmed to at most 75, up to the next line start
+    assertEquals("line 5\nline 6\nline 7\nline 8\nline 9\n" + last, text);
+    assertEquals("prompt position moved", text.length(), _doc.getPromptPos());
+    
+    // consecutive runs of one style are merged; runs of removed text are discarded
+    assertEquals(2, adapter.getStyles().length);
+    assertEquals("((35, 72), System.err)", adapter.getStyles()[0].toString());
+    assertEquals("((0, 35), System.out)", adapter.getStyles()[1].toString());
+    
+    _doc.setScrollbackLimit(0);
+    _doc.insertBeforeLastPrompt(new String(new char[500]).replace('\0', 'x'), ConsoleDocument.SYSTEM_OUT_STYLE);
+    assertEquals("no limit", text.length() + 500, _doc.getLength());
+  }
+  
+  /** Tests that trimming keeps the line that is still being printed, unless it is the only line.
+   * @throws EditDocumentException if an error occurs during editing
+   */
+  public void testScrollbackPartialLines() throws EditDocumentException {
+    _doc = new ConsoleDocument(new InteractionsDJDocument());
+    _doc.setScrollbackLimit(100);
+    String partial = new String(new char[150]).replace('\0', 'x');
+    _doc.insertBeforeLastPrompt("first line\n" + partial, ConsoleDocument.SYSTEM_OUT_STYLE);
+    assertEquals("only the complete line is removed", partial, _doc.getText());
+    assertEquals("prompt position moved", partial.length(), _doc.getPromptPos());
+    
+    _doc.insertBeforeLastPrompt(partial, ConsoleDocument.SYSTEM_OUT_STYLE);
+    assertEquals("no line boundary, the line is trimmed", partial.substring(0, 75), _doc.getText());
+    assertEquals("prompt position moved", 75, _doc.getPromptPos());
+    
+    _doc.insertBeforeLastPrompt("\nnext\n" + partial, ConsoleDocument.SYSTEM_OUT_STYLE);
+    assertEquals("complete lines are removed before the line being printed", partial, _doc.getText());
+  }
+  
+  /** Print lines into a console document with a scrollback limit, reporting the memory used and the time taken per
+    * batch of lines.  Arguments: number of lines (default 10,000,000), limit in thousands of characters (default 1000;
+    * 0 for no limit) and lines per insertion (default 100).
+    */
+  public static void main(String[] args) throws Exception {
+    final long lines = (args.length > 0) ? Long.parseLong(args[0]) : 10000000L;
+    final int limit = 1000 * ((args.length > 1) ? Integer.parseInt(args[1]) : 1000);
+    final int batch = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+    final ConsoleDocument doc = new ConsoleDocument(new InteractionsDJDocument());
+    Utilities.invokeAndWait(new Runnable() { public void run() { doc.setScrollbackLimit(limit); } });
+    final long report = Math.max(batch, lines / 10);
+    final long[] maxNanos = new long[1];
+    final long[] totalNanos = new long[1];
+    final long[] n = new long[1];
+    final long start = System.currentTimeMillis();
+    while (n[0] < lines) {
+      Utilities.invokeAndWait(new Runnable() {
+        public void run() {
+          StringBuilder sb = new StringBuilder();
+          for (int i = 0; i < batch; ++i) { sb.append("output line ").append(n[0] + i).append('\n'); }
+          long t = System.nanoTime();
+          doc.insertBeforeLastPrompt(sb.toString(), ConsoleDocument.SYSTEM_OUT_STYLE);
+          t = System.nanoTime() - t;
+          totalNanos[0] += t;
+          maxNanos[0] = Math.max(maxNanos[0], t);
+          n[0] += batch;
+        }
+      });
+      if (n[0] % report == 0) {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        System.out.println(n[0] + " lines, " + (System.currentTimeMillis() - start) + "ms: heap " + 
+                           ((rt.totalMemory() - rt.freeMemory()) >> 20) + "MB, document " + doc.getLength() + 
+                           " chars, mean insertion " + (totalNanos[0] / (report / batch) / 1000) + "us, max " + 
+                           (maxNanos[0] / 1000) + "us");
+        totalNanos[0] = 0;
+        maxNanos[0] = 0;
+      }
+    }
+    System.exit(0);
+  }
 }
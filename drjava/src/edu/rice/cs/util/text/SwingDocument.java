@@ -97,6 +97,12 @@ public class SwingDocument extends DefaultStyledDocument implements EditDocument
    */
   public void addColoring(int start, int end, String style) { }
   
+  /** Discards the coloring styles of the text before the given offset, which has been removed from the start of the
+   * document, and moves the remaining styles accordingly.  Not supported in SwingDocument.  Only runs in event thread.
+   * @param removed the number of characters removed from the start of the document
+   */
+  public void removeColoringBefore(int removed) { }
+  
   /** Gets the object which can determine whether an insert or remove edit should be applied, based on the inputs.
     * @return an Object to determine legality of inputs
     */
@@ -37,4 +37,14 @@ public class Options {
   public boolean prohibitBoxing() { return false; }
   /** Disallow unchecked casting conversion. */
   public boolean prohibitUncheckedCasts() { return true; }
+  /**
+   * Compile loop statements to bytecode rather than walking their trees on each iteration (see
+   * {@link edu.rice.cs.dynamicjava.interpreter.StatementCompiler}).
+   */
+  public boolean compileStatements() { return false; }
+  /**
+   * Bind method calls, allocations, and field reads to cached method handles rather than invoking them
+   * reflectively (see {@link edu.rice.cs.dynamicjava.interpreter.CallSiteCache}).
+   */
+  public boolean cacheCallSites() { return true; }
 }
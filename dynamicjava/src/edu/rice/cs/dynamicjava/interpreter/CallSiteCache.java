@@ -0,0 +1,193 @@
+package edu.rice.cs.dynamicjava.interpreter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import koala.dynamicjava.tree.Node;
+
+import edu.rice.cs.dynamicjava.symbol.DJConstructor;
+import edu.rice.cs.dynamicjava.symbol.DJField;
+import edu.rice.cs.dynamicjava.symbol.DJMethod;
+import edu.rice.cs.dynamicjava.symbol.JavaClass;
+
+import static koala.dynamicjava.interpreter.NodeProperties.*;
+import static edu.rice.cs.plt.debug.DebugUtil.debug;
+
+/**
+ * An inline cache for a method call, allocation, or field read in the AST.  The first time the node is
+ * evaluated, the reflective member it refers to is converted to a MethodHandle, which is stored on the node
+ * and reused by later evaluations.  A handle unreflected from a virtual method dispatches on the receiver, as
+ * {@link Method#invoke} does, so one handle serves every receiver class.  Members that are not
+ * {@link JavaClass} members -- those declared in the interpreter, for example -- are not cached, nor are
+ * members that cannot be made accessible (such as those of JDK-internal classes on Java 9 and later).
+ * Each cache counts the evaluations that reused its handle; totals of these hits and of the misses (evaluations
+ * that had to bind a node, or that could not use a handle) are kept for all caches and written to the debug
+ * log by the {@link Interpreter}.
+ */
+public class CallSiteCache {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  /** Marks a node whose member cannot be invoked by a method handle. */
+  private static final CallSiteCache UNCACHEABLE = new CallSiteCache(null, 0, false);
+
+  private static final String[] EXTRA_STACK = new String[]{ "java.lang.invoke.MethodHandle.invokeExact" };
+
+  private static final AtomicLong TOTAL_HITS = new AtomicLong();
+  private static final AtomicLong TOTAL_MISSES = new AtomicLong();
+
+  private final MethodHandle _handle; // of type (Object[])Object
+  private final int _arity; // including the receiver, if any
+  private final boolean _hasReceiver;
+  private final AtomicLong _hits = new AtomicLong();
+
+  private CallSiteCache(MethodHandle handle, int arity, boolean hasReceiver) {
+    _handle = handle;
+    _arity = arity;
+    _hasReceiver = hasReceiver;
+  }
+
+  /**
+   * Get the cache for a method call.
+   * @param receiver  The receiver of the call, or {@code null} if the method is static.
+   * @return  The cache, or {@code null} if the call must be handled by {@link DJMethod#evaluate}.
+   */
+  public static CallSiteCache forMethod(Node site, DJMethod method, Object receiver) {
+    CallSiteCache result = check(site, receiver);
+    if (result == null) {
+      Method m = JavaClass.methodOf(method);
+      if (m == null) { result = setCallSiteCache(site, UNCACHEABLE); }
+      else if (!Modifier.isStatic(m.getModifiers()) && receiver == null) { return null; }
+      else { result = bind(site, m); }
+    }
+    return (result == UNCACHEABLE) ? null : result;
+  }
+
+  /**
+   * Get the cache for a constructor invocation.
+   * @return  The cache, or {@code null} if the call must be handled by {@link DJConstructor#evaluate}.
+   */
+  public static CallSiteCache forConstructor(Node site, DJConstructor constructor, int argCount) {
+    CallSiteCache result = check(site, null);
+    if (result == null) {
+      Constructor<?> k = JavaClass.constructorOf(constructor);
+      // constructors of inner classes take an extra, implicit argument
+      if (k == null || k.getParameterTypes().length != argCount) { result = setCallSiteCache(site, UNCACHEABLE); }
+      else { result = bind(site, k); }
+    }
+    return (result == UNCACHEABLE) ? null : result;
+  }
+
+  /**
+   * Get the cache for a field read.
+   * @param receiver  The object whose field is read, or {@code null} if the field is static.
+   * @return  The cache, or {@code null} if the field must be read via {@link DJField#boxForReceiver}.
+   */
+  public static CallSiteCache forField(Node site, DJField field, Object receiver) {
+    CallSiteCache result = check(site, receiver);
+    if (result == null) {
+      Field f = JavaClass.fieldOf(field);
+      if (f == null) { result = setCallSiteCache(site, UNCACHEABLE); }
+      else if (!Modifier.isStatic(f.getModifiers()) && receiver == null) { return null; }
+      else { result = bind(site, f); }
+    }
+    return (result == UNCACHEABLE) ? null : result;
+  }
+
+  /**
+   * Invoke the cached handle.  Exceptions thrown by the member are wrapped, as in
+   * {@link DJMethod#evaluate}, in an {@link EvaluatorException}.
+   */
+  public Object invoke(Object receiver, Iterable<Object> args) throws EvaluatorException {
+    Object[] allArgs = new Object[_arity];
+    int i = 0;
+    if (_hasReceiver) { allArgs[i++] = receiver; }
+    for (Object arg : args) { allArgs[i++] = arg; }
+    // the handle's type is (Object[])Object, which is also the type the call is compiled with
+    try { return _handle.invokeExact(allArgs); }
+    catch (Throwable t) { throw new EvaluatorException(t, EXTRA_STACK); }
+  }
+
+  /** The number of evaluations of this cache's node that reused its handle. */
+  public long hits() { return _hits.get(); }
+
+  /** The number of evaluations of any cached node that reused its handle. */
+  public static long totalHits() { return TOTAL_HITS.get(); }
+
+  /**
+   * The number of evaluations of cacheable nodes that could not reuse a handle: those that bound (or rebound)
+   * their node, and those handled by the uncached path.
+   */
+  public static long totalMisses() { return TOTAL_MISSES.get(); }
+
+  /**
+   * Return the node's cache, recording a hit, or {@code null} if it has none or if the receiver of an
+   * instance member is {@code null} (leaving the exception to the uncached path).  Anything but a hit is
+   * recorded as a miss.
+   */
+  private static CallSiteCache check(Node site, Object receiver) {
+    if (hasCallSiteCache(site)) {
+      CallSiteCache cache = getCallSiteCache(site);
+      if (cache != UNCACHEABLE && !(cache._hasReceiver && receiver == null)) {
+        cache._hits.incrementAndGet();
+        TOTAL_HITS.incrementAndGet();
+        return cache;
+      }
+      TOTAL_MISSES.incrementAndGet();
+      return (cache == UNCACHEABLE) ? cache : null;
+    }
+    TOTAL_MISSES.incrementAndGet();
+    return null;
+  }
+
+  /** Create and store a cache for the given member. */
+  private static CallSiteCache bind(Node site, Member member) {
+    boolean hasReceiver = !Modifier.isStatic(member.getModifiers()) && !(member instanceof Constructor<?>);
+    CallSiteCache result;
+    try {
+      MethodHandle h;
+      int arity;
+      if (member instanceof Method) {
+        Method m = (Method) member;
+        h = LOOKUP.unreflect(accessible(m));
+        arity = m.getParameterTypes().length + (hasReceiver ? 1 : 0);
+      }
+      else if (member instanceof Constructor<?>) {
+        Constructor<?> k = (Constructor<?>) member;
+        h = LOOKUP.unreflectConstructor(accessible(k));
+        arity = k.getParameterTypes().length;
+      }
+      else {
+        h = LOOKUP.unreflectGetter(accessible((Field) member));
+        arity = hasReceiver ? 1 : 0;
+      }
+      // varargs are already packaged as arrays by the checker
+      h = h.asFixedArity().asType(MethodType.genericMethodType(arity)).asSpreader(Object[].class, arity);
+      result = new CallSiteCache(h, arity, hasReceiver);
+    }
+    catch (IllegalAccessException e) {
+      debug.log(e);
+      result = UNCACHEABLE;
+    }
+    debug.logValue("Bound call site", member);
+    setCallSiteCache(site, result);
+    return result;
+  }
+
+  private static <T extends AccessibleObject> T accessible(T obj) {
+    try { obj.setAccessible(true); }
+    // a SecurityException, or (on Java 9 and later) an InaccessibleObjectException for a member of a
+    // package its module does not open; unreflecting then fails unless the member is already accessible
+    catch (RuntimeException e) { debug.log(e); /* ignore -- we can't relax accessibility */ }
+    return obj;
+  }
+
+}
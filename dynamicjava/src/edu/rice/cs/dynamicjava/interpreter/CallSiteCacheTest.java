@@ -0,0 +1,110 @@
+package edu.rice.cs.dynamicjava.interpreter;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.rice.cs.plt.tuple.Option;
+
+import koala.dynamicjava.parser.wrapper.JavaCCParser;
+import koala.dynamicjava.tree.ExpressionStatement;
+import koala.dynamicjava.tree.Node;
+
+import edu.rice.cs.dynamicjava.Options;
+
+import static koala.dynamicjava.interpreter.NodeProperties.*;
+
+public class CallSiteCacheTest extends TestCase {
+
+  private static final Options UNCACHED_OPTIONS = new Options() {
+    @Override public boolean cacheCallSites() { return false; }
+  };
+
+  private static Object interpret(Options opt, String... inputs) throws InterpreterException {
+    Interpreter interp = new Interpreter(opt);
+    Option<Object> result = Option.none();
+    for (String input : inputs) { result = interp.interpret(input); }
+    return result.isSome() ? result.unwrap() : null;
+  }
+
+  /**
+   * Parse and check {@code expr}, a single expression, then evaluate it {@code times} times; return its
+   * (translated) node.
+   */
+  private static Node evaluateRepeatedly(String expr, int times) throws InterpreterException {
+    Options opt = Options.DEFAULT;
+    List<Node> tree = new JavaCCParser(new StringReader(expr), opt).parseStream();
+    assertEquals(1, tree.size());
+    new StatementChecker(new ImportContext(CallSiteCacheTest.class.getClassLoader(), opt), opt).checkList(tree);
+    for (int i = 0; i < times; i++) { new StatementEvaluator(RuntimeBindings.EMPTY, opt).evaluateSequence(tree); }
+    Node result = ((ExpressionStatement) tree.get(0)).getExpression();
+    while (hasTranslation(result)) { result = getTranslation(result); }
+    return result;
+  }
+
+  public void testRepeatedCallsHit() throws InterpreterException {
+    assertEquals("0123456789", interpret(Options.DEFAULT, "StringBuilder sb = new StringBuilder();",
+                                         "for (int i = 0; i < 10; i++) { sb.append(Integer.toString(i)); }",
+                                         "sb.toString()"));
+    // the first evaluation binds the site; each later one reuses the handle
+    Node call = evaluateRepeatedly("Integer.toString(42)", 10);
+    assertTrue(hasCallSiteCache(call));
+    assertEquals(9, getCallSiteCache(call).hits());
+    assertEquals(0, getCallSiteCache(evaluateRepeatedly("Integer.toString(7)", 1)).hits());
+  }
+
+  public void testTotals() throws InterpreterException {
+    long hits = CallSiteCache.totalHits();
+    long misses = CallSiteCache.totalMisses();
+    evaluateRepeatedly("Integer.toString(42)", 10);
+    assertEquals(9, CallSiteCache.totalHits() - hits);
+    assertEquals(1, CallSiteCache.totalMisses() - misses);
+  }
+
+  public void testReceiverClassChange() throws InterpreterException {
+    String[] inputs = { "Object[] objs = { \"a\", 1, 2.5, java.util.Arrays.asList(\"b\") };",
+                        "String s = \"\";",
+                        "for (Object o : objs) { s += o.toString() + o.hashCode(); }",
+                        "s" };
+    // a handle for a virtual method dispatches on the receiver, so one binding serves every class
+    assertEquals(interpret(UNCACHED_OPTIONS, inputs), interpret(Options.DEFAULT, inputs));
+  }
+
+  /** Receivers whose classes are JDK-internal (and, on Java 9 and later, not open to reflection). */
+  public void testInternalReceiverClasses() throws InterpreterException {
+    String[] inputs = { "java.util.List<String> l = java.util.Arrays.asList(\"a\", \"b\");",
+                        "java.util.List<String> m = new java.util.ArrayList<String>(l);",
+                        "String s = \"\";",
+                        "for (int i = 0; i < 3; i++) { s += l.iterator().next() + m.iterator().next() + l.size(); }",
+                        "s" };
+    assertEquals("aa2aa2aa2", interpret(Options.DEFAULT, inputs));
+    assertEquals(interpret(UNCACHED_OPTIONS, inputs), interpret(Options.DEFAULT, inputs));
+  }
+
+  public void testFieldsAndConstructors() throws InterpreterException {
+    String[] inputs = { "java.awt.Point p = new java.awt.Point(3, 4);", "int sum = 0;",
+                        "for (int i = 0; i < 5; i++) { sum += p.x * p.y + new java.awt.Point(i, i).x; }",
+                        "sum" };
+    assertEquals(interpret(UNCACHED_OPTIONS, inputs), interpret(Options.DEFAULT, inputs));
+    assertEquals(70, interpret(Options.DEFAULT, inputs));
+  }
+
+  public void testExceptions() throws InterpreterException {
+    try {
+      interpret(Options.DEFAULT, "for (int i = 0; i < 2; i++) { \"abc\".substring(i * 5); }");
+      fail("Expected an exception");
+    }
+    catch (EvaluatorException e) {
+      assertTrue(e.getCause() instanceof StringIndexOutOfBoundsException);
+      assertEquals("java.lang.String", e.getCause().getStackTrace()[0].getClassName());
+    }
+    try {
+      interpret(Options.DEFAULT, "String s = null;", "s.length()");
+      fail("Expected an exception");
+    }
+    catch (EvaluatorException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+
+}
@@ -53,11 +53,28 @@ public class ExpressionEvaluator extends AbstractVisitor<Object> implements Lamb
 
   @Override public Object visit(SimpleFieldAccess node) { return new LValueVisitor().visit(node).value(); }
   
-  @Override public Object visit(ObjectFieldAccess node) { return new LValueVisitor().visit(node).value(); }
+  @Override public Object visit(ObjectFieldAccess node) {
+    if (_options.cacheCallSites() && !hasTranslation(node)) {
+      Object receiver = value(node.getExpression());
+      return fieldValue(node, receiver, getField(node).boxForReceiver(receiver));
+    }
+    else { return new LValueVisitor().visit(node).value(); }
+  }
   
   @Override public Object visit(SuperFieldAccess node) { return new LValueVisitor().visit(node).value(); }
 
-  @Override public Object visit(StaticFieldAccess node) { return new LValueVisitor().visit(node).value(); }
+  @Override public Object visit(StaticFieldAccess node) {
+    if (_options.cacheCallSites()) { return fieldValue(node, null, getField(node).boxForReceiver(null)); }
+    else { return new LValueVisitor().visit(node).value(); }
+  }
+  
+  /** Read a field through its node's {@link CallSiteCache}, or through {@code box} if it cannot be cached. */
+  private Object fieldValue(Expression node, Object receiver, Box<Object> box) {
+    CallSiteCache cache = CallSiteCache.forField(node, getField(node), receiver);
+    if (cache == null) { return box.value(); }
+    try { return cache.invoke(receiver, IterUtil.empty()); }
+    catch (EvaluatorException e) { throw new WrappedException(e); }
+  }
   
   @Override public Object visit(ThisExpression node) {
     return _bindings.getThis(getDJClass(node));
@@ -89,7 +106,13 @@ public class ExpressionEvaluator extends AbstractVisitor<Object> implements Lamb
     if (node.getArguments() == null) { args = IterUtil.empty(); }
     else { args = IterUtil.mapSnapshot(node.getArguments(), this); }
 
-    try { return getMethod(node).evaluate(receiver, args, _bindings, _options); }
+    try {
+      if (_options.cacheCallSites()) {
+        CallSiteCache cache = CallSiteCache.forMethod(node, getMethod(node), receiver);
+        if (cache != null) { return cache.invoke(receiver, args); }
+      }
+      return getMethod(node).evaluate(receiver, args, _bindings, _options);
+    }
     catch (EvaluatorException e) { throw new WrappedException(e); }
   }
   
@@ -125,7 +148,13 @@ public class ExpressionEvaluator extends AbstractVisitor<Object> implements Lamb
     if (args == null) { argVals = IterUtil.empty(); }
     else { argVals = IterUtil.mapSnapshot(args, this); }
 
-    try { return getConstructor(node).evaluate(outerVal, argVals, _bindings, _options); }
+    try {
+      if (_options.cacheCallSites() && outerVal == null) {
+        CallSiteCache cache = CallSiteCache.forConstructor(node, getConstructor(node), IterUtil.sizeOf(argVals));
+        if (cache != null) { return cache.invoke(null, argVals); }
+      }
+      return getConstructor(node).evaluate(outerVal, argVals, _bindings, _options);
+    }
     catch (EvaluatorException e) { throw new WrappedException(e); }
   }
   
@@ -43,6 +43,10 @@ public class Interpreter {
     TypeContext tcResult = typeCheck(tree);
     debug.log("Static phase successful");
     Pair<RuntimeBindings, Option<Object>> evalResult = evaluate(tree);
+    if (_opt.cacheCallSites()) {
+      debug.logValues("Call site caches", new String[]{ "hits", "misses" },
+                      CallSiteCache.totalHits(), CallSiteCache.totalMisses());
+    }
     // We don't commit an environment change until evaluation has completed successfully.  This
     // helps to guarantee that _typeContext and _bindings are in sync.  Effects:
     // - If there's a static error in the entire tree, nothing runs.
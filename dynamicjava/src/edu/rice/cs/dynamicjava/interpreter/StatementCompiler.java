@@ -0,0 +1,1499 @@
+package edu.rice.cs.dynamicjava.interpreter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import edu.rice.cs.plt.lambda.Lambda2;
+import edu.rice.cs.plt.lambda.WrappedException;
+import edu.rice.cs.plt.tuple.Option;
+
+import koala.dynamicjava.tree.*;
+import koala.dynamicjava.tree.visitor.*;
+
+import edu.rice.cs.dynamicjava.Options;
+import edu.rice.cs.dynamicjava.symbol.ArrayLengthField;
+import edu.rice.cs.dynamicjava.symbol.DJField;
+import edu.rice.cs.dynamicjava.symbol.JavaClass;
+import edu.rice.cs.dynamicjava.symbol.LocalVariable;
+import edu.rice.cs.dynamicjava.symbol.TypeSystem;
+import edu.rice.cs.dynamicjava.symbol.type.Type;
+
+import static org.objectweb.asm.Opcodes.*;
+import static koala.dynamicjava.interpreter.NodeProperties.*;
+import static edu.rice.cs.plt.debug.DebugUtil.debug;
+
+/**
+ * Compiles checked loop statements to bytecode, as an alternative to walking their trees with the
+ * {@link StatementEvaluator} on every iteration.  Each loop becomes the body of a generated class
+ * implementing {@link Body}:
+ * <ul>
+ * <li>Variables declared outside the loop are read from the {@link RuntimeBindings} on entry and
+ *     kept in JVM locals.  Those that the loop assigns are written back on exit (normal or
+ *     exceptional), and all of them are synchronized around any call that might run interpreted
+ *     code.</li>
+ * <li>Variables declared inside the loop are JVM locals.</li>
+ * <li>Methods, constructors, and fields of public library classes are accessed directly.  Any
+ *     other expression is handed back to an {@link ExpressionEvaluator} at run time.</li>
+ * <li>If the loop contains a statement the compiler does not handle (a {@code try} or
+ *     {@code switch}, for example), or a jump out of the loop, it is interpreted as before.</li>
+ * </ul>
+ * The result of compilation is cached on the loop's node, so a loop nested in interpreted code
+ * (or in the body of an interpreted method) is compiled only once.
+ * <p>Generated classes are not defined by a {@link TreeClassLoader}.  The {@link TreeCompiler} only
+ * emits member stubs that call back into the interpreter, and a TreeClassLoader resolves names through
+ * its parent loaders, while compiled statements must link against exactly the classes the checker
+ * resolved, which may have been loaded by several different loaders.  So each generated class gets its
+ * own small loader, which maps the binary names the class refers to onto those classes.</p>
+ */
+public class StatementCompiler {
+
+  /** The name of every generated class (each is defined by its own {@link StatementClassLoader}). */
+  private static final String CLASS_NAME = "CompiledStatement";
+  private static final String OBJECT_NAME = org.objectweb.asm.Type.getInternalName(Object.class);
+  private static final String BODY_NAME = org.objectweb.asm.Type.getInternalName(Body.class);
+  private static final String BINDINGS_NAME = org.objectweb.asm.Type.getInternalName(RuntimeBindings.class);
+  private static final String RUN_DESCRIPTOR =
+    "(" + org.objectweb.asm.Type.getDescriptor(RuntimeBindings.class) + "[Ljava/lang/Object;)V";
+  private static final String GET_DESCRIPTOR =
+    "(" + org.objectweb.asm.Type.getDescriptor(LocalVariable.class) + ")Ljava/lang/Object;";
+  private static final String SET_DESCRIPTOR =
+    "(" + org.objectweb.asm.Type.getDescriptor(LocalVariable.class) + "Ljava/lang/Object;)V";
+  private static final String EVALUATE_DESCRIPTOR =
+    "(" + org.objectweb.asm.Type.getDescriptor(Expression.class) +
+    org.objectweb.asm.Type.getDescriptor(RuntimeBindings.class) +
+    org.objectweb.asm.Type.getDescriptor(Options.class) +
+    org.objectweb.asm.Type.getDescriptor(LocalVariable[].class) + "[Ljava/lang/Object;)Ljava/lang/Object;";
+
+  private static final int BINDINGS_SLOT = 1;
+  private static final int CONSTANTS_SLOT = 2;
+
+  /** Final classes whose methods, given only primitive or String arguments, cannot run interpreted code. */
+  private static final Set<Class<?>> PURE_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+    String.class, StringBuilder.class, Math.class, StrictMath.class, Boolean.class, Character.class,
+    Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class));
+
+  private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+  private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<Class<?>, Class<?>>();
+  static {
+    WRAPPERS.put(boolean.class, Boolean.class);
+    WRAPPERS.put(char.class, Character.class);
+    WRAPPERS.put(byte.class, Byte.class);
+    WRAPPERS.put(short.class, Short.class);
+    WRAPPERS.put(int.class, Integer.class);
+    WRAPPERS.put(long.class, Long.class);
+    WRAPPERS.put(float.class, Float.class);
+    WRAPPERS.put(double.class, Double.class);
+    for (Map.Entry<Class<?>, Class<?>> e : WRAPPERS.entrySet()) { PRIMITIVES.put(e.getValue(), e.getKey()); }
+  }
+
+  /**
+   * Get the compiled form of the given loop, compiling it if this has not yet been attempted.
+   * @return  The compiled statement, or "none" if the statement cannot be compiled.
+   */
+  public static Option<CompiledStatement> compile(Statement loop, Options opt) {
+    if (hasCompiledStatement(loop)) { return getCompiledStatement(loop); }
+    Option<CompiledStatement> result;
+    try {
+      result = Option.some(new StatementCompiler(opt).compileLoop(loop));
+    }
+    catch (UnsupportedException e) {
+      debug.logValue("Statement not compiled", e.getMessage());
+      result = Option.none();
+    }
+    catch (LinkageError e) {
+      // the generated class could not be verified -- fall back to interpretation
+      debug.log(e);
+      result = Option.none();
+    }
+    return setCompiledStatement(loop, result);
+  }
+
+  /**
+   * Evaluate an expression that was not compiled.  Invoked by generated code, which passes the
+   * values of the variables declared in the compiled statement; any changes to those variables
+   * are recorded in {@code vals}.
+   */
+  public static Object evaluate(Expression exp, RuntimeBindings bindings, Options opt,
+                                LocalVariable[] vars, Object[] vals) {
+    RuntimeBindings b = bindings;
+    if (vars.length > 0) { b = new RuntimeBindings(bindings, Arrays.asList(vars), Arrays.asList(vals)); }
+    Object result = new ExpressionEvaluator(b, opt).value(exp);
+    for (int i = 0; i < vars.length; i++) { vals[i] = b.get(vars[i]); }
+    return result;
+  }
+
+
+  /** The interface implemented by generated classes.  Public so that generated code can refer to it. */
+  public static interface Body {
+    public void run(RuntimeBindings bindings, Object[] constants);
+  }
+
+  /** A compiled statement, ready to be run in any bindings that define its free variables. */
+  public static class CompiledStatement {
+    private final Body _body;
+    private final Object[] _constants;
+    private final String _frame;
+
+    private CompiledStatement(Body body, Object[] constants, String frame) {
+      _body = body;
+      _constants = constants;
+      _frame = frame;
+    }
+
+    /**
+     * Execute the statement.  As in the {@link StatementEvaluator}, exceptions are wrapped in
+     * {@link EvaluatorException}s, which are in turn wrapped in WrappedExceptions.
+     */
+    public void run(RuntimeBindings bindings) {
+      try { _body.run(bindings, _constants); }
+      catch (WrappedException e) {
+        // already wrapped by the interpreter (in an uncompiled expression)
+        if (e.getCause() instanceof InterpreterException) { throw e; }
+        else { throw new WrappedException(new EvaluatorException(e, _frame)); }
+      }
+      catch (Throwable t) { throw new WrappedException(new EvaluatorException(t, _frame)); }
+    }
+  }
+
+  /** Thrown during compilation when a statement cannot be compiled. */
+  private static class UnsupportedException extends RuntimeException {
+    private static final long serialVersionUID = -4436203372391859524L;
+    public UnsupportedException(String message) { super(message); }
+  }
+
+  /**
+   * Loads a generated class, resolving each class it refers to as the interpreter did.  Each loader
+   * defines a single class, so every generated class can have the same name.
+   */
+  private static class StatementClassLoader extends ClassLoader {
+    private final Map<String, Class<?>> _classes;
+    public StatementClassLoader(Map<String, Class<?>> classes) {
+      super(StatementCompiler.class.getClassLoader());
+      _classes = classes;
+    }
+    public Class<?> define(String name, byte[] bytes) { return defineClass(name, bytes, 0, bytes.length); }
+    @Override protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      Class<?> result = _classes.get(name);
+      return (result == null) ? super.loadClass(name, resolve) : result;
+    }
+  }
+
+  /** The destination of a {@code break} or {@code continue} within the compiled statement. */
+  private static class JumpTarget {
+    public final Node node; // a ContinueTarget, or null for a labeled statement
+    public final String label; // label of a LabeledStatement, or null
+    public final Label breakLabel;
+    public final Label continueLabel; // null for a labeled statement
+    public JumpTarget(Node n, String l, Label breakL, Label continueL) {
+      node = n; label = l; breakLabel = breakL; continueLabel = continueL;
+    }
+  }
+
+
+  private final Options _opt;
+  private final TypeSystem _ts;
+  private final Map<String, Class<?>> _classes; // keys are binary names
+  private final List<Object> _constants;
+  private final Map<Object, Integer> _constantIndices;
+  private final Map<LocalVariable, Integer> _slots;
+  private final Set<LocalVariable> _free; // variables defined by the bindings
+  private final Set<LocalVariable> _assigned; // free variables assigned by compiled code
+  private final Set<LocalVariable> _declared; // variables declared in the statement
+  private final LinkedList<JumpTarget> _targets;
+  private final ExpressionCompiler _expressions;
+  private final StatementVisitor _statements;
+  private MethodVisitor _mv;
+  private boolean _firstPass;
+  private int _nextSlot;
+  private int _syncSlot; // -1 if there are no assigned free variables
+  private LocalVariable[] _declaredArray;
+
+  private StatementCompiler(Options opt) {
+    _opt = opt;
+    _ts = opt.typeSystem();
+    _classes = new HashMap<String, Class<?>>();
+    _constants = new ArrayList<Object>();
+    _constantIndices = new IdentityHashMap<Object, Integer>();
+    _slots = new HashMap<LocalVariable, Integer>();
+    _free = new LinkedHashSet<LocalVariable>();
+    _assigned = new LinkedHashSet<LocalVariable>();
+    _declared = new LinkedHashSet<LocalVariable>();
+    _targets = new LinkedList<JumpTarget>();
+    _expressions = new ExpressionCompiler();
+    _statements = new StatementVisitor();
+    for (Class<?> c : Arrays.<Class<?>>asList(Object.class, RuntimeBindings.class, LocalVariable.class,
+                                              Options.class, Expression.class, Body.class,
+                                              StatementCompiler.class)) {
+      _register(c);
+    }
+  }
+
+  /**
+   * Compile in two passes: the first (which discards its output) determines the variables the
+   * statement uses and whether it can be compiled at all; the second generates code.
+   */
+  private CompiledStatement compileLoop(Statement loop) {
+    _firstPass = true;
+    _mv = new MethodVisitor(ASM5) {};
+    _nextSlot = CONSTANTS_SLOT + 1;
+    _syncSlot = -1;
+    loop.acceptVisitor(_statements);
+
+    _firstPass = false;
+    _targets.clear();
+    _constants.clear();
+    _constantIndices.clear();
+    _declaredArray = _declared.toArray(new LocalVariable[_declared.size()]);
+
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null, OBJECT_NAME, new String[]{ BODY_NAME });
+    MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitMethodInsn(INVOKESPECIAL, OBJECT_NAME, "<init>", "()V", false);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    _mv = cw.visitMethod(ACC_PUBLIC, "run", RUN_DESCRIPTOR, null, null);
+    _mv.visitCode();
+    Label start = new Label();
+    Label end = new Label();
+    Label handler = new Label();
+    _mv.visitTryCatchBlock(start, end, handler, null);
+    if (!_assigned.isEmpty()) { _syncSlot = _nextSlot++; }
+    int exceptionSlot = _nextSlot++;
+    for (LocalVariable v : _free) { _reload(v); }
+    for (LocalVariable v : _declared) {
+      Class<?> c = _repr(v);
+      _pushDefault(c);
+      _store(c, _slots.get(v));
+    }
+    if (_syncSlot >= 0) { _mv.visitInsn(ICONST_0); _mv.visitVarInsn(ISTORE, _syncSlot); }
+
+    _mv.visitLabel(start);
+    loop.acceptVisitor(_statements);
+    for (LocalVariable v : _assigned) { _writeBack(v); }
+    _mv.visitInsn(RETURN);
+    _mv.visitLabel(end);
+
+    // On an exception, write back the assigned variables (unless they were written back before the
+    // call that threw the exception, in which case the bindings may hold newer values) and rethrow
+    _mv.visitLabel(handler);
+    _mv.visitVarInsn(ASTORE, exceptionSlot);
+    Label rethrow = new Label();
+    if (_syncSlot >= 0) {
+      _mv.visitVarInsn(ILOAD, _syncSlot);
+      _mv.visitJumpInsn(IFNE, rethrow);
+    }
+    for (LocalVariable v : _assigned) { _writeBack(v); }
+    _mv.visitLabel(rethrow);
+    _mv.visitVarInsn(ALOAD, exceptionSlot);
+    _mv.visitInsn(ATHROW);
+    _mv.visitMaxs(0, 0);
+    _mv.visitEnd();
+    cw.visitEnd();
+
+    Class<?> c = new StatementClassLoader(_classes).define(CLASS_NAME, cw.toByteArray());
+    Body body;
+    try { body = (Body) c.getDeclaredConstructor().newInstance(); }
+    catch (NoSuchMethodException e) { throw new RuntimeException(e); }
+    catch (InvocationTargetException e) { throw new RuntimeException(e); }
+    catch (InstantiationException e) { throw new RuntimeException(e); }
+    catch (IllegalAccessException e) { throw new RuntimeException(e); }
+    return new CompiledStatement(body, _constants.toArray(), CLASS_NAME + ".run");
+  }
+
+
+  /* * * STATEMENTS * * */
+
+  private class StatementVisitor extends AbstractVisitor<Void> {
+
+    @Override public Void defaultCase(Node node) {
+      throw new UnsupportedException(node.getClass().getSimpleName());
+    }
+
+    @Override public Void visit(EmptyStatement node) { return null; }
+
+    @Override public Void visit(BlockStatement node) {
+      for (Node n : node.getStatements()) { n.acceptVisitor(this); }
+      return null;
+    }
+
+    @Override public Void visit(ExpressionStatement node) {
+      if (hasStatementTranslation(node)) { getStatementTranslation(node).acceptVisitor(this); }
+      else { _pop(_value(node.getExpression())); }
+      return null;
+    }
+
+    @Override public Void visit(VariableDeclaration node) {
+      LocalVariable v = getVariable(node);
+      if (_firstPass) { _declared.add(v); }
+      int slot = _slot(v);
+      Class<?> c = _repr(v);
+      if (node.getInitializer() == null) { _pushDefault(c); }
+      else { _coerce(_value(node.getInitializer()), c); }
+      _store(c, slot);
+      return null;
+    }
+
+    @Override public Void visit(IfThenStatement node) {
+      Label end = new Label();
+      _branch(node.getCondition(), end, false);
+      node.getThenStatement().acceptVisitor(this);
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(IfThenElseStatement node) {
+      Label elseL = new Label();
+      Label end = new Label();
+      _branch(node.getCondition(), elseL, false);
+      node.getThenStatement().acceptVisitor(this);
+      _mv.visitJumpInsn(GOTO, end);
+      _mv.visitLabel(elseL);
+      node.getElseStatement().acceptVisitor(this);
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(WhileStatement node) {
+      Label body = new Label();
+      Label test = new Label();
+      Label end = new Label();
+      _mv.visitJumpInsn(GOTO, test);
+      _mv.visitLabel(body);
+      _loopBody(node, node.getBody(), end, test);
+      _mv.visitLabel(test);
+      _branch(node.getCondition(), body, true);
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(DoStatement node) {
+      Label body = new Label();
+      Label test = new Label();
+      Label end = new Label();
+      _mv.visitLabel(body);
+      _loopBody(node, node.getBody(), end, test);
+      _mv.visitLabel(test);
+      _branch(node.getCondition(), body, true);
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(ForStatement node) {
+      if (node.getInitialization() != null) {
+        for (Node n : node.getInitialization()) { n.acceptVisitor(this); }
+      }
+      Label body = new Label();
+      Label update = new Label();
+      Label test = new Label();
+      Label end = new Label();
+      _mv.visitJumpInsn(GOTO, test);
+      _mv.visitLabel(body);
+      _loopBody(node, node.getBody(), end, update);
+      _mv.visitLabel(update);
+      if (node.getUpdate() != null) {
+        for (Node n : node.getUpdate()) { n.acceptVisitor(this); }
+      }
+      _mv.visitLabel(test);
+      if (node.getCondition() == null) { _mv.visitJumpInsn(GOTO, body); }
+      else { _branch(node.getCondition(), body, true); }
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(ForEachStatement node) {
+      LocalVariable param = getVariable(node.getParameter());
+      if (_firstPass) { _declared.add(param); }
+      int paramSlot = _slot(param);
+      Class<?> paramClass = _repr(param);
+      Class<?> collClass = _staticClass(node.getCollection());
+      Label body = new Label();
+      Label next = new Label();
+      Label test = new Label();
+      Label end = new Label();
+      if (collClass != null && collClass.isArray() && _accessible(collClass)) {
+        Class<?> elementClass = collClass.getComponentType();
+        int array = _temp(1);
+        int length = _temp(1);
+        int index = _temp(1);
+        _coerce(_value(node.getCollection()), collClass);
+        _mv.visitVarInsn(ASTORE, array);
+        _mv.visitVarInsn(ALOAD, array);
+        _mv.visitInsn(ARRAYLENGTH);
+        _mv.visitVarInsn(ISTORE, length);
+        _mv.visitInsn(ICONST_0);
+        _mv.visitVarInsn(ISTORE, index);
+        _mv.visitJumpInsn(GOTO, test);
+        _mv.visitLabel(body);
+        _mv.visitVarInsn(ALOAD, array);
+        _mv.visitVarInsn(ILOAD, index);
+        _mv.visitInsn(_asmType(elementClass).getOpcode(IALOAD));
+        _store(_coerce(elementClass, paramClass), paramSlot);
+        _loopBody(node, node.getBody(), end, next);
+        _mv.visitLabel(next);
+        _mv.visitIincInsn(index, 1);
+        _mv.visitLabel(test);
+        _mv.visitVarInsn(ILOAD, index);
+        _mv.visitVarInsn(ILOAD, length);
+        _mv.visitJumpInsn(IF_ICMPLT, body);
+      }
+      else if (collClass != null && collClass.isArray()) {
+        throw new UnsupportedException("inaccessible array type");
+      }
+      else {
+        int iterator = _temp(1);
+        _coerce(_value(node.getCollection()), Iterable.class);
+        _invokeInterface(Iterable.class, "iterator", "()Ljava/util/Iterator;");
+        _mv.visitVarInsn(ASTORE, iterator);
+        _mv.visitJumpInsn(GOTO, test);
+        _mv.visitLabel(body);
+        _mv.visitVarInsn(ALOAD, iterator);
+        _invokeInterface(Iterator.class, "next", "()Ljava/lang/Object;");
+        _store(_coerce(Object.class, paramClass), paramSlot);
+        _loopBody(node, node.getBody(), end, next);
+        _mv.visitLabel(next);
+        _mv.visitLabel(test);
+        _mv.visitVarInsn(ALOAD, iterator);
+        _invokeInterface(Iterator.class, "hasNext", "()Z");
+        _mv.visitJumpInsn(IFNE, body);
+      }
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    private void _loopBody(Node loop, Node body, Label breakL, Label continueL) {
+      _targets.addFirst(new JumpTarget(loop, null, breakL, continueL));
+      body.acceptVisitor(this);
+      _targets.removeFirst();
+    }
+
+    @Override public Void visit(LabeledStatement node) {
+      Label end = new Label();
+      _targets.addFirst(new JumpTarget(null, node.getLabel(), end, null));
+      node.getStatement().acceptVisitor(this);
+      _targets.removeFirst();
+      _mv.visitLabel(end);
+      return null;
+    }
+
+    @Override public Void visit(BreakStatement node) {
+      String label = node.getLabel();
+      for (JumpTarget t : _targets) {
+        boolean matches;
+        if (label == null) { matches = (t.continueLabel != null); }
+        else if (t.node == null) { matches = label.equals(t.label); }
+        else { matches = ((ContinueTarget) t.node).hasLabel(label); }
+        if (matches) { _mv.visitJumpInsn(GOTO, t.breakLabel); return null; }
+      }
+      throw new UnsupportedException("break to an enclosing statement");
+    }
+
+    @Override public Void visit(ContinueStatement node) {
+      String label = node.getLabel();
+      for (JumpTarget t : _targets) {
+        if (t.continueLabel != null && (label == null || ((ContinueTarget) t.node).hasLabel(label))) {
+          _mv.visitJumpInsn(GOTO, t.continueLabel);
+          return null;
+        }
+      }
+      throw new UnsupportedException("continue to an enclosing statement");
+    }
+
+    @Override public Void visit(ThrowStatement node) {
+      _coerce(_value(node.getExpression()), Throwable.class);
+      _mv.visitInsn(ATHROW);
+      return null;
+    }
+
+  }
+
+
+  /* * * EXPRESSIONS * * */
+
+  /**
+   * Compile the given expression, leaving its value on the stack, with the same checks and conversions
+   * as {@link ExpressionEvaluator#value}.  If the expression has a primitive type, the result is a value
+   * of that type; otherwise, it is a reference of the returned class.
+   */
+  private Class<?> _value(Expression exp) {
+    Class<?> result;
+    if (hasValue(exp)) { result = _constant(getValue(exp)); }
+    else if (hasTranslation(exp)) { result = _value(getTranslation(exp)); }
+    else {
+      result = exp.acceptVisitor(_expressions);
+      if (result == null) { return _evaluate(exp); }
+    }
+    Class<?> expected = _staticClass(exp);
+    if (expected != null && result != void.class) {
+      if (expected.isPrimitive()) { result = _coerce(result, expected); }
+      else if (result.isPrimitive()) { result = _box(result); }
+    }
+    if (hasCheckedType(exp)) { result = _checkCast(result, getCheckedType(exp).value()); }
+    return result;
+  }
+
+  /**
+   * Compiles the nodes it handles directly, returning the class of the value left on the stack.
+   * Returns {@code null} <em>before generating any code</em> for an unsupported node.
+   */
+  private class ExpressionCompiler extends AbstractVisitor<Class<?>> {
+
+    @Override public Class<?> defaultCase(Node node) { return null; }
+
+    @Override public Class<?> visit(Literal node) { return _constant(node.getValue()); }
+
+    @Override public Class<?> visit(VariableAccess node) {
+      LocalVariable v = getVariable(node);
+      Class<?> c = _repr(v);
+      _load(c, _slot(v));
+      return c;
+    }
+
+    @Override public Class<?> visit(SimpleFieldAccess node) {
+      return hasDJClass(node) ? null : _staticField(getField(node));
+    }
+
+    @Override public Class<?> visit(StaticFieldAccess node) { return _staticField(getField(node)); }
+
+    @Override public Class<?> visit(ObjectFieldAccess node) {
+      DJField djf = getField(node);
+      Expression receiver = node.getExpression();
+      if (djf instanceof ArrayLengthField) {
+        Class<?> arrayClass = _staticClass(receiver);
+        if (arrayClass == null || !arrayClass.isArray() || !_accessible(arrayClass)) { return null; }
+        _coerce(_value(receiver), arrayClass);
+        _mv.visitInsn(ARRAYLENGTH);
+        return int.class;
+      }
+      Field f = JavaClass.fieldOf(djf);
+      if (f == null || !Modifier.isPublic(f.getModifiers())) { return null; }
+      if (Modifier.isStatic(f.getModifiers())) {
+        if (!_accessible(f.getDeclaringClass())) { return null; }
+        _pop(_value(receiver));
+        return _staticField(djf);
+      }
+      Class<?> owner = _owner(f.getDeclaringClass(), receiver);
+      if (owner == null) { return null; }
+      _coerce(_value(receiver), owner);
+      _mv.visitFieldInsn(GETFIELD, _internalName(owner), f.getName(), _descriptor(f.getType()));
+      return f.getType();
+    }
+
+    @Override public Class<?> visit(SimpleMethodCall node) {
+      return hasDJClass(node) ? null : _methodCall(node, null);
+    }
+
+    @Override public Class<?> visit(StaticMethodCall node) { return _methodCall(node, null); }
+
+    @Override public Class<?> visit(ObjectMethodCall node) { return _methodCall(node, node.getExpression()); }
+
+    @Override public Class<?> visit(SimpleAllocation node) {
+      if (hasEnclosingThis(node)) { return null; }
+      Constructor<?> k = JavaClass.constructorOf(getConstructor(node));
+      if (k == null || !Modifier.isPublic(k.getModifiers())) { return null; }
+      Class<?> c = k.getDeclaringClass();
+      int mods = c.getModifiers();
+      if (!_accessible(c) || Modifier.isAbstract(mods) || (c.getDeclaringClass() != null && !Modifier.isStatic(mods))) {
+        return null;
+      }
+      List<Expression> args = _checkArguments(node.getArguments(), k.getParameterTypes());
+      if (args == null) { return null; }
+      String name = _internalName(c);
+      _mv.visitTypeInsn(NEW, name);
+      _mv.visitInsn(DUP);
+      _arguments(args, k.getParameterTypes());
+      _syncOut();
+      _mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", org.objectweb.asm.Type.getConstructorDescriptor(k), false);
+      _syncIn();
+      return c;
+    }
+
+    @Override public Class<?> visit(ArrayAllocation node) {
+      if (node.getInitialization() != null) { return node.getInitialization().acceptVisitor(this); }
+      Class<?> arrayClass = getErasedType(node).value();
+      if (!_accessible(arrayClass)) { return null; }
+      List<Expression> sizes = node.getSizes();
+      for (Expression size : sizes) { _coerce(_value(size), int.class); }
+      if (sizes.size() == 1) { _newArray(arrayClass.getComponentType()); }
+      else { _mv.visitMultiANewArrayInsn(_descriptor(arrayClass), sizes.size()); }
+      return arrayClass;
+    }
+
+    @Override public Class<?> visit(ArrayInitializer node) {
+      Class<?> arrayClass = getErasedType(node).value();
+      if (!_accessible(arrayClass)) { return null; }
+      Class<?> elementClass = arrayClass.getComponentType();
+      List<Expression> cells = node.getCells();
+      _pushInt(cells.size());
+      _newArray(elementClass);
+      int i = 0;
+      for (Expression cell : cells) {
+        _mv.visitInsn(DUP);
+        _pushInt(i++);
+        _coerce(_value(cell), elementClass);
+        _mv.visitInsn(_asmType(elementClass).getOpcode(IASTORE));
+      }
+      return arrayClass;
+    }
+
+    @Override public Class<?> visit(ArrayAccess node) {
+      Class<?> arrayClass = _staticClass(node.getExpression());
+      if (arrayClass == null || !arrayClass.isArray() || !_accessible(arrayClass)) { return null; }
+      Class<?> elementClass = arrayClass.getComponentType();
+      _coerce(_value(node.getExpression()), arrayClass);
+      _coerce(_value(node.getCellNumber()), int.class);
+      _mv.visitInsn(_asmType(elementClass).getOpcode(IALOAD));
+      return elementClass;
+    }
+
+    @Override public Class<?> visit(CastExpression node) {
+      // cast checks/conversions are handled by _value()
+      return _value(node.getExpression());
+    }
+
+    @Override public Class<?> visit(InstanceOfExpression node) {
+      Class<?> c = getErasedType(node.getReferenceType()).value();
+      if (!_accessible(c)) { return null; }
+      _coerce(_value(node.getExpression()), Object.class);
+      _mv.visitTypeInsn(INSTANCEOF, _internalName(c));
+      return boolean.class;
+    }
+
+    @Override public Class<?> visit(TypeExpression node) {
+      _loadConstant(getErasedType(node.getType()).value(), Class.class);
+      return Class.class;
+    }
+
+    @Override public Class<?> visit(ConditionalExpression node) {
+      Class<?> c = _staticClass(node);
+      if (c == null) { return null; }
+      if (!c.isPrimitive()) { c = Object.class; }
+      Label elseL = new Label();
+      Label end = new Label();
+      _branch(node.getConditionExpression(), elseL, false);
+      _coerce(_value(node.getIfTrueExpression()), c);
+      _mv.visitJumpInsn(GOTO, end);
+      _mv.visitLabel(elseL);
+      _coerce(_value(node.getIfFalseExpression()), c);
+      _mv.visitLabel(end);
+      return c;
+    }
+
+    @Override public Class<?> visit(NotExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(AndExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(OrExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(EqualExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(NotEqualExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(LessExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(LessOrEqualExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(GreaterExpression node) { return _booleanValue(node); }
+    @Override public Class<?> visit(GreaterOrEqualExpression node) { return _booleanValue(node); }
+
+    @Override public Class<?> visit(ComplementExpression node) {
+      Class<?> c = _staticClass(node.getExpression());
+      if (c != int.class && c != long.class) { return null; }
+      _value(node.getExpression());
+      if (c == int.class) { _mv.visitInsn(ICONST_M1); }
+      else { _mv.visitLdcInsn(-1L); }
+      _mv.visitInsn(_asmType(c).getOpcode(IXOR));
+      return c;
+    }
+
+    @Override public Class<?> visit(PlusExpression node) {
+      Class<?> c = _staticClass(node.getExpression());
+      if (!_isArithmetic(c)) { return null; }
+      return _value(node.getExpression());
+    }
+
+    @Override public Class<?> visit(MinusExpression node) {
+      Class<?> c = _staticClass(node.getExpression());
+      if (!_isArithmetic(c)) { return null; }
+      _value(node.getExpression());
+      _mv.visitInsn(_asmType(c).getOpcode(INEG));
+      return c;
+    }
+
+    @Override public Class<?> visit(AddExpression node) {
+      Lambda2<Object, Object, Object> op = getOperation(node);
+      if (op == ExpressionEvaluator.CONCATENATE) {
+        _stringValue(_value(node.getLeftExpression()));
+        _stringValue(_value(node.getRightExpression()));
+        _mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat",
+                            "(Ljava/lang/String;)Ljava/lang/String;", false);
+        return String.class;
+      }
+      else if (op == ExpressionEvaluator.ADD) { return _binary(node, IADD); }
+      else { return null; }
+    }
+
+    @Override public Class<?> visit(SubtractExpression node) { return _binary(node, ISUB); }
+    @Override public Class<?> visit(MultiplyExpression node) { return _binary(node, IMUL); }
+    @Override public Class<?> visit(DivideExpression node) { return _binary(node, IDIV); }
+    @Override public Class<?> visit(RemainderExpression node) { return _binary(node, IREM); }
+    @Override public Class<?> visit(BitAndExpression node) { return _binary(node, IAND); }
+    @Override public Class<?> visit(BitOrExpression node) { return _binary(node, IOR); }
+    @Override public Class<?> visit(ExclusiveOrExpression node) { return _binary(node, IXOR); }
+    @Override public Class<?> visit(ShiftLeftExpression node) { return _binary(node, ISHL); }
+    @Override public Class<?> visit(ShiftRightExpression node) { return _binary(node, ISHR); }
+    @Override public Class<?> visit(UnsignedShiftRightExpression node) { return _binary(node, IUSHR); }
+
+    @Override public Class<?> visit(SimpleAssignExpression node) {
+      LValue lv = _lvalue(node.getLeftExpression(), false);
+      if (lv == null) { return null; }
+      lv.pushContext();
+      Class<?> result = _coerce(_value(node.getRightExpression()), lv.type);
+      lv.dupValue(result);
+      lv.store();
+      return result;
+    }
+
+    @Override public Class<?> visit(AddAssignExpression node) {
+      Lambda2<Object, Object, Object> op = getOperation(node);
+      if (op == ExpressionEvaluator.CONCATENATE) { return _compoundAssign(node, -1); }
+      else if (op == ExpressionEvaluator.ADD) { return _compoundAssign(node, IADD); }
+      else { return null; }
+    }
+
+    @Override public Class<?> visit(SubtractAssignExpression node) { return _compoundAssign(node, ISUB); }
+    @Override public Class<?> visit(MultiplyAssignExpression node) { return _compoundAssign(node, IMUL); }
+    @Override public Class<?> visit(DivideAssignExpression node) { return _compoundAssign(node, IDIV); }
+    @Override public Class<?> visit(RemainderAssignExpression node) { return _compoundAssign(node, IREM); }
+    @Override public Class<?> visit(BitAndAssignExpression node) { return _compoundAssign(node, IAND); }
+    @Override public Class<?> visit(BitOrAssignExpression node) { return _compoundAssign(node, IOR); }
+    @Override public Class<?> visit(ExclusiveOrAssignExpression node) { return _compoundAssign(node, IXOR); }
+    @Override public Class<?> visit(ShiftLeftAssignExpression node) { return _compoundAssign(node, ISHL); }
+    @Override public Class<?> visit(ShiftRightAssignExpression node) { return _compoundAssign(node, ISHR); }
+    @Override public Class<?> visit(UnsignedShiftRightAssignExpression node) {
+      return _compoundAssign(node, IUSHR);
+    }
+
+    @Override public Class<?> visit(PostIncrement node) { return _increment(node, true, true); }
+    @Override public Class<?> visit(PreIncrement node) { return _increment(node, true, false); }
+    @Override public Class<?> visit(PostDecrement node) { return _increment(node, false, true); }
+    @Override public Class<?> visit(PreDecrement node) { return _increment(node, false, false); }
+
+  }
+
+  /** Evaluate an uncompiled expression with an {@link ExpressionEvaluator}. */
+  private Class<?> _evaluate(Expression exp) {
+    Class<?> expected = _staticClass(exp);
+    if (hasCheckedType(exp)) { expected = getCheckedType(exp).value(); }
+    int vals = _temp(1);
+    _pushInt(_declaredArray == null ? 0 : _declaredArray.length);
+    _mv.visitTypeInsn(ANEWARRAY, OBJECT_NAME);
+    _mv.visitVarInsn(ASTORE, vals);
+    int i = 0;
+    for (LocalVariable v : _declared) {
+      _mv.visitVarInsn(ALOAD, vals);
+      _pushInt(i++);
+      _coerce(_load(_repr(v), _slot(v)), Object.class);
+      _mv.visitInsn(AASTORE);
+    }
+    _syncOut();
+    _loadConstant(exp, Expression.class);
+    _mv.visitVarInsn(ALOAD, BINDINGS_SLOT);
+    _loadConstant(_opt, Options.class);
+    _loadConstant(_firstPass ? new LocalVariable[0] : _declaredArray, LocalVariable[].class);
+    _mv.visitVarInsn(ALOAD, vals);
+    _mv.visitMethodInsn(INVOKESTATIC, _internalName(StatementCompiler.class), "evaluate",
+                        EVALUATE_DESCRIPTOR, false);
+    i = 0;
+    for (LocalVariable v : _declared) {
+      _mv.visitVarInsn(ALOAD, vals);
+      _pushInt(i++);
+      _mv.visitInsn(AALOAD);
+      Class<?> c = _repr(v);
+      _store(_coerce(Object.class, c), _slot(v));
+    }
+    _syncIn();
+    if (expected == null) { return Object.class; }
+    else if (expected == void.class) { _mv.visitInsn(POP); return void.class; }
+    else if (expected.isPrimitive()) { return _coerce(Object.class, expected); }
+    else { return Object.class; }
+  }
+
+  private Class<?> _methodCall(MethodCall node, Expression receiver) {
+    Method m = JavaClass.methodOf(getMethod(node));
+    if (m == null || !Modifier.isPublic(m.getModifiers())) { return null; }
+    boolean isStatic = Modifier.isStatic(m.getModifiers());
+    Class<?> owner;
+    if (isStatic) {
+      owner = m.getDeclaringClass();
+      if (!_accessible(owner) || owner.isInterface()) { return null; }
+    }
+    else {
+      if (receiver == null) { return null; }
+      owner = _owner(m.getDeclaringClass(), receiver);
+      if (owner == null) { return null; }
+    }
+    Class<?>[] params = m.getParameterTypes();
+    List<Expression> args = _checkArguments(node.getArguments(), params);
+    if (args == null) { return null; }
+
+    if (receiver != null) {
+      Class<?> r = _value(receiver);
+      if (isStatic) { _pop(r); }
+      else { _coerce(r, owner); }
+    }
+    _arguments(args, params);
+    boolean pure = PURE_CLASSES.contains(owner);
+    for (Class<?> p : params) { pure &= (p.isPrimitive() || p.equals(String.class)); }
+    if (!pure) { _syncOut(); }
+    int opcode = isStatic ? INVOKESTATIC : owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+    _mv.visitMethodInsn(opcode, _internalName(owner), m.getName(), _methodDescriptor(m), owner.isInterface());
+    if (!pure) { _syncIn(); }
+    return m.getReturnType();
+  }
+
+  /**
+   * Check that the given arguments can be passed to parameters of the given types.
+   * @return  The argument list (never null if the arguments are compatible), or {@code null} if they are not.
+   */
+  private List<Expression> _checkArguments(List<Expression> args, Class<?>[] params) {
+    if (args == null) { args = Collections.emptyList(); }
+    if (args.size() != params.length) { return null; }
+    for (Class<?> p : params) { if (!_accessible(p)) { return null; } }
+    return args;
+  }
+
+  /** Push the given (previously checked) arguments, converted to the given parameter types. */
+  private void _arguments(List<Expression> args, Class<?>[] params) {
+    int i = 0;
+    for (Expression arg : args) { _coerce(_value(arg), params[i++]); }
+  }
+
+  private Class<?> _staticField(DJField djf) {
+    Field f = JavaClass.fieldOf(djf);
+    if (f == null || !Modifier.isPublic(f.getModifiers()) || !Modifier.isStatic(f.getModifiers()) ||
+        !_accessible(f.getDeclaringClass())) {
+      return null;
+    }
+    _mv.visitFieldInsn(GETSTATIC, _internalName(f.getDeclaringClass()), f.getName(), _descriptor(f.getType()));
+    return f.getType();
+  }
+
+  /**
+   * The class through which a member of {@code declaring} should be accessed on a value of the given
+   * expression, or {@code null} if there is no accessible choice.
+   */
+  private Class<?> _owner(Class<?> declaring, Expression receiver) {
+    if (_accessible(declaring)) { return declaring; }
+    Class<?> c = _staticClass(receiver);
+    if (c != null && !c.isPrimitive() && _accessible(c) && declaring.isAssignableFrom(c)) { return c; }
+    return null;
+  }
+
+  private Class<?> _binary(BinaryExpression node, int opcode) {
+    Class<?> left = _staticClass(node.getLeftExpression());
+    Class<?> right = _staticClass(node.getRightExpression());
+    if (!_binaryOperands(opcode, left, right)) { return null; }
+    _value(node.getLeftExpression());
+    _value(node.getRightExpression());
+    _binaryOp(opcode, left, right);
+    return left;
+  }
+
+  /** Whether the given (static) operand classes are supported by the given operation. */
+  private boolean _binaryOperands(int opcode, Class<?> left, Class<?> right) {
+    switch (opcode) {
+      case ISHL: case ISHR: case IUSHR:
+        return (left == int.class || left == long.class) && (right == int.class || right == long.class);
+      case IAND: case IOR: case IXOR:
+        return left == right && (left == boolean.class || left == int.class || left == long.class);
+      default:
+        return left == right && _isArithmetic(left);
+    }
+  }
+
+  private void _binaryOp(int opcode, Class<?> left, Class<?> right) {
+    if (right == long.class && (opcode == ISHL || opcode == ISHR || opcode == IUSHR)) { _mv.visitInsn(L2I); }
+    _mv.visitInsn(_asmType(left).getOpcode(opcode));
+  }
+
+  /** @param opcode  The (int) operation to perform, or -1 for string concatenation */
+  private Class<?> _compoundAssign(AssignExpression node, int opcode) {
+    LValue lv = _lvalue(node.getLeftExpression(), true);
+    if (lv == null) { return null; }
+    Expression left = getLeftExpression(node);
+    Expression right = node.getRightExpression();
+    Class<?> leftClass = _staticClass(left);
+    Class<?> rightClass = _staticClass(right);
+    if (opcode != -1 && !_binaryOperands(opcode, leftClass, rightClass)) { return null; }
+    lv.pushContext();
+    Class<?> result;
+    if (opcode == -1) {
+      _stringValue(_value(left));
+      _stringValue(_value(right));
+      _mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat",
+                          "(Ljava/lang/String;)Ljava/lang/String;", false);
+      result = String.class;
+    }
+    else {
+      _value(left);
+      _value(right);
+      _binaryOp(opcode, leftClass, rightClass);
+      result = leftClass;
+    }
+    result = _coerce(result, lv.type);
+    lv.dupValue(result);
+    lv.store();
+    return result;
+  }
+
+  private Class<?> _increment(UnaryExpression node, boolean increment, boolean post) {
+    LValue lv = _lvalue(node.getExpression(), true);
+    if (lv == null) { return null; }
+    Expression left = getLeftExpression(node);
+    Class<?> c = _staticClass(left);
+    if (c == null || !c.isPrimitive() || c == boolean.class) { return null; }
+    lv.pushContext();
+    _value(left);
+    if (post) { lv.dupValue(c); }
+    if (c == long.class) { _mv.visitInsn(LCONST_1); }
+    else if (c == float.class) { _mv.visitInsn(FCONST_1); }
+    else if (c == double.class) { _mv.visitInsn(DCONST_1); }
+    else { _mv.visitInsn(ICONST_1); }
+    _mv.visitInsn(_asmType(c).getOpcode(increment ? IADD : ISUB));
+    if (c == char.class) { _mv.visitInsn(I2C); }
+    else if (c == byte.class) { _mv.visitInsn(I2B); }
+    else if (c == short.class) { _mv.visitInsn(I2S); }
+    Class<?> result = _coerce(c, lv.type);
+    if (!post) { lv.dupValue(result); }
+    lv.store();
+    return post ? c : result;
+  }
+
+
+  /* * * CONDITIONS * * */
+
+  /** Compile a boolean expression by branching; the expression must be supported by {@link #_branchDirect}. */
+  private Class<?> _booleanValue(Expression exp) {
+    if (!_canBranchDirect(exp)) { return null; }
+    Label falseL = new Label();
+    Label end = new Label();
+    _branchDirect(exp, falseL, false);
+    _mv.visitInsn(ICONST_1);
+    _mv.visitJumpInsn(GOTO, end);
+    _mv.visitLabel(falseL);
+    _mv.visitInsn(ICONST_0);
+    _mv.visitLabel(end);
+    return boolean.class;
+  }
+
+  /** Jump to {@code target} iff the given boolean expression evaluates to {@code when}. */
+  private void _branch(Expression exp, Label target, boolean when) {
+    if (!hasValue(exp) && !hasTranslation(exp) && !hasConvertedType(exp) && !hasCheckedType(exp) &&
+        _canBranchDirect(exp)) {
+      _branchDirect(exp, target, when);
+    }
+    else {
+      _coerce(_value(exp), boolean.class);
+      _mv.visitJumpInsn(when ? IFNE : IFEQ, target);
+    }
+  }
+
+  private boolean _canBranchDirect(Expression exp) {
+    return exp instanceof NotExpression || exp instanceof AndExpression || exp instanceof OrExpression ||
+      _comparison(exp) != 0;
+  }
+
+  /** Branch on a logical operator or comparison, ignoring the node's own conversions (if any). */
+  private void _branchDirect(Expression exp, Label target, boolean when) {
+    if (exp instanceof NotExpression) {
+      _branch(((NotExpression) exp).getExpression(), target, !when);
+    }
+    else if (exp instanceof AndExpression || exp instanceof OrExpression) {
+      BinaryExpression b = (BinaryExpression) exp;
+      // for &&, a false left operand decides the result; for ||, a true one
+      boolean decisive = exp instanceof OrExpression;
+      if (when == decisive) {
+        _branch(b.getLeftExpression(), target, when);
+        _branch(b.getRightExpression(), target, when);
+      }
+      else {
+        Label skip = new Label();
+        _branch(b.getLeftExpression(), skip, decisive);
+        _branch(b.getRightExpression(), target, when);
+        _mv.visitLabel(skip);
+      }
+    }
+    else {
+      BinaryExpression b = (BinaryExpression) exp;
+      int condition = _comparison(exp);
+      Class<?> c = _staticClass(b.getLeftExpression());
+      _value(b.getLeftExpression());
+      _value(b.getRightExpression());
+      int jump = when ? condition : _negate(condition);
+      if (!c.isPrimitive()) {
+        _mv.visitJumpInsn(jump == IFEQ ? IF_ACMPEQ : IF_ACMPNE, target);
+      }
+      else if (c == long.class) {
+        _mv.visitInsn(LCMP);
+        _mv.visitJumpInsn(jump, target);
+      }
+      else if (c == float.class || c == double.class) {
+        // choose the comparison whose result for NaN makes the condition false
+        boolean nanIsGreater;
+        if (jump == IFGT || jump == IFGE) { nanIsGreater = !when; }
+        else if (jump == IFLT || jump == IFLE) { nanIsGreater = when; }
+        else { nanIsGreater = false; }
+        if (c == float.class) { _mv.visitInsn(nanIsGreater ? FCMPG : FCMPL); }
+        else { _mv.visitInsn(nanIsGreater ? DCMPG : DCMPL); }
+        _mv.visitJumpInsn(jump, target);
+      }
+      else {
+        _mv.visitJumpInsn(jump + (IF_ICMPEQ - IFEQ), target);
+      }
+    }
+  }
+
+  /**
+   * If the given expression is a supported comparison, the IF opcode (comparing with 0) corresponding
+   * to it; otherwise 0.
+   */
+  private int _comparison(Expression exp) {
+    int condition;
+    boolean equality = false;
+    if (exp instanceof LessExpression) { condition = IFLT; }
+    else if (exp instanceof LessOrEqualExpression) { condition = IFLE; }
+    else if (exp instanceof GreaterExpression) { condition = IFGT; }
+    else if (exp instanceof GreaterOrEqualExpression) { condition = IFGE; }
+    else if (exp instanceof EqualExpression) { condition = IFEQ; equality = true; }
+    else if (exp instanceof NotEqualExpression) { condition = IFNE; equality = true; }
+    else { return 0; }
+    BinaryExpression b = (BinaryExpression) exp;
+    Class<?> left = _staticClass(b.getLeftExpression());
+    Class<?> right = _staticClass(b.getRightExpression());
+    if (left == null || right == null) { return 0; }
+    if (equality) {
+      Lambda2<Object, Object, Object> op = getOperation(exp);
+      if (op == ExpressionEvaluator.OBJECT_EQUAL || op == ExpressionEvaluator.OBJECT_NOT_EQUAL) {
+        return (left.isPrimitive() || right.isPrimitive()) ? 0 : condition;
+      }
+      else if (op == ExpressionEvaluator.PRIMITIVE_EQUAL || op == ExpressionEvaluator.PRIMITIVE_NOT_EQUAL) {
+        return (left == right && left.isPrimitive()) ? condition : 0;
+      }
+      else { return 0; }
+    }
+    else { return (left == right && _isArithmetic(left)) ? condition : 0; }
+  }
+
+  private static int _negate(int condition) {
+    switch (condition) {
+      case IFEQ: return IFNE;
+      case IFNE: return IFEQ;
+      case IFLT: return IFGE;
+      case IFGE: return IFLT;
+      case IFGT: return IFLE;
+      case IFLE: return IFGT;
+      default: throw new IllegalArgumentException();
+    }
+  }
+
+
+  /* * * ASSIGNABLE EXPRESSIONS * * */
+
+  /** A compiled left-hand side of an assignment. */
+  private abstract class LValue {
+    /** The class of value stored */
+    public final Class<?> type;
+    /** The number of stack words pushed by {@link #pushContext} */
+    public final int contextSize;
+    protected LValue(Class<?> t, int size) { type = t; contextSize = size; }
+    /** Push the context needed to store a value (array and index, or receiver) */
+    public abstract void pushContext();
+    /** Store a value of class {@code type}, with the context below it on the stack */
+    public abstract void store();
+    /** Duplicate the value of class {@code c} at the top of the stack, placing it below the context */
+    public void dupValue(Class<?> c) {
+      boolean wide = (c == long.class || c == double.class);
+      switch (contextSize) {
+        case 0: _mv.visitInsn(wide ? DUP2 : DUP); break;
+        case 1: _mv.visitInsn(wide ? DUP2_X1 : DUP_X1); break;
+        default: _mv.visitInsn(wide ? DUP2_X2 : DUP_X2); break;
+      }
+    }
+  }
+
+  /**
+   * Compile the left-hand side of an assignment.
+   * @param pure  Whether subexpressions of {@code exp} must be free of side effects (because the value is
+   *              read by separately evaluating a left expression)
+   * @return  {@code null} if the expression is not supported
+   */
+  private LValue _lvalue(Expression exp, boolean pure) {
+    while (hasTranslation(exp)) { exp = getTranslation(exp); }
+    if (exp instanceof VariableAccess) {
+      final LocalVariable v = getVariable(exp);
+      final int slot = _slot(v);
+      if (_firstPass && _free.contains(v)) { _assigned.add(v); }
+      return new LValue(_repr(v), 0) {
+        public void pushContext() {}
+        public void store() { _store(type, slot); }
+      };
+    }
+    else if (exp instanceof ArrayAccess) {
+      final ArrayAccess access = (ArrayAccess) exp;
+      final Class<?> arrayClass = _staticClass(access.getExpression());
+      if (arrayClass == null || !arrayClass.isArray() || !_accessible(arrayClass)) { return null; }
+      if (pure && !(_isPure(access.getExpression()) && _isPure(access.getCellNumber()))) { return null; }
+      return new LValue(arrayClass.getComponentType(), 2) {
+        public void pushContext() {
+          _coerce(_value(access.getExpression()), arrayClass);
+          _coerce(_value(access.getCellNumber()), int.class);
+        }
+        public void store() { _mv.visitInsn(_asmType(type).getOpcode(IASTORE)); }
+      };
+    }
+    else if (exp instanceof StaticFieldAccess || exp instanceof SimpleFieldAccess ||
+             exp instanceof ObjectFieldAccess) {
+      if (exp instanceof SimpleFieldAccess && hasDJClass(exp)) { return null; }
+      final Field f = JavaClass.fieldOf(getField(exp));
+      if (f == null || !Modifier.isPublic(f.getModifiers()) || Modifier.isFinal(f.getModifiers()) ||
+          !_accessible(f.getType())) {
+        return null;
+      }
+      final Expression receiver = (exp instanceof ObjectFieldAccess) ? ((ObjectFieldAccess) exp).getExpression() : null;
+      if (Modifier.isStatic(f.getModifiers())) {
+        if (!_accessible(f.getDeclaringClass())) { return null; }
+        if (receiver != null && pure && !_isPure(receiver)) { return null; }
+        return new LValue(f.getType(), 0) {
+          public void pushContext() { if (receiver != null) { _pop(_value(receiver)); } }
+          public void store() {
+            _mv.visitFieldInsn(PUTSTATIC, _internalName(f.getDeclaringClass()), f.getName(), _descriptor(type));
+          }
+        };
+      }
+      else {
+        if (receiver == null || (pure && !_isPure(receiver))) { return null; }
+        final Class<?> owner = _owner(f.getDeclaringClass(), receiver);
+        if (owner == null) { return null; }
+        return new LValue(f.getType(), 1) {
+          public void pushContext() { _coerce(_value(receiver), owner); }
+          public void store() {
+            _mv.visitFieldInsn(PUTFIELD, _internalName(owner), f.getName(), _descriptor(type));
+          }
+        };
+      }
+    }
+    else { return null; }
+  }
+
+  /** Whether evaluating the expression twice is equivalent to evaluating it once. */
+  private boolean _isPure(Expression exp) {
+    if (hasValue(exp) || exp instanceof VariableAccess) { return true; }
+    else if (hasTranslation(exp)) { return _isPure(getTranslation(exp)); }
+    else { return false; }
+  }
+
+
+  /* * * VARIABLES * * */
+
+  /**
+   * The JVM local slot of the given variable.  During the first pass, variables that have not been
+   * declared are recorded as free variables.
+   */
+  private int _slot(LocalVariable v) {
+    Integer result = _slots.get(v);
+    if (result == null) {
+      if (!_firstPass) { throw new IllegalStateException("Unknown variable " + v); }
+      if (!_declared.contains(v)) { _free.add(v); }
+      result = _temp(_size(_repr(v)));
+      _slots.put(v, result);
+    }
+    return result;
+  }
+
+  /** The class used to hold the given variable's value: its primitive type, or Object. */
+  private Class<?> _repr(LocalVariable v) {
+    Class<?> c = _erase(v.type());
+    return (c != null && c.isPrimitive()) ? c : Object.class;
+  }
+
+  private int _temp(int size) {
+    int result = _nextSlot;
+    _nextSlot += size;
+    return result;
+  }
+
+  /** Load the value of a free variable from the bindings. */
+  private void _reload(LocalVariable v) {
+    _mv.visitVarInsn(ALOAD, BINDINGS_SLOT);
+    _loadConstant(v, LocalVariable.class);
+    _mv.visitMethodInsn(INVOKEVIRTUAL, BINDINGS_NAME, "get", GET_DESCRIPTOR, false);
+    Class<?> c = _repr(v);
+    _store(_coerce(Object.class, c), _slots.get(v));
+  }
+
+  /** Store the value of a free variable in the bindings. */
+  private void _writeBack(LocalVariable v) {
+    _mv.visitVarInsn(ALOAD, BINDINGS_SLOT);
+    _loadConstant(v, LocalVariable.class);
+    _coerce(_load(_repr(v), _slots.get(v)), Object.class);
+    _mv.visitMethodInsn(INVOKEVIRTUAL, BINDINGS_NAME, "set", SET_DESCRIPTOR, false);
+  }
+
+  /** Before a call that might run interpreted code, write back the variables it might read. */
+  private void _syncOut() {
+    if (_firstPass || _syncSlot < 0) { return; }
+    for (LocalVariable v : _assigned) { _writeBack(v); }
+    _mv.visitInsn(ICONST_1);
+    _mv.visitVarInsn(ISTORE, _syncSlot);
+  }
+
+  /** After a call that might run interpreted code, reload the variables it might have changed. */
+  private void _syncIn() {
+    if (_firstPass) { return; }
+    if (_syncSlot >= 0) {
+      _mv.visitInsn(ICONST_0);
+      _mv.visitVarInsn(ISTORE, _syncSlot);
+    }
+    for (LocalVariable v : _free) { _reload(v); }
+  }
+
+
+  /* * * BYTECODE UTILITIES * * */
+
+  /** Convert the value on the stack from class {@code from} to class {@code to}. */
+  private Class<?> _coerce(Class<?> from, Class<?> to) {
+    if (from == to) { return to; }
+    if (from == void.class || to == void.class) { throw new UnsupportedException("void value"); }
+    if (from.isPrimitive()) {
+      if (to.isPrimitive()) { _convert(from, to); return to; }
+      Class<?> toPrimitive = PRIMITIVES.get(to);
+      if (toPrimitive != null && toPrimitive != from) { _convert(from, toPrimitive); from = toPrimitive; }
+      Class<?> wrapper = _box(from);
+      if (to.isAssignableFrom(wrapper)) { return wrapper; }
+      else { throw new UnsupportedException("boxing " + from + " to " + to); }
+    }
+    else if (to.isPrimitive()) {
+      Class<?> fromPrimitive = PRIMITIVES.get(from);
+      if (fromPrimitive == null) {
+        fromPrimitive = to;
+        _checkCast(from, WRAPPERS.get(to));
+      }
+      _unbox(fromPrimitive);
+      _convert(fromPrimitive, to);
+      return to;
+    }
+    else { return _checkCast(from, to); }
+  }
+
+  /** Cast the reference on the stack to class {@code to}, if necessary. */
+  private Class<?> _checkCast(Class<?> from, Class<?> to) {
+    if (from.isPrimitive()) { from = _box(from); }
+    if (to.isAssignableFrom(from)) { return from; }
+    else if (_accessible(to)) {
+      _mv.visitTypeInsn(CHECKCAST, _internalName(to));
+      return to;
+    }
+    else {
+      // an inaccessible class must be checked reflectively
+      _loadConstant(to, Class.class);
+      _mv.visitInsn(SWAP);
+      _mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "cast", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+      return Object.class;
+    }
+  }
+
+  /** Primitive widening or narrowing conversion. */
+  private void _convert(Class<?> from, Class<?> to) {
+    if (from == to) { return; }
+    if (from == boolean.class || to == boolean.class) { throw new UnsupportedException("boolean conversion"); }
+    int fromSort = _asmType(from).getOpcode(IADD);
+    int toSort = _asmType(to).getOpcode(IADD);
+    if (fromSort != toSort) {
+      int[] ops;
+      switch (fromSort) {
+        case IADD: ops = new int[]{ 0, I2L, I2F, I2D }; break;
+        case LADD: ops = new int[]{ L2I, 0, L2F, L2D }; break;
+        case FADD: ops = new int[]{ F2I, F2L, 0, F2D }; break;
+        default: ops = new int[]{ D2I, D2L, D2F, 0 }; break;
+      }
+      _mv.visitInsn(ops[toSort - IADD]);
+    }
+    if (to == char.class) { _mv.visitInsn(I2C); }
+    else if (to == byte.class) { _mv.visitInsn(I2B); }
+    else if (to == short.class) { _mv.visitInsn(I2S); }
+  }
+
+  private Class<?> _box(Class<?> primitive) {
+    Class<?> wrapper = WRAPPERS.get(primitive);
+    String name = _internalName(wrapper);
+    _mv.visitMethodInsn(INVOKESTATIC, name, "valueOf",
+                        "(" + _descriptor(primitive) + ")" + _descriptor(wrapper), false);
+    return wrapper;
+  }
+
+  private void _unbox(Class<?> primitive) {
+    _mv.visitMethodInsn(INVOKEVIRTUAL, _internalName(WRAPPERS.get(primitive)), primitive.getName() + "Value",
+                        "()" + _descriptor(primitive), false);
+  }
+
+  /** Convert the value on the stack to a String, as string concatenation does. */
+  private void _stringValue(Class<?> c) {
+    if (c == String.class || (c.isPrimitive() && c != void.class) || PURE_CLASSES.contains(c)) {
+      String arg;
+      if (c == byte.class || c == short.class) { arg = "I"; }
+      else if (c.isPrimitive()) { arg = _descriptor(c); }
+      else { arg = "Ljava/lang/Object;"; }
+      _mv.visitMethodInsn(INVOKESTATIC, "java/lang/String", "valueOf", "(" + arg + ")Ljava/lang/String;", false);
+    }
+    else {
+      // toString() may be interpreted code
+      _coerce(c, Object.class);
+      _syncOut();
+      _mv.visitMethodInsn(INVOKESTATIC, "java/lang/String", "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;",
+                          false);
+      _syncIn();
+    }
+  }
+
+  private void _invokeInterface(Class<?> c, String name, String descriptor) {
+    _syncOut();
+    _mv.visitMethodInsn(INVOKEINTERFACE, _internalName(c), name, descriptor, true);
+    _syncIn();
+  }
+
+  /** Push a constant value, returning its class (a primitive for boxed primitive values). */
+  private Class<?> _constant(Object val) {
+    if (val == null) { _mv.visitInsn(ACONST_NULL); return Object.class; }
+    else if (val instanceof String) { _mv.visitLdcInsn(val); return String.class; }
+    else if (val instanceof Boolean) { _pushInt(((Boolean) val) ? 1 : 0); return boolean.class; }
+    else if (val instanceof Character) { _pushInt((Character) val); return char.class; }
+    else if (val instanceof Byte) { _pushInt((Byte) val); return byte.class; }
+    else if (val instanceof Short) { _pushInt((Short) val); return short.class; }
+    else if (val instanceof Integer) { _pushInt((Integer) val); return int.class; }
+    else if (val instanceof Long) { _mv.visitLdcInsn(val); return long.class; }
+    else if (val instanceof Float) { _mv.visitLdcInsn(val); return float.class; }
+    else if (val instanceof Double) { _mv.visitLdcInsn(val); return double.class; }
+    else { _loadConstant(val, Object.class); return Object.class; }
+  }
+
+  /** Push an object from the constants array, cast to the given (accessible) class. */
+  private void _loadConstant(Object val, Class<?> c) {
+    Integer index = _constantIndices.get(val);
+    if (index == null) {
+      index = _constants.size();
+      _constants.add(val);
+      _constantIndices.put(val, index);
+    }
+    _mv.visitVarInsn(ALOAD, CONSTANTS_SLOT);
+    _pushInt(index);
+    _mv.visitInsn(AALOAD);
+    if (!c.equals(Object.class)) { _mv.visitTypeInsn(CHECKCAST, _internalName(c)); }
+  }
+
+  private void _pushInt(int i) {
+    if (i >= -1 && i <= 5) { _mv.visitInsn(ICONST_0 + i); }
+    else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) { _mv.visitIntInsn(BIPUSH, i); }
+    else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) { _mv.visitIntInsn(SIPUSH, i); }
+    else { _mv.visitLdcInsn(i); }
+  }
+
+  private void _pushDefault(Class<?> c) {
+    if (!c.isPrimitive()) { _mv.visitInsn(ACONST_NULL); }
+    else if (c == long.class) { _mv.visitInsn(LCONST_0); }
+    else if (c == float.class) { _mv.visitInsn(FCONST_0); }
+    else if (c == double.class) { _mv.visitInsn(DCONST_0); }
+    else { _mv.visitInsn(ICONST_0); }
+  }
+
+  private void _newArray(Class<?> elementClass) {
+    if (elementClass.isPrimitive()) {
+      int type;
+      if (elementClass == boolean.class) { type = T_BOOLEAN; }
+      else if (elementClass == char.class) { type = T_CHAR; }
+      else if (elementClass == byte.class) { type = T_BYTE; }
+      else if (elementClass == short.class) { type = T_SHORT; }
+      else if (elementClass == int.class) { type = T_INT; }
+      else if (elementClass == long.class) { type = T_LONG; }
+      else if (elementClass == float.class) { type = T_FLOAT; }
+      else { type = T_DOUBLE; }
+      _mv.visitIntInsn(NEWARRAY, type);
+    }
+    else { _mv.visitTypeInsn(ANEWARRAY, _internalName(elementClass)); }
+  }
+
+  private Class<?> _load(Class<?> c, int slot) {
+    _mv.visitVarInsn(_asmType(c).getOpcode(ILOAD), slot);
+    return c;
+  }
+
+  private void _store(Class<?> c, int slot) {
+    _mv.visitVarInsn(_asmType(c).getOpcode(ISTORE), slot);
+  }
+
+  private void _pop(Class<?> c) {
+    if (c == long.class || c == double.class) { _mv.visitInsn(POP2); }
+    else if (c != void.class) { _mv.visitInsn(POP); }
+  }
+
+  private static int _size(Class<?> c) { return (c == long.class || c == double.class) ? 2 : 1; }
+
+  private static boolean _isArithmetic(Class<?> c) {
+    return c == int.class || c == long.class || c == float.class || c == double.class;
+  }
+
+  /**
+   * The erased class of the expression's value: its converted type, if any, or the erasure of its type.
+   * {@code null} if the class cannot be determined.
+   */
+  private Class<?> _staticClass(Expression exp) {
+    if (hasConvertedType(exp)) { return getConvertedType(exp).value(); }
+    else if (hasType(exp)) { return _erase(getType(exp)); }
+    else { return null; }
+  }
+
+  private Class<?> _erase(Type t) {
+    try { return _ts.erasedClass(t).value(); }
+    catch (RuntimeException e) { return null; }
+  }
+
+  /** Whether generated code (in its own class loader and package) can refer to the given class. */
+  private static boolean _accessible(Class<?> c) {
+    while (c.isArray()) { c = c.getComponentType(); }
+    if (c.isPrimitive()) { return true; }
+    if (!Modifier.isPublic(c.getModifiers())) { return false; }
+    Class<?> outer = c.getDeclaringClass();
+    return outer == null || _accessible(outer);
+  }
+
+  /** Record that generated code refers to the given class, which must resolve to this class object. */
+  private void _register(Class<?> c) {
+    while (c.isArray()) { c = c.getComponentType(); }
+    if (c.isPrimitive()) { return; }
+    Class<?> prev = _classes.put(c.getName(), c);
+    if (prev != null && prev != c) { throw new UnsupportedException("conflicting classes named " + c.getName()); }
+  }
+
+  private String _internalName(Class<?> c) {
+    _register(c);
+    return org.objectweb.asm.Type.getInternalName(c);
+  }
+
+  private String _descriptor(Class<?> c) {
+    _register(c);
+    return org.objectweb.asm.Type.getDescriptor(c);
+  }
+
+  private String _methodDescriptor(Method m) {
+    for (Class<?> c : m.getParameterTypes()) { _register(c); }
+    _register(m.getReturnType());
+    return org.objectweb.asm.Type.getMethodDescriptor(m);
+  }
+
+  private static org.objectweb.asm.Type _asmType(Class<?> c) { return org.objectweb.asm.Type.getType(c); }
+
+}
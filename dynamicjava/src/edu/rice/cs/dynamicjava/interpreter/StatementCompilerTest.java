@@ -0,0 +1,147 @@
+package edu.rice.cs.dynamicjava.interpreter;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+import edu.rice.cs.plt.tuple.Option;
+
+import koala.dynamicjava.parser.wrapper.JavaCCParser;
+import koala.dynamicjava.tree.Node;
+import koala.dynamicjava.tree.visitor.DepthFirstVisitor;
+import edu.rice.cs.dynamicjava.Options;
+
+import static koala.dynamicjava.interpreter.NodeProperties.*;
+
+/**
+ * Checks that loops run through the {@link StatementCompiler} produce the same results as interpreted
+ * loops.  {@link #main} compares the running times of the two.
+ */
+public class StatementCompilerTest extends TestCase {
+
+  private static final Options COMPILED_OPTIONS = new Options() {
+    @Override public boolean compileStatements() { return true; }
+  };
+
+  /**
+   * Interpret each of the given inputs in a fresh interpreter, first with and then without compilation.
+   * Asserts that the results match and that at least one statement was compiled; returns the result
+   * of the last input.
+   */
+  private Object assertSameResult(String... inputs) throws InterpreterException {
+    Option<Object> expected = run(Options.DEFAULT, inputs);
+    // interpret the inputs as an Interpreter would, keeping the trees to look for compiled loops
+    TypeContext context = new ImportContext(StatementCompilerTest.class.getClassLoader(), COMPILED_OPTIONS);
+    RuntimeBindings bindings = RuntimeBindings.EMPTY;
+    Option<Object> actual = Option.none();
+    final int[] compiled = { 0 };
+    DepthFirstVisitor counter = new DepthFirstVisitor() {
+      @Override public void run(Node n) {
+        if (hasCompiledStatement(n) && getCompiledStatement(n).isSome()) { compiled[0]++; }
+        super.run(n);
+      }
+    };
+    for (String input : inputs) {
+      List<Node> tree = new JavaCCParser(new StringReader(input), COMPILED_OPTIONS).parseStream();
+      context = new StatementChecker(context, COMPILED_OPTIONS).checkList(tree);
+      StatementEvaluator.Result r = new StatementEvaluator(bindings, COMPILED_OPTIONS).evaluateSequence(tree);
+      bindings = r.bindings();
+      actual = r.value();
+      for (Node n : tree) { counter.run(n); }
+    }
+    assertEquals(expected, actual);
+    assertTrue("Nothing was compiled", compiled[0] > 0);
+    return actual.isSome() ? actual.unwrap() : null;
+  }
+
+  private static Option<Object> run(Options opt, String... inputs) throws InterpreterException {
+    Interpreter interp = new Interpreter(opt);
+    Option<Object> result = Option.none();
+    for (String input : inputs) { result = interp.interpret(input); }
+    return result;
+  }
+
+  public void testArithmeticLoop() throws InterpreterException {
+    assertEquals(4950L, assertSameResult("long sum = 0;", "for (int i = 0; i < 100; i++) { sum += i; }", "sum"));
+    assertEquals(45.0, assertSameResult("double d = 0; int i = 0;", "while (i < 10) { d = d + i; i++; }", "d"));
+    assertEquals(1024, assertSameResult("int x = 1;", "do { x *= 2; } while (x < 1000);", "x"));
+  }
+
+  public void testStringConcatenation() throws InterpreterException {
+    assertEquals("0a1a2a", assertSameResult("String s = \"\";",
+                                            "for (int i = 0; i < 3; i++) { s += i + \"a\"; }", "s"));
+  }
+
+  public void testBreakAndContinue() throws InterpreterException {
+    assertEquals(12, assertSameResult("int count = 0;",
+                                      "outer: for (int i = 0; i < 10; i++) {\n" +
+                                      "  if (i % 2 == 0) continue;\n" +
+                                      "  for (int j = 0; j < 10; j++) {\n" +
+                                      "    if (j > i) continue outer;\n" +
+                                      "    if (i > 6) break outer;\n" +
+                                      "    count++;\n" +
+                                      "  }\n" +
+                                      "}",
+                                      "count"));
+  }
+
+  public void testForEach() throws InterpreterException {
+    assertEquals(15, assertSameResult("int[] a = { 1, 2, 3, 4, 5 }; int sum = 0;",
+                                      "for (int x : a) { sum += x; }", "sum"));
+    assertEquals("abc", assertSameResult("java.util.List<String> l = java.util.Arrays.asList(\"a\", \"b\", \"c\");",
+                                         "StringBuilder sb = new StringBuilder();",
+                                         "for (String s : l) { sb.append(s); }", "sb.toString()"));
+  }
+
+  public void testInterpretedCalls() throws InterpreterException {
+    // calls to interpreted methods are evaluated by the interpreter, and may see or change local variables
+    assertEquals(25, assertSameResult("int total = 0;", "int add(int x) { return x + 1; }",
+                                      "for (int i = 0; i < 5; i++) { total += add(i) + i; }", "total"));
+    assertEquals(8, assertSameResult("class Counter { int n; void inc() { n++; } }",
+                                     "Counter c = new Counter();",
+                                     "for (int i = 0; i < 8; i++) { c.inc(); }", "c.n"));
+  }
+
+  public void testExceptionInLoop() throws InterpreterException {
+    // variables assigned before the exception keep their values
+    assertEquals(5, assertSameResult("int k = 0;",
+                                     "try {\n" +
+                                     "  for (k = 0; k < 10; k++) { if (k == 5) { throw new RuntimeException(); } }\n" +
+                                     "}\n" +
+                                     "catch (RuntimeException e) {}",
+                                     "k"));
+    try {
+      run(COMPILED_OPTIONS, "int[] a = new int[3];", "for (int i = 0; i <= 3; i++) { a[i] = i; }");
+      fail("Expected an exception");
+    }
+    catch (EvaluatorException e) {
+      assertTrue(e.getCause() instanceof ArrayIndexOutOfBoundsException);
+    }
+  }
+
+
+  /** Compare the time taken to run some loop-heavy inputs with and without compilation. */
+  public static void main(String... args) throws InterpreterException {
+    String[][] benchmarks = {
+      { "long sum = 0;", "for (int i = 0; i < 2000000; i++) { sum += i % 7; }" },
+      { "int[] a = new int[100000];",
+        "for (int r = 0; r < 20; r++) { for (int i = 1; i < a.length; i++) { a[i] = a[i-1] + r; } }" },
+      { "StringBuilder sb = new StringBuilder();", "for (int i = 0; i < 200000; i++) { sb.append(Math.max(i, 3)); }" },
+      { "java.util.List<Integer> l = new java.util.ArrayList<Integer>(); int s = 0;",
+        "for (int i = 0; i < 200000; i++) { l.add(i); }", "for (int x : l) { s += x; }" }
+    };
+    for (String[] inputs : benchmarks) {
+      long interpreted = time(Options.DEFAULT, inputs);
+      long compiled = time(COMPILED_OPTIONS, inputs);
+      System.out.println(inputs[inputs.length-1]);
+      System.out.println("  interpreted: " + interpreted + "ms; compiled: " + compiled + "ms");
+    }
+  }
+
+  private static long time(Options opt, String... inputs) throws InterpreterException {
+    long start = System.currentTimeMillis();
+    run(opt, inputs);
+    return System.currentTimeMillis() - start;
+  }
+
+}
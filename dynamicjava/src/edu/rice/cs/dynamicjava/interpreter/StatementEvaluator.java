@@ -69,6 +69,22 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
   }
   
   
+  /**
+   * If the options allow it, run the compiled form of a loop (see {@link StatementCompiler}).
+   * @return  {@code true} if the loop was compiled and has run; {@code false} if it must be interpreted.
+   */
+  private boolean evaluateCompiled(Statement loop) {
+    if (_opt.compileStatements()) {
+      Option<StatementCompiler.CompiledStatement> compiled = StatementCompiler.compile(loop, _opt);
+      if (compiled.isSome()) {
+        compiled.unwrap().run(_bindings);
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  
   /* * * * * * * * * *
    * DECLARATIONS
    * * * * * * * * * */
@@ -112,6 +128,7 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
   }
 
   @Override public Result visit(WhileStatement node) {
+    if (evaluateCompiled(node)) { return new Result(_bindings); }
     ExpressionEvaluator eval = new ExpressionEvaluator(_bindings, _opt);
     try {
       while ((Boolean) eval.value(node.getCondition())) {
@@ -128,6 +145,7 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
   }
 
   @Override public Result visit(final ForEachStatement node) {
+    if (evaluateCompiled(node)) { return new Result(_bindings); }
     // We *could* create an equivalent expression and then evaluate that
     // expression (that was done in a previous implementation), but it is 
     // easier to just evaluate this directly
@@ -147,6 +165,13 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
         }
       };
     }
+    else if (iterable instanceof Iterable<?>) {
+      // a direct call avoids reflecting on the collection's class, which may be a JDK-internal class whose
+      // members cannot be made accessible (on Java 9 and later)
+      try { iter = ((Iterable<?>) iterable).iterator(); }
+      catch (RuntimeException e) { throw new WrappedException(new EvaluatorException(e)); }
+      catch (Error e) { throw new WrappedException(new EvaluatorException(e)); }
+    }
     else {
       try {
         Method getIterator = iterable.getClass().getMethod("iterator");
@@ -185,6 +210,7 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
   }
   
   @Override public Result visit(ForStatement node) {
+    if (evaluateCompiled(node)) { return new Result(_bindings); }
     RuntimeBindings newB = _bindings;
     if (node.getInitialization() != null) {
       newB = evaluateSequence(node.getInitialization()).bindings();
@@ -209,6 +235,7 @@ public class StatementEvaluator extends AbstractVisitor<StatementEvaluator.Resul
   }
 
   @Override public Result visit(DoStatement node) {
+    if (evaluateCompiled(node)) { return new Result(_bindings); }
     ExpressionEvaluator eval = new ExpressionEvaluator(_bindings, _opt);
     try {
       do {
@@ -30,6 +30,11 @@ public class TopLevelTest {
     "java5/ExplicitGenericMethods.jlbench"
   };
   
+  /** Options that run loops through the {@link StatementCompiler}. */
+  private static final Options COMPILED_OPTIONS = new Options() {
+    @Override public boolean compileStatements() { return true; }
+  };
+  
   public static Test suite() throws IOException {
     Iterable<String> excludes = IterUtil.asIterable(notYetSupported);
     ZipFile jlbenchJar = new ZipFile("lib/buildlib/jlbench-base.jar");
@@ -40,7 +45,8 @@ public class TopLevelTest {
     
     TestSuite result = new TestSuite();
     for (Benchmark b : IterUtil.collapse(benchmarks)) {
-      result.addTest(new JLBenchTestWrapper(b, Options.DEFAULT));
+      result.addTest(new JLBenchTestWrapper(b, Options.DEFAULT, ""));
+      result.addTest(new JLBenchTestWrapper(b, COMPILED_OPTIONS, " (compiled)"));
     }
     return result;
   }
@@ -48,8 +54,9 @@ public class TopLevelTest {
   private static class JLBenchTestWrapper implements Test {
     private final Benchmark _b;
     private final Options _opt;
+    private final String _suffix;
     
-    public JLBenchTestWrapper(Benchmark b, Options opt) { _b = b; _opt = opt; }
+    public JLBenchTestWrapper(Benchmark b, Options opt, String suffix) { _b = b; _opt = opt; _suffix = suffix; }
     
     public int countTestCases() { return _b.numberOfTests(); }
     
@@ -72,7 +79,7 @@ public class TopLevelTest {
       finally { result.endTest(this); }
     }
     
-    public String toString() { return "<" + _b.name() + ">"; }
+    public String toString() { return "<" + _b.name() + _suffix + ">"; }
     
     private void turnOffLogging(TestResult result) {
       try {
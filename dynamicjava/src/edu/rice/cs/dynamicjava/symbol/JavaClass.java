@@ -120,7 +120,30 @@ public class JavaClass implements DJClass {
   }
   
   public int hashCode() { return (getClass().hashCode() << 1) ^ _c.hashCode(); }
-  
+
+  /**
+   * The reflection object underlying the given method's declaration, or {@code null} if the method
+   * is not a JavaMethod.  Allows generated bytecode to invoke the method directly.
+   */
+  public static Method methodOf(DJMethod m) {
+    DJMethod declared = m.declaredSignature();
+    return (declared instanceof JavaMethod) ? ((JavaMethod) declared)._m : null;
+  }
+
+  /** The reflection object underlying the given field, or {@code null} if the field is not a JavaField. */
+  public static Field fieldOf(DJField f) {
+    return (f instanceof JavaField) ? ((JavaField) f)._f : null;
+  }
+
+  /**
+   * The reflection object underlying the given constructor's declaration, or {@code null} if the
+   * constructor is not a JavaConstructor.
+   */
+  public static Constructor<?> constructorOf(DJConstructor k) {
+    DJConstructor declared = k.declaredSignature();
+    return (declared instanceof JavaConstructor) ? ((JavaConstructor) declared)._k : null;
+  }
+
   /** Convert a class object to a type */
   private static Type classAsType(Class<?> c) {
     if (c.isPrimitive()) { return SymbolUtil.typeOfPrimitiveClass(c); }
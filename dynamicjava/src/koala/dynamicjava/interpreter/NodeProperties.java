@@ -32,12 +32,15 @@ import koala.dynamicjava.interpreter.error.ExecutionError;
 import koala.dynamicjava.tree.Node;
 import koala.dynamicjava.tree.Expression;
 import edu.rice.cs.dynamicjava.interpreter.TypeContext;
+import edu.rice.cs.dynamicjava.interpreter.CallSiteCache;
+import edu.rice.cs.dynamicjava.interpreter.StatementCompiler;
 import edu.rice.cs.dynamicjava.symbol.*;
 import edu.rice.cs.dynamicjava.symbol.type.Type;
 import edu.rice.cs.dynamicjava.symbol.type.VariableType;
 import edu.rice.cs.plt.lambda.Thunk;
 import edu.rice.cs.plt.lambda.Lambda;
 import edu.rice.cs.plt.lambda.Lambda2;
+import edu.rice.cs.plt.tuple.Option;
 
 /**
  * This class provides concrete methods to facilitate attaching and reading auxiliary properties
@@ -450,6 +453,45 @@ public class NodeProperties {
       return n.hasProperty(OPERATION);
     }
 
+    /**
+     * An Option<StatementCompiler.CompiledStatement> -- the bytecode-compiled form of a statement,
+     * or "none" if the statement could not be compiled
+     */
+    public final static String COMPILED_STATEMENT = "compiledStatement";
+
+    @SuppressWarnings("unchecked")
+    public static Option<StatementCompiler.CompiledStatement> getCompiledStatement(Node n) {
+      return (Option<StatementCompiler.CompiledStatement>) n.getProperty(COMPILED_STATEMENT);
+    }
+
+    public static Option<StatementCompiler.CompiledStatement>
+      setCompiledStatement(Node n, Option<StatementCompiler.CompiledStatement> c) {
+      n.setProperty(COMPILED_STATEMENT, c);
+      return c;
+    }
+
+    public static boolean hasCompiledStatement(Node n) {
+      return n.hasProperty(COMPILED_STATEMENT);
+    }
+
+    /**
+     * A CallSiteCache -- the method handle bound to a method call, allocation, or field access
+     */
+    public final static String CALL_SITE_CACHE = "callSiteCache";
+
+    public static CallSiteCache getCallSiteCache(Node n) {
+      return (CallSiteCache) n.getProperty(CALL_SITE_CACHE);
+    }
+
+    public static CallSiteCache setCallSiteCache(Node n, CallSiteCache c) {
+      n.setProperty(CALL_SITE_CACHE, c);
+      return c;
+    }
+
+    public static boolean hasCallSiteCache(Node n) {
+      return n.hasProperty(CALL_SITE_CACHE);
+    }
+
     /**
      * This class contains only static method and constants,
      * so it is not useful to create instances of it.
@@ -42,6 +42,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.Collections;
 
 // Uses JDK 1.7.0 tools classes
 import javax.tools.JavaFileObject;
@@ -67,6 +68,9 @@ import static edu.rice.cs.plt.debug.DebugUtil.error;
  */
 public class Javac170Compiler extends JavacCompiler { // Javac170FilteringCompiler {
   
+  /** The warm compiler service used when CompilerOptions.useWarmCompiler() holds; created on demand. */
+  private volatile Javac170CompilerDaemon _daemon = null;
+  
   public Javac170Compiler(JavaVersion.FullVersion version, String location, List<? extends File> defaultBootClassPath) {
     super(version, location, defaultBootClassPath);
   }
@@ -115,7 +119,12 @@ public class Javac170Compiler extends JavacCompiler { // Javac170FilteringCompil
       "sourceVersion", "showWarnings" },
                     this, files, classPath, sourcePath, destination, bootClassPath, sourceVersion, showWarnings);
 
-    Iterable<String> options = _createOptions(classPath, sourcePath, destination, bootClassPath, sourceVersion, showWarnings);
+    boolean warm = CompilerOptions.useWarmCompiler();
+    if (! warm && _daemon != null) { _daemon.close(); _daemon = null; }
+    
+    // The daemon serves the class path itself, so it must not appear in the options
+    List<String> options = _createOptions(warm ? null : classPath, sourcePath, destination, bootClassPath, 
+                                          sourceVersion, showWarnings);
     LinkedList<DJError> errors = new LinkedList<DJError>();
 
     // This is the class that javax.tools.ToolProvider.getSystemJavaCompiler() uses.
@@ -142,14 +151,21 @@ public class Javac170Compiler extends JavacCompiler { // Javac170FilteringCompil
       return errors;
     }
     
-    /** Default FileManager provided by Context class */
     DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
-    StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);    
-    Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(files);
     
     try {
-//      System.err.println("Calling '" + compiler + "' with options " + options);
-      compiler.getTask(null, fileManager, diagnostics, options, null, fileObjects).call();
+      if (warm) {
+        if (_daemon == null) _daemon = new Javac170CompilerDaemon(compiler);
+        _daemon.compile(files, classPath, options, diagnostics);
+      }
+      else {
+        /** Default FileManager provided by Context class */
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);    
+        Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(files);
+//        System.err.println("Calling '" + compiler + "' with options " + options);
+        compiler.getTask(null, fileManager, diagnostics, options, null, fileObjects).call();
+        fileManager.close();
+      }
       for (Diagnostic<? extends JavaFileObject> d: diagnostics.getDiagnostics()) {
         Diagnostic.Kind dt = d.getKind();
         boolean isWarning = false;  // init required by javac
@@ -177,7 +193,6 @@ public class Javac170Compiler extends JavacCompiler { // Javac170FilteringCompil
           errors.add(new DJError(d.getMessage(null), isWarning));
         }
       }
-      fileManager.close();
     }
     catch(Throwable t) {  // compiler threw an exception/error (typically out of memory error)
       errors.addFirst(new DJError("Compile exception: " + t, false));
@@ -188,7 +203,15 @@ public class Javac170Compiler extends JavacCompiler { // Javac170FilteringCompil
     return errors;
   }
   
-  private Iterable<String> _createOptions(List<? extends File> classPath, List<? extends File> sourcePath, File destination, 
+  /** @return the time in nanoseconds spent in each phase (parse, enter, analyze, generate) of the last compile done 
+    * by the warm compiler, or an empty map if the warm compiler is not in use */
+  public Map<String, Long> getLastPhaseTimes() {
+    Javac170CompilerDaemon daemon = _daemon;
+    if (daemon == null) return Collections.emptyMap();
+    return daemon.getLastPhaseTimes();
+  }
+  
+  private List<String> _createOptions(List<? extends File> classPath, List<? extends File> sourcePath, File destination, 
                                           List<? extends File> bootClassPath, String sourceVersion, boolean showWarnings) {    
     if (bootClassPath == null) { bootClassPath = _defaultBootClassPath; }
 
@@ -0,0 +1,432 @@
+/*BEGIN_COPYRIGHT_BLOCK
+ *
+ * This file is part of DrJava.  Download the current version of this project from http://www.drjava.org/
+ * or http://sourceforge.net/projects/drjava/
+ *
+ * DrJava Open Source License
+ * 
+ * Copyright (C) 2001-2015 JavaPLT group at Rice University (javaplt@rice.edu).  All rights reserved.
+ *
+ * Developed by:   Java Programming Languages Team, Rice University, http://www.cs.rice.edu/~javaplt/
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated 
+ * documentation files (the "Software"), to deal with the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and 
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ *     - Redistributions of source code must retain the above copyright notice, this list of conditions and the 
+ *       following disclaimers.
+ *     - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the 
+ *       following disclaimers in the documentation and/or other materials provided with the distribution.
+ *     - Neither the names of DrJava, the JavaPLT, Rice University, nor the names of its contributors may be used to 
+ *       endorse or promote products derived from this Software without specific prior written permission.
+ *     - Products derived from this software may not be called "DrJava" nor use the term "DrJava" as part of their 
+ *       names without prior written permission from the JavaPLT group.  For permission, write to javaplt@rice.edu.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO 
+ * THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * WITH THE SOFTWARE.
+ * 
+ *END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.drjava.model.compiler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import edu.rice.cs.plt.collect.CollectUtil;
+import edu.rice.cs.plt.io.IOUtil;
+
+import static edu.rice.cs.plt.debug.DebugUtil.debug;
+import static edu.rice.cs.plt.debug.DebugUtil.error;
+
+/** A warm compiler service for Javac170Compiler.  Javac cannot reuse a compilation context, but almost everything
+  * around it can be kept from one compile to the next: the JavaCompiler tool itself, the standard file manager (which
+  * keeps the platform class path archives open and indexed), and an index of the class path jars.  The jar index is
+  * checked against the size and modification time of each jar before every compile, and only jars that changed are
+  * reindexed.  Class path directories are listed afresh on every compile, so they never go stale.
+  * <p>
+  * The standard file manager is replaced whenever the options it interprets (such as -d, -bootclasspath or -encoding)
+  * differ from those of the previous compile, because it retains them.
+  * <p>
+  * Each compile also records the time spent in the parse, enter, analyze (attribute and flow) and generate phases; see
+  * getLastPhaseTimes().
+  * @version $Id$
+  */
+public class Javac170CompilerDaemon {
+  
+  private final JavaCompiler _compiler;
+  
+  /** The reused standard file manager, or null if none has been created yet. */
+  private StandardJavaFileManager _fileManager = null;
+  
+  /** The options with which _fileManager was last used. */
+  private List<String> _fileManagerOptions = null;
+  
+  /** Index of the class path jars, by canonical file. */
+  private final HashMap<File, JarIndex> _jars = new HashMap<File, JarIndex>();
+  
+  /** The class path of the current compile. */
+  private List<File> _classPath = Collections.emptyList();
+  
+  /** The encoding of source files in the current compile. */
+  private Charset _charset = Charset.defaultCharset();
+  
+  /** Phase times (in nanoseconds) of the last compile. */
+  private final EnumMap<TaskEvent.Kind, Long> _lastPhaseTimes = new EnumMap<TaskEvent.Kind, Long>(TaskEvent.Kind.class);
+  
+  private int _compileCount = 0;
+  private int _reindexCount = 0;
+  
+  /** @param compiler the javac tool to keep warm */
+  public Javac170CompilerDaemon(JavaCompiler compiler) { _compiler = compiler; }
+  
+  /** Compiles files.
+    * @param files the source files to compile
+    * @param classPath the class path, which must not also be given in options; if null, the java.class.path property
+    *                  is used, as javac does
+    * @param options the remaining compiler options
+    * @param diagnostics the collector receiving the diagnostics of the compile
+    * @throws IOException if the class path cannot be indexed
+    */
+  public synchronized void compile(List<? extends File> files, List<? extends File> classPath, List<String> options,
+                                   DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+    long start = System.nanoTime();
+    if (classPath == null) classPath = CollectUtil.makeList(IOUtil.parsePath(System.getProperty("java.class.path", ".")));
+    _updateClassPath(classPath);
+    int i = options.indexOf("-encoding");
+    _charset = (i >= 0 && i + 1 < options.size()) ? Charset.forName(options.get(i + 1)) : Charset.defaultCharset();
+    StandardJavaFileManager fm = _getFileManager(options);
+    
+    JavacTask task = (JavacTask) _compiler.getTask(null, new IndexedFileManager(fm), diagnostics, options, null,
+                                                   fm.getJavaFileObjectsFromFiles(files));
+    PhaseTimer timer = new PhaseTimer();
+    task.setTaskListener(timer);
+    try { task.call(); }
+    finally {
+      _lastPhaseTimes.clear();
+      _lastPhaseTimes.putAll(timer._total);
+      _compileCount++;
+      debug.logValues(new String[] { "files", "nanos", "phases" }, files.size(), System.nanoTime() - start, 
+                      _lastPhaseTimes);
+    }
+  }
+  
+  /** @return the time spent in each phase of the last compile, in nanoseconds, keyed by phase name in the order of
+    * the phases.  Phases during which several units are processed in an interleaved fashion are measured by wall 
+    * clock time. */
+  public synchronized Map<String, Long> getLastPhaseTimes() {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    for (Map.Entry<TaskEvent.Kind, Long> e: _lastPhaseTimes.entrySet()) {
+      result.put(e.getKey().name().toLowerCase(), e.getValue());
+    }
+    return result;
+  }
+  
+  /** @return the number of compiles performed by this daemon */
+  public synchronized int getCompileCount() { return _compileCount; }
+  
+  /** @return the number of times a class path jar has been (re)indexed */
+  public synchronized int getReindexCount() { return _reindexCount; }
+  
+  /** Releases the open archives held by this daemon.  The daemon remains usable. */
+  public synchronized void close() {
+    for (JarIndex j: _jars.values()) j.close();
+    _jars.clear();
+    if (_fileManager != null) {
+      try { _fileManager.close(); }
+      catch(IOException e) { error.log(e); }
+      _fileManager = null;
+      _fileManagerOptions = null;
+    }
+  }
+  
+  /** Returns the standard file manager, creating a new one if options changed since the last compile. */
+  private StandardJavaFileManager _getFileManager(List<String> options) throws IOException {
+    if (_fileManager != null && ! options.equals(_fileManagerOptions)) {
+      _fileManager.close();
+      _fileManager = null;
+    }
+    if (_fileManager == null) {
+      _fileManager = _compiler.getStandardFileManager(null, null, null);
+      _fileManagerOptions = new ArrayList<String>(options);
+      // javac does not pass options like -d to a file manager it does not recognize as its own
+      Iterator<String> i = options.iterator();
+      while (i.hasNext()) {
+        String option = i.next();
+        if (_fileManager.isSupportedOption(option) >= 0) _fileManager.handleOption(option, i);
+      }
+    }
+    // The class path is served by IndexedFileManager
+    _fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+    return _fileManager;
+  }
+  
+  /** Reindexes the jars on classPath that are new or changed and drops those no longer on it. */
+  private void _updateClassPath(List<? extends File> classPath) throws IOException {
+    List<File> entries = new ArrayList<File>();
+    Map<File, JarIndex> current = new HashMap<File, JarIndex>();
+    for (File f: classPath) {
+      File canonical;
+      try { canonical = f.getCanonicalFile(); }
+      catch(IOException e) { canonical = f.getAbsoluteFile(); }
+      entries.add(canonical);
+      if (! canonical.isFile()) continue;
+      JarIndex j = _jars.remove(canonical);
+      if (j == null || ! j.isCurrent()) {
+        if (j != null) j.close();
+        try { j = new JarIndex(canonical); }
+        catch(IOException e) { error.log(e); continue; }  // javac would ignore an unreadable jar, too
+        _reindexCount++;
+      }
+      current.put(canonical, j);
+    }
+    for (JarIndex j: _jars.values()) j.close();
+    _jars.clear();
+    _jars.putAll(current);
+    _classPath = entries;
+  }
+  
+  /** Accumulates the wall clock time during which at least one task event of each kind is in progress. */
+  private static class PhaseTimer implements TaskListener {
+    final EnumMap<TaskEvent.Kind, Long> _total = new EnumMap<TaskEvent.Kind, Long>(TaskEvent.Kind.class);
+    final EnumMap<TaskEvent.Kind, Long> _start = new EnumMap<TaskEvent.Kind, Long>(TaskEvent.Kind.class);
+    final EnumMap<TaskEvent.Kind, Integer> _depth = new EnumMap<TaskEvent.Kind, Integer>(TaskEvent.Kind.class);
+    
+    public void started(TaskEvent e) {
+      TaskEvent.Kind k = e.getKind();
+      Integer d = _depth.get(k);
+      if (d == null || d == 0) _start.put(k, System.nanoTime());
+      _depth.put(k, d == null ? 1 : d + 1);
+    }
+    
+    public void finished(TaskEvent e) {
+      TaskEvent.Kind k = e.getKind();
+      Integer d = _depth.get(k);
+      if (d == null || d == 0) return;
+      _depth.put(k, d - 1);
+      if (d == 1) {
+        Long t = _total.get(k);
+        long elapsed = System.nanoTime() - _start.get(k);
+        _total.put(k, t == null ? elapsed : t + elapsed);
+      }
+    }
+  }
+  
+  /** The entries of one class path jar, grouped by package.  Keeps the jar open. */
+  private static class JarIndex {
+    final File _file;
+    final long _lastModified;
+    final long _length;
+    final ZipFile _zip;
+    /** Package name (with '.' separators; "" for the default package) to names of the entries directly in it. */
+    final HashMap<String, List<String>> _packages = new HashMap<String, List<String>>();
+    
+    JarIndex(File f) throws IOException {
+      _file = f;
+      _lastModified = f.lastModified();
+      _length = f.length();
+      _zip = new ZipFile(f);
+      Enumeration<? extends ZipEntry> en = _zip.entries();
+      while (en.hasMoreElements()) {
+        ZipEntry e = en.nextElement();
+        if (e.isDirectory()) continue;
+        String name = e.getName();
+        int slash = name.lastIndexOf('/');
+        String pkg = (slash < 0) ? "" : name.substring(0, slash).replace('/', '.');
+        List<String> l = _packages.get(pkg);
+        if (l == null) { l = new ArrayList<String>(); _packages.put(pkg, l); }
+        l.add(name);
+      }
+    }
+    
+    boolean isCurrent() { return _file.lastModified() == _lastModified && _file.length() == _length; }
+    
+    void close() {
+      try { _zip.close(); }
+      catch(IOException e) { error.log(e); }
+    }
+  }
+  
+  /** @return the kind of file with the given name, or null if it is neither a class nor a source file */
+  private static JavaFileObject.Kind _kindOf(String name) {
+    if (name.endsWith(".class")) return JavaFileObject.Kind.CLASS;
+    if (name.endsWith(".java")) return JavaFileObject.Kind.SOURCE;
+    return null;
+  }
+  
+  /** @return name with the extension of kind removed and '/' replaced by '.' */
+  private static String _binaryName(String name, JavaFileObject.Kind kind) {
+    return name.substring(0, name.length() - kind.extension.length()).replace('/', '.');
+  }
+  
+  /** A class or source file found on the class path. */
+  private class ClassPathFileObject extends SimpleJavaFileObject {
+    private final String _binaryName;
+    private final String _name;
+    private final JarIndex _jar;       // null for a file in a directory
+    private final String _entryName;   // the jar entry name, or null
+    private final File _file;          // the file, or null
+    private final URI _uri;
+    
+    ClassPathFileObject(JarIndex jar, String entryName, Kind kind) {
+      // SimpleJavaFileObject insists on a hierarchical URI; the real (opaque) one is returned by toUri()
+      super(URI.create(jar._file.toURI() + "/" + entryName), kind);
+      _uri = URI.create("jar:" + jar._file.toURI() + "!/" + entryName);
+      _binaryName = _binaryName(entryName, kind);
+      _name = jar._file.getPath() + "(" + entryName + ")";
+      _jar = jar;
+      _entryName = entryName;
+      _file = null;
+    }
+    
+    ClassPathFileObject(File file, String binaryName, Kind kind) {
+      super(file.toURI(), kind);
+      _uri = file.toURI();
+      _binaryName = binaryName;
+      _name = file.getPath();
+      _jar = null;
+      _entryName = null;
+      _file = file;
+    }
+    
+    public URI toUri() { return _uri; }
+    
+    public String getName() { return _name; }
+    
+    public String toString() { return _name; }
+    
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      if (kind != getKind()) return false;
+      String path = (_entryName != null) ? _entryName : _file.getName();
+      return path.equals(simpleName + kind.extension) || path.endsWith("/" + simpleName + kind.extension);
+    }
+    
+    public InputStream openInputStream() throws IOException {
+      if (_file != null) return new FileInputStream(_file);
+      ZipEntry e = _jar._zip.getEntry(_entryName);
+      if (e == null) throw new IOException("Missing entry " + _entryName + " in " + _jar._file);
+      return _jar._zip.getInputStream(e);
+    }
+    
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      InputStream in = openInputStream();
+      try { return new String(IOUtil.toByteArray(in), _charset); }
+      finally { in.close(); }
+    }
+    
+    public long getLastModified() {
+      if (_file != null) return _file.lastModified();
+      ZipEntry e = _jar._zip.getEntry(_entryName);
+      return (e == null) ? 0L : e.getTime();
+    }
+  }
+  
+  /** Serves CLASS_PATH from the daemon's class path and jar index; delegates everything else. */
+  private class IndexedFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    
+    IndexedFileManager(StandardJavaFileManager fm) { super(fm); }
+    
+    public boolean hasLocation(Location location) {
+      return location == StandardLocation.CLASS_PATH || super.hasLocation(location);
+    }
+    
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                         boolean recurse) throws IOException {
+      if (location != StandardLocation.CLASS_PATH) return super.list(location, packageName, kinds, recurse);
+      List<JavaFileObject> result = new ArrayList<JavaFileObject>();
+      for (File entry: _classPath) {
+        JarIndex j = _jars.get(entry);
+        if (j != null) _listJar(j, packageName, kinds, recurse, result);
+        else if (entry.isDirectory()) {
+          String rel = packageName.replace('.', File.separatorChar);
+          _listDirectory(new File(entry, rel), packageName, kinds, recurse, result);
+        }
+      }
+      return result;
+    }
+    
+    public String inferBinaryName(Location location, JavaFileObject file) {
+      if (file instanceof ClassPathFileObject) return ((ClassPathFileObject) file)._binaryName;
+      return super.inferBinaryName(location, file);
+    }
+    
+    public boolean isSameFile(FileObject a, FileObject b) {
+      if (a instanceof ClassPathFileObject || b instanceof ClassPathFileObject) return a.toUri().equals(b.toUri());
+      return super.isSameFile(a, b);
+    }
+    
+    private void _listJar(JarIndex j, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse, 
+                          List<JavaFileObject> result) {
+      if (recurse) {
+        String prefix = packageName + ".";
+        for (Map.Entry<String, List<String>> e: j._packages.entrySet()) {
+          String p = e.getKey();
+          if (p.equals(packageName) || packageName.length() == 0 || p.startsWith(prefix)) {
+            _addEntries(j, e.getValue(), kinds, result);
+          }
+        }
+      }
+      else {
+        List<String> names = j._packages.get(packageName);
+        if (names != null) _addEntries(j, names, kinds, result);
+      }
+    }
+    
+    private void _addEntries(JarIndex j, List<String> names, Set<JavaFileObject.Kind> kinds, 
+                             List<JavaFileObject> result) {
+      for (String n: names) {
+        JavaFileObject.Kind k = _kindOf(n);
+        if (k != null && kinds.contains(k)) result.add(new ClassPathFileObject(j, n, k));
+      }
+    }
+    
+    private void _listDirectory(File dir, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse,
+                                List<JavaFileObject> result) {
+      File[] children = dir.listFiles();
+      if (children == null) return;
+      String prefix = (packageName.length() == 0) ? "" : packageName + ".";
+      for (File f: children) {
+        String name = f.getName();
+        if (f.isDirectory()) {
+          if (recurse) _listDirectory(f, prefix + name, kinds, true, result);
+          continue;
+        }
+        JavaFileObject.Kind k = _kindOf(name);
+        if (k != null && kinds.contains(k)) result.add(new ClassPathFileObject(f, prefix + _binaryName(name, k), k));
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package edu.rice.cs.drjava.model.compiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+
+import edu.rice.cs.plt.io.IOUtil;
+
+import junit.framework.TestCase;
+
+public class Javac170CompilerDaemonTest extends TestCase {
+  
+  private File _dir;
+  private File _out;
+  private File _jar;
+  private File _classDir;
+  private Javac170CompilerDaemon _daemon;
+  
+  public void setUp() throws Exception {
+    _dir = IOUtil.createAndMarkTempDirectory("DrJava-test", "");
+    _out = new File(_dir, "out");
+    _classDir = new File(_dir, "classes");
+    _jar = new File(_dir, "lib.jar");
+    assertTrue(_out.mkdir());
+    assertTrue(_classDir.mkdir());
+    JavaCompiler compiler = (JavaCompiler) Class.forName("com.sun.tools.javac.api.JavacTool").newInstance();
+    _daemon = new Javac170CompilerDaemon(compiler);
+    
+    // lib.jar contains lib.Util; classes contains dir.Helper
+    _makeJar("package lib; public class Util { public static int one() { return 1; } }");
+    assertTrue(_compile(Collections.<File>emptyList(), _classDir, 
+                        _write("dir/Helper.java", "package dir; public class Helper { }")).isEmpty());
+  }
+  
+  public void tearDown() throws Exception {
+    _daemon.close();
+    IOUtil.deleteRecursively(_dir);
+  }
+  
+  private File _write(String name, String text) throws IOException {
+    File f = new File(new File(_dir, "src"), name);
+    f.getParentFile().mkdirs();
+    IOUtil.writeStringToFile(f, text);
+    return f;
+  }
+  
+  /** Compiles utilSource into a fresh lib.jar. */
+  private void _makeJar(String utilSource) throws IOException {
+    File tmp = new File(_dir, "tmp");
+    IOUtil.deleteRecursively(tmp);
+    assertTrue(tmp.mkdir());
+    assertTrue(_compile(Collections.<File>emptyList(), tmp, _write("lib/Util.java", utilSource)).isEmpty());
+    long old = _jar.exists() ? _jar.lastModified() : 0L;
+    JarOutputStream jar = new JarOutputStream(new FileOutputStream(_jar));
+    try {
+      jar.putNextEntry(new ZipEntry("lib/Util.class"));
+      jar.write(IOUtil.toByteArray(new File(tmp, "lib/Util.class")));
+      jar.closeEntry();
+    }
+    finally { jar.close(); }
+    if (old != 0L) assertTrue(_jar.setLastModified(old + 10000));
+  }
+  
+  private List<Diagnostic<? extends JavaFileObject>> _compile(List<File> classPath, File dest, File... files) 
+    throws IOException {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    _daemon.compile(Arrays.asList(files), classPath, Arrays.asList("-g", "-d", dest.getPath()), diagnostics);
+    return diagnostics.getDiagnostics();
+  }
+  
+  public void testCompileAgainstJarAndDirectory() throws IOException {
+    File main = _write("p/Main.java", "package p; public class Main { int x = lib.Util.one(); dir.Helper h; }");
+    List<File> cp = Arrays.asList(_jar, _classDir);
+    assertEquals(Collections.emptyList(), _compile(cp, _out, main));
+    assertTrue(new File(_out, "p/Main.class").exists());
+    
+    Map<String, Long> phases = _daemon.getLastPhaseTimes();
+    assertTrue("missing phases: " + phases, phases.keySet().containsAll(Arrays.asList("parse", "enter", "analyze", 
+                                                                                       "generate")));
+    
+    // An unchanged jar is not reindexed
+    int reindexed = _daemon.getReindexCount();
+    assertEquals(Collections.emptyList(), _compile(cp, _out, main));
+    assertEquals(reindexed, _daemon.getReindexCount());
+  }
+  
+  public void testChangedJarIsReindexed() throws IOException {
+    List<File> cp = Arrays.asList(_jar, _classDir);
+    File main = _write("p/Main.java", "package p; public class Main { int x = lib.Util.two(); }");
+    assertEquals("two() does not exist yet", 1, _compile(cp, _out, main).size());
+    
+    int reindexed = _daemon.getReindexCount();
+    _makeJar("package lib; public class Util { public static int two() { return 2; } }");
+    assertEquals(Collections.emptyList(), _compile(cp, _out, main));
+    assertEquals(reindexed + 1, _daemon.getReindexCount());
+  }
+  
+  public void testClassPathIsNotRetained() throws IOException {
+    File main = _write("p/Main.java", "package p; public class Main { dir.Helper h; }");
+    assertEquals(Collections.emptyList(), _compile(Arrays.asList(_classDir), _out, main));
+    assertEquals("dir.Helper is no longer on the class path", 1, 
+                 _compile(Collections.<File>emptyList(), _out, main).size());
+  }
+}
@@ -0,0 +1,410 @@
+/*BEGIN_COPYRIGHT_BLOCK*
+
+PLT Utilities BSD License
+
+Copyright (c) 2007-2010 JavaPLT group at Rice University
+All rights reserved.
+
+Developed by:   Java Programming Languages Team
+                Rice University
+                http://www.cs.rice.edu/~javaplt/
+
+Redistribution and use in source and binary forms, with or without modification, are permitted 
+provided that the following conditions are met:
+
+    - Redistributions of source code must retain the above copyright notice, this list of conditions 
+      and the following disclaimer.
+    - Redistributions in binary form must reproduce the above copyright notice, this list of 
+      conditions and the following disclaimer in the documentation and/or other materials provided 
+      with the distribution.
+    - Neither the name of the JavaPLT group, Rice University, nor the names of the library's 
+      contributors may be used to endorse or promote products derived from this software without 
+      specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR 
+IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND 
+FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS AND 
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, 
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER 
+IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT 
+OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+*END_COPYRIGHT_BLOCK*/
+
+package edu.rice.cs.plt.reflect;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import edu.rice.cs.plt.io.IOUtil;
+import edu.rice.cs.plt.iter.IterUtil;
+
+import static edu.rice.cs.plt.debug.DebugUtil.error;
+
+/** An index of the resources available in a class path, so that a lookup need not search every jar file in the
+  * path.  Each jar file is read once to find the packages it contains; the result is shared by all indices (and
+  * so by all class loaders) through a static cache of the most recently used jar files, and is only recomputed when
+  * the jar file's size or modification time changes.  Directories are not indexed: they are examined directly on
+  * every lookup, so that classes compiled into them are found immediately.  An index describes a fixed snapshot of a
+  * path; clients with a dynamic path create a new index whenever the path changes (see {@link #isIndexOf}).
+  * <p>
+  * A lookup checks that each jar file it consults is unchanged; if one has changed, the lookup reads its new
+  * contents, and the index no longer describes the path.  At most {@link #MAX_OPEN_JARS} jar files are kept open;
+  * the least recently used is closed, and reopened if it is needed again.  Since an open jar file cannot be replaced
+  * on some platforms, {@link #closeJars} closes them all.</p>
+  */
+public final class ClassPathIndex {
+
+  /** The maximum number of jar files whose contents are shared through {@link #JARS}. */
+  static final int MAX_CACHED_JARS = 256;
+
+  /** The maximum number of jar files that are open at once. */
+  static final int MAX_OPEN_JARS = 32;
+
+  /** Contents of the most recently indexed jar files, least recently used first.  Accesses are synchronized on the
+    * map.
+    */
+  private static final Map<File, JarContents> JARS = new LinkedHashMap<File, JarContents>(16, 0.75f, true);
+
+  /** The jar files that are open, least recently used first.  All access to the open ZipFiles (and to this map) is
+    * synchronized on the map.
+    */
+  private static final Map<JarContents, Boolean> OPEN = new LinkedHashMap<JarContents, Boolean>(16, 0.75f, true);
+
+  private static final int[] NO_ENTRIES = new int[0];
+
+  private final List<File> _path;
+
+  /** The jar files of the path, or {@code null} for entries that are not (or were not yet) jar files. */
+  private final JarContents[] _jars;
+
+  /** For each package (as a resource name prefix, like {@code "java/lang"}), the increasing positions of the jar
+    * files in the path that contain it.
+    */
+  private final Map<String, int[]> _jarsByPackage;
+
+  /** The increasing positions of the path entries that must be examined on every lookup: directories, and entries
+    * that did not exist when the index was created.
+    */
+  private final int[] _others;
+
+  /** Create an index of a snapshot of the given path. */
+  public ClassPathIndex(Iterable<? extends File> path) {
+    _path = new ArrayList<File>();
+    for (File f : path) { _path.add(f); }
+    _jars = new JarContents[_path.size()];
+    Map<String, List<Integer>> byPackage = new HashMap<String, List<Integer>>();
+    List<Integer> others = new ArrayList<Integer>();
+    for (int i = 0; i < _jars.length; i++) {
+      File f = _path.get(i);
+      if (f.isFile()) {
+        _jars[i] = jarContents(f);
+        for (String p : _jars[i].packages) {
+          List<Integer> positions = byPackage.get(p);
+          if (positions == null) { positions = new ArrayList<Integer>(); byPackage.put(p, positions); }
+          positions.add(i);
+        }
+      }
+      else { others.add(i); }
+    }
+    _jarsByPackage = new HashMap<String, int[]>();
+    for (Map.Entry<String, List<Integer>> e : byPackage.entrySet()) {
+      _jarsByPackage.put(e.getKey(), toArray(e.getValue()));
+    }
+    _others = toArray(others);
+  }
+
+  private static int[] toArray(List<Integer> l) {
+    int[] result = new int[l.size()];
+    for (int i = 0; i < result.length; i++) { result[i] = l.get(i); }
+    return result;
+  }
+
+  /** @return {@code true} if this index describes the current contents of {@code path}: the path is unchanged, and
+    *          none of its jar files has been found to be modified since the index was created
+    */
+  public boolean isIndexOf(Iterable<? extends File> path) {
+    for (JarContents jar : _jars) {
+      if (jar != null && jar.isReplaced()) { return false; }
+    }
+    // IterUtil.isEqual guards against infinite recursion, which is too expensive for every lookup
+    Iterator<File> expected = _path.iterator();
+    for (File f : path) {
+      if (!expected.hasNext() || !f.equals(expected.next())) { return false; }
+    }
+    return !expected.hasNext();
+  }
+
+  /** @return the path described by this index */
+  public Iterable<File> path() { return IterUtil.immutable(_path); }
+
+  /** @return {@code true} if the named resource is available in the path */
+  public boolean contains(String name) { return locate(name, 0) >= 0; }
+
+  /** @return a URL for the first occurrence of the named resource in the path, or {@code null} if there is none */
+  public URL findResource(String name) {
+    for (int i = locate(name, 0); i >= 0; i = locate(name, i + 1)) {
+      URL result = url(i, name);
+      if (result != null) { return result; }
+    }
+    return null;
+  }
+
+  /** @return URLs for all occurrences of the named resource in the path, in path order */
+  public List<URL> findResources(String name) {
+    List<URL> result = new ArrayList<URL>();
+    for (int i = locate(name, 0); i >= 0; i = locate(name, i + 1)) {
+      URL url = url(i, name);
+      if (url != null) { result.add(url); }
+    }
+    return result;
+  }
+
+  /** Find the first position, starting at {@code start}, of a path entry that contains the named resource.
+    * @return the position, or -1 if no entry at or after {@code start} contains the resource
+    */
+  private int locate(String name, int start) {
+    int[] jars = _jarsByPackage.get(packageOf(name));
+    if (jars == null) { jars = NO_ENTRIES; }
+    // merge the two increasing position lists, beginning at start
+    int j = 0;
+    int o = 0;
+    while (j < jars.length && jars[j] < start) { j++; }
+    while (o < _others.length && _others[o] < start) { o++; }
+    while (j < jars.length || o < _others.length) {
+      if (o == _others.length || (j < jars.length && jars[j] < _others[o])) {
+        int i = jars[j++];
+        JarContents jar = _jars[i];
+        if (jar.contains(name)) { return i; }
+        // the jar file changed after the index was created
+        if (jar.isReplaced() && _path.get(i).isFile() && jarContents(_path.get(i)).contains(name)) { return i; }
+      }
+      else {
+        int i = _others[o++];
+        File f = _path.get(i);
+        if (new File(f, name).exists()) { return i; }
+        // a jar file created after the index was
+        if (f.isFile() && jarContents(f).contains(name)) { return i; }
+      }
+    }
+    return -1;
+  }
+
+  /** @return a URL for the named resource in the given path entry, or {@code null} if it cannot be formed.  The
+    *          contents of a jar URL are read from the jar file as it was indexed, rather than from the JVM's
+    *          shared cache of jar files, which is never refreshed.
+    */
+  private URL url(int i, String name) {
+    File f = _path.get(i);
+    try {
+      if (f.isDirectory()) { return new File(f, name).toURI().toURL(); }
+      else {
+        String entry = new URI(null, null, name, null).getRawPath();
+        String spec = "jar:" + f.getAbsoluteFile().toURI().toURL() + "!/" + entry;
+        JarContents jar = (_jars[i] == null || _jars[i].isReplaced()) ? jarContents(f) : _jars[i];
+        return new URL(null, spec, new EntryHandler(jar, name));
+      }
+    }
+    catch (MalformedURLException e) { error.log(e); }
+    catch (URISyntaxException e) { error.log(e); }
+    catch (IllegalArgumentException e) { error.log(e); }
+    return null;
+  }
+
+  /** @return the name of the package, as a resource name prefix, of the named resource; "" for the default package */
+  private static String packageOf(String name) {
+    int slash = name.lastIndexOf('/');
+    return (slash < 0) ? "" : name.substring(0, slash);
+  }
+
+  /** Get the contents of the given jar file, reading it if it has not been read or has changed. */
+  private static JarContents jarContents(File f) {
+    File key = f.getAbsoluteFile();
+    synchronized(JARS) {
+      JarContents result = JARS.get(key);
+      if (result == null || result.isReplaced() || result.isStale()) {
+        if (result != null) { result.replace(); }
+        result = new JarContents(key);
+        JARS.put(key, result);
+        if (JARS.size() > MAX_CACHED_JARS) {
+          // evicted contents stay usable by the indices that refer to them
+          Iterator<JarContents> eldest = JARS.values().iterator();
+          eldest.next();
+          eldest.remove();
+        }
+      }
+      return result;
+    }
+  }
+
+  /** Close all open jar files.  They are reopened when they are next needed (unless they have changed). */
+  public static void closeJars() {
+    synchronized(OPEN) {
+      for (JarContents jar : OPEN.keySet()) { jar.closeZip(); }
+      OPEN.clear();
+    }
+  }
+
+  /** @return the number of open jar files (for testing) */
+  static int openJarCount() {
+    synchronized(OPEN) { return OPEN.size(); }
+  }
+
+  /** The packages of a jar file.  The file is kept open (subject to {@link #MAX_OPEN_JARS}) to look up individual
+    * entries.
+    */
+  private static final class JarContents {
+    public final File file;
+    public final long lastModified;
+    public final long length;
+    public final Set<String> packages;
+    /** The open file, or {@code null} if it is closed; guarded by {@link #OPEN}. */
+    private ZipFile _zip;
+    /** Whether the file could be opened as a zip file when it was read; if not, it contains nothing. */
+    private final boolean _readable;
+    private volatile boolean _replaced;
+
+    public JarContents(File f) {
+      file = f;
+      lastModified = f.lastModified();
+      length = f.length();
+      packages = new HashSet<String>();
+      _replaced = false;
+      synchronized(OPEN) {
+        try { _zip = new ZipFile(f); }
+        catch (IOException e) { _zip = null; }
+        _readable = (_zip != null);
+        ZipFile zip = zip();
+        if (zip != null) {
+          Enumeration<? extends ZipEntry> entries = zip.entries();
+          while (entries.hasMoreElements()) {
+            // directories are themselves resources, so the packages of all enclosing directories are included
+            String p = entries.nextElement().getName();
+            do {
+              p = packageOf(p);
+            } while (packages.add(p) && p.length() > 0);
+          }
+        }
+      }
+    }
+
+    /** @return {@code true} if the file's size or modification time differs from when it was read */
+    public boolean isStale() { return file.lastModified() != lastModified || file.length() != length; }
+
+    /** Get the open file, opening it (and closing the least recently used file, if necessary) if it is closed.  Must
+      * be called while holding the lock on {@link #OPEN}.
+      * @return the open file, or {@code null} if it has been replaced or cannot be opened
+      */
+    private ZipFile zip() {
+      if (_replaced || !_readable) { return null; }
+      if (_zip == null) {
+        try { _zip = new ZipFile(file); }
+        catch (IOException e) { return null; }
+      }
+      OPEN.put(this, Boolean.TRUE);
+      if (OPEN.size() > MAX_OPEN_JARS) {
+        Iterator<JarContents> eldest = OPEN.keySet().iterator();
+        eldest.next().closeZip();
+        eldest.remove();
+      }
+      return _zip;
+    }
+
+    /** Close the file, if it is open, without removing it from {@link #OPEN}.  Must be called while holding the lock
+      * on {@link #OPEN}.
+      */
+    private void closeZip() {
+      if (_zip != null) {
+        try { _zip.close(); }
+        catch (IOException e) { /* ignore */ }
+        _zip = null;
+      }
+    }
+
+    /** If the file has changed, mark these contents as replaced and close the file.
+      * @return {@code true} if these contents are up to date
+      */
+    private boolean checkFresh() {
+      if (_replaced) { return false; }
+      if (isStale()) { replace(); return false; }
+      return true;
+    }
+
+    /** @return a stream for the named entry, or {@code null} if the file has changed or cannot be read.  The entry is
+      *          read immediately, since the file may be closed before the stream is.
+      */
+    public InputStream open(String name) throws IOException {
+      if (!checkFresh()) { return null; }
+      synchronized(OPEN) {
+        ZipFile zip = zip();
+        if (zip == null) { return null; }
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) { throw new IOException("Entry " + name + " not found"); }
+        InputStream in = zip.getInputStream(entry);
+        try { return new ByteArrayInputStream(IOUtil.toByteArray(in)); }
+        finally { in.close(); }
+      }
+    }
+
+    public boolean contains(String name) {
+      // like the standard class loaders, a name matches a directory entry with a trailing '/'
+      if (!packages.contains(packageOf(name)) || !checkFresh()) { return false; }
+      synchronized(OPEN) {
+        ZipFile zip = zip();
+        return zip != null && zip.getEntry(name) != null;
+      }
+    }
+
+    /** @return {@code true} if the file has changed and these contents have been replaced */
+    public boolean isReplaced() { return _replaced; }
+
+    /** Mark these contents as replaced and close the file. */
+    public void replace() {
+      _replaced = true;
+      synchronized(OPEN) {
+        closeZip();
+        OPEN.remove(this);
+      }
+    }
+  }
+
+  /** Opens URLs for an entry of an indexed jar file. */
+  private static final class EntryHandler extends URLStreamHandler {
+    private final JarContents _jar;
+    private final String _name;
+
+    public EntryHandler(JarContents jar, String name) { _jar = jar; _name = name; }
+
+    protected URLConnection openConnection(final URL u) throws IOException {
+      return new URLConnection(u) {
+        public void connect() {}
+        public InputStream getInputStream() throws IOException {
+          InputStream result = _jar.open(_name);
+          // if the file has changed since, read it as the standard jar handler would
+          return (result == null) ? new URL(u.toExternalForm()).openStream() : result;
+        }
+      };
+    }
+  }
+
+}
@@ -35,20 +35,16 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package edu.rice.cs.plt.reflect;
 
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.net.MalformedURLException;
 import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.List;
-import java.util.LinkedList;
 
 import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.plt.iter.IterUtil;
 import edu.rice.cs.util.Log;
 
-import static edu.rice.cs.plt.debug.DebugUtil.error;
 import static edu.rice.cs.plt.debug.DebugUtil.debug;
 
 /** A class loader that mimics the standard application system loader by loading classes from
@@ -61,10 +57,12 @@ import static edu.rice.cs.plt.debug.DebugUtil.debug;
   * later transitively resolves the referenced classes, they may no longer exist, or may be
   * shadowed.  This is not a unique problem, however -- the standard system class loader is
   * based on an underlying file system that may also change in arbitrary ways at any time.
+  * Lookups use a {@link ClassPathIndex} of the path, which is recreated when the path changes;
+  * the contents of jar files are read once and shared by all loaders.
   */
 public class PathClassLoader extends AbstractClassLoader {
   
-  private static final Log _log = new Log("PathClassLoader.txt", true);
+  private static final Log _log = new Log("PathClassLoader.txt", false);
   
   /** Locate a resource in the given path.  Returns {@code null} if the resource is not found.
     * If multiple queries will be performed on the same path, a PathClassLoader instance
@@ -79,7 +77,7 @@ public class PathClassLoader extends AbstractClassLoader {
     * should be created for better performance.
     */
   public static URL getResourceInPath(String name, Iterable<File> path) {
-    return new PathClassLoader(EmptyClassLoader.INSTANCE, path).getResource(name);
+    return new ClassPathIndex(path).findResource(name);
   }
 
   /** Locate a resource in the given path.  Returns {@code null} if the resource is not found.
@@ -95,12 +93,13 @@ public class PathClassLoader extends AbstractClassLoader {
     * should be created for better performance.
     */
   public static InputStream getResourceInPathAsStream(String name, Iterable<File> path) {
-    return new PathClassLoader(EmptyClassLoader.INSTANCE, path).getResourceAsStream(name);
+    URL url = getResourceInPath(name, path);
+    try { return (url == null) ? null : url.openStream(); }
+    catch (IOException e) { return null; }
   }
 
   private final Iterable<? extends File> _path;
-  private URLClassLoader _urlLoader;
-  private Iterable<File> _urlLoaderPath;
+  private volatile ClassPathIndex _index;
 
   /** Create a path class loader with the default parent ({@link ClassLoader#getSystemClassLoader})
     * and the specified path.
@@ -114,7 +113,7 @@ public class PathClassLoader extends AbstractClassLoader {
   public PathClassLoader(Iterable<? extends File> path) {
     super();
     _path = path;
-    updateURLLoader();
+    _index = new ClassPathIndex(_path);
   }
   
   /** Create a path class loader with the given parent and path */
@@ -124,20 +123,18 @@ public class PathClassLoader extends AbstractClassLoader {
   public PathClassLoader(ClassLoader parent, Iterable<? extends File> path) {
     super(parent);
     _path = path;
-    updateURLLoader();
+    _index = new ClassPathIndex(_path);
     _log.log("Constructing PathClassLoader with parent " + parent + " and path '" + path + "'");
   }
 
-  private void updateURLLoader() {
-    _urlLoaderPath = IterUtil.snapshot(_path);
-    List<URL> urls = new LinkedList<URL>();
-    for (File f : _urlLoaderPath) {
-      try { urls.add(f.toURI().toURL()); }
-      catch (IllegalArgumentException e) { error.log(e); }
-      catch (MalformedURLException e) { error.log(e); }
-      // just skip the path element if there's an error
+  /** @return an index of the current path, recreating it if the path has changed */
+  private ClassPathIndex index() {
+    ClassPathIndex result = _index;
+    if (!result.isIndexOf(_path)) {
+      result = new ClassPathIndex(_path);
+      _index = result;
     }
-    _urlLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]), EmptyClassLoader.INSTANCE);
+    return result;
   }
   
 //  /** This override is defined solely to trace calls to this method; it immediately invokes the
@@ -171,15 +168,13 @@ public class PathClassLoader extends AbstractClassLoader {
   
   @Override 
   protected URL findResource(String name) {
-    _log.log("findResource(" + name + ") called; _path is " + _path);
-    if (!IterUtil.isEqual(_path, _urlLoaderPath)) { updateURLLoader(); }
-    return _urlLoader.findResource(name);
+    if (_log.isEnabled()) { _log.log("findResource(" + name + ") called; _path is " + _path); }
+    return index().findResource(name);
   }
   
   @Override 
   protected Enumeration<URL> findResources(String name) throws IOException {
-    _log.log("findResources(" + name + ") called _path is " + _path);
-    if (!IterUtil.isEqual(_path, _urlLoaderPath)) { updateURLLoader(); }
-    return _urlLoader.findResources(name);
+    if (_log.isEnabled()) { _log.log("findResources(" + name + ") called _path is " + _path); }
+    return Collections.enumeration(index().findResources(name));
   }
 }
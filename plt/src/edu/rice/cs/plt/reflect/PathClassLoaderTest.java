@@ -34,7 +34,19 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package edu.rice.cs.plt.reflect;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.rice.cs.plt.io.IOUtil;
+
 
 public class PathClassLoaderTest extends ClassLoaderTestCase {
   
@@ -121,6 +133,67 @@ public class PathClassLoaderTest extends ClassLoaderTestCase {
     assertCannotGet(lC, "D");
   }
   
+  public void testJarsAndResources() throws Exception {
+    File dir = IOUtil.createAndMarkTempDirectory("pathLoader", "");
+    try {
+      File jar1 = new File(dir, "one.jar");
+      File jar2 = new File(dir, "two.jar");
+      File classes = new File(dir, "classes");
+      writeJar(jar1, 1, 2);
+      writeJar(jar2, 2, 2);
+      PathClassLoader l = new PathClassLoader((ClassLoader) null, jar1, classes, jar2);
+      assertEquals(l, l.loadClass("p1.C0").getClassLoader());
+      assertEquals(l, l.loadClass("p2.C1").getClassLoader());
+      assertDoesNotLoadClass(l, "p1.C2");
+      assertDoesNotLoadClass(l, "p3.C0");
+      assertNotNull(l.getResource("p1/"));
+      assertEquals(1, Collections.list(l.getResources("p2/C0.class")).size());
+      
+      // a lookup that consults a changed jar file sees its new contents, and the index is then recreated
+      writeJar(jar1, 3, 1);
+      assertDoesNotLoadClass(l, "p1.C1");
+      assertEquals(l, l.loadClass("p3.C0").getClassLoader());
+      
+      // directories created later are searched, in order
+      File p2 = new File(classes, "p2");
+      assertTrue(p2.mkdirs());
+      IOUtil.writeStringToFile(new File(p2, "C0.class"), "");
+      URL url = l.getResource("p2/C0.class");
+      assertEquals("file", url.getProtocol());
+      assertEquals(2, Collections.list(l.getResources("p2/C0.class")).size());
+      assertNotNull(PathClassLoader.getResourceInPath("p2/C1.class", jar1, classes, jar2));
+      assertNull(PathClassLoader.getResourceInPath("p2/C1.class", jar1, classes));
+      
+      // a new loader sees the jar file's new contents
+      PathClassLoader l2 = new PathClassLoader((ClassLoader) null, jar1);
+      assertEquals(l2, l2.loadClass("p3.C0").getClassLoader());
+      assertDoesNotLoadClass(l2, "p1.C0");
+    }
+    finally { ClassPathIndex.closeJars(); IOUtil.deleteRecursively(dir); }
+  }
+  
+  public void testOpenJarsAreBounded() throws Exception {
+    File dir = IOUtil.createAndMarkTempDirectory("pathLoader", "");
+    try {
+      File[] jars = new File[ClassPathIndex.MAX_OPEN_JARS + 8];
+      for (int i = 0; i < jars.length; i++) {
+        jars[i] = new File(dir, "j" + i + ".jar");
+        writeJar(jars[i], i, 1);
+      }
+      PathClassLoader l = new PathClassLoader((ClassLoader) null, jars);
+      for (int i = 0; i < jars.length; i++) { assertEquals(l, l.loadClass("p" + i + ".C0").getClassLoader()); }
+      assertTrue(ClassPathIndex.openJarCount() <= ClassPathIndex.MAX_OPEN_JARS);
+      
+      // closed jar files are reopened when needed
+      ClassPathIndex.closeJars();
+      assertEquals(0, ClassPathIndex.openJarCount());
+      URL url = l.getResource("p0/C0.class");
+      assertEquals(emptyClass("p0/C0").length, IOUtil.toByteArray(url.openStream()).length);
+      assertEquals(1, ClassPathIndex.openJarCount());
+    }
+    finally { ClassPathIndex.closeJars(); IOUtil.deleteRecursively(dir); }
+  }
+  
   private void assertCanGet(ClassLoader l, String className, int value) throws Exception {
     Class<?> c = l.loadClass(className);
     Object instance = c.newInstance();
@@ -138,4 +211,74 @@ public class PathClassLoaderTest extends ClassLoaderTestCase {
     fail("Able to invoke get() in class " + className);
   }
   
+  /** Write a jar file containing classes {@code p<pkg>.C0}, {@code p<pkg>.C1}, etc. */
+  private static void writeJar(File jar, int pkg, int classes) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      out.putNextEntry(new ZipEntry("p" + pkg + "/"));
+      for (int i = 0; i < classes; i++) {
+        String name = "p" + pkg + "/C" + i;
+        out.putNextEntry(new ZipEntry(name + ".class"));
+        out.write(emptyClass(name));
+      }
+    }
+    finally { out.close(); }
+  }
+  
+  /** @return the bytes of a class file for an empty class with the given (internal) name */
+  private static byte[] emptyClass(String name) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0); out.writeShort(49); // version
+    out.writeShort(5); // constant pool size + 1
+    out.writeByte(7); out.writeShort(2); // #1: this class
+    out.writeByte(1); out.writeUTF(name);
+    out.writeByte(7); out.writeShort(4); // #3: superclass
+    out.writeByte(1); out.writeUTF("java/lang/Object");
+    out.writeShort(0x21); out.writeShort(1); out.writeShort(3); // public super, this, super
+    out.writeShort(0); out.writeShort(0); out.writeShort(0); out.writeShort(0); // interfaces, fields, methods, attrs
+    out.close();
+    return bytes.toByteArray();
+  }
+  
+  /** Compare the time to load classes from a path of many jar files with a PathClassLoader and with a plain
+    * URLClassLoader (which was previously used to search the path).
+    */
+  public static void main(String... args) throws Exception {
+    int jars = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+    int classes = 20;
+    File dir = IOUtil.createAndMarkTempDirectory("pathLoader", "");
+    File[] path = new File[jars];
+    URL[] urls = new URL[jars];
+    for (int i = 0; i < jars; i++) {
+      path[i] = new File(dir, "lib" + i + ".jar");
+      writeJar(path[i], i, classes);
+      urls[i] = path[i].toURI().toURL();
+    }
+    for (int run = 0; run < 5; run++) {
+      long start = System.currentTimeMillis();
+      loadAll(new PathClassLoader((ClassLoader) null, path), jars, classes);
+      long indexed = System.currentTimeMillis() - start;
+      start = System.currentTimeMillis();
+      loadAll(new URLClassLoader(urls, null), jars, classes);
+      long searched = System.currentTimeMillis() - start;
+      System.out.println(jars + " jars, " + (jars * classes) + " classes and " + (jars * classes) + " misses: " +
+                         "PathClassLoader " + indexed + "ms; URLClassLoader " + searched + "ms");
+    }
+    IOUtil.deleteRecursively(dir);
+  }
+  
+  /** Load every class, and look up as many classes that do not exist. */
+  private static void loadAll(ClassLoader l, int jars, int classes) {
+    for (int i = 0; i < jars; i++) {
+      for (int j = 0; j < classes; j++) {
+        try { l.loadClass("p" + i + ".C" + j); }
+        catch (ClassNotFoundException e) { throw new RuntimeException(e); }
+        try { l.loadClass("p" + i + ".Missing" + j); throw new RuntimeException("Loaded a missing class"); }
+        catch (ClassNotFoundException e) { /* expected */ }
+      }
+    }
+  }
+  
 }
@@ -35,6 +35,7 @@ OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package edu.rice.cs.plt.reflect;
 
 import java.net.URL;
+import edu.rice.cs.plt.io.IOUtil;
 import edu.rice.cs.plt.iter.IterUtil;
 import edu.rice.cs.util.Log;
 
@@ -47,6 +48,10 @@ public class ShadowingClassLoader extends ClassLoader {
   
   private static final Log _log = new Log("JUnitTestManager.txt", false);
   
+  /** An index of the boot class path, or {@code null} if the boot class path is unknown (as in Java 9 and later). */
+  private static volatile ClassPathIndex _bootIndex = null;
+  private static volatile boolean _bootIndexInitialized = false;
+  
   private final Iterable<? extends String> _prefixes;
   private final boolean _blackList;
   private final boolean _filterBootClasses;
@@ -102,7 +107,7 @@ public class ShadowingClassLoader extends ClassLoader {
     */
   @Override protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
     _log.log("ShadowingClassLoader.loadClass(" + name + ", " + resolve + ") called");
-    if ((_filterBootClasses || !isBootClass(name)) && matchesPrefixes(name) == _blackList) {
+    if (matchesPrefixes(name) == _blackList && (_filterBootClasses || !isBootClass(name))) {
       _log.log("Class " + name + " is being shadowed");
       throw new ClassNotFoundException(name + " is being shadowed");
     }
@@ -113,8 +118,8 @@ public class ShadowingClassLoader extends ClassLoader {
   }
   
   @Override public URL getResource(String name) {
-    if ((_filterBootClasses || !isBootResource(name)) &&
-        matchesPrefixes(name.replace('/', '.')) == _blackList) {
+    if (matchesPrefixes(name.replace('/', '.')) == _blackList &&
+        (_filterBootClasses || !isBootResource(name))) {
       return null;
     }
     else {
@@ -125,16 +130,36 @@ public class ShadowingClassLoader extends ClassLoader {
   
   // Ideally, we should override getResources() as well.  Unfortunately, it's final in Java 1.4.
   
-  /** As a side effect, loads the given class in the bootstrap class loader. */
+  /** Determines whether the bootstrap class loader can load the given class.  If the boot class path is not known,
+    * as a side effect, loads the given class in the bootstrap class loader.
+    */
   private boolean isBootClass(String name) {
+    ClassPathIndex index = bootIndex();
+    if (index != null) { return index.contains(name.replace('.', '/') + ".class"); }
     try { ReflectUtil.BOOT_CLASS_LOADER.loadClass(name); return true; }
     catch (ClassNotFoundException e) { return false; }
   }
   
   private boolean isBootResource(String name) {
+    ClassPathIndex index = bootIndex();
+    if (index != null) { return index.contains(name); }
     return ReflectUtil.BOOT_CLASS_LOADER.getResource(name) != null;
   }
   
+  /** @return an index of the boot class path, shared by all instances, or {@code null} if it is unknown */
+  private static ClassPathIndex bootIndex() {
+    if (!_bootIndexInitialized) {
+      synchronized(ShadowingClassLoader.class) {
+        if (!_bootIndexInitialized) {
+          String path = System.getProperty("sun.boot.class.path");
+          if (path != null) { _bootIndex = new ClassPathIndex(IOUtil.parsePath(path)); }
+          _bootIndexInitialized = true;
+        }
+      }
+    }
+    return _bootIndex;
+  }
+  
   private boolean matchesPrefixes(String name) {
     // TODO: improve efficiency by using a sorted data structure
     for (String p : _prefixes) {